@@ -3,29 +3,46 @@ package sr.entityset;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 
-//Minimal JavaBeans support
+//Minimal JavaBeans support, the listener support is only created 
+//when the first listener registers.
 public abstract class AbstractModelObject {
 	
-	private PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
+	private PropertyChangeSupport propertyChangeSupport = null;
 
 	public void addPropertyChangeListener(PropertyChangeListener listener) {
-		propertyChangeSupport.addPropertyChangeListener(listener);
+		getPropertyChangeSupport().addPropertyChangeListener(listener);
 	}
 
 	public void addPropertyChangeListener(String propertyName, PropertyChangeListener listener) {
-		propertyChangeSupport.addPropertyChangeListener(propertyName, listener);
+		getPropertyChangeSupport().addPropertyChangeListener(propertyName, listener);
 	}
 
 	public void removePropertyChangeListener(PropertyChangeListener listener) {
-		propertyChangeSupport.removePropertyChangeListener(listener);
+		if (propertyChangeSupport != null)
+			propertyChangeSupport.removePropertyChangeListener(listener);
 	}
 
 	public void removePropertyChangeListener(String propertyName, PropertyChangeListener listener) {
-		propertyChangeSupport.removePropertyChangeListener(propertyName, listener);
+		if (propertyChangeSupport != null)
+			propertyChangeSupport.removePropertyChangeListener(propertyName, listener);
 	}
 
 	protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {	
-		propertyChangeSupport.firePropertyChange(propertyName, oldValue, newValue);
+		if (propertyChangeSupport != null)
+			propertyChangeSupport.firePropertyChange(propertyName, oldValue, newValue);
 	}
 	
+	/**
+	 * @return true if a listener is registered for the given property or for all properties.
+	 */
+	protected boolean hasPropertyChangeListeners(String propertyName) {
+		return propertyChangeSupport != null && propertyChangeSupport.hasListeners(propertyName);
+	}
+	
+	private PropertyChangeSupport getPropertyChangeSupport() {
+		if (propertyChangeSupport == null)
+			propertyChangeSupport = new PropertyChangeSupport(this);
+		
+		return propertyChangeSupport;
+	}
 }
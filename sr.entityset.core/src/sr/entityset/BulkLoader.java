@@ -0,0 +1,189 @@
+package sr.entityset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import sr.entityset.ValidationReport.Violation;
+import sr.entityset.constraints.ConstraintError;
+import sr.entityset.constraints.ConstraintHelper;
+import sr.entityset.exceptions.ConstraintViolationException;
+import sr.entityset.exceptions.InvalidNullValueException;
+import sr.entityset.exceptions.WrongTypeException;
+
+/**
+ * Appends batches of rows to a table without maintaining indexes nor checking
+ * constraints row by row. On {@link #finish()}, each index of the table is built
+ * once and every constraint validates the loaded rows in a single pass, all the
+ * violations being reported together. Loaded rows are only tracked as changed 
+ * rows then, the set of changed rows being grown once for all of them.
+ *
+ * Obtained from {@link EntityTable#beginBulkLoad(int)}. Value arrays are
+ * taken over by the table, they must not be reused by the caller.
+ */
+public class BulkLoader
+{
+	private static final int MAX_ERRORS_IN_MESSAGE = 10;
+
+	private final EntityTable table;
+	private final int firstRowIndex;
+	private final List<Violation> rejectedRows = new ArrayList<Violation>();
+	private int submittedRowCount = 0;
+	private boolean finished = false;
+	private boolean acceptChanges = false;
+
+	BulkLoader(EntityTable table, int firstRowIndex)
+	{
+		this.table = table;
+		this.firstRowIndex = firstRowIndex;
+	}
+
+	/**
+	 * Appends a row. Rows with null or wrongly typed values are not added, but
+	 * reported when finishing.
+	 */
+	public void addRow(Object... values)
+	{
+		if (values == null) throw new NullArgumentException("values");
+		this.ensureNotFinished();
+
+		int position = this.submittedRowCount++;
+		try {
+			this.table.addLoadedRow(values);
+		}
+		catch (InvalidNullValueException e) {
+			this.rejectRow(position, values, e);
+		}
+		catch (WrongTypeException e) {
+			this.rejectRow(position, values, e);
+		}
+	}
+
+	public void addRows(List<Object[]> rows)
+	{
+		for (Object[] values : rows)
+			this.addRow(values);
+	}
+
+	/**
+	 * Appends rows given as one value array per table column, all of the same length.
+	 */
+	public void addColumns(Object[]... columnValues)
+	{
+		int columnCount = this.table.getColumns().size();
+		if (columnValues.length != columnCount)
+			throw new IllegalArgumentException("Expecting '" + columnCount
+					+ "' column arrays but received '" + columnValues.length + "'.");
+
+		int rowCount = columnCount == 0 ? 0 : columnValues[0].length;
+		for (Object[] values : columnValues)
+		{
+			if (values.length != rowCount)
+				throw new IllegalArgumentException("All column arrays must have the same length.");
+		}
+
+		for (int i = 0; i < rowCount; i++)
+		{
+			Object[] rowValues = new Object[columnCount];
+			for (int col = 0; col < columnCount; col++)
+				rowValues[col] = columnValues[col][i];
+
+			this.addRow(rowValues);
+		}
+	}
+
+	/**
+	 * Whether loaded rows are marked as unchanged when finishing (e.g. rows read
+	 * from a database), instead of being left as added rows. False by default.
+	 */
+	public void setAcceptChanges(boolean acceptChanges) {
+		this.acceptChanges = acceptChanges;
+	}
+
+	/**
+	 * Number of rows submitted so far, rejected ones included.
+	 */
+	public int getSubmittedRowCount() {
+		return this.submittedRowCount;
+	}
+
+	/**
+	 * Builds the table indexes and validates all loaded rows.
+	 * @throws ConstraintViolationException listing every violation found,
+	 * loaded rows being kept in the table as with {@link EntityTable#endLoadData()}.
+	 */
+	public void finish() {
+		this.finish((ForkJoinPool)null);
+	}
+
+	/**
+	 * Same as {@link #finish()}, loaded rows being validated in parallel on the 
+	 * given pool (if not null). Errors are reported in the same order.
+	 */
+	public void finish(ForkJoinPool pool)
+	{
+		ValidationReport report = new ValidationReport(Integer.MAX_VALUE);
+		this.finish(report, pool);
+
+		if (report.hasViolations())
+		{
+			List<ConstraintError> errors = report.getErrors();
+			throw new ConstraintViolationException(buildMessage(errors), errors);
+		}
+	}
+
+	/**
+	 * Builds the table indexes and validates all loaded rows (in parallel if a 
+	 * pool is given), collecting violations into the report instead of throwing.
+	 * Rows rejected while loading are reported under {@link ValidationReport#REJECTED_ROWS}.
+	 */
+	public void finish(ValidationReport report, ForkJoinPool pool)
+	{
+		this.ensureNotFinished();
+		this.finished = true;
+
+		for (Violation rejectedRow : this.rejectedRows)
+			report.addError(ValidationReport.REJECTED_ROWS, rejectedRow.getError(), rejectedRow.getKey());
+
+		this.table.endBulkLoad(this.firstRowIndex, pool, report, this.acceptChanges);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void rejectRow(int position, Object[] values, Exception e)
+	{
+		ConstraintError error = new ConstraintError("Row #" + position
+				+ " of table '" + this.table.getName() + "' was rejected: " + e.getMessage(), 
+				null, position);
+
+		Object[] key = null;
+		if (this.table.getPrimaryKeyColumns().isEmpty() == false)
+			key = ConstraintHelper.buildColumnFilteredArray(this.table.getPrimaryKeyColumns(), values);
+
+		this.rejectedRows.add(new Violation(error, key));
+	}
+
+	private String buildMessage(List<ConstraintError> errors)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(errors.size()).append(" constraint violation(s) while loading table '")
+			.append(this.table.getName()).append("'");
+
+		for (int i = 0; i < errors.size() && i < MAX_ERRORS_IN_MESSAGE; i++)
+			sb.append("\n").append(errors.get(i).getMessage());
+
+		if (errors.size() > MAX_ERRORS_IN_MESSAGE)
+			sb.append("\n...");
+
+		return sb.toString();
+	}
+
+	private void ensureNotFinished()
+	{
+		if (this.finished)
+			throw new IllegalStateException("Bulk load of table '"
+					+ this.table.getName() + "' is already finished.");
+	}
+}
@@ -0,0 +1,330 @@
+package sr.entityset;
+
+import sr.entityset.exceptions.InvalidNullValueException;
+
+/**
+ * Values of a numeric column (Integer, Long or Double) extracted once into a 
+ * primitive array, in the order of {@link EntityTable#rowList()}, with filter 
+ * and aggregate kernels running tight loops over it. Obtained from 
+ * {@link EntityTable#getColumnSnapshot(EntityColumn)}, which caches it until 
+ * the column is modified or rows are added or removed.
+ * 
+ * Filters return a {@link Selection} of row positions, which can be given 
+ * to the filters and aggregates of other snapshots of the same rows to 
+ * combine conditions. A null selection stands for all the rows. 
+ * Null values never match a filter and are ignored by aggregates.
+ * 
+ * Filters and aggregates work with doubles, which hold Integer and Double 
+ * values exactly. Long snapshots add exact long ones (see {@link LongColumnSnapshot}).
+ */
+public abstract class ColumnSnapshot 
+{
+	private final EntityTable table;
+	private final EntityColumn column;
+	private final int rowsVersion;
+	protected final int size;
+	private long[] nullBits;
+	private int nullCount;
+	
+	protected ColumnSnapshot(EntityColumn column, int size)
+	{
+		this.table = column.getTable();
+		this.column = column;
+		this.rowsVersion = this.table.getRowsVersion();
+		this.size = size;
+	}
+	
+	static ColumnSnapshot create(EntityColumn column, Iterable<EntityRow> rows, int rowCount)
+	{
+		ColumnSnapshot snapshot;
+		if (column.getType().equals(Double.class))
+			snapshot = new DoubleColumnSnapshot(column, rowCount);
+		else if (column.getType().equals(Integer.class))
+			snapshot = new IntColumnSnapshot(column, rowCount);
+		else if (column.getType().equals(Long.class))
+			snapshot = new LongColumnSnapshot(column, rowCount);
+		else
+			throw new IllegalArgumentException("Column " + column.getName() 
+					+ " can not be extracted as its type " + column.getType().getName() 
+					+ " is not Integer, Long nor Double.");
+		
+		int columnNumber = column.getNumber();
+		int position = 0;
+		try
+		{
+			for (EntityRow row : rows)
+			{
+				if (row.isNull(columnNumber))
+					snapshot.setNull(position);
+				else
+					snapshot.extract(position, row, columnNumber);
+				
+				position++;
+			}
+		}
+		catch (InvalidNullValueException e) {
+			// null values were checked first
+			throw new IllegalStateException(e);
+		}
+		
+		return snapshot;
+	}
+	
+	public EntityColumn getColumn() {
+		return this.column;
+	}
+	
+	public int size() {
+		return this.size;
+	}
+	
+	public int getNullCount() {
+		return this.nullCount;
+	}
+	
+	public boolean isNull(int position) {
+		return this.nullBits != null && (this.nullBits[position >>> 6] & (1L << position)) != 0;
+	}
+	
+	/**
+	 * Positions which values are between from and to, both included.
+	 */
+	public Selection selectBetween(Selection within, double from, double to) {
+		return this.select(within, from, to);
+	}
+	
+	public Selection selectBetween(double from, double to) {
+		return this.select(null, from, to);
+	}
+	
+	public Selection selectEquals(Selection within, double value) {
+		return this.select(within, value, value);
+	}
+	
+	public Selection selectLessThan(Selection within, double value) {
+		return this.select(within, Double.NEGATIVE_INFINITY, Math.nextAfter(value, Double.NEGATIVE_INFINITY));
+	}
+	
+	public Selection selectLessOrEqual(Selection within, double value) {
+		return this.select(within, Double.NEGATIVE_INFINITY, value);
+	}
+	
+	public Selection selectGreaterThan(Selection within, double value) {
+		return this.select(within, Math.nextUp(value), Double.POSITIVE_INFINITY);
+	}
+	
+	public Selection selectGreaterOrEqual(Selection within, double value) {
+		return this.select(within, value, Double.POSITIVE_INFINITY);
+	}
+	
+	public Selection selectNotNull(Selection within)
+	{
+		int[] positions = this.newPositions(within);
+		int count = this.fillPositions(within, positions);
+		
+		return this.newSelection(positions, count);
+	}
+	
+	/**
+	 * Number of non null values.
+	 */
+	public int count(Selection within)
+	{
+		this.ensureSameRows(within);
+		if (within == null)
+			return this.size - this.nullCount;
+		
+		if (this.nullCount == 0)
+			return within.size();
+		
+		int count = 0;
+		int[] positions = within.getPositions();
+		for (int i = 0; i < within.size(); i++)
+			count += this.isNull(positions[i]) ? 0 : 1;
+		
+		return count;
+	}
+	
+	/**
+	 * Sum of the non null values, 0 if there are none.
+	 */
+	public double sum(Selection within)
+	{
+		this.ensureSameRows(within);
+		
+		// null positions hold 0 in the value arrays, they need no test
+		if (within == null)
+			return this.sum(null, this.size);
+		
+		return this.sum(within.getPositions(), within.size());
+	}
+	
+	/**
+	 * Smallest non null value, NaN if there are none.
+	 */
+	public double min(Selection within) 
+	{
+		if (this.count(within) == 0)
+			return Double.NaN;
+		
+		if (within == null)
+			return this.min(null, this.size);
+		
+		Selection scope = this.getNonNullScope(within);
+		return this.min(scope.getPositions(), scope.size());
+	}
+	
+	/**
+	 * Largest non null value, NaN if there are none.
+	 */
+	public double max(Selection within) 
+	{
+		if (this.count(within) == 0)
+			return Double.NaN;
+		
+		if (within == null)
+			return this.max(null, this.size);
+		
+		Selection scope = this.getNonNullScope(within);
+		return this.max(scope.getPositions(), scope.size());
+	}
+	
+	/**
+	 * Average of the non null values, NaN if there are none.
+	 */
+	public double average(Selection within)
+	{
+		int count = this.count(within);
+		return count == 0 ? Double.NaN : this.sum(within) / count;
+	}
+	
+	/**
+	 * Reads the value of the given row, known not to be null.
+	 */
+	protected abstract void extract(int position, EntityRow row, int columnNumber) 
+			throws InvalidNullValueException;
+	
+	/**
+	 * Adds to positions the ones (among the given ones, or all if null) 
+	 * which values are between from and to, both included, null or not.
+	 * @return the number of positions added.
+	 */
+	protected abstract int selectRange(int[] within, int count, int[] positions, double from, double to);
+	
+	/**
+	 * Sum over the given positions, or the first count ones if null.
+	 */
+	protected abstract double sum(int[] positions, int count);
+	
+	/**
+	 * Smallest value over the given positions, known not to be null, 
+	 * or over the non null values of the first count ones if null.
+	 */
+	protected abstract double min(int[] positions, int count);
+	
+	protected abstract double max(int[] positions, int count);
+	
+	/**
+	 * @throws IllegalArgumentException if the selection was not made on the rows of the snapshot.
+	 */
+	protected final void ensureSameRows(Selection within)
+	{
+		if (within == null) return;
+		
+		if (within.getTable() != this.table || within.getRowsVersion() != this.rowsVersion)
+			throw new IllegalArgumentException("Selection was made on other rows than the ones of the snapshot of column " 
+					+ this.column.getName() + ".");
+	}
+	
+	/**
+	 * Array large enough for the positions selected among the given ones (all if null).
+	 */
+	protected final int[] newPositions(Selection within)
+	{
+		this.ensureSameRows(within);
+		return new int[within == null ? this.size : within.size()];
+	}
+	
+	/**
+	 * Selection of the given positions, null values being removed.
+	 */
+	protected final Selection newSelection(int[] positions, int count) {
+		return new Selection(this.table, this.rowsVersion, positions, this.removeNulls(positions, count));
+	}
+	
+	/**
+	 * The given selection without its null values, or itself if there is none.
+	 */
+	protected final Selection getNonNullScope(Selection within)
+	{
+		if (this.nullCount == 0)
+			return within;
+		
+		return this.selectNotNull(within);
+	}
+	
+	/**
+	 * Word of the null bitmap holding the given position (bit position % 64), 0 if no null.
+	 */
+	protected final long getNullWord(int position) {
+		return this.nullBits == null ? 0 : this.nullBits[position >>> 6];
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private Selection select(Selection within, double from, double to)
+	{
+		int[] positions = this.newPositions(within);
+		int count = 0;
+		if (from <= to)
+		{
+			count = within == null 
+					? this.selectRange(null, this.size, positions, from, to)
+					: this.selectRange(within.getPositions(), within.size(), positions, from, to);
+		}
+		
+		return this.newSelection(positions, count);
+	}
+	
+	private int fillPositions(Selection within, int[] positions)
+	{
+		if (within == null)
+		{
+			for (int i = 0; i < this.size; i++)
+				positions[i] = i;
+			
+			return this.size;
+		}
+		
+		System.arraycopy(within.getPositions(), 0, positions, 0, within.size());
+		return within.size();
+	}
+	
+	private int removeNulls(int[] positions, int count)
+	{
+		if (this.nullCount == 0)
+			return count;
+		
+		// branch-free compaction, the position is always written but only kept if not null
+		long[] bits = this.nullBits;
+		int kept = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int position = positions[i];
+			positions[kept] = position;
+			kept += (int)(~(bits[position >>> 6] >>> position) & 1L);
+		}
+		
+		return kept;
+	}
+	
+	private void setNull(int position)
+	{
+		if (this.nullBits == null)
+			this.nullBits = new long[(this.size + 63) >>> 6];
+		
+		this.nullBits[position >>> 6] |= 1L << position;
+		this.nullCount++;
+	}
+	
+}
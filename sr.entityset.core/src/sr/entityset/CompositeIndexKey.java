@@ -0,0 +1,40 @@
+package sr.entityset;
+
+import java.util.Arrays;
+
+/**
+ * Key used by {@link Index} when it spans more than one column.
+ * Values keep their own type (so 1 and "1" are different keys) and
+ * the hash is computed once, at construction time.
+ */
+final class CompositeIndexKey 
+{
+	private final Object[] values;
+	private final int hash;
+	
+	CompositeIndexKey(Object[] values)
+	{
+		this.values = values;
+		this.hash = Arrays.hashCode(values);
+	}
+	
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj) return true;
+		if (!(obj instanceof CompositeIndexKey)) return false;
+		
+		CompositeIndexKey other = (CompositeIndexKey)obj;
+		return this.hash == other.hash && Arrays.equals(this.values, other.values);
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(this.values);
+	}
+}
@@ -0,0 +1,65 @@
+package sr.entityset;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import sr.entityset.constraints.Constraint;
+import sr.entityset.constraints.ConstraintErrorCollector;
+
+/**
+ * Validates a range of rows with one constraint, splitting the range in halves
+ * until it is small enough. Each partition collects into an empty copy of the 
+ * given collector and partition results are merged left to right, so errors 
+ * come in row order whatever the scheduling. With a collector stopping when 
+ * full, each partition stops at its own first errors, the merge keeping the 
+ * leftmost ones.
+ */
+class ConstraintValidationTask extends RecursiveTask<ConstraintErrorCollector>
+{
+	private static final long serialVersionUID = 1L;
+	
+	static final int PARTITION_SIZE = 4096;
+	
+	private final Constraint constraint;
+	private final List<EntityRow> rows;
+	private final int fromIndex;
+	private final int toIndex;
+	private final ConstraintErrorCollector template;
+
+	ConstraintValidationTask(Constraint constraint, List<EntityRow> rows, 
+			int fromIndex, int toIndex, ConstraintErrorCollector template)
+	{
+		this.constraint = constraint;
+		this.rows = rows;
+		this.fromIndex = fromIndex;
+		this.toIndex = toIndex;
+		this.template = template;
+	}
+
+	@Override
+	protected ConstraintErrorCollector compute()
+	{
+		if (this.toIndex - this.fromIndex <= PARTITION_SIZE)
+		{
+			ConstraintErrorCollector errors = this.template.createEmpty();
+			this.constraint.validateExistingRows(this.rows, this.fromIndex, this.toIndex, errors);
+			return errors;
+		}
+		
+		int middle = (this.fromIndex + this.toIndex) >>> 1;
+		ConstraintValidationTask left = new ConstraintValidationTask(
+				this.constraint, this.rows, this.fromIndex, middle, this.template);
+		ConstraintValidationTask right = new ConstraintValidationTask(
+				this.constraint, this.rows, middle, this.toIndex, this.template);
+		
+		right.fork();
+		ConstraintErrorCollector errors = left.compute();
+		
+		// the right half can not change an outcome already decided on the left
+		if (errors.isDone() && right.cancel(false))
+			return errors;
+		
+		errors.addAll(right.join());
+		return errors;
+	}
+}
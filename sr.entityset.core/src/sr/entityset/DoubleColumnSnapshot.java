@@ -0,0 +1,155 @@
+package sr.entityset;
+
+import sr.entityset.exceptions.InvalidNullValueException;
+
+/**
+ * Snapshot of a Double column, null values being held as 0.
+ */
+public class DoubleColumnSnapshot extends ColumnSnapshot 
+{
+	private final double[] values;
+	
+	DoubleColumnSnapshot(EntityColumn column, int size) 
+	{
+		super(column, size);
+		this.values = new double[size];
+	}
+	
+	public double getDouble(int position) {
+		return this.values[position];
+	}
+	
+	/**
+	 * The extracted values, not to be modified.
+	 */
+	public double[] getArray() {
+		return this.values;
+	}
+	
+	@Override
+	protected void extract(int position, EntityRow row, int columnNumber) 
+			throws InvalidNullValueException
+	{
+		this.values[position] = row.getDouble(columnNumber);
+	}
+	
+	@Override
+	protected int selectRange(int[] within, int count, int[] positions, double from, double to)
+	{
+		double[] values = this.values;
+		int selected = 0;
+		
+		// the position is always written, the count only moving on a match (no branch)
+		if (within == null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				double value = values[i];
+				positions[selected] = i;
+				selected += (value >= from & value <= to) ? 1 : 0;
+			}
+		}
+		else
+		{
+			for (int i = 0; i < count; i++)
+			{
+				int position = within[i];
+				double value = values[position];
+				positions[selected] = position;
+				selected += (value >= from & value <= to) ? 1 : 0;
+			}
+		}
+		
+		return selected;
+	}
+	
+	@Override
+	protected double sum(int[] positions, int count)
+	{
+		double[] values = this.values;
+		if (positions != null)
+		{
+			double sum = 0;
+			for (int i = 0; i < count; i++)
+				sum += values[positions[i]];
+			
+			return sum;
+		}
+		
+		// independent partial sums, not waiting on each other's additions
+		double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+		int i = 0;
+		for (; i + 3 < count; i += 4)
+		{
+			sum0 += values[i];
+			sum1 += values[i + 1];
+			sum2 += values[i + 2];
+			sum3 += values[i + 3];
+		}
+		for (; i < count; i++)
+			sum0 += values[i];
+		
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+	
+	@Override
+	protected double min(int[] positions, int count)
+	{
+		double[] values = this.values;
+		double min = Double.POSITIVE_INFINITY;
+		if (positions != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				double value = values[positions[i]];
+				if (value < min) min = value;
+			}
+			
+			return min;
+		}
+		
+		// the null bit is only looked at for values beating the current one, which soon gets rare
+		for (int block = 0; block < count; block += 64)
+		{
+			int end = Math.min(count, block + 64);
+			long nulls = this.getNullWord(block);
+			for (int i = block; i < end; i++)
+			{
+				double value = values[i];
+				if (value < min && ((nulls >>> i) & 1L) == 0) min = value;
+			}
+		}
+		
+		return min;
+	}
+	
+	@Override
+	protected double max(int[] positions, int count)
+	{
+		double[] values = this.values;
+		double max = Double.NEGATIVE_INFINITY;
+		if (positions != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				double value = values[positions[i]];
+				if (value > max) max = value;
+			}
+			
+			return max;
+		}
+		
+		for (int block = 0; block < count; block += 64)
+		{
+			int end = Math.min(count, block + 64);
+			long nulls = this.getNullWord(block);
+			for (int i = block; i < end; i++)
+			{
+				double value = values[i];
+				if (value > max && ((nulls >>> i) & 1L) == 0) max = value;
+			}
+		}
+		
+		return max;
+	}
+}
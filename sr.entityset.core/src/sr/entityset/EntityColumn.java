@@ -1,18 +1,25 @@
 package sr.entityset;
 
+import java.beans.Introspector;
+
+import sr.entityset.storage.StringDictionary;
+
 public class EntityColumn {
 	
 	private int number;
 	private String name;
+	private String propertyName;
 
 	private Class<?> type;
 	private boolean allowNull;
 	private EntityTable table;
+	private StringDictionary dictionary = null;
 
 	public EntityColumn(EntityTable table, int columnNumber, String columnName, Class<?> type, boolean allowNull)
 	{
 		this.number = columnNumber;
 		this.name = columnName;
+		this.propertyName = Introspector.decapitalize(columnName);
 		this.type = type;
 		this.allowNull = allowNull;
 		this.table = table;
@@ -29,6 +36,13 @@ public class EntityColumn {
 		return name;
 	}
 
+	/**
+	 * The JavaBeans property name used for the change events of the column values.
+	 */
+	public String getPropertyName() {
+		return propertyName;
+	}
+
 	public Class<?> getType() {
 		return type;
 	}
@@ -42,4 +56,23 @@ public class EntityColumn {
 	{
 		return this.table;
 	}
+	
+	/**
+	 * Whether the String values of this column are deduplicated through a 
+	 * dictionary, see {@link EntityTable#enableDictionaryEncoding(String)}.
+	 */
+	public boolean isDictionaryEncoded() {
+		return this.dictionary != null;
+	}
+	
+	/**
+	 * The dictionary of the column values, null if the column is not dictionary-encoded.
+	 */
+	public StringDictionary getDictionary() {
+		return this.dictionary;
+	}
+	
+	void setDictionary(StringDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
 }
@@ -1,12 +1,12 @@
 package sr.entityset;
 
-import java.beans.Introspector;
 import java.util.Arrays;
 
 import sr.entityset.exceptions.InvalidNullValueException;
 import sr.entityset.exceptions.PrimaryKeyConstraintException;
 import sr.entityset.exceptions.RemovedRowAccessException;
 import sr.entityset.exceptions.WrongTypeException;
+import sr.entityset.storage.ColumnVector;
 
 public class EntityRow extends AbstractModelObject
 {
@@ -15,6 +15,10 @@ public class EntityRow extends AbstractModelObject
 	private Object[] originalData = null;
 	private EntityTable parentTable = null;
 	
+	// position of the row values in the column store of a columnar table,
+	// in which case data is null.
+	private int slot = -1;
+	
 	public EntityRow(EntityTable parentTable)
 	{
 		this.parentTable = parentTable;
@@ -39,8 +43,12 @@ public class EntityRow extends AbstractModelObject
 	 * @param columnNumber (the zero based column number).
 	 * @return
 	 */
-	public Object getValue(int columnNumber) {
-		return this.data[columnNumber];
+	public Object getValue(int columnNumber) 
+	{
+		if (this.data != null)
+			return this.data[columnNumber];
+		
+		return this.parentTable.getColumnStore().get(this.slot, columnNumber);
 	}
 	
 	public Object getOriginalValue(EntityColumn column)
@@ -69,32 +77,106 @@ public class EntityRow extends AbstractModelObject
 	public void setValue(EntityColumn column, final Object value) 
 			throws WrongTypeException, RemovedRowAccessException, 
 			InvalidNullValueException, PrimaryKeyConstraintException
+	{
+		if (value != null && !column.getType().equals(value.getClass()))
+			throw new WrongTypeException(column.getType(), value.getClass(), column.getName());
+		
+		this.setTypedValue(column, value);
+	}
+	
+	/**
+	 * Value of a non-null Integer column. Values of columnar tables are read
+	 * from the column store without being boxed.
+	 * @throws InvalidNullValueException if the value is null, whatever the storage.
+	 */
+	public int getInt(int columnNumber) throws InvalidNullValueException
+	{
+		if (this.data != null)
+			return ((Integer)this.getNonNullValue(columnNumber)).intValue();
+		
+		return this.getNonNullVector(columnNumber).getInt(this.slot);
+	}
+	
+	/**
+	 * Value of a non-null Long column, see {@link #getInt(int)}.
+	 */
+	public long getLong(int columnNumber) throws InvalidNullValueException
+	{
+		if (this.data != null)
+			return ((Long)this.getNonNullValue(columnNumber)).longValue();
+		
+		return this.getNonNullVector(columnNumber).getLong(this.slot);
+	}
+	
+	/**
+	 * Value of a non-null Double column, see {@link #getInt(int)}.
+	 */
+	public double getDouble(int columnNumber) throws InvalidNullValueException
+	{
+		if (this.data != null)
+			return ((Double)this.getNonNullValue(columnNumber)).doubleValue();
+		
+		return this.getNonNullVector(columnNumber).getDouble(this.slot);
+	}
+	
+	/**
+	 * Value of a non-null Boolean column, see {@link #getInt(int)}.
+	 */
+	public boolean getBoolean(int columnNumber) throws InvalidNullValueException
+	{
+		if (this.data != null)
+			return ((Boolean)this.getNonNullValue(columnNumber)).booleanValue();
+		
+		return this.getNonNullVector(columnNumber).getBoolean(this.slot);
+	}
+	
+	public boolean isNull(int columnNumber)
+	{
+		if (this.data != null)
+			return this.data[columnNumber] == null;
+		
+		return this.parentTable.getColumnStore().getVector(columnNumber).isNull(this.slot);
+	}
+	
+	/**
+	 * Same as {@link #setValue(EntityColumn, Object)} for a value known to be
+	 * of the column type (e.g. by typed row classes), whose type is not checked.
+	 */
+	protected void setTypedValue(EntityColumn column, final Object value) 
+			throws RemovedRowAccessException, InvalidNullValueException, 
+			PrimaryKeyConstraintException
 	{
 		validateCellModification(column, value);
 		
 		int columnNumber = column.getNumber();
-		Object oldValue = this.data[columnNumber];
+		Object newValue = value;
+		if (newValue != null && this.data != null && column.isDictionaryEncoded())
+			newValue = column.getDictionary().intern((String)value);
+		
+		Object oldValue = this.getValue(columnNumber);
 		
 		if ((oldValue == null && value == null) ||
 				(oldValue != null && oldValue.equals(value))) return;
 		
 		if (this.originalData == null)
-			this.originalData = Arrays.copyOf(this.data, this.data.length);
+			this.originalData = this.copyValues();
 		
-		this.data[columnNumber] = value;
+		if (this.data != null)
+			this.data[columnNumber] = newValue;
+		else
+			this.parentTable.getColumnStore().set(this.slot, columnNumber, newValue);
 		
-		this.firePropertyChange(Introspector.decapitalize(column.getName()), oldValue, value);
+		// skip the event construction when nobody listens (e.g. headless batch processing)
+		if (this.hasPropertyChangeListeners(column.getPropertyName()))
+			this.firePropertyChange(column.getPropertyName(), oldValue, newValue);
 		
 		if (this.getState() != RowState.Detached)
 			this.parentTable.onCellValueModificationCommitted(this, oldValue, column);
 	}
 
 	private void validateCellModification(EntityColumn column, final Object value) 
-			throws WrongTypeException, InvalidNullValueException, RemovedRowAccessException 
+			throws InvalidNullValueException, RemovedRowAccessException 
 	{
-		if (value != null && !column.getType().equals(value.getClass()))
-			throw new WrongTypeException(column.getType(), value.getClass(), column.getName());
-		
 		if (value == null && column.getAllowNull() == false 
 				&& (this.parentTable.isRejectNullViolations()
 						|| this.parentTable.getPrimaryKeyColumns().contains(column)))
@@ -112,14 +194,56 @@ public class EntityRow extends AbstractModelObject
 		this.state = stateParam;
 	}
 
-	public Object[] getObjectArray() {
-		return this.data;
+	/**
+	 * The row values. For rows stored in a columnar table, 
+	 * this is a copy of the values.
+	 */
+	public Object[] getObjectArray() 
+	{
+		if (this.data != null)
+			return this.data;
+		
+		return this.parentTable.getColumnStore().toObjectArray(this.slot);
 	}
 	
 	void setObjectArray(Object[] values) {
 		this.data = values;
 	}
 	
+	/**
+	 * Moves the row values into the given slot of the table column store.
+	 */
+	void attachToStore(int slot) 
+	{
+		this.slot = slot;
+		this.data = null;
+	}
+	
+	/**
+	 * Moves the row values out of the table column store, 
+	 * so that its slot can be reused.
+	 */
+	void detachFromStore() 
+	{
+		if (this.data != null) return;
+		
+		this.data = this.parentTable.getColumnStore().toObjectArray(this.slot);
+		this.parentTable.getColumnStore().release(this.slot);
+		this.slot = -1;
+	}
+	
+	int getSlot() {
+		return this.slot;
+	}
+	
+	/**
+	 * Whether the row keeps its original values, i.e. whether it was modified
+	 * since changes were last accepted.
+	 */
+	public boolean hasOriginalValues() {
+		return this.originalData != null;
+	}
+	
 	public EntityTable getParentTable() {
 		return parentTable;
 	}
@@ -127,4 +251,35 @@ public class EntityRow extends AbstractModelObject
 	public void acceptChanges() {
 		this.originalData = null;
 	}
+	
+	private Object[] copyValues()
+	{
+		if (this.data != null)
+			return Arrays.copyOf(this.data, this.data.length);
+		
+		return this.parentTable.getColumnStore().toObjectArray(this.slot);
+	}
+	
+	private Object getNonNullValue(int columnNumber) throws InvalidNullValueException
+	{
+		Object value = this.data[columnNumber];
+		if (value == null)
+			throw this.newNullValueException(columnNumber);
+		
+		return value;
+	}
+	
+	private ColumnVector getNonNullVector(int columnNumber) throws InvalidNullValueException
+	{
+		ColumnVector vector = this.parentTable.getColumnStore().getVector(columnNumber);
+		if (vector.isNull(this.slot))
+			throw this.newNullValueException(columnNumber);
+		
+		return vector;
+	}
+	
+	private InvalidNullValueException newNullValueException(int columnNumber) {
+		return new InvalidNullValueException(
+				this.parentTable.getColumns().get(columnNumber).getName());
+	}
 }
@@ -1,21 +1,33 @@
 package sr.entityset;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.lang.StringUtils;
 
 import sr.entityset.constraints.Constraint;
 import sr.entityset.constraints.ConstraintError;
+import sr.entityset.constraints.ConstraintErrorCollector;
 import sr.entityset.constraints.UniqueConstraint;
 import sr.entityset.exceptions.ConstraintViolationException;
 import sr.entityset.exceptions.InvalidNullValueException;
 import sr.entityset.exceptions.PrimaryKeyConstraintException;
 import sr.entityset.exceptions.RemovedRowAccessException;
 import sr.entityset.exceptions.WrongTypeException;
+import sr.entityset.query.Query;
+import sr.entityset.storage.ColumnStore;
+import sr.entityset.storage.MappedTableFile;
+import sr.entityset.storage.StringDictionary;
 import ca.odell.glazedlists.EventList;
 import ca.odell.glazedlists.GlazedLists;
 import ca.odell.glazedlists.ObservableElementList;
@@ -29,12 +41,24 @@ public class EntityTable
 	private List<EntityColumn> columns = null;
 	private boolean allowStructuralChanges = true;
 	private boolean rejectNullViolations = true;
+	private boolean columnarStorage = false;
+	private ColumnStore columnStore = null;
+	private List<EntityColumn> dictionaryEncodedColumns = new ArrayList<EntityColumn>();
 	
 	private UniqueConstraint primaryKeyConstraint = null;
 	private List<Constraint> constraints = new ArrayList<Constraint>();
 	private List<Index> indexes = new ArrayList<Index>();
+	private List<KeyGenerator> keyGenerators = new CopyOnWriteArrayList<KeyGenerator>();
+	private List<RowChangeListener> rowChangeListeners = new CopyOnWriteArrayList<RowChangeListener>();
+	private boolean constraintChecksSuspended = false;
+	private boolean readOnly = false;
+	private int expectedRowCount = 0;
+	private ColumnSnapshot[] columnSnapshots = null;
+	private int rowsVersion = 0;
 	
-	private ObservableElementList<EntityRow> visibleRows;
+	private boolean headless = false;
+	private List<EntityRow> rowList;
+	private ObservableElementList<EntityRow> visibleRows = null;
 	private Collection<EntityRow> changedRows;
 	private boolean isLoadingData = false;
 
@@ -42,17 +66,45 @@ public class EntityTable
 	{
 		this.name = name;
 		
-		EventList<EntityRow> rootlist = GlazedLists.eventList(new ArrayList<EntityRow>());
-		ObservableElementList<EntityRow> observableElementList = 
-				new ObservableElementList<EntityRow>(
-						rootlist, 
-						GlazedLists.beanConnector(EntityRow.class));
-		
-		this.visibleRows = observableElementList;
-		this.changedRows = new HashSet<EntityRow>();
+		this.rowList = new ArrayList<EntityRow>();
+		this.bindRows();
+		this.changedRows = new LinkedHashSet<EntityRow>();
 		this.columns = new ArrayList<EntityColumn>();
 	}
 	
+	/**
+	 * Opens a table file written by {@link MappedTableFile#write(EntityTable, File)} 
+	 * without loading it: the file is memory-mapped, row handles are created on 
+	 * first access and their values decoded when read. Primary key lookups use 
+	 * the key persisted in the file, other indexes are built from the rows on use.
+	 * The returned table is headless and read-only.
+	 */
+	public static EntityTable openMapped(File file) throws IOException
+	{
+		MappedTableFile mappedFile = MappedTableFile.open(file);
+		
+		EntityTable table = new EntityTable(mappedFile.getTableName());
+		table.setHeadless(true);
+		table.setColumnarStorage(true);
+		for (MappedTableFile.ColumnInfo column : mappedFile.getColumns())
+			table.internalAddColumn(column.getName(), column.getType(), 
+					column.isPrimaryKey(), column.getAllowNull());
+		
+		table.allowStructuralChanges = false;
+		table.readOnly = true;
+		table.columnStore = mappedFile.getColumnStore();
+		table.rowList = new MappedRowList(table, mappedFile.getRowCount());
+		
+		if (table.primaryKeyConstraint != null)
+		{
+			Index primaryKeyIndex = table.getPrimaryKeyIndex();
+			primaryKeyIndex.useStore(new MappedPrimaryKeyStore(
+					primaryKeyIndex.getColumns(), mappedFile, table.rowList));
+		}
+		
+		return table;
+	}
+	
 	public EntityColumn addColumn(String name, Class<?> type, boolean allowNul) 
 			throws InvalidRowStateException	{
 		return this.internalAddColumn(name, type, false, allowNul);
@@ -76,18 +128,20 @@ public class EntityTable
 		return indexes;
 	}
 	
-	public void addIndex(String... indexColumnNames) 
+	public void addIndex(String... indexColumnNames) {
+		this.indexes.add(new Index(this, this.getColumns(indexColumnNames)));
+	}
+	
+	/**
+	 * Adds an index keeping its rows ordered on the given columns, 
+	 * allowing range, prefix and top-N queries.
+	 */
+	public SortedIndex addSortedIndex(String... indexColumnNames) 
 	{
-		EntityColumn[] indexedColumns = Collections2.transform(
-				Arrays.asList(indexColumnNames), 
-				new Function<String, EntityColumn>() {
-					@Override
-					public EntityColumn apply(String arg0) {
-						return getColumn(arg0);
-					}			
-		}).toArray(new EntityColumn[] {});
+		SortedIndex index = new SortedIndex(this, this.getColumns(indexColumnNames));
+		this.indexes.add(index);
 		
-		this.indexes.add(new Index(this, indexedColumns));
+		return index;
 	}
 	
 	/***
@@ -115,6 +169,7 @@ public class EntityTable
 		InvalidRowStateException, PrimaryKeyConstraintException, 
 		InvalidNullValueException, WrongTypeException
 	{
+		this.ensureWritable();
 		if (row.getState() != RowState.Detached)
 			throw new InvalidRowStateException(
 					"Can not add a row which state is " + row.getState().toString());
@@ -135,14 +190,30 @@ public class EntityTable
 	 */
 	public EntityRow addFastRow(Object... values)
 	{
-		EntityRow row = new EntityRow(this, values, RowState.Added);
-		this.visibleRows.add(row);
+		this.ensureWritable();
+		EntityRow row = this.createRow(values, RowState.Added);
+		this.storeRowValues(row);
+		this.rowList.add(row);
+		this.onRowsAddedOrRemoved();
+		
+		for(KeyGenerator keyGenerator : this.keyGenerators)
+			keyGenerator.observe(row.getValue(keyGenerator.getColumn()));
+		
+		this.fireRowAdded(row);
 		
 		return row;
 	}
 	
+	/**
+	 * Creates the rows added from value arrays (fast rows, bulk loaded rows). 
+	 * Overridden by typed tables along with {@link #newRow()}.
+	 */
+	protected EntityRow createRow(Object[] values, RowState state) {
+		return new EntityRow(this, values, state);
+	}
+	
 	public void endAddingFastRow() {
-		this.indexes = new ArrayList<Index>();
+		this.invalidateIndexes();
 	}
 	
 	public EntityRow addRow(Object... values) throws 
@@ -163,33 +234,88 @@ public class EntityTable
 		return row;
 	}
 	
-	public void removeRow(EntityRow row) throws InvalidRowStateException {
+	public void removeRow(EntityRow row) throws InvalidRowStateException 
+	{
+		this.ensureWritable();
 		this.internalRemoveRow(row);
 	}
 
+	/**
+	 * Rows added, modified or removed since changes were last accepted,
+	 * in the order they were first changed.
+	 */
 	public Collection<EntityRow> changedRows() {
 		return this.changedRows;
 	}
 
-	public ObservableElementList<EntityRow> rows() {
+	/**
+	 * Observable view of the rows, suited to UI binding. For a headless table
+	 * the view is only created on the first call, and kept up to date from then on.
+	 */
+	public ObservableElementList<EntityRow> rows() 
+	{
+		if (this.visibleRows == null)
+			this.bindRows();
+		
 		return this.visibleRows;
 	}
 	
+	/**
+	 * Read-only list of the rows, which unlike {@link #rows()} never creates 
+	 * the observable view of a headless table.
+	 */
+	public List<EntityRow> rowList() {
+		return Collections.unmodifiableList(this.rowList);
+	}
+	
 	public String getName() {
 		return name;
 	}
 	
 	public void acceptChanges() 
 	{
-		for(EntityRow row : this.visibleRows)
+		if (this.readOnly) return;
+		
+		for(EntityRow row : this.rowList)
 			row.setState(RowState.Unchanged);
 		
 		for(EntityRow changedRow : this.changedRows)
+		{
 			changedRow.acceptChanges();
+			
+			// removed rows are forgotten from now on, give back their storage
+			if (changedRow.getState() == RowState.Removed && this.columnStore != null)
+				changedRow.detachFromStore();
+		}
 		
 		this.changedRows.clear();
 	}
 
+	/**
+	 * Replaces the temporary keys handed out by the key generators of the table
+	 * by regular keys (see {@link KeyGenerator#remapTemporaryKeys()}), e.g. before 
+	 * writing the added rows to a database. Not done by {@link #acceptChanges()}.
+	 */
+	public void remapTemporaryKeys()
+	{
+		for(KeyGenerator keyGenerator : this.keyGenerators)
+			keyGenerator.remapTemporaryKeys();
+	}
+	
+	/**
+	 * Accepts the changes of a single existing row, e.g. one which values were 
+	 * only rewritten by the table itself or set back to their original values.
+	 */
+	public void acceptRowChanges(EntityRow row)
+	{
+		if (row.getState() != RowState.Modified && row.getState() != RowState.Unchanged)
+			throw new IllegalStateException("Can only accept the changes of an existing row.");
+		
+		row.setState(RowState.Unchanged);
+		row.acceptChanges();
+		this.changedRows.remove(row);
+	}
+	
 	public Collection<EntityColumn> getPrimaryKeyColumns()
 	{
 		if (this.primaryKeyConstraint == null)
@@ -198,6 +324,26 @@ public class EntityTable
 			return this.primaryKeyConstraint.getColumns();
 	}
 	
+	/**
+	 * Key generator of the given Integer or Long column, created (and seeded 
+	 * from the column values) on first call.
+	 */
+	public synchronized KeyGenerator getKeyGenerator(EntityColumn column)
+	{
+		if (column.getTable() != this)
+			throw new IllegalArgumentException("Column " + column.getName() 
+					+ " does not belong to table " + this.getName());
+		
+		for (KeyGenerator keyGenerator : this.keyGenerators)
+			if (keyGenerator.getColumn() == column)
+				return keyGenerator;
+		
+		KeyGenerator keyGenerator = new KeyGenerator(this, column);
+		this.keyGenerators.add(keyGenerator);
+		
+		return keyGenerator;
+	}
+	
 	public EntityRow findByPrimaryKey(Object singleColumnPrimaryKeyValue) {
 		return this.findByPrimaryKey(new Object[] {singleColumnPrimaryKeyValue});
 	}
@@ -205,16 +351,16 @@ public class EntityTable
 	public EntityRow findByPrimaryKey(Object... primaryKeyValues)
 	{
 		Index pkIndex = this.getPrimaryKeyIndex();
-		List<EntityRow> rows = pkIndex.findRows(primaryKeyValues);
+		int rowCount = pkIndex.countRows(primaryKeyValues);
 		
-		if (rows.size() > 1)
-			throw new RuntimeException("Got " + rows.size() 
+		if (rowCount > 1)
+			throw new RuntimeException("Got " + rowCount 
 					+ " rows returned from primary key index for values '" 
 					+ StringUtils.join(primaryKeyValues, ", ") 
 					+ "' when expecting one or zero.");
 		
-		if (rows.size() == 1)
-			return rows.get(0);
+		if (rowCount == 1)
+			return pkIndex.findFirstRow(primaryKeyValues);
 		else
 			return null;
 	}
@@ -222,7 +368,46 @@ public class EntityTable
 	public void addConstraint(Constraint constraint) {
 		this.constraints.add(constraint);
 	}
+	
+	public void addRowChangeListener(RowChangeListener listener) {
+		this.rowChangeListeners.add(listener);
+	}
+	
+	public void removeRowChangeListener(RowChangeListener listener) {
+		this.rowChangeListeners.remove(listener);
+	}
 
+	/**
+	 * Values of the given Integer, Long or Double column extracted into a primitive 
+	 * array, for filters and aggregates not going through the rows. The snapshot
+	 * is kept until the column is modified or rows are added or removed.
+	 */
+	public ColumnSnapshot getColumnSnapshot(EntityColumn column)
+	{
+		if (column.getTable() != this)
+			throw new IllegalArgumentException("Column " + column.getName() 
+					+ " is not part of table " + this.getName() + ".");
+		
+		if (this.columnSnapshots == null || this.columnSnapshots.length != this.columns.size())
+			this.columnSnapshots = new ColumnSnapshot[this.columns.size()];
+		
+		ColumnSnapshot snapshot = this.columnSnapshots[column.getNumber()];
+		if (snapshot == null)
+		{
+			snapshot = ColumnSnapshot.create(column, this.rowList, this.rowList.size());
+			this.columnSnapshots[column.getNumber()] = snapshot;
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * New query on the rows of the table, using its existing indexes.
+	 */
+	public Query query() {
+		return new Query(this);
+	}
+	
 	public Index getIndex(Collection<EntityColumn> columns) 
 	{
 		EntityColumn[] requstedColumnsArray = columns.toArray(new EntityColumn[0]);
@@ -240,25 +425,74 @@ public class EntityTable
 	
 	public void beginLoadData() 
 	{
+		this.ensureWritable();
 		this.isLoadingData = true;
 		
 		// reset indexes (they won't get updated as we add rows)
-		this.indexes = new ArrayList<Index>();
+		this.invalidateIndexes();
 	}
 
-	public void endLoadData() 
+	public void endLoadData() {
+		this.endLoadData(null);
+	}
+	
+	/**
+	 * Same as {@link #endLoadData()}, rows being partitioned across the given pool 
+	 * (if not null) to be validated in parallel. Indexes used by the constraints 
+	 * are built beforehand and only read while validating, so the parent tables 
+	 * of foreign keys must not be modified meanwhile. Each partition stops at its 
+	 * first violation, the leftmost one being reported as with a serial validation.
+	 */
+	public void endLoadData(ForkJoinPool pool) 
 	{
 		// verify all constraints
 		for(Constraint constraint : this.constraints)
 		{
-			for(EntityRow row : this.rows())
+			ConstraintErrorCollector errors = ConstraintErrorCollector.firstErrorOnly();
+			this.validateExistingRows(constraint, 0, pool, errors);
+			if (errors.getErrors().isEmpty() == false)
+				throwExceptionIfViolation(constraint, errors.getErrors().get(0));
+		}
+		
+		this.isLoadingData = false;
+	}
+	
+	/**
+	 * Ends loading without failing on violations: every constraint validates all
+	 * the rows (in parallel if a pool is given) and violations are collected into
+	 * the given report, invalid rows being removed if the report asks to.
+	 */
+	public void endLoadData(ValidationReport report, ForkJoinPool pool) 
+	{
+		this.validateExistingRows(report, 0, pool);
+		this.isLoadingData = false;
+	}
+	
+	/**
+	 * Starts loading a large amount of rows: indexes are not maintained while
+	 * loading and storage is presized. Rows added through the returned loader are
+	 * validated all at once by {@link BulkLoader#finish()}.
+	 */
+	public BulkLoader beginBulkLoad(int expectedRowCount)
+	{
+		this.beginLoadData();
+		
+		if (this.rowList instanceof ArrayList)
+			((ArrayList<EntityRow>)this.rowList).ensureCapacity(
+					this.rowList.size() + expectedRowCount);
+		
+		if (this.columnarStorage)
+		{
+			if (this.columnStore == null)
 			{
-				ConstraintError result = constraint.validateExistingRow(row);
-				throwExceptionIfViolation(constraint, result);
+				this.allowStructuralChanges = false;
+				this.columnStore = new ColumnStore(this.columns, Math.max(16, expectedRowCount));
 			}
+			else
+				this.columnStore.ensureCapacity(this.columnStore.getSlotCount() + expectedRowCount);
 		}
 		
-		this.isLoadingData = false;
+		return new BulkLoader(this, this.rowList.size());
 	}
 	
 	public EntityColumn getDisplayColumn()
@@ -322,21 +556,210 @@ public class EntityTable
 		return this.changedRows.size() > 0;
 	}
 	
+	public boolean isHeadless() {
+		return headless;
+	}
+	
+	/**
+	 * When set, rows are kept in a plain array-backed list and no GlazedLists 
+	 * view (nor the property listener it registers on every row) is maintained 
+	 * until {@link #rows()} is called. Meant for server-side and batch use.
+	 */
+	public void setHeadless(boolean headless) 
+	{
+		this.ensureCanDoStructuralChanges();
+		this.headless = headless;
+		
+		if (headless && this.visibleRows != null)
+		{
+			this.rowList = new ArrayList<EntityRow>(this.visibleRows);
+			this.visibleRows.dispose();
+			this.visibleRows = null;
+		}
+		else if (headless == false && this.visibleRows == null)
+			this.bindRows();
+	}
+	
+	public int getExpectedRowCount() {
+		return expectedRowCount;
+	}
+	
+	/**
+	 * Hint of the number of rows the table is going to hold: the row storage 
+	 * and the set of changed rows are presized for it, and so are indexes when 
+	 * they get built, which spares growing them row after row while loading.
+	 */
+	public void setExpectedRowCount(int expectedRowCount)
+	{
+		if (expectedRowCount < 0)
+			throw new IllegalArgumentException("Expected row count can not be negative.");
+		
+		this.expectedRowCount = expectedRowCount;
+		
+		if (this.rowList instanceof ArrayList)
+			((ArrayList<EntityRow>)this.rowList).ensureCapacity(expectedRowCount);
+		
+		if (this.columnStore != null)
+			this.columnStore.ensureCapacity(expectedRowCount);
+		
+		if (expectedRowCount > this.changedRows.size())
+			this.presizeChangedRows(expectedRowCount);
+	}
+	
+	/**
+	 * True for tables opened with {@link #openMapped(File)}, whose rows can not
+	 * be added, removed nor modified.
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+	
+	public boolean isColumnarStorage() {
+		return columnarStorage;
+	}
+	
+	/**
+	 * When set, row values are kept in a {@link ColumnStore}: one primitive array
+	 * per Integer, Long, Double and Boolean column, dictionary-encoded Strings 
+	 * and a null bitmap, instead of one Object array per row. Rows then only
+	 * act as handles over the store.
+	 */
+	public void setColumnarStorage(boolean columnarStorage) 
+	{
+		this.ensureCanDoStructuralChanges();
+		this.columnarStorage = columnarStorage;
+	}
+	
+	/**
+	 * Stores the values of the given String column as codes of a per-column
+	 * dictionary: equal values are deduplicated (rows share the same String 
+	 * instance, or only hold an int code in a columnar table) and indexes on 
+	 * the column compare int codes instead of Strings. Meant for columns with
+	 * few distinct values.
+	 */
+	public void enableDictionaryEncoding(String columnName)
+	{
+		this.ensureCanDoStructuralChanges();
+		
+		EntityColumn column = this.getColumn(columnName);
+		if (column == null)
+			throw new IllegalArgumentException("Column " + columnName 
+					+ " does not exist in table " + this.getName());
+		if (column.getType().equals(String.class) == false)
+			throw new IllegalArgumentException("Only String columns can be dictionary-encoded, " 
+					+ "which is not the case of column " + columnName);
+		
+		if (column.isDictionaryEncoded() == false)
+		{
+			column.setDictionary(new StringDictionary());
+			this.dictionaryEncodedColumns.add(column);
+		}
+	}
+	
+	/**
+	 * The store holding the row values of a columnar table, null otherwise 
+	 * (or if the table never held any row).
+	 */
+	public ColumnStore getColumnStore() {
+		return this.columnStore;
+	}
+	
 	//////////////////////////////////////////////////////////////////////////////////////////////
 
+	EntityRow addLoadedRow(Object[] values) 
+			throws InvalidNullValueException, WrongTypeException
+	{
+		if (values.length != this.columns.size())
+			throw new IllegalArgumentException("Passed value array size ("
+					+ values.length + ") is not the same as the number of columns in the table (" 
+					+ this.columns.size() + ")");
+		
+		this.ensureValidValueArray(values);
+		
+		// tracked as changes all at once by endBulkLoad
+		EntityRow row = this.createRow(values, RowState.Detached);
+		this.appendRow(row);
+		this.fireRowAdded(row);
+		
+		return row;
+	}
+	
+	/**
+	 * Builds every index once, then validates the rows loaded from the given 
+	 * position with all constraints, collecting all errors into the report.
+	 * Remaining loaded rows are then tracked as added rows, or marked as 
+	 * unchanged if acceptChanges is set, as if they were already there when 
+	 * changes were last accepted.
+	 */
+	void endBulkLoad(int fromIndex, ForkJoinPool pool, ValidationReport report, boolean acceptChanges)
+	{
+		try
+		{
+			for (Index index : this.indexes)
+				index.build();
+			
+			this.validateExistingRows(report, fromIndex, pool);
+			
+			if (acceptChanges)
+			{
+				for (int i = fromIndex; i < this.rowList.size(); i++)
+					this.rowList.get(i).setState(RowState.Unchanged);
+			}
+			else
+			{
+				this.presizeChangedRows(this.changedRows.size() + this.rowList.size() - fromIndex);
+				this.changedRows.addAll(this.rowList.subList(fromIndex, this.rowList.size()));
+			}
+		}
+		finally {
+			this.isLoadingData = false;
+		}
+	}
+	
+	
 	void onCellValueModificationProposed(EntityRow modifiedRow, 
 			Object proposedValue, EntityColumn modifiedCellColumn) 
 					throws PrimaryKeyConstraintException, RemovedRowAccessException
 	{
+		this.ensureWritable();
 		if (modifiedRow.getState().equals(RowState.Removed))
 			throw new RemovedRowAccessException();
 		
-		ensureNoConstraintViolationsOnModifying(proposedValue, modifiedCellColumn, modifiedRow);
+		if (this.constraintChecksSuspended == false)
+			ensureNoConstraintViolationsOnModifying(proposedValue, modifiedCellColumn, modifiedRow);
 		//this.internalModifiedRow(modifiedRow);
 	}
 	
-	void onCellValueModificationCommitted(EntityRow row, Object value, EntityColumn column) {
+	void onCellValueModificationCommitted(EntityRow row, Object oldValue, EntityColumn column) 
+	{
+		for (KeyGenerator keyGenerator : this.keyGenerators)
+			if (keyGenerator.getColumn() == column)
+				keyGenerator.observe(row.getValue(column));
+		
 		this.internalModifiedRow(row);
+		
+		if (this.columnSnapshots != null)
+			this.columnSnapshots[column.getNumber()] = null;
+		
+		if (this.rowChangeListeners.isEmpty() == false)
+			for (RowChangeListener listener : this.rowChangeListeners)
+				listener.rowModified(row, column, oldValue);
+	}
+	
+	/**
+	 * Incremented each time rows are added or removed, telling whether
+	 * positions in the row list are still valid.
+	 */
+	int getRowsVersion() {
+		return this.rowsVersion;
+	}
+	
+	/**
+	 * While set, cell modifications are not checked against constraints 
+	 * (used when re-keying rows referenced by other tables).
+	 */
+	void setConstraintChecksSuspended(boolean constraintChecksSuspended) {
+		this.constraintChecksSuspended = constraintChecksSuspended;
 	}
 
 	///////////////////////////////////////////////////////////////////////////////////////////////	
@@ -344,22 +767,28 @@ public class EntityTable
 	private void ensureValidatesBeforeAdding(Object[] valueArray) 
 			throws PrimaryKeyConstraintException, 
 			InvalidNullValueException, WrongTypeException 
+	{
+		ensureValidValueArray(valueArray);
+		ensureNoConstraintViolationsOnAdding(valueArray);
+	}
+	
+	private void ensureValidValueArray(Object[] valueArray) 
+			throws InvalidNullValueException, WrongTypeException 
 	{
 		// check valid null-state and data-type
 		for(EntityColumn column : this.columns)
 		{
 			Object curValue = valueArray[column.getNumber()];
 			
-			boolean isPrimaryKeyField = this.getPrimaryKeyColumns().contains(column);
-			if (curValue == null && column.getAllowNull() == false 
-					&& (this.rejectNullViolations || isPrimaryKeyField))
-				throw new InvalidNullValueException(column.getName());
-			
-			if (curValue != null && curValue.getClass().equals(column.getType()) == false)
+			if (curValue == null)
+			{
+				if (column.getAllowNull() == false 
+						&& (this.rejectNullViolations || this.getPrimaryKeyColumns().contains(column)))
+					throw new InvalidNullValueException(column.getName());
+			}
+			else if (curValue.getClass().equals(column.getType()) == false)
 				throw new WrongTypeException(column.getType(), curValue.getClass(), column.getName());
 		}
-		
-		ensureNoConstraintViolationsOnAdding(valueArray);
 	}
 
 	private void ensureNoConstraintViolationsOnAdding(Object[] valueArray) 
@@ -405,6 +834,79 @@ public class EntityTable
 		}
 	}
 	
+	private void validateExistingRows(ValidationReport report, int fromIndex, ForkJoinPool pool)
+	{
+		Set<EntityRow> invalidRows = new HashSet<EntityRow>();
+		
+		for (Constraint constraint : this.constraints)
+		{
+			// errors past the samples still kept by the report are only counted
+			ConstraintErrorCollector errors = new ConstraintErrorCollector(
+					report.getRemainingSamples(constraint.getName()), report.isRemoveInvalidRows());
+			this.validateExistingRows(constraint, fromIndex, pool, errors);
+			report.addErrors(constraint.getName(), errors);
+			
+			if (report.isRemoveInvalidRows())
+			{
+				for (ConstraintError error : errors.getErrors())
+					invalidRows.add(error.getRow());
+				invalidRows.addAll(errors.getOverflowRows());
+			}
+		}
+		
+		if (invalidRows.isEmpty() == false)
+		{
+			this.removeInvalidRows(invalidRows);
+			report.addRemovedRows(invalidRows.size());
+		}
+	}
+	
+	/**
+	 * Removes rows without checking constraints: added rows are forgotten, 
+	 * others are tracked as removed.
+	 */
+	private void removeInvalidRows(Set<EntityRow> rows)
+	{
+		this.rowList.removeAll(rows);
+		this.onRowsAddedOrRemoved();
+		
+		for (EntityRow row : rows)
+		{
+			if (row.getState().equals(RowState.Added))
+			{
+				this.changedRows.remove(row);
+				row.setState(RowState.Detached);
+				
+				if (this.columnStore != null)
+					row.detachFromStore();
+			}
+			else
+			{
+				this.changedRows.add(row);
+				row.setState(RowState.Removed);
+			}
+			this.fireRowRemoved(row);
+		}
+		
+		this.invalidateIndexes();
+	}
+	
+	private void validateExistingRows(Constraint constraint, int fromIndex, 
+			ForkJoinPool pool, ConstraintErrorCollector errors)
+	{
+		int toIndex = this.rowList.size();
+		
+		if (pool == null || toIndex - fromIndex <= ConstraintValidationTask.PARTITION_SIZE)
+		{
+			constraint.validateExistingRows(this.rowList, fromIndex, toIndex, errors);
+			return;
+		}
+		
+		constraint.prepareForConcurrentValidation();
+		errors.addAll(pool.invoke(
+				new ConstraintValidationTask(constraint, this.rowList, fromIndex, toIndex, errors)));
+	}
+	
 	private EntityColumn internalAddColumn(String name, Class<?> type,
 			boolean isPrimaryKey, boolean allowNull)
 	{
@@ -439,15 +941,29 @@ public class EntityTable
 	}
 
 	private void internalAddRow(EntityRow row)
+	{
+		this.appendRow(row);
+		this.changedRows.add(row);
+		this.fireRowAdded(row);
+	}
+	
+	/**
+	 * Appends an added row, without tracking it as a change.
+	 */
+	private void appendRow(EntityRow row)
 	{
 		this.allowStructuralChanges = false;
-		this.visibleRows.add(row);
+		this.storeRowValues(row);
+		this.rowList.add(row);
+		this.onRowsAddedOrRemoved();
 		
 		for(Index index : indexes)
 			index.updateOnRowAdded(row);
 		
+		for(KeyGenerator keyGenerator : this.keyGenerators)
+			keyGenerator.observe(row.getValue(keyGenerator.getColumn()));
+		
 		row.setState(RowState.Added);
-		this.changedRows.add(row);
 	}
 	
 	private void internalModifiedRow(EntityRow row) 
@@ -471,12 +987,16 @@ public class EntityTable
 		
 		this.ensureNoConstraintViolationsOnRemoving(row);
 		
-		this.visibleRows.remove(row);
+		this.rowList.remove(row);
+		this.onRowsAddedOrRemoved();
 		
 		if (row.getState().equals(RowState.Added)) 
 		{
 			this.changedRows.remove(row);
 			row.setState(RowState.Detached);
+			
+			if (this.columnStore != null)
+				row.detachFromStore();
 		}
 		else if (row.getState().equals(RowState.Unchanged)) 
 		{
@@ -489,6 +1009,90 @@ public class EntityTable
 		
 		for(Index index : indexes)
 			index.updateOnRowRemoved(row);
+		
+		this.fireRowRemoved(row);
+	}
+	
+	private void fireRowAdded(EntityRow row)
+	{
+		if (this.rowChangeListeners.isEmpty() == false)
+			for (RowChangeListener listener : this.rowChangeListeners)
+				listener.rowAdded(row);
+	}
+	
+	private void fireRowRemoved(EntityRow row)
+	{
+		if (this.rowChangeListeners.isEmpty() == false)
+			for (RowChangeListener listener : this.rowChangeListeners)
+				listener.rowRemoved(row);
+	}
+	
+	private void onRowsAddedOrRemoved()
+	{
+		this.rowsVersion++;
+		this.columnSnapshots = null;
+	}
+	
+	private void invalidateIndexes()
+	{
+		for (Index index : this.indexes)
+			index.invalidate();
+	}
+	
+	private void storeRowValues(EntityRow row)
+	{
+		if (this.columnarStorage == false) 
+		{
+			Object[] values = row.getObjectArray();
+			for (EntityColumn column : this.dictionaryEncodedColumns)
+				values[column.getNumber()] = column.getDictionary().intern(
+						(String)values[column.getNumber()]);
+			
+			return;
+		}
+		
+		if (this.columnStore == null)
+		{
+			this.allowStructuralChanges = false;
+			this.columnStore = new ColumnStore(this.columns, Math.max(16, this.expectedRowCount));
+		}
+		
+		row.attachToStore(this.columnStore.append(row.getObjectArray()));
+	}
+	
+	private void presizeChangedRows(int rowCount)
+	{
+		Collection<EntityRow> presizedChangedRows = new LinkedHashSet<EntityRow>(
+				(int)(rowCount / 0.75f) + 1);
+		presizedChangedRows.addAll(this.changedRows);
+		this.changedRows = presizedChangedRows;
+	}
+	
+	private void bindRows()
+	{
+		EventList<EntityRow> rootlist = GlazedLists.eventList(this.rowList);
+		this.visibleRows = new ObservableElementList<EntityRow>(
+				rootlist, 
+				GlazedLists.beanConnector(EntityRow.class));
+		this.rowList = this.visibleRows;
+	}
+	
+	private EntityColumn[] getColumns(String... columnNames)
+	{
+		return Collections2.transform(
+				Arrays.asList(columnNames), 
+				new Function<String, EntityColumn>() {
+					@Override
+					public EntityColumn apply(String arg0) {
+						return getColumn(arg0);
+					}			
+		}).toArray(new EntityColumn[] {});
+	}
+	
+	private void ensureWritable()
+	{
+		if (this.readOnly)
+			throw new IllegalStateException("Table " + this.getName() + " is read-only.");
 	}
 	
 	private void ensureCanDoStructuralChanges() 
@@ -497,4 +1101,21 @@ public class EntityTable
 			throw new IllegalStateException("Can not change table structure "
 					+ "after table started handling data.");
 	}
+	
+	/**
+	 * Notified of the row changes committed to a table (indexes being up to 
+	 * date), e.g. to journal them. Rows removed because they failed validation 
+	 * at the end of a load are notified as removed rows.
+	 */
+	public interface RowChangeListener 
+	{
+		void rowAdded(EntityRow row);
+		
+		/**
+		 * @param oldValue the value of the column before the modification.
+		 */
+		void rowModified(EntityRow row, EntityColumn column, Object oldValue);
+		
+		void rowRemoved(EntityRow row);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package sr.entityset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * General purpose {@link IndexStore}, keyed on the typed value for single
+ * column indexes and on a {@link CompositeIndexKey} otherwise.
+ */
+class HashIndexStore extends IndexStore 
+{
+	private final Map<Object, List<EntityRow>> indexHashTable;
+	private final Map<EntityRow, Object> rowRefToKeyTable;
+	
+	HashIndexStore(EntityColumn[] columns, int expectedSize) 
+	{
+		super(columns);
+		
+		int capacity = Math.max(16, (int)(expectedSize / 0.75f) + 1);
+		this.indexHashTable = new HashMap<Object, List<EntityRow>>(capacity);
+		this.rowRefToKeyTable = new HashMap<EntityRow, Object>(capacity);
+	}
+	
+	@Override
+	int add(EntityRow row) {
+		return addRow(buildKey(row), row);
+	}
+	
+	@Override
+	int update(EntityRow row)
+	{
+		if (this.rowRefToKeyTable.containsKey(row) == false) 
+			throw new RuntimeException("unexpected missing key for given row.");
+		
+		Object oldKey = this.rowRefToKeyTable.get(row);
+		Object newKey = buildKey(row);
+
+		boolean keyHasChanged = (keyEquals(oldKey, newKey) == false);
+		if (keyHasChanged == false)
+			return -1;
+		
+		this.remove(row);
+		return addRow(newKey, row);
+	}
+	
+	@Override
+	void remove(EntityRow row)
+	{
+		Object rowKey = this.rowRefToKeyTable.get(row);
+		
+		List<EntityRow> rows = this.indexHashTable.get(rowKey);
+		if (rows == null) throw new RuntimeException(
+				"Unexpected null row list for key " + rowKey);
+		
+		rows.remove(row);
+		this.rowRefToKeyTable.remove(row);
+	}
+	
+	@Override
+	List<EntityRow> find(Object[] values)
+	{
+		List<EntityRow> rows = this.indexHashTable.get(buildKey(values));
+		
+		if (rows == null)
+			return Collections.emptyList();
+		
+		return rows;
+	}
+	
+	@Override
+	EntityRow findFirst(Object[] values)
+	{
+		List<EntityRow> rows = this.indexHashTable.get(buildKey(values));
+		
+		if (rows == null || rows.size() == 0)
+			return null;
+		
+		return rows.get(0);
+	}
+	
+	@Override
+	int count(Object[] values)
+	{
+		List<EntityRow> rows = this.indexHashTable.get(buildKey(values));
+		return rows == null ? 0 : rows.size();
+	}
+	
+	@Override
+	boolean containsDuplicates()
+	{
+		for(List<EntityRow> rowList : this.indexHashTable.values())
+		{
+			if (rowList.size() > 1)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private int addRow(Object key, EntityRow row)
+	{
+		List<EntityRow> rows = this.indexHashTable.get(key);
+		if (rows == null)
+		{
+			rows = new ArrayList<EntityRow>(1);
+			this.indexHashTable.put(key, rows);
+		}
+		
+		this.rowRefToKeyTable.put(row, key);
+		
+		rows.add(row);
+		return rows.size();
+	}
+	
+	private Object buildKey(EntityRow row)
+	{
+		// single column indexes use the typed value itself as the key
+		if (this.columns.length == 1)
+			return row.getValue(this.columns[0]);
+		
+		Object[] keyValues = new Object[this.columns.length];
+		
+		for (int i = 0; i < this.columns.length; i++) {
+			EntityColumn keyColumn = this.columns[i];
+			keyValues[i] = row.getValue(keyColumn);
+		}
+		
+		return new CompositeIndexKey(keyValues);
+	}
+	
+	/**
+	 * Lookup key for the given values. The array is not copied, so
+	 * the returned key must not be stored in the index.
+	 */
+	private static Object buildKey(Object[] values)
+	{
+		if (values.length == 1)
+			return values[0];
+		
+		return new CompositeIndexKey(values);
+	}
+	
+	private static boolean keyEquals(Object key1, Object key2) {
+		return key1 == null ? key2 == null : key1.equals(key2);
+	}
+}
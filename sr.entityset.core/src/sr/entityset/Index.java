@@ -1,7 +1,6 @@
 package sr.entityset;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 
 import org.apache.commons.lang.NullArgumentException;
@@ -11,8 +10,7 @@ import sr.entityset.utils.ArrayHelper;
 public class Index
 {
 	private EntityColumn[] columns;
-	private Hashtable<String, List<EntityRow>> indexHashTable;
-	private Hashtable<EntityRow, String> rowRefToStringKeyTable;
+	private IndexStore store;
 	private EntityTable table;
 	private Boolean containsDuplicates = null;
 	private boolean built = false;
@@ -52,43 +50,57 @@ public class Index
 	
 	public List<EntityRow> findRows(Object... values)
 	{
-		if (values.length != this.columns.length)
-			throw new IllegalArgumentException("Expecting '" 
-					+ this.columns.length + "' values but received '" 
-					+ values.length + "'.");
-		
-		String key = buildKey(values);
-		List<EntityRow> rows = this.getIndexHashtable().get(key);
-		
-		if (rows == null)
-			return new ArrayList<EntityRow>();
-		
-		return rows;
+		this.ensureValueCount(values);
+		return this.getStore().find(values);
+	}
+	
+	/**
+	 * Same as {@link #findRows(Object...)} but only returns the first matching
+	 * row (or null), without allocating any result list.
+	 */
+	public EntityRow findFirstRow(Object... values)
+	{
+		this.ensureValueCount(values);
+		return this.getStore().findFirst(values);
+	}
+	
+	/**
+	 * Number of rows matching the given values, without allocating any result list.
+	 */
+	public int countRows(Object... values)
+	{
+		this.ensureValueCount(values);
+		return this.getStore().count(values);
 	}
 	
 	public void build()
 	{
-		this.indexHashTable = new Hashtable<String, List<EntityRow>>();
-		this.rowRefToStringKeyTable = new Hashtable<EntityRow, String>();
+		this.store = this.createStore(
+				Math.max(this.table.rowList().size(), this.table.getExpectedRowCount()));
 		
-		for (EntityRow row : this.table.rows()) 
-		{
-			String key = buildKey(row);
-			addRow(key, row, this.indexHashTable, this.rowRefToStringKeyTable);			
-		}
+		for (EntityRow row : this.table.rowList()) 
+			this.store.add(row);
 		
 		this.built = true;
+		this.containsDuplicates = null;
 		this.fireIndexChangedEvent();
 	}
 	
+	/**
+	 * Builds the index if it is not built yet. Once built, and as long as the
+	 * table is not modified, the index can be queried from several threads.
+	 */
+	public void ensureBuilt()
+	{
+		if (this.built == false)
+			this.build();
+	}
+	
 	public void updateOnRowAdded(EntityRow row)
 	{
 		if (this.built == false) return;
 		
-		String key = buildKey(row);
-		int similarRowsCount = addRow(key, row, 
-				this.indexHashTable, 
-				this.rowRefToStringKeyTable);
+		int similarRowsCount = this.store.add(row);
 		if (similarRowsCount > 1)
 			this.containsDuplicates = true;
 		
@@ -99,21 +111,10 @@ public class Index
 	{
 		if (this.built == false) return;
 		
-		String oldKey = this.getRowRefToStringKeyTable().get(row);
-		if (oldKey == null) throw new RuntimeException("unexpected null key for given row.");
-		
-		String newKey = buildKey(row);
-
-		boolean keyHasChanged = (oldKey.equals(newKey) == false);
+		int similarRowsCount = this.store.update(row);
+		boolean keyHasChanged = similarRowsCount != -1;
 		if (keyHasChanged)
 		{
-			removeRow(row);
-			int similarRowsCount = addRow(
-					newKey, 
-					row, 
-					this.getIndexHashtable(), 
-					this.getRowRefToStringKeyTable());
-			
 			if (similarRowsCount > 1)
 				this.containsDuplicates = true;
 			else
@@ -127,7 +128,7 @@ public class Index
 	{
 		if (this.built == false) return;
 		
-		removeRow(row);
+		this.store.remove(row);
 		this.containsDuplicates = null;
 		
 		this.fireIndexChangedEvent();
@@ -136,18 +137,7 @@ public class Index
 	public boolean containsDuplicates()
 	{
 		if (this.containsDuplicates == null)
-		{
-			this.containsDuplicates = false;
-			
-			for(List<EntityRow> rowList : this.getIndexHashtable().values())
-			{
-				if (rowList.size() > 1)
-				{
-					this.containsDuplicates = true;
-					break;
-				}
-			}
-		}
+			this.containsDuplicates = this.getStore().containsDuplicates();
 		
 		return this.containsDuplicates;
 	}
@@ -173,75 +163,43 @@ public class Index
 		}
 	}
 	
-	private void removeRow(EntityRow row)
-	{
-		String rowKey = this.rowRefToStringKeyTable.get(row);
-		
-		List<EntityRow> rows = this.getIndexHashtable().get(rowKey);
-		if (rows == null) throw new RuntimeException(
-				"Unexpected null row list for key " + rowKey);
-		
-		rows.remove(row);
-		this.rowRefToStringKeyTable.remove(row);
-	}
-
-	private static int addRow(
-			String key, 
-			EntityRow row, 
-			Hashtable<String, 
-			List<EntityRow>> indexHash, 
-			Hashtable<EntityRow, String> rowRefToStringKeyTable)
+	private void ensureValueCount(Object[] values)
 	{
-		List<EntityRow> rows = indexHash.get(key);
-		if (rows == null)
-		{
-			rows = new ArrayList<EntityRow>();
-			indexHash.put(key, rows);
-		}
-		
-		rowRefToStringKeyTable.put(row, key);
-		
-		rows.add(row);
-		return rows.size();
+		if (values.length != this.columns.length)
+			throw new IllegalArgumentException("Expecting '" 
+					+ this.columns.length + "' values but received '" 
+					+ values.length + "'.");
 	}
 	
-	private Hashtable<String, List<EntityRow>> getIndexHashtable()
+	/**
+	 * Drops the index content, which gets rebuilt (presized to the table row count)
+	 * on next use. Row change notifications are ignored until then.
+	 */
+	void invalidate()
 	{
-		if (this.built == false)
-			this.build();
-			
-		return this.indexHashTable;
+		this.store = null;
+		this.built = false;
+		this.containsDuplicates = null;
 	}
 	
-	private Hashtable<EntityRow, String> getRowRefToStringKeyTable() 
+	/**
+	 * Makes the index use the given store, filled beforehand (e.g. persisted along with the rows).
+	 */
+	void useStore(IndexStore store)
 	{
-		if (this.built == false)
-			this.build();
-		
-		return rowRefToStringKeyTable;
+		this.store = store;
+		this.built = true;
+		this.containsDuplicates = null;
 	}
 	
-	private String buildKey(EntityRow row)
+	IndexStore getStore()
 	{
-		Object[] keyValues = new Object[this.columns.length];
-		
-		for (int i = 0; i < this.columns.length; i++) {
-			EntityColumn keyColumn = this.columns[i];
-			keyValues[i] = row.getValue(keyColumn);
-		}
-		
-		return buildKey(keyValues);
+		this.ensureBuilt();
+		return this.store;
 	}
 	
-	private static String buildKey(Object[] values)
-	{
-		StringBuilder sb = new StringBuilder();
-		
-		for (int i = 0; i < values.length; i++) {
-			sb.append("||" + String.valueOf(values[i]) + ";;");
-		}
-		
-		return sb.toString();
+	IndexStore createStore(int expectedSize) {
+		return IndexStore.create(this.columns, expectedSize);
 	}
 	
 	///////////////////////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,52 @@
+package sr.entityset;
+
+import java.util.List;
+
+/**
+ * Storage behind an {@link Index}: maps key values to the rows holding them.
+ * The implementation is chosen from the types of the indexed columns.
+ */
+abstract class IndexStore 
+{
+	protected final EntityColumn[] columns;
+	
+	protected IndexStore(EntityColumn[] columns) {
+		this.columns = columns;
+	}
+	
+	static IndexStore create(EntityColumn[] columns, int expectedSize)
+	{
+		if (PrimitiveHashIndexStore.supports(columns))
+			return new PrimitiveHashIndexStore(columns, expectedSize);
+		else
+			return new HashIndexStore(columns, expectedSize);
+	}
+	
+	/**
+	 * @return the number of rows sharing the key of the added row (itself included).
+	 */
+	abstract int add(EntityRow row);
+	
+	/**
+	 * Re-keys the row if its indexed values changed.
+	 * @return -1 if the key did not change, else the number of rows 
+	 * sharing the new key (the row itself included).
+	 */
+	abstract int update(EntityRow row);
+	
+	abstract void remove(EntityRow row);
+	
+	/**
+	 * @return the rows matching the values, never null. The returned list must not be modified.
+	 */
+	abstract List<EntityRow> find(Object[] values);
+	
+	/**
+	 * @return the first row matching the values or null.
+	 */
+	abstract EntityRow findFirst(Object[] values);
+	
+	abstract int count(Object[] values);
+	
+	abstract boolean containsDuplicates();
+}
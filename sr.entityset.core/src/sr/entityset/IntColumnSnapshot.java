@@ -0,0 +1,148 @@
+package sr.entityset;
+
+import sr.entityset.exceptions.InvalidNullValueException;
+
+/**
+ * Snapshot of an Integer column, null values being held as 0.
+ */
+public class IntColumnSnapshot extends ColumnSnapshot 
+{
+	private final int[] values;
+	
+	IntColumnSnapshot(EntityColumn column, int size) 
+	{
+		super(column, size);
+		this.values = new int[size];
+	}
+	
+	public int getInt(int position) {
+		return this.values[position];
+	}
+	
+	/**
+	 * The extracted values, not to be modified.
+	 */
+	public int[] getArray() {
+		return this.values;
+	}
+	
+	@Override
+	protected void extract(int position, EntityRow row, int columnNumber) 
+			throws InvalidNullValueException
+	{
+		this.values[position] = row.getInt(columnNumber);
+	}
+	
+	@Override
+	protected int selectRange(int[] within, int count, int[] positions, double from, double to)
+	{
+		// integer bounds of the range, empty if there is no integer in it
+		long lowest = Math.max(Integer.MIN_VALUE, (long)Math.ceil(from));
+		long highest = Math.min(Integer.MAX_VALUE, (long)Math.floor(to));
+		if (lowest > highest) return 0;
+		
+		int low = (int)lowest;
+		int high = (int)highest;
+		int[] values = this.values;
+		int selected = 0;
+		
+		// the position is always written, the count only moving on a match (no branch)
+		if (within == null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				int value = values[i];
+				positions[selected] = i;
+				selected += (value >= low & value <= high) ? 1 : 0;
+			}
+		}
+		else
+		{
+			for (int i = 0; i < count; i++)
+			{
+				int position = within[i];
+				int value = values[position];
+				positions[selected] = position;
+				selected += (value >= low & value <= high) ? 1 : 0;
+			}
+		}
+		
+		return selected;
+	}
+	
+	@Override
+	protected double sum(int[] positions, int count)
+	{
+		int[] values = this.values;
+		long sum = 0;
+		if (positions == null)
+			for (int i = 0; i < count; i++)
+				sum += values[i];
+		else
+			for (int i = 0; i < count; i++)
+				sum += values[positions[i]];
+		
+		return sum;
+	}
+	
+	@Override
+	protected double min(int[] positions, int count)
+	{
+		int[] values = this.values;
+		int min = Integer.MAX_VALUE;
+		if (positions != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				int value = values[positions[i]];
+				if (value < min) min = value;
+			}
+			
+			return min;
+		}
+		
+		// the null bit is only looked at for values beating the current one, which soon gets rare
+		for (int block = 0; block < count; block += 64)
+		{
+			int end = Math.min(count, block + 64);
+			long nulls = this.getNullWord(block);
+			for (int i = block; i < end; i++)
+			{
+				int value = values[i];
+				if (value < min && ((nulls >>> i) & 1L) == 0) min = value;
+			}
+		}
+		
+		return min;
+	}
+	
+	@Override
+	protected double max(int[] positions, int count)
+	{
+		int[] values = this.values;
+		int max = Integer.MIN_VALUE;
+		if (positions != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				int value = values[positions[i]];
+				if (value > max) max = value;
+			}
+			
+			return max;
+		}
+		
+		for (int block = 0; block < count; block += 64)
+		{
+			int end = Math.min(count, block + 64);
+			long nulls = this.getNullWord(block);
+			for (int i = block; i < end; i++)
+			{
+				int value = values[i];
+				if (value > max && ((nulls >>> i) & 1L) == 0) max = value;
+			}
+		}
+		
+		return max;
+	}
+}
@@ -0,0 +1,299 @@
+package sr.entityset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sr.entityset.constraints.Constraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+
+/**
+ * Hands out values for an Integer or Long key column from an atomic sequence,
+ * so that no scan of the table is needed per new row and concurrent callers never
+ * get the same key. Obtained from {@link EntityTable#getKeyGenerator(EntityColumn)}.
+ *
+ * The sequence is seeded once from the highest value of the column (read from a
+ * {@link SortedIndex} on the column if there is one), then keeps track of keys
+ * inserted explicitly.
+ *
+ * Rows created offline may use temporary keys (-1, -2... or below the lowest 
+ * key of the column) instead, which are replaced by regular keys by 
+ * {@link #remapTemporaryKeys()} (or {@link EntityTable#remapTemporaryKeys()}), 
+ * child rows referencing them through a single-column foreign key being updated 
+ * as well. Only the keys handed out by {@link #nextTemporaryKey()} are temporary, 
+ * negative keys inserted explicitly (e.g. loaded from a database) are left as is.
+ */
+public class KeyGenerator
+{
+	private final EntityTable table;
+	private final EntityColumn column;
+	private final AtomicLong lastKey;
+	private final AtomicLong lowestKey;
+	private final AtomicLong lastTemporaryKey;
+	private final Set<Long> temporaryKeys = 
+			Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+	KeyGenerator(EntityTable table, EntityColumn column)
+	{
+		if (column.getType().equals(Integer.class) == false
+				&& column.getType().equals(Long.class) == false)
+			throw new IllegalArgumentException("Keys can only be generated for Integer or Long columns, "
+					+ "which is not the case of column " + column.getName());
+
+		this.table = table;
+		this.column = column;
+		this.lastKey = new AtomicLong(this.findMaxKey());
+		this.lowestKey = new AtomicLong(this.findMinKey());
+		this.lastTemporaryKey = new AtomicLong(this.lowestKey.get());
+	}
+
+	public EntityColumn getColumn() {
+		return column;
+	}
+
+	public Object nextKey() {
+		return this.toColumnValue(this.lastKey.incrementAndGet());
+	}
+
+	/**
+	 * Reserves a block of consecutive keys, e.g. for a batch insert.
+	 * @return the first key of the block, the following ones being up to
+	 * first key + size - 1.
+	 */
+	public Object reserveBlock(int size)
+	{
+		if (size <= 0)
+			throw new IllegalArgumentException("Block size must be positive");
+
+		long lastOfBlock = this.lastKey.addAndGet(size);
+		this.toColumnValue(lastOfBlock); // fails if the block goes beyond the column type
+
+		return this.toColumnValue(lastOfBlock - size + 1);
+	}
+
+	/**
+	 * @return a negative key, lower than any key of the column, replaced by a 
+	 * regular one on {@link #remapTemporaryKeys()}.
+	 */
+	public Object nextTemporaryKey()
+	{
+		long key = this.lastTemporaryKey.decrementAndGet();
+		Object value = this.toColumnValue(key);
+		this.temporaryKeys.add(key);
+		return value;
+	}
+
+	/**
+	 * Whether the key was handed out by {@link #nextTemporaryKey()} and not remapped yet.
+	 */
+	public boolean isTemporaryKey(Object key) {
+		return this.temporaryKeys.contains(((Number)key).longValue());
+	}
+
+	/**
+	 * Makes sure a key inserted explicitly is never handed out, be it as a
+	 * regular or a temporary key.
+	 */
+	public void observe(Object key)
+	{
+		if (key == null) return;
+
+		long value = ((Number)key).longValue();
+		raiseTo(this.lastKey, value);
+
+		if (value < 0 && this.temporaryKeys.contains(value) == false)
+		{
+			lowerTo(this.lowestKey, value);
+			lowerTo(this.lastTemporaryKey, value);
+		}
+	}
+
+	/**
+	 * Replaces the temporary keys of the table rows by regular keys. Rows which
+	 * had no pending change (e.g. child rows already accepted) are left unchanged,
+	 * the others keep their state.
+	 * @return the new keys by temporary key.
+	 */
+	public Map<Object, Object> remapTemporaryKeys()
+	{
+		Map<Object, Object> newKeys = new LinkedHashMap<Object, Object>();
+		if (this.temporaryKeys.isEmpty())
+			return newKeys;
+
+		List<EntityRow> rows = new ArrayList<EntityRow>();
+		for (EntityRow row : this.table.rowList())
+		{
+			Object key = row.getValue(this.column);
+			if (key != null && this.isTemporaryKey(key))
+				rows.add(row);
+		}
+
+		List<EntityTable> suspendedTables = this.getReferencingTables();
+		suspendedTables.add(this.table);
+		for (EntityTable suspendedTable : suspendedTables)
+			suspendedTable.setConstraintChecksSuspended(true);
+
+		try
+		{
+			for (EntityRow row : rows)
+			{
+				Object temporaryKey = row.getValue(this.column);
+				Object newKey = this.nextKey();
+
+				setKey(row, this.column, newKey);
+				this.updateReferencingRows(temporaryKey, newKey);
+				newKeys.put(temporaryKey, newKey);
+			}
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		finally
+		{
+			for (EntityTable suspendedTable : suspendedTables)
+				suspendedTable.setConstraintChecksSuspended(false);
+		}
+
+		this.temporaryKeys.clear();
+		this.lastTemporaryKey.set(this.lowestKey.get());
+		return newKeys;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private long findMaxKey()
+	{
+		for (Index index : this.table.getIndexes())
+		{
+			if (index instanceof SortedIndex && index.getColumns().length == 1
+					&& index.getColumns()[0] == this.column)
+			{
+				List<EntityRow> top = ((SortedIndex)index).findTop(1);
+				Object max = top.isEmpty() ? null : top.get(0).getValue(this.column);
+				return max == null ? 0 : Math.max(0, ((Number)max).longValue());
+			}
+		}
+
+		long max = 0;
+		for (EntityRow row : this.table.rowList())
+		{
+			Object value = row.getValue(this.column);
+			if (value != null)
+				max = Math.max(max, ((Number)value).longValue());
+		}
+
+		return max;
+	}
+
+	/**
+	 * Lowest value of the column if negative, 0 otherwise.
+	 */
+	private long findMinKey()
+	{
+		for (Index index : this.table.getIndexes())
+		{
+			if (index instanceof SortedIndex && index.getColumns().length == 1
+					&& index.getColumns()[0] == this.column)
+			{
+				// null values come first
+				for (EntityRow row : ((SortedIndex)index).ascendingRows())
+				{
+					Object value = row.getValue(this.column);
+					if (value != null)
+						return Math.min(0, ((Number)value).longValue());
+				}
+				return 0;
+			}
+		}
+
+		long min = 0;
+		for (EntityRow row : this.table.rowList())
+		{
+			Object value = row.getValue(this.column);
+			if (value != null)
+				min = Math.min(min, ((Number)value).longValue());
+		}
+
+		return min;
+	}
+
+	private static void raiseTo(AtomicLong bound, long value)
+	{
+		long current = bound.get();
+		while (value > current && bound.compareAndSet(current, value) == false)
+			current = bound.get();
+	}
+
+	private static void lowerTo(AtomicLong bound, long value)
+	{
+		long current = bound.get();
+		while (value < current && bound.compareAndSet(current, value) == false)
+			current = bound.get();
+	}
+
+	private List<EntityTable> getReferencingTables()
+	{
+		List<EntityTable> tables = new ArrayList<EntityTable>();
+		for (ForeignKeyParentConstraint constraint : this.getReferencingConstraints())
+			if (tables.contains(constraint.getChildTable()) == false)
+				tables.add(constraint.getChildTable());
+
+		return tables;
+	}
+
+	private void updateReferencingRows(Object temporaryKey, Object newKey) throws Exception
+	{
+		for (ForeignKeyParentConstraint constraint : this.getReferencingConstraints())
+		{
+			EntityColumn childColumn = constraint.getChildColumns().iterator().next();
+			Index childIndex = constraint.getChildTable().getIndex(constraint.getChildColumns());
+
+			List<EntityRow> childRows = new ArrayList<EntityRow>(childIndex.findRows(temporaryKey));
+			for (EntityRow childRow : childRows)
+				setKey(childRow, childColumn, newKey);
+		}
+	}
+
+	private static void setKey(EntityRow row, EntityColumn column, Object key) throws Exception
+	{
+		boolean wasUnchanged = row.getState() == RowState.Unchanged;
+		row.setValue(column, key);
+		
+		if (wasUnchanged)
+			row.getParentTable().acceptRowChanges(row);
+	}
+	
+	private List<ForeignKeyParentConstraint> getReferencingConstraints()
+	{
+		List<ForeignKeyParentConstraint> constraints = new ArrayList<ForeignKeyParentConstraint>();
+		for (Constraint constraint : this.table.getConstraints())
+		{
+			if (constraint instanceof ForeignKeyParentConstraint)
+			{
+				ForeignKeyParentConstraint fkConstraint = (ForeignKeyParentConstraint)constraint;
+				if (fkConstraint.getParentColumns().size() == 1
+						&& fkConstraint.getParentColumns().contains(this.column))
+					constraints.add(fkConstraint);
+			}
+		}
+
+		return constraints;
+	}
+
+	private Object toColumnValue(long key)
+	{
+		if (this.column.getType().equals(Long.class))
+			return key;
+
+		if (key > Integer.MAX_VALUE || key < Integer.MIN_VALUE)
+			throw new IllegalStateException("Key sequence of Integer column "
+					+ this.column.getName() + " is exhausted");
+
+		return (int)key;
+	}
+}
@@ -0,0 +1,261 @@
+package sr.entityset;
+
+import sr.entityset.exceptions.InvalidNullValueException;
+
+/**
+ * Snapshot of a Long column, null values being held as 0.
+ * 
+ * Besides the double filters and aggregates, which lose precision past 2^53,
+ * it offers exact ones taking and returning longs. Sums overflow as long 
+ * arithmetic does.
+ */
+public class LongColumnSnapshot extends ColumnSnapshot 
+{
+	private final long[] values;
+	
+	LongColumnSnapshot(EntityColumn column, int size) 
+	{
+		super(column, size);
+		this.values = new long[size];
+	}
+	
+	public long getLong(int position) {
+		return this.values[position];
+	}
+	
+	/**
+	 * The extracted values, not to be modified.
+	 */
+	public long[] getArray() {
+		return this.values;
+	}
+	
+	/**
+	 * Positions which values are between from and to, both included.
+	 */
+	public Selection selectBetween(Selection within, long from, long to)
+	{
+		int[] positions = this.newPositions(within);
+		int count = 0;
+		if (from <= to)
+		{
+			count = within == null 
+					? this.selectRange(null, this.size, positions, from, to)
+					: this.selectRange(within.getPositions(), within.size(), positions, from, to);
+		}
+		
+		return this.newSelection(positions, count);
+	}
+	
+	public Selection selectBetween(long from, long to) {
+		return this.selectBetween(null, from, to);
+	}
+	
+	public Selection selectEquals(Selection within, long value) {
+		return this.selectBetween(within, value, value);
+	}
+	
+	public Selection selectLessThan(Selection within, long value) 
+	{
+		// an empty range when nothing is below the smallest long
+		return value == Long.MIN_VALUE 
+				? this.selectBetween(within, 0, -1) 
+				: this.selectBetween(within, Long.MIN_VALUE, value - 1);
+	}
+	
+	public Selection selectLessOrEqual(Selection within, long value) {
+		return this.selectBetween(within, Long.MIN_VALUE, value);
+	}
+	
+	public Selection selectGreaterThan(Selection within, long value) 
+	{
+		return value == Long.MAX_VALUE 
+				? this.selectBetween(within, 0, -1) 
+				: this.selectBetween(within, value + 1, Long.MAX_VALUE);
+	}
+	
+	public Selection selectGreaterOrEqual(Selection within, long value) {
+		return this.selectBetween(within, value, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Exact sum of the non null values, 0 if there are none.
+	 */
+	public long sumLong(Selection within)
+	{
+		this.ensureSameRows(within);
+		
+		// null positions hold 0 in the value array, they need no test
+		if (within == null)
+			return this.sumOf(null, this.size);
+		
+		return this.sumOf(within.getPositions(), within.size());
+	}
+	
+	/**
+	 * Smallest non null value, null if there are none.
+	 */
+	public Long minLong(Selection within)
+	{
+		if (this.count(within) == 0)
+			return null;
+		
+		if (within == null)
+			return this.minOf(null, this.size);
+		
+		Selection scope = this.getNonNullScope(within);
+		return this.minOf(scope.getPositions(), scope.size());
+	}
+	
+	/**
+	 * Largest non null value, null if there are none.
+	 */
+	public Long maxLong(Selection within)
+	{
+		if (this.count(within) == 0)
+			return null;
+		
+		if (within == null)
+			return this.maxOf(null, this.size);
+		
+		Selection scope = this.getNonNullScope(within);
+		return this.maxOf(scope.getPositions(), scope.size());
+	}
+	
+	@Override
+	protected void extract(int position, EntityRow row, int columnNumber) 
+			throws InvalidNullValueException
+	{
+		this.values[position] = row.getLong(columnNumber);
+	}
+	
+	@Override
+	protected int selectRange(int[] within, int count, int[] positions, double from, double to)
+	{
+		// integer bounds of the range, empty if there is no integer in it
+		long low = (long)Math.ceil(from);
+		long high = (long)Math.floor(to);
+		if (low > high) return 0;
+		
+		return this.selectRange(within, count, positions, low, high);
+	}
+	
+	@Override
+	protected double sum(int[] positions, int count) {
+		return this.sumOf(positions, count);
+	}
+	
+	@Override
+	protected double min(int[] positions, int count) {
+		return this.minOf(positions, count);
+	}
+	
+	@Override
+	protected double max(int[] positions, int count) {
+		return this.maxOf(positions, count);
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private int selectRange(int[] within, int count, int[] positions, long low, long high)
+	{
+		long[] values = this.values;
+		int selected = 0;
+		
+		// the position is always written, the count only moving on a match (no branch)
+		if (within == null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				long value = values[i];
+				positions[selected] = i;
+				selected += (value >= low & value <= high) ? 1 : 0;
+			}
+		}
+		else
+		{
+			for (int i = 0; i < count; i++)
+			{
+				int position = within[i];
+				long value = values[position];
+				positions[selected] = position;
+				selected += (value >= low & value <= high) ? 1 : 0;
+			}
+		}
+		
+		return selected;
+	}
+	
+	private long sumOf(int[] positions, int count)
+	{
+		long[] values = this.values;
+		long sum = 0;
+		if (positions == null)
+			for (int i = 0; i < count; i++)
+				sum += values[i];
+		else
+			for (int i = 0; i < count; i++)
+				sum += values[positions[i]];
+		
+		return sum;
+	}
+	
+	private long minOf(int[] positions, int count)
+	{
+		long[] values = this.values;
+		long min = Long.MAX_VALUE;
+		if (positions != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				long value = values[positions[i]];
+				if (value < min) min = value;
+			}
+			
+			return min;
+		}
+		
+		// the null bit is only looked at for values beating the current one, which soon gets rare
+		for (int block = 0; block < count; block += 64)
+		{
+			int end = Math.min(count, block + 64);
+			long nulls = this.getNullWord(block);
+			for (int i = block; i < end; i++)
+			{
+				long value = values[i];
+				if (value < min && ((nulls >>> i) & 1L) == 0) min = value;
+			}
+		}
+		
+		return min;
+	}
+	
+	private long maxOf(int[] positions, int count)
+	{
+		long[] values = this.values;
+		long max = Long.MIN_VALUE;
+		if (positions != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				long value = values[positions[i]];
+				if (value > max) max = value;
+			}
+			
+			return max;
+		}
+		
+		for (int block = 0; block < count; block += 64)
+		{
+			int end = Math.min(count, block + 64);
+			long nulls = this.getNullWord(block);
+			for (int i = block; i < end; i++)
+			{
+				long value = values[i];
+				if (value > max && ((nulls >>> i) & 1L) == 0) max = value;
+			}
+		}
+		
+		return max;
+	}
+}
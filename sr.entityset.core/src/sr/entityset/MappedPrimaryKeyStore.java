@@ -0,0 +1,63 @@
+package sr.entityset;
+
+import java.util.Collections;
+import java.util.List;
+
+import sr.entityset.storage.MappedTableFile;
+
+/**
+ * {@link IndexStore} over the primary key persisted in a {@link MappedTableFile},
+ * used by read-only tables opened with {@link EntityTable#openMapped(java.io.File)}.
+ */
+class MappedPrimaryKeyStore extends IndexStore 
+{
+	private final MappedTableFile file;
+	private final List<EntityRow> rows;
+	
+	MappedPrimaryKeyStore(EntityColumn[] columns, MappedTableFile file, List<EntityRow> rows) 
+	{
+		super(columns);
+		this.file = file;
+		this.rows = rows;
+	}
+	
+	@Override
+	int add(EntityRow row) {
+		throw new IllegalStateException("A mapped primary key can not be modified.");
+	}
+	
+	@Override
+	int update(EntityRow row) {
+		throw new IllegalStateException("A mapped primary key can not be modified.");
+	}
+	
+	@Override
+	void remove(EntityRow row) {
+		throw new IllegalStateException("A mapped primary key can not be modified.");
+	}
+	
+	@Override
+	List<EntityRow> find(Object[] values) 
+	{
+		EntityRow row = this.findFirst(values);
+		return row == null ? Collections.<EntityRow>emptyList() : Collections.singletonList(row);
+	}
+	
+	@Override
+	EntityRow findFirst(Object[] values) 
+	{
+		int rowNumber = this.file.findRow(values);
+		return rowNumber < 0 ? null : this.rows.get(rowNumber);
+	}
+	
+	@Override
+	int count(Object[] values) {
+		return this.file.findRow(values) < 0 ? 0 : 1;
+	}
+	
+	@Override
+	boolean containsDuplicates() {
+		// checked when the file was written
+		return false;
+	}
+}
@@ -0,0 +1,60 @@
+package sr.entityset;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Rows of a table opened with {@link EntityTable#openMapped(java.io.File)}: the
+ * handle of a row is only created on first access, pages of handles being 
+ * allocated as they get used. The same handle is always returned for a row,
+ * including when rows are read from several threads.
+ */
+class MappedRowList extends AbstractList<EntityRow> implements RandomAccess
+{
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	
+	private final EntityTable table;
+	private final int size;
+	private final AtomicReferenceArray<AtomicReferenceArray<EntityRow>> pages;
+	
+	MappedRowList(EntityTable table, int size)
+	{
+		this.table = table;
+		this.size = size;
+		this.pages = new AtomicReferenceArray<AtomicReferenceArray<EntityRow>>(
+				(size + PAGE_SIZE - 1) >>> PAGE_BITS);
+	}
+	
+	@Override
+	public EntityRow get(int index)
+	{
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		
+		AtomicReferenceArray<EntityRow> page = this.pages.get(index >>> PAGE_BITS);
+		if (page == null)
+		{
+			this.pages.compareAndSet(index >>> PAGE_BITS, null, 
+					new AtomicReferenceArray<EntityRow>(PAGE_SIZE));
+			page = this.pages.get(index >>> PAGE_BITS);
+		}
+		
+		EntityRow row = page.get(index & (PAGE_SIZE - 1));
+		if (row == null)
+		{
+			EntityRow newRow = new EntityRow(this.table, null, RowState.Unchanged);
+			newRow.attachToStore(index);
+			
+			page.compareAndSet(index & (PAGE_SIZE - 1), null, newRow);
+			row = page.get(index & (PAGE_SIZE - 1));
+		}
+		return row;
+	}
+	
+	@Override
+	public int size() {
+		return this.size;
+	}
+}
@@ -2,9 +2,25 @@ package sr.entityset;
 
 import java.util.Collection;
 
+/**
+ * Builds new rows which primary key values are taken from the table 
+ * {@link KeyGenerator}s, one per primary key column.
+ */
 public class NewRowBuilder 
 {
-	private final static int INT_SEED = 0; 
+	private final boolean useTemporaryKeys;
+	
+	public NewRowBuilder() {
+		this(false);
+	}
+	
+	/**
+	 * @param useTemporaryKeys when set, rows get temporary (negative) keys, 
+	 * replaced by regular ones by {@link EntityTable#remapTemporaryKeys()}.
+	 */
+	public NewRowBuilder(boolean useTemporaryKeys) {
+		this.useTemporaryKeys = useTemporaryKeys;
+	}
 
 	public EntityRow buildEntityRow(EntityTable table)
 	{
@@ -28,41 +44,14 @@ public class NewRowBuilder
 	private void fillPrimaryKeyValues(EntityTable table, 
 			EntityRow row, Collection<EntityColumn> pkColumns) throws Exception
 	{
-		Integer[] maxes = findIntegerMaxesForPrimaryKeyValues(table, pkColumns);
-		int i = 0;
 		for(EntityColumn pkColumn : pkColumns)
 		{
-			int curPkColumnMax = maxes[i++];
-			row.setValue(pkColumn, curPkColumnMax + 1);
-		}
-	}
-	
-	private Integer[] findIntegerMaxesForPrimaryKeyValues(
-			EntityTable table, Collection<EntityColumn> pkColumns)
-	{
-		Integer[] maxes = new Integer[pkColumns.size()]; 
-		for(EntityRow row : table.rows())
-		{
-			int i = 0;
-			for(EntityColumn pkCol : pkColumns)
-			{
-				Integer curVal = (Integer)row.getValue(pkCol);
-				
-				if (maxes[i] == null)
-					maxes[i] = curVal;
-				else if (maxes[i] < curVal)
-					maxes[i] = curVal;
-				
-				i++;
-			}
-		}
-		
-		for(int i = 0; i < maxes.length; i++) 
-		{
-			if (maxes[i] == null)
-				maxes[i] = INT_SEED;
+			KeyGenerator keyGenerator = table.getKeyGenerator(pkColumn);
+			
+			if (this.useTemporaryKeys)
+				row.setValue(pkColumn, keyGenerator.nextTemporaryKey());
+			else
+				row.setValue(pkColumn, keyGenerator.nextKey());
 		}
-		
-		return maxes;
 	}
 }
@@ -0,0 +1,428 @@
+package sr.entityset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sr.entityset.storage.StringColumnVector;
+import sr.entityset.storage.StringDictionary;
+import sr.entityset.utils.IdentityIntHashMap;
+import sr.entityset.utils.LongIntHashMap;
+
+/**
+ * {@link IndexStore} for indexes on a single Integer, Long, Double or 
+ * dictionary-encoded String column, or on two columns being Integer or 
+ * dictionary-encoded (packed into one long). Keys are kept unboxed in an 
+ * open-addressing long to row-slot map, dictionary-encoded values being keyed 
+ * on their int code. Rows sharing a key are chained through slot arrays, 
+ * so no object is allocated per entry. Chains are doubly linked, their head 
+ * slot keeping the tail and the length, so that adding, removing and counting 
+ * rows do not walk them.
+ * 
+ * Rows which key can not be packed (null or wrongly typed values) are chained 
+ * the same way, their head slots being kept in a hash map on the key values.
+ */
+class PrimitiveHashIndexStore extends IndexStore 
+{
+	private static final int NO_SLOT = -1;
+	
+	private static final int KEY_OK = 0;
+	private static final int KEY_NOT_PACKABLE = 1;
+	private static final int KEY_UNKNOWN = 2;
+	
+	private final Class<?>[] types;
+	private final StringDictionary[] dictionaries;
+	private final LongIntHashMap headSlotByKey;
+	private final IdentityIntHashMap<EntityRow> slotByRow;
+	private final Map<List<Object>, Integer> fallbackHeadSlotByKey = new HashMap<List<Object>, Integer>();
+	
+	private EntityRow[] slotRows;
+	private long[] slotKeys;
+	private int[] nextSlots;
+	private int[] previousSlots;
+	private int[] tailSlots;
+	private int[] chainLengths;
+	private Object[][] slotFallbackValues;
+	
+	private int slotCount = 0;
+	private int freeSlot = NO_SLOT;
+	
+	PrimitiveHashIndexStore(EntityColumn[] columns, int expectedSize)
+	{
+		super(columns);
+		
+		this.types = new Class<?>[columns.length];
+		this.dictionaries = new StringDictionary[columns.length];
+		for (int i = 0; i < columns.length; i++)
+		{
+			this.types[i] = columns[i].getType();
+			this.dictionaries[i] = columns[i].getDictionary();
+		}
+		
+		int capacity = Math.max(16, expectedSize);
+		this.headSlotByKey = new LongIntHashMap(capacity);
+		this.slotByRow = new IdentityIntHashMap<EntityRow>(capacity);
+		this.slotRows = new EntityRow[capacity];
+		this.slotKeys = new long[capacity];
+		this.nextSlots = new int[capacity];
+		this.previousSlots = new int[capacity];
+		this.tailSlots = new int[capacity];
+		this.chainLengths = new int[capacity];
+		this.slotFallbackValues = new Object[capacity][];
+	}
+	
+	static boolean supports(EntityColumn[] columns)
+	{
+		if (columns.length == 1)
+		{
+			Class<?> type = columns[0].getType();
+			return isIntLike(columns[0])
+					|| type.equals(Long.class) 
+					|| type.equals(Double.class);
+		}
+		
+		return columns.length == 2 
+				&& isIntLike(columns[0]) 
+				&& isIntLike(columns[1]);
+	}
+	
+	private static boolean isIntLike(EntityColumn column) {
+		return column.getType().equals(Integer.class) || column.isDictionaryEncoded();
+	}
+	
+	@Override
+	int add(EntityRow row)
+	{
+		int slot = this.allocateSlot();
+		this.slotRows[slot] = row;
+		this.nextSlots[slot] = NO_SLOT;
+		this.previousSlots[slot] = NO_SLOT;
+		this.slotByRow.put(row, slot);
+		
+		if (this.rowKeyStatus(row) == KEY_OK)
+		{
+			long key = this.packRowKey(row);
+			this.slotKeys[slot] = key;
+			
+			int headSlot = this.headSlotByKey.get(key);
+			if (headSlot == LongIntHashMap.NO_VALUE)
+			{
+				this.headSlotByKey.put(key, slot);
+				return this.startChain(slot);
+			}
+			
+			return this.appendToChain(headSlot, slot);
+		}
+		else
+		{
+			Object[] values = this.rowValues(row);
+			this.slotFallbackValues[slot] = values;
+			
+			List<Object> key = Arrays.asList(values);
+			Integer headSlot = this.fallbackHeadSlotByKey.get(key);
+			if (headSlot == null)
+			{
+				this.fallbackHeadSlotByKey.put(key, slot);
+				return this.startChain(slot);
+			}
+			
+			return this.appendToChain(headSlot, slot);
+		}
+	}
+	
+	@Override
+	int update(EntityRow row)
+	{
+		int slot = this.slotByRow.get(row);
+		if (slot == IdentityIntHashMap.NO_VALUE) 
+			throw new RuntimeException("unexpected missing key for given row.");
+		
+		boolean wasFallback = this.slotFallbackValues[slot] != null;
+		if (this.rowKeyStatus(row) == KEY_OK)
+		{
+			if (!wasFallback && this.slotKeys[slot] == this.packRowKey(row))
+				return -1;
+		}
+		else if (wasFallback && Arrays.equals(this.slotFallbackValues[slot], this.rowValues(row)))
+			return -1;
+		
+		this.remove(row);
+		return this.add(row);
+	}
+	
+	@Override
+	void remove(EntityRow row)
+	{
+		int slot = this.slotByRow.remove(row);
+		if (slot == IdentityIntHashMap.NO_VALUE) 
+			throw new RuntimeException("Unexpected missing row in index.");
+		
+		if (this.slotFallbackValues[slot] != null)
+		{
+			List<Object> key = Arrays.asList(this.slotFallbackValues[slot]);
+			int headSlot = this.fallbackHeadSlotByKey.get(key);
+			int newHeadSlot = this.unlinkFromChain(headSlot, slot);
+			
+			if (newHeadSlot == NO_SLOT)
+				this.fallbackHeadSlotByKey.remove(key);
+			else if (newHeadSlot != headSlot)
+				this.fallbackHeadSlotByKey.put(key, newHeadSlot);
+		}
+		else
+		{
+			long key = this.slotKeys[slot];
+			int headSlot = this.headSlotByKey.get(key);
+			int newHeadSlot = this.unlinkFromChain(headSlot, slot);
+			
+			if (newHeadSlot == NO_SLOT)
+				this.headSlotByKey.remove(key);
+			else if (newHeadSlot != headSlot)
+				this.headSlotByKey.put(key, newHeadSlot);
+		}
+		
+		this.slotRows[slot] = null;
+		this.slotFallbackValues[slot] = null;
+		this.nextSlots[slot] = this.freeSlot;
+		this.freeSlot = slot;
+	}
+	
+	@Override
+	List<EntityRow> find(Object[] values)
+	{
+		int keyStatus = this.valuesKeyStatus(values);
+		if (keyStatus == KEY_UNKNOWN)
+			return Collections.emptyList();
+		
+		int slot = keyStatus == KEY_OK ? this.headSlotByKey.get(this.packValuesKey(values)) 
+				: this.getFallbackHeadSlot(values);
+		if (slot == LongIntHashMap.NO_VALUE)
+			return Collections.emptyList();
+		
+		if (this.nextSlots[slot] == NO_SLOT)
+			return Collections.singletonList(this.slotRows[slot]);
+		
+		List<EntityRow> rows = new ArrayList<EntityRow>();
+		for (; slot != NO_SLOT; slot = this.nextSlots[slot])
+			rows.add(this.slotRows[slot]);
+		
+		return rows;
+	}
+	
+	@Override
+	EntityRow findFirst(Object[] values)
+	{
+		int keyStatus = this.valuesKeyStatus(values);
+		if (keyStatus == KEY_UNKNOWN)
+			return null;
+		
+		int slot = keyStatus == KEY_OK ? this.headSlotByKey.get(this.packValuesKey(values)) 
+				: this.getFallbackHeadSlot(values);
+		return slot == LongIntHashMap.NO_VALUE ? null : this.slotRows[slot];
+	}
+	
+	@Override
+	int count(Object[] values)
+	{
+		int keyStatus = this.valuesKeyStatus(values);
+		if (keyStatus == KEY_UNKNOWN)
+			return 0;
+		
+		int slot = keyStatus == KEY_OK ? this.headSlotByKey.get(this.packValuesKey(values)) 
+				: this.getFallbackHeadSlot(values);
+		return slot == LongIntHashMap.NO_VALUE ? 0 : this.chainLengths[slot];
+	}
+	
+	@Override
+	boolean containsDuplicates()
+	{
+		for (int slot = 0; slot < this.slotCount; slot++)
+		{
+			if (this.slotRows[slot] != null && this.nextSlots[slot] != NO_SLOT)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private int rowKeyStatus(EntityRow row)
+	{
+		for (int i = 0; i < this.types.length; i++) 
+		{
+			Object value = row.getValue(this.columns[i]);
+			if (value == null || value.getClass() != this.types[i])
+				return KEY_NOT_PACKABLE;
+		}
+		
+		return KEY_OK;
+	}
+	
+	private int valuesKeyStatus(Object[] values)
+	{
+		for (int i = 0; i < this.types.length; i++) 
+		{
+			Object value = values[i];
+			if (value == null || value.getClass() != this.types[i])
+				return KEY_NOT_PACKABLE;
+		}
+		
+		// a value missing from the dictionary can not be held by any row
+		for (int i = 0; i < this.types.length; i++) 
+			if (this.dictionaries[i] != null 
+					&& this.dictionaries[i].lookup((String)values[i]) == StringDictionary.NO_CODE)
+				return KEY_UNKNOWN;
+		
+		return KEY_OK;
+	}
+	
+	private long packRowKey(EntityRow row)
+	{
+		if (this.types.length == 2)
+			return pack((int)this.rowBits(row, 0), (int)this.rowBits(row, 1));
+		
+		return this.rowBits(row, 0);
+	}
+	
+	private long packValuesKey(Object[] values)
+	{
+		if (this.types.length == 2)
+			return pack((int)this.valueBits(values[0], 0), (int)this.valueBits(values[1], 1));
+		
+		return this.valueBits(values[0], 0);
+	}
+	
+	private long rowBits(EntityRow row, int i)
+	{
+		EntityColumn column = this.columns[i];
+		
+		if (this.dictionaries[i] != null)
+		{
+			// columnar rows already hold the code
+			if (row.getSlot() >= 0)
+				return ((StringColumnVector)column.getTable().getColumnStore()
+						.getVector(column.getNumber())).getCode(row.getSlot());
+			
+			return this.dictionaries[i].lookup((String)row.getValue(column));
+		}
+		
+		return toBits(row.getValue(column));
+	}
+	
+	private long valueBits(Object value, int i)
+	{
+		if (this.dictionaries[i] != null)
+			return this.dictionaries[i].lookup((String)value);
+		
+		return toBits(value);
+	}
+	
+	private static long pack(int high, int low) {
+		return ((long)high << 32) | (low & 0xFFFFFFFFL);
+	}
+	
+	private static long toBits(Object value)
+	{
+		if (value instanceof Integer) return (Integer)value;
+		if (value instanceof Long) return (Long)value;
+		
+		// same equality semantic as Double.equals
+		return Double.doubleToLongBits((Double)value);
+	}
+	
+	private Object[] rowValues(EntityRow row)
+	{
+		Object[] values = new Object[this.columns.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = row.getValue(this.columns[i]);
+		
+		return values;
+	}
+	
+	private int getFallbackHeadSlot(Object[] values)
+	{
+		Integer headSlot = this.fallbackHeadSlotByKey.get(Arrays.asList(values));
+		return headSlot == null ? LongIntHashMap.NO_VALUE : headSlot;
+	}
+	
+	/**
+	 * Makes the slot the head of a new chain.
+	 * @return the chain length
+	 */
+	private int startChain(int slot)
+	{
+		this.tailSlots[slot] = slot;
+		this.chainLengths[slot] = 1;
+		return 1;
+	}
+	
+	/**
+	 * Appends the slot at the end of the chain starting at headSlot 
+	 * (so that rows keep their insertion order).
+	 * @return the chain length
+	 */
+	private int appendToChain(int headSlot, int slot)
+	{
+		int tailSlot = this.tailSlots[headSlot];
+		this.nextSlots[tailSlot] = slot;
+		this.previousSlots[slot] = tailSlot;
+		this.tailSlots[headSlot] = slot;
+		
+		return ++this.chainLengths[headSlot];
+	}
+	
+	/**
+	 * @return the new head of the chain, NO_SLOT if it is now empty
+	 */
+	private int unlinkFromChain(int headSlot, int slot)
+	{
+		int nextSlot = this.nextSlots[slot];
+		if (headSlot == slot)
+		{
+			if (nextSlot != NO_SLOT)
+			{
+				this.previousSlots[nextSlot] = NO_SLOT;
+				this.tailSlots[nextSlot] = this.tailSlots[headSlot];
+				this.chainLengths[nextSlot] = this.chainLengths[headSlot] - 1;
+			}
+			return nextSlot;
+		}
+		
+		int previousSlot = this.previousSlots[slot];
+		this.nextSlots[previousSlot] = nextSlot;
+		if (nextSlot != NO_SLOT)
+			this.previousSlots[nextSlot] = previousSlot;
+		else
+			this.tailSlots[headSlot] = previousSlot;
+		
+		this.chainLengths[headSlot]--;
+		return headSlot;
+	}
+	
+	private int allocateSlot()
+	{
+		if (this.freeSlot != NO_SLOT)
+		{
+			int slot = this.freeSlot;
+			this.freeSlot = this.nextSlots[slot];
+			return slot;
+		}
+		
+		if (this.slotCount == this.slotRows.length)
+		{
+			int newCapacity = this.slotRows.length * 2;
+			this.slotRows = Arrays.copyOf(this.slotRows, newCapacity);
+			this.slotKeys = Arrays.copyOf(this.slotKeys, newCapacity);
+			this.nextSlots = Arrays.copyOf(this.nextSlots, newCapacity);
+			this.previousSlots = Arrays.copyOf(this.previousSlots, newCapacity);
+			this.tailSlots = Arrays.copyOf(this.tailSlots, newCapacity);
+			this.chainLengths = Arrays.copyOf(this.chainLengths, newCapacity);
+			this.slotFallbackValues = Arrays.copyOf(this.slotFallbackValues, newCapacity);
+		}
+		
+		return this.slotCount++;
+	}
+}
@@ -0,0 +1,76 @@
+package sr.entityset;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Positions, in {@link EntityTable#rowList()}, of the rows selected by a 
+ * {@link ColumnSnapshot} filter, in ascending order. Only valid as long as
+ * no row is added to or removed from the table.
+ */
+public class Selection 
+{
+	private final EntityTable table;
+	private final int rowsVersion;
+	private final int[] positions;
+	private final int size;
+	
+	Selection(EntityTable table, int rowsVersion, int[] positions, int size)
+	{
+		this.table = table;
+		this.rowsVersion = rowsVersion;
+		this.positions = positions;
+		this.size = size;
+	}
+	
+	public int size() {
+		return this.size;
+	}
+	
+	public int getPosition(int index) 
+	{
+		if (index >= this.size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		
+		return this.positions[index];
+	}
+	
+	/**
+	 * The selected rows.
+	 * @throws IllegalStateException if rows were added or removed since the selection was made.
+	 */
+	public List<EntityRow> getRows()
+	{
+		if (this.rowsVersion != this.table.getRowsVersion())
+			throw new IllegalStateException("Rows of table " + this.table.getName() 
+					+ " were added or removed since the selection was made.");
+		
+		final List<EntityRow> rows = this.table.rowList();
+		return new AbstractList<EntityRow>() {
+			@Override
+			public EntityRow get(int index) {
+				return rows.get(getPosition(index));
+			}
+			
+			@Override
+			public int size() {
+				return Selection.this.size;
+			}
+		};
+	}
+	
+	EntityTable getTable() {
+		return this.table;
+	}
+	
+	int getRowsVersion() {
+		return this.rowsVersion;
+	}
+	
+	/**
+	 * The backing array, only the first {@link #size()} positions being selected.
+	 */
+	int[] getPositions() {
+		return this.positions;
+	}
+}
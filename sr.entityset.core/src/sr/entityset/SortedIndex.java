@@ -0,0 +1,171 @@
+package sr.entityset;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Index keeping its keys ordered, column by column (nulls first). On top of
+ * the exact-match lookups of {@link Index}, it answers range, prefix and 
+ * top-N/bottom-N queries without scanning or sorting the table. 
+ * 
+ * Range methods taking single values apply to the first indexed column, 
+ * the ones taking arrays accept the leading values of the key. As comparisons
+ * never match null, they do not return rows which first indexed value is null,
+ * even when unbounded. Only the methods going through the whole index 
+ * ({@link #findBottom(int)}, {@link #findTop(int)}, {@link #ascendingRows()} 
+ * and {@link #descendingRows()}) return them, as the lowest keys.
+ */
+public class SortedIndex extends Index
+{
+	public SortedIndex(EntityTable table, EntityColumn... columns) {
+		this(table, false, columns);
+	}
+	
+	public SortedIndex(EntityTable table, boolean unique, EntityColumn... columns)
+	{
+		super(table, unique, columns);
+		
+		for (EntityColumn column : columns) {
+			if (Comparable.class.isAssignableFrom(column.getType()) == false)
+				throw new IllegalArgumentException("Column " + column.getName() 
+						+ " can not be part of a sorted index as its type " 
+						+ column.getType().getName() + " is not Comparable.");
+		}
+	}
+	
+	/**
+	 * Rows which key starts with values between from and to (both included).
+	 * A null bound means unbounded, rows with a null value are never returned.
+	 */
+	public List<EntityRow> findBetween(Object from, Object to) {
+		return this.findRange(toBound(from), true, toBound(to), true);
+	}
+	
+	public List<EntityRow> findLessThan(Object value) {
+		return this.findRange(null, false, new Object[] { value }, false);
+	}
+	
+	public List<EntityRow> findLessOrEqual(Object value) {
+		return this.findRange(null, false, new Object[] { value }, true);
+	}
+	
+	public List<EntityRow> findGreaterThan(Object value) {
+		return this.findRange(new Object[] { value }, false, null, false);
+	}
+	
+	public List<EntityRow> findGreaterOrEqual(Object value) {
+		return this.findRange(new Object[] { value }, true, null, false);
+	}
+	
+	/**
+	 * Rows which leading key values are between the given bounds, ordered by key.
+	 * @param from leading values of the lower bound, null for unbounded (rows which
+	 * first value is null being left out).
+	 * @param to leading values of the upper bound, null for unbounded.
+	 */
+	public List<EntityRow> findRange(Object[] from, boolean fromInclusive, 
+			Object[] to, boolean toInclusive)
+	{
+		this.ensureComparable(from);
+		this.ensureComparable(to);
+		
+		return SortedIndexStore.collect(
+				this.getSortedStore().range(from, fromInclusive, to, toInclusive), 
+				Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Rows which key starts with the given values (which can be less than the 
+	 * number of indexed columns), ordered by key.
+	 */
+	public List<EntityRow> findByPrefix(Object... leadingValues) {
+		return this.findRange(leadingValues, true, leadingValues, true);
+	}
+	
+	/**
+	 * Rows which first column is a String starting with the given prefix.
+	 */
+	public List<EntityRow> findStartingWith(String prefix)
+	{
+		if (this.getColumns()[0].getType().equals(String.class) == false)
+			throw new IllegalStateException("First column of index must be a String column.");
+		
+		return this.getSortedStore().startingWith(prefix);
+	}
+	
+	/**
+	 * The n rows having the lowest keys, in ascending order, rows with null
+	 * values coming first.
+	 */
+	public List<EntityRow> findBottom(int n) {
+		return SortedIndexStore.collect(this.getSortedStore().all(), n);
+	}
+	
+	/**
+	 * The n rows having the highest keys, in descending order.
+	 */
+	public List<EntityRow> findTop(int n) {
+		return SortedIndexStore.collect(this.getSortedStore().all().descendingMap(), n);
+	}
+	
+	/**
+	 * Iterates over all rows in ascending key order, rows with null values 
+	 * coming first. The index must not change while iterating.
+	 */
+	public Iterable<EntityRow> ascendingRows() 
+	{
+		return new Iterable<EntityRow>() {
+			@Override public Iterator<EntityRow> iterator() {
+				return SortedIndexStore.rowIterator(getSortedStore().all());
+			}
+		};
+	}
+	
+	/**
+	 * Iterates over all rows in descending key order. The index must not
+	 * change while iterating.
+	 */
+	public Iterable<EntityRow> descendingRows() 
+	{
+		return new Iterable<EntityRow>() {
+			@Override public Iterator<EntityRow> iterator() {
+				return SortedIndexStore.rowIterator(getSortedStore().all().descendingMap());
+			}
+		};
+	}
+	
+	@Override
+	IndexStore createStore(int expectedSize) {
+		return new SortedIndexStore(this.getColumns(), expectedSize);
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private SortedIndexStore getSortedStore() {
+		return (SortedIndexStore)this.getStore();
+	}
+	
+	private void ensureComparable(Object[] leadingValues)
+	{
+		if (leadingValues == null) return;
+		
+		EntityColumn[] columns = this.getColumns();
+		if (leadingValues.length > columns.length)
+			throw new IllegalArgumentException("Expecting at most '" 
+					+ columns.length + "' values but received '" 
+					+ leadingValues.length + "'.");
+		
+		for (int i = 0; i < leadingValues.length; i++)
+		{
+			Object value = leadingValues[i];
+			if (value != null && value.getClass().equals(columns[i].getType()) == false)
+				throw new IllegalArgumentException("Value '" + value + "' of type " 
+						+ value.getClass().getName() + " can not be compared to column " 
+						+ columns[i].getName() + " of type " + columns[i].getType().getName());
+		}
+	}
+	
+	private static Object[] toBound(Object value) {
+		return value == null ? null : new Object[] { value };
+	}
+}
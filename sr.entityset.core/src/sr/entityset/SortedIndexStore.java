@@ -0,0 +1,302 @@
+package sr.entityset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Ordered {@link IndexStore} used by {@link SortedIndex}. Keys are compared
+ * column by column (nulls first), which allows range, prefix and ordered
+ * iteration without sorting the table.
+ */
+class SortedIndexStore extends IndexStore 
+{
+	/**
+	 * Sorts after every key which first value is null.
+	 */
+	private static final SortKey AFTER_NULLS = new SortKey(new Object[] { null }, SortKey.HIGHEST);
+	
+	private final TreeMap<SortKey, List<EntityRow>> rowsByKey;
+	private final Map<EntityRow, SortKey> keyByRow;
+	
+	SortedIndexStore(EntityColumn[] columns, int expectedSize) 
+	{
+		super(columns);
+		
+		this.rowsByKey = new TreeMap<SortKey, List<EntityRow>>();
+		this.keyByRow = new HashMap<EntityRow, SortKey>(Math.max(16, (int)(expectedSize / 0.75f) + 1));
+	}
+	
+	@Override
+	int add(EntityRow row) {
+		return this.addRow(this.buildKey(row), row);
+	}
+	
+	@Override
+	int update(EntityRow row)
+	{
+		SortKey oldKey = this.keyByRow.get(row);
+		if (oldKey == null) 
+			throw new RuntimeException("unexpected missing key for given row.");
+		
+		SortKey newKey = this.buildKey(row);
+		if (oldKey.compareTo(newKey) == 0)
+			return -1;
+		
+		this.remove(row);
+		return this.addRow(newKey, row);
+	}
+	
+	@Override
+	void remove(EntityRow row)
+	{
+		SortKey key = this.keyByRow.remove(row);
+		
+		List<EntityRow> rows = this.rowsByKey.get(key);
+		if (rows == null) throw new RuntimeException(
+				"Unexpected null row list for key " + key);
+		
+		rows.remove(row);
+		if (rows.isEmpty())
+			this.rowsByKey.remove(key);
+	}
+	
+	@Override
+	List<EntityRow> find(Object[] values)
+	{
+		if (this.hasComparableTypes(values) == false)
+			return Collections.emptyList();
+		
+		List<EntityRow> rows = this.rowsByKey.get(new SortKey(values, SortKey.EXACT));
+		
+		if (rows == null)
+			return Collections.emptyList();
+		
+		return rows;
+	}
+	
+	@Override
+	EntityRow findFirst(Object[] values)
+	{
+		if (this.hasComparableTypes(values) == false)
+			return null;
+		
+		List<EntityRow> rows = this.rowsByKey.get(new SortKey(values, SortKey.EXACT));
+		return rows == null ? null : rows.get(0);
+	}
+	
+	@Override
+	int count(Object[] values)
+	{
+		if (this.hasComparableTypes(values) == false)
+			return 0;
+		
+		List<EntityRow> rows = this.rowsByKey.get(new SortKey(values, SortKey.EXACT));
+		return rows == null ? 0 : rows.size();
+	}
+	
+	@Override
+	boolean containsDuplicates()
+	{
+		for (List<EntityRow> rows : this.rowsByKey.values())
+			if (rows.size() > 1)
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Rows which leading key values are between the given bounds. A null bound
+	 * means unbounded, a bound may have less values than the index has columns.
+	 * Comparisons never match null, so an unbounded range starts after the 
+	 * keys which first value is null.
+	 */
+	NavigableMap<SortKey, List<EntityRow>> range(
+			Object[] from, boolean fromInclusive, Object[] to, boolean toInclusive)
+	{
+		NavigableMap<SortKey, List<EntityRow>> range = this.rowsByKey;
+		
+		if (from != null)
+			range = range.tailMap(new SortKey(from, fromInclusive ? SortKey.LOWEST : SortKey.HIGHEST), true);
+		else
+			range = range.tailMap(AFTER_NULLS, false);
+		
+		if (to != null)
+			range = range.headMap(new SortKey(to, toInclusive ? SortKey.HIGHEST : SortKey.LOWEST), true);
+		
+		return range;
+	}
+	
+	/**
+	 * Rows which first column value is a String starting with the given prefix.
+	 */
+	List<EntityRow> startingWith(String prefix)
+	{
+		List<EntityRow> result = new ArrayList<EntityRow>();
+		
+		NavigableMap<SortKey, List<EntityRow>> tail = this.rowsByKey.tailMap(
+				new SortKey(new Object[] { prefix }, SortKey.LOWEST), true);
+		
+		for (Map.Entry<SortKey, List<EntityRow>> entry : tail.entrySet())
+		{
+			Object value = entry.getKey().getValue(0);
+			if (value == null || ((String)value).startsWith(prefix) == false)
+				break;
+			
+			result.addAll(entry.getValue());
+		}
+		
+		return result;
+	}
+	
+	NavigableMap<SortKey, List<EntityRow>> all() {
+		return this.rowsByKey;
+	}
+	
+	static List<EntityRow> collect(NavigableMap<SortKey, List<EntityRow>> range, int maxRowCount)
+	{
+		List<EntityRow> result = new ArrayList<EntityRow>();
+		
+		Iterator<EntityRow> it = rowIterator(range);
+		while (it.hasNext() && result.size() < maxRowCount)
+			result.add(it.next());
+		
+		return result;
+	}
+	
+	static Iterator<EntityRow> rowIterator(NavigableMap<SortKey, List<EntityRow>> range)
+	{
+		final Iterator<List<EntityRow>> listIterator = range.values().iterator();
+		
+		return new Iterator<EntityRow>() 
+		{
+			private Iterator<EntityRow> current = Collections.<EntityRow>emptyList().iterator();
+			
+			@Override
+			public boolean hasNext() 
+			{
+				while (this.current.hasNext() == false && listIterator.hasNext())
+					this.current = listIterator.next().iterator();
+				
+				return this.current.hasNext();
+			}
+			
+			@Override
+			public EntityRow next() 
+			{
+				this.hasNext();
+				return this.current.next();
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private int addRow(SortKey key, EntityRow row)
+	{
+		List<EntityRow> rows = this.rowsByKey.get(key);
+		if (rows == null)
+		{
+			rows = new ArrayList<EntityRow>(1);
+			this.rowsByKey.put(key, rows);
+		}
+		
+		this.keyByRow.put(row, key);
+		
+		rows.add(row);
+		return rows.size();
+	}
+	
+	/**
+	 * Values of another type than their column can not be compared, 
+	 * and so can never match.
+	 */
+	private boolean hasComparableTypes(Object[] values)
+	{
+		for (int i = 0; i < values.length; i++)
+			if (values[i] != null && values[i].getClass() != this.columns[i].getType())
+				return false;
+		
+		return true;
+	}
+	
+	private SortKey buildKey(EntityRow row)
+	{
+		Object[] keyValues = new Object[this.columns.length];
+		
+		for (int i = 0; i < this.columns.length; i++)
+			keyValues[i] = row.getValue(this.columns[i]);
+		
+		return new SortKey(keyValues, SortKey.EXACT);
+	}
+	
+	/**
+	 * Key compared column by column, nulls first. A key having less values than 
+	 * another one but equal on the common values sorts before it when its bound 
+	 * is LOWEST and after it when it is HIGHEST, which is how partial keys are
+	 * used as range bounds.
+	 */
+	static final class SortKey implements Comparable<SortKey>
+	{
+		static final int LOWEST = -1;
+		static final int EXACT = 0;
+		static final int HIGHEST = 1;
+		
+		private final Object[] values;
+		private final int bound;
+		
+		SortKey(Object[] values, int bound)
+		{
+			this.values = values;
+			this.bound = bound;
+		}
+		
+		Object getValue(int i) {
+			return this.values[i];
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		@Override
+		public int compareTo(SortKey other)
+		{
+			int commonLength = Math.min(this.values.length, other.values.length);
+			
+			for (int i = 0; i < commonLength; i++)
+			{
+				Object v1 = this.values[i];
+				Object v2 = other.values[i];
+				
+				if (v1 == v2) continue;
+				if (v1 == null) return -1;
+				if (v2 == null) return 1;
+				
+				int result = ((Comparable)v1).compareTo(v2);
+				if (result != 0) return result;
+			}
+			
+			if (this.values.length == other.values.length)
+				return Integer.compare(this.bound, other.bound);
+			
+			if (this.values.length < other.values.length)
+				return this.bound == HIGHEST ? 1 : -1;
+			else
+				return other.bound == HIGHEST ? -1 : 1;
+		}
+		
+		@Override
+		public String toString() {
+			return Arrays.toString(this.values);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package sr.entityset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import sr.entityset.constraints.ConstraintError;
+import sr.entityset.constraints.ConstraintErrorCollector;
+import sr.entityset.constraints.ConstraintHelper;
+
+/**
+ * Outcome of a validation collecting all violations instead of failing on the
+ * first one (see {@link EntityTable#endLoadData(ValidationReport, java.util.concurrent.ForkJoinPool)}
+ * and {@link BulkLoader#finish(ValidationReport, java.util.concurrent.ForkJoinPool)}).
+ *
+ * Violations are grouped by constraint. Each group counts all its violations
+ * but only keeps the first ones as samples, with their row position and key.
+ */
+public class ValidationReport
+{
+	/**
+	 * Name of the group holding the rows rejected by a bulk load because of
+	 * null or wrongly typed values.
+	 */
+	public static final String REJECTED_ROWS = "RejectedRows";
+
+	public static final int DEFAULT_MAX_SAMPLES = 20;
+
+	private final int maxSamplesPerConstraint;
+	private boolean removeInvalidRows = false;
+	private int removedRowCount = 0;
+	private final Map<String, ConstraintViolations> violationsByConstraint =
+			new LinkedHashMap<String, ConstraintViolations>();
+
+	public ValidationReport() {
+		this(DEFAULT_MAX_SAMPLES);
+	}
+
+	public ValidationReport(int maxSamplesPerConstraint)
+	{
+		if (maxSamplesPerConstraint < 0)
+			throw new IllegalArgumentException("maxSamplesPerConstraint can not be negative");
+
+		this.maxSamplesPerConstraint = maxSamplesPerConstraint;
+	}
+
+	public int getMaxSamplesPerConstraint() {
+		return maxSamplesPerConstraint;
+	}
+
+	public boolean isRemoveInvalidRows() {
+		return removeInvalidRows;
+	}
+
+	/**
+	 * When set, the rows violating a constraint are removed from the table once
+	 * validated, so that loading can go on with the valid rows only. Removal does
+	 * not cascade: rows of other tables referencing a removed row are not checked.
+	 */
+	public void setRemoveInvalidRows(boolean removeInvalidRows) {
+		this.removeInvalidRows = removeInvalidRows;
+	}
+
+	public boolean hasViolations() {
+		return this.violationsByConstraint.isEmpty() == false;
+	}
+
+	/**
+	 * Total number of violations, samples not kept included.
+	 */
+	public int getViolationCount()
+	{
+		int count = 0;
+		for (ConstraintViolations violations : this.violationsByConstraint.values())
+			count += violations.getCount();
+
+		return count;
+	}
+
+	/**
+	 * Violation groups, in the order constraints were validated.
+	 */
+	public Collection<ConstraintViolations> getViolations() {
+		return this.violationsByConstraint.values();
+	}
+
+	/**
+	 * @return the violations of the given constraint, or null if it was not violated.
+	 */
+	public ConstraintViolations getViolations(String constraintName) {
+		return this.violationsByConstraint.get(constraintName);
+	}
+
+	/**
+	 * Errors of all the kept samples, group after group.
+	 */
+	public List<ConstraintError> getErrors()
+	{
+		List<ConstraintError> errors = new ArrayList<ConstraintError>();
+		for (ConstraintViolations violations : this.violationsByConstraint.values())
+			for (Violation violation : violations.getSamples())
+				errors.add(violation.getError());
+
+		return errors;
+	}
+
+	/**
+	 * Number of rows removed from the table because of {@link #setRemoveInvalidRows(boolean)}.
+	 */
+	public int getRemovedRowCount() {
+		return removedRowCount;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.getViolationCount()).append(" violation(s)");
+		if (this.removedRowCount > 0)
+			sb.append(", ").append(this.removedRowCount).append(" row(s) removed");
+
+		for (ConstraintViolations violations : this.violationsByConstraint.values())
+		{
+			sb.append("\n").append(violations.getConstraintName())
+				.append(": ").append(violations.getCount());
+
+			for (Violation violation : violations.getSamples())
+				sb.append("\n  ").append(violation.getError().getMessage());
+
+			if (violations.getCount() > violations.getSamples().size())
+				sb.append("\n  ...");
+		}
+
+		return sb.toString();
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Number of samples the given constraint can still keep.
+	 */
+	int getRemainingSamples(String constraintName)
+	{
+		ConstraintViolations violations = this.violationsByConstraint.get(constraintName);
+		if (violations == null)
+			return this.maxSamplesPerConstraint;
+
+		return this.maxSamplesPerConstraint - violations.samples.size();
+	}
+
+	/**
+	 * Adds the collected errors, the violations they could not keep being only counted.
+	 */
+	void addErrors(String constraintName, ConstraintErrorCollector errors)
+	{
+		for (ConstraintError error : errors.getErrors())
+		{
+			Object[] key = null;
+			if (error.getRow() != null)
+			{
+				EntityTable table = error.getRow().getParentTable();
+				if (table.getPrimaryKeyColumns().isEmpty() == false)
+					key = ConstraintHelper.buildColumnFilteredArray(
+							table.getPrimaryKeyColumns(), error.getRow(), null, null);
+			}
+
+			this.addError(constraintName, error, key);
+		}
+
+		if (errors.getOverflowCount() > 0)
+			this.getOrCreateViolations(constraintName).count += errors.getOverflowCount();
+	}
+
+	void addError(String constraintName, ConstraintError error, Object[] key)
+	{
+		ConstraintViolations violations = this.getOrCreateViolations(constraintName);
+
+		violations.count++;
+		if (violations.samples.size() < this.maxSamplesPerConstraint)
+			violations.samples.add(new Violation(error, key));
+	}
+
+	void addRemovedRows(int rowCount) {
+		this.removedRowCount += rowCount;
+	}
+
+	private ConstraintViolations getOrCreateViolations(String constraintName)
+	{
+		ConstraintViolations violations = this.violationsByConstraint.get(constraintName);
+		if (violations == null)
+		{
+			violations = new ConstraintViolations(constraintName);
+			this.violationsByConstraint.put(constraintName, violations);
+		}
+
+		return violations;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	public static class ConstraintViolations
+	{
+		private final String constraintName;
+		private final List<Violation> samples = new ArrayList<Violation>();
+		private int count = 0;
+
+		ConstraintViolations(String constraintName) {
+			this.constraintName = constraintName;
+		}
+
+		public String getConstraintName() {
+			return constraintName;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public List<Violation> getSamples() {
+			return samples;
+		}
+	}
+
+	public static class Violation
+	{
+		private final ConstraintError error;
+		private final Object[] key;
+
+		Violation(ConstraintError error, Object[] key)
+		{
+			this.error = error;
+			this.key = key;
+		}
+
+		public ConstraintError getError() {
+			return error;
+		}
+
+		public int getRowIndex() {
+			return error.getRowIndex();
+		}
+
+		/**
+		 * Primary key values of the offending row, null if the table has no primary key.
+		 */
+		public Object[] getKey() {
+			return key;
+		}
+
+		@Override
+		public String toString() {
+			return "#" + this.getRowIndex()
+					+ (this.key == null ? "" : " (" + StringUtils.join(this.key, ", ") + ")")
+					+ ": " + this.error.getMessage();
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package sr.entityset.codegen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.schema.SchemaBuilder;
+
+/**
+ * Generates typed table and row classes (e.g. BusTable and BusRow) from table
+ * definitions, typically built from a schema by {@link SchemaBuilder}:
+ * <ul>
+ * <li>the table class declares the columns, creates typed rows, and offers
+ * typed methods to add rows, find them by primary key and list them;</li>
+ * <li>the row class has one getter and setter per column. Non-null Integer,
+ * Long, Double and Boolean columns use primitive types and are read without
+ * boxing (see {@link sr.entityset.EntityRow#getInt(int)}), the column number
+ * being a constant, and throw InvalidNullValueException on null values. 
+ * Setters do not check the type of the values.</li>
+ * </ul>
+ * Can be run at build time: <code>EntityClassGenerator schemaFile packageName outputDirectory</code>.
+ */
+public class EntityClassGenerator
+{
+	private final String packageName;
+
+	public EntityClassGenerator(String packageName)
+	{
+		if (packageName == null) throw new NullArgumentException("packageName");
+		this.packageName = packageName;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: EntityClassGenerator <schema file> <package name> <output directory>");
+			System.exit(1);
+		}
+
+		List<EntityTable> tables = SchemaBuilder.fromFile(new File(args[0])).buildTables();
+		new EntityClassGenerator(args[1]).generate(tables, new File(args[2]));
+	}
+
+	/**
+	 * Writes the table and row classes of each table into the package directory
+	 * under the given source directory.
+	 */
+	public void generate(Collection<EntityTable> tables, File sourceDirectory) throws IOException
+	{
+		File packageDirectory = new File(sourceDirectory, this.packageName.replace('.', File.separatorChar));
+		if (packageDirectory.isDirectory() == false && packageDirectory.mkdirs() == false)
+			throw new IOException("Can not create directory " + packageDirectory);
+
+		for (EntityTable table : tables)
+		{
+			String baseName = toClassName(table.getName());
+			write(new File(packageDirectory, baseName + "Table.java"), this.generateTableClass(table));
+			write(new File(packageDirectory, baseName + "Row.java"), this.generateRowClass(table));
+		}
+	}
+
+	public String generateTableClass(EntityTable table)
+	{
+		String baseName = toClassName(table.getName());
+		String tableClass = baseName + "Table";
+		String rowClass = baseName + "Row";
+		List<EntityColumn> columns = table.getColumns();
+		boolean hasPrimaryKey = table.getPrimaryKeyColumns().isEmpty() == false;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(this.packageName).append(";\n\n");
+		sb.append("import java.util.List;\n\n");
+		sb.append("import sr.entityset.EntityColumn;\n");
+		sb.append("import sr.entityset.EntityRow;\n");
+		sb.append("import sr.entityset.EntityTable;\n");
+		sb.append("import sr.entityset.RowState;\n");
+		sb.append("import sr.entityset.exceptions.InvalidNullValueException;\n");
+		sb.append("import sr.entityset.exceptions.WrongTypeException;\n\n");
+		sb.append("/**\n * Table '").append(table.getName())
+			.append("', generated by EntityClassGenerator: do not modify.\n */\n");
+		sb.append("public class ").append(tableClass).append(" extends EntityTable\n{\n");
+
+		for (EntityColumn column : columns)
+			sb.append("\tpublic static final int ").append(toConstantName(column.getName()))
+				.append("_COLUMN = ").append(column.getNumber()).append(";\n");
+		sb.append("\n");
+
+		for (EntityColumn column : columns)
+			sb.append("\tprivate final EntityColumn ").append(toFieldName(column.getName())).append("Column;\n");
+		sb.append("\n");
+
+		sb.append("\tpublic ").append(tableClass).append("()\n\t{\n");
+		sb.append("\t\tsuper(\"").append(escape(table.getName())).append("\");\n");
+		for (EntityColumn column : columns)
+		{
+			sb.append("\t\tthis.").append(toFieldName(column.getName())).append("Column = this.");
+			if (table.getPrimaryKeyColumns().contains(column))
+				sb.append("addPrimaryKeyColumn(\"").append(escape(column.getName())).append("\", ")
+					.append(toTypeName(column.getType())).append(".class);\n");
+			else
+				sb.append("addColumn(\"").append(escape(column.getName())).append("\", ")
+					.append(toTypeName(column.getType())).append(".class, ")
+					.append(column.getAllowNull()).append(");\n");
+		}
+		sb.append("\t}\n\n");
+
+		for (EntityColumn column : columns)
+		{
+			String field = toFieldName(column.getName());
+			sb.append("\tpublic EntityColumn get").append(toClassName(column.getName()))
+				.append("Column() {\n\t\treturn this.").append(field).append("Column;\n\t}\n\n");
+		}
+
+		sb.append("\t@Override\n\tpublic ").append(rowClass).append(" newRow() {\n");
+		sb.append("\t\treturn new ").append(rowClass).append("(this);\n\t}\n\n");
+
+		sb.append("\t@SuppressWarnings(\"unchecked\")\n");
+		sb.append("\tpublic List<").append(rowClass).append("> ").append(toFieldName(baseName))
+			.append("Rows() {\n\t\treturn (List<").append(rowClass).append(">)(List<?>)this.rowList();\n\t}\n\n");
+
+		sb.append("\tpublic ").append(rowClass).append(" add").append(rowClass).append("(");
+		appendParameters(sb, columns);
+		sb.append(")\n\t\t\tthrows InvalidNullValueException, WrongTypeException\n\t{\n");
+		sb.append("\t\treturn (").append(rowClass).append(")this.addRow(");
+		appendArguments(sb, columns);
+		sb.append(");\n\t}\n\n");
+
+		if (hasPrimaryKey)
+		{
+			Collection<EntityColumn> keyColumns = table.getPrimaryKeyColumns();
+			sb.append("\tpublic ").append(rowClass).append(" findBy");
+			for (EntityColumn column : keyColumns)
+				sb.append(toClassName(column.getName()));
+			sb.append("(");
+			appendParameters(sb, keyColumns);
+			sb.append(") {\n\t\treturn (").append(rowClass).append(")this.findByPrimaryKey(new Object[] { ");
+			appendArguments(sb, keyColumns);
+			sb.append(" });\n\t}\n\n");
+		}
+
+		sb.append("\t@Override\n\tprotected EntityRow createRow(Object[] values, RowState state) {\n");
+		sb.append("\t\treturn new ").append(rowClass).append("(this, values, state);\n\t}\n");
+		sb.append("}\n");
+
+		return sb.toString();
+	}
+
+	public String generateRowClass(EntityTable table)
+	{
+		String baseName = toClassName(table.getName());
+		String tableClass = baseName + "Table";
+		String rowClass = baseName + "Row";
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(this.packageName).append(";\n\n");
+		sb.append("import sr.entityset.EntityRow;\n");
+		sb.append("import sr.entityset.RowState;\n");
+		sb.append("import sr.entityset.exceptions.InvalidNullValueException;\n");
+		sb.append("import sr.entityset.exceptions.RemovedRowAccessException;\n\n");
+		sb.append("/**\n * Row of table '").append(table.getName())
+			.append("', generated by EntityClassGenerator: do not modify.\n */\n");
+		sb.append("public class ").append(rowClass).append(" extends EntityRow\n{\n");
+
+		sb.append("\tpublic ").append(rowClass).append("(").append(tableClass)
+			.append(" parentTable) {\n\t\tsuper(parentTable);\n\t}\n\n");
+		sb.append("\t").append(rowClass).append("(").append(tableClass)
+			.append(" parentTable, Object[] data, RowState state) {\n\t\tsuper(parentTable, data, state);\n\t}\n\n");
+
+		sb.append("\tpublic ").append(tableClass).append(" get").append(tableClass)
+			.append("() {\n\t\treturn (").append(tableClass).append(")this.getParentTable();\n\t}\n");
+
+		for (EntityColumn column : table.getColumns())
+		{
+			String property = toPropertyName(column.getName());
+			String constant = tableClass + "." + toConstantName(column.getName()) + "_COLUMN";
+			String primitiveType = primitiveTypeOf(column);
+			String type = primitiveType != null ? primitiveType : toTypeName(column.getType());
+
+			sb.append("\n\tpublic ").append(type).append("boolean".equals(primitiveType) ? " is" : " get")
+				.append(property).append("()");
+			if (primitiveType != null)
+				sb.append(" throws InvalidNullValueException {\n\t\treturn this.get")
+					.append(toClassName(primitiveType)).append("(").append(constant).append(");\n\t}\n");
+			else
+				sb.append(" {\n\t\treturn (").append(type).append(")this.getValue(").append(constant).append(");\n\t}\n");
+
+			sb.append("\n\tpublic void set").append(property).append("(").append(type).append(" value)\n");
+			sb.append("\t\t\tthrows InvalidNullValueException, RemovedRowAccessException\n\t{\n");
+			sb.append("\t\tthis.setTypedValue(this.get").append(tableClass).append("().get")
+				.append(toClassName(column.getName())).append("Column(), ");
+			if (primitiveType != null)
+				sb.append(toTypeName(column.getType())).append(".valueOf(value)");
+			else
+				sb.append("value");
+			sb.append(");\n\t}\n");
+		}
+
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static void appendParameters(StringBuilder sb, Collection<EntityColumn> columns)
+	{
+		boolean first = true;
+		for (EntityColumn column : columns)
+		{
+			if (first == false) sb.append(", ");
+			first = false;
+
+			String primitiveType = primitiveTypeOf(column);
+			sb.append(primitiveType != null ? primitiveType : toTypeName(column.getType()))
+				.append(" ").append(toFieldName(column.getName()));
+		}
+	}
+
+	private static void appendArguments(StringBuilder sb, Collection<EntityColumn> columns)
+	{
+		boolean first = true;
+		for (EntityColumn column : columns)
+		{
+			if (first == false) sb.append(", ");
+			first = false;
+
+			// primitive arguments are boxed into the column type
+			if (primitiveTypeOf(column) != null)
+				sb.append(toTypeName(column.getType())).append(".valueOf(")
+					.append(toFieldName(column.getName())).append(")");
+			else
+				sb.append(toFieldName(column.getName()));
+		}
+	}
+
+	/**
+	 * Primitive type used for the values of the column, null if they are kept boxed
+	 * (other types or columns allowing null).
+	 */
+	private static String primitiveTypeOf(EntityColumn column)
+	{
+		if (column.getAllowNull() && column.getTable().getPrimaryKeyColumns().contains(column) == false)
+			return null;
+
+		Class<?> type = column.getType();
+		if (type == Integer.class) return "int";
+		if (type == Long.class) return "long";
+		if (type == Double.class) return "double";
+		if (type == Boolean.class) return "boolean";
+
+		return null;
+	}
+
+	private static String toTypeName(Class<?> type)
+	{
+		if (type.getPackage() != null && type.getPackage().getName().equals("java.lang"))
+			return type.getSimpleName();
+
+		return type.getCanonicalName();
+	}
+
+	/**
+	 * "BusId", "bus_id" or "BUS_ID" give "BusId".
+	 */
+	static String toClassName(String name)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (String part : name.split("[^A-Za-z0-9]+"))
+		{
+			if (part.isEmpty()) continue;
+
+			boolean allUpperCase = part.equals(part.toUpperCase());
+			sb.append(Character.toUpperCase(part.charAt(0)))
+				.append(allUpperCase ? part.substring(1).toLowerCase() : part.substring(1));
+		}
+
+		if (sb.length() == 0 || Character.isDigit(sb.charAt(0)))
+			sb.insert(0, '_');
+
+		return sb.toString();
+	}
+
+	/**
+	 * Name of the row accessors of a column, suffixed when clashing with a method of EntityRow
+	 * (e.g. a "State" column gives getStateValue).
+	 */
+	private static String toPropertyName(String name)
+	{
+		String property = toClassName(name);
+		for (Method method : EntityRow.class.getMethods())
+		{
+			String methodName = method.getName();
+			if (methodName.equals("get" + property) || methodName.equals("is" + property)
+					|| methodName.equals("set" + property))
+				return property + "Value";
+		}
+		return property;
+	}
+
+	private static String toFieldName(String name)
+	{
+		String className = toClassName(name);
+		return Character.toLowerCase(className.charAt(0)) + className.substring(1);
+	}
+
+	/**
+	 * "BusId" or "bus_id" give "BUS_ID".
+	 */
+	private static String toConstantName(String name)
+	{
+		String className = toClassName(name);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < className.length(); i++)
+		{
+			char c = className.charAt(i);
+			if (i > 0 && Character.isUpperCase(c))
+				sb.append('_');
+			sb.append(Character.toUpperCase(c));
+		}
+		return sb.toString();
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static void write(File file, String content) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
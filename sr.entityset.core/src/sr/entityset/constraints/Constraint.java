@@ -1,5 +1,7 @@
 package sr.entityset.constraints;
 
+import java.util.List;
+
 import sr.entityset.EntityColumn;
 import sr.entityset.EntityRow;
 
@@ -17,6 +19,49 @@ public abstract class Constraint
 		return validatePropositionOnRowAdding(existingRow.getObjectArray());
 	}
 	
+	/**
+	 * Validates the rows between fromIndex (included) and toIndex (excluded) of 
+	 * the given list, all of them being already part of the table, and returns 
+	 * every error found (each one referencing its row).
+	 */
+	public List<ConstraintError> validateExistingRows(
+			List<EntityRow> rows, int fromIndex, int toIndex)
+	{
+		ConstraintErrorCollector errors = new ConstraintErrorCollector();
+		this.validateExistingRows(rows, fromIndex, toIndex, errors);
+		
+		return errors.getErrors();
+	}
+	
+	/**
+	 * Same as {@link #validateExistingRows(List, int, int)}, errors going to the
+	 * given collector. Once it is full, violations are only counted.
+	 * Implementations may rely on indexes being built once for the whole range.
+	 */
+	public void validateExistingRows(List<EntityRow> rows, int fromIndex, int toIndex, 
+			ConstraintErrorCollector errors)
+	{
+		for (int i = fromIndex; i < toIndex && errors.isDone() == false; i++)
+		{
+			EntityRow row = rows.get(i);
+			ConstraintError error = this.validateExistingRow(row);
+			if (error == null) continue;
+			
+			if (errors.isFull())
+				errors.addOverflow(row);
+			else
+				errors.addError(new ConstraintError(error.getMessage(), row, i));
+		}
+	}
+	
+	/**
+	 * Called before {@link #validateExistingRows(List, int, int)} runs concurrently 
+	 * on several partitions of the rows: implementations must build here whatever 
+	 * they share (e.g. indexes), then only read it while validating.
+	 */
+	public void prepareForConcurrentValidation() {
+	}
+	
 	public abstract ConstraintError validatePropositionOnRowAdding(
 			Object[] proposedRowValueArray);
 	
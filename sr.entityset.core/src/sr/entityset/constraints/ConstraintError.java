@@ -1,16 +1,42 @@
 package sr.entityset.constraints;
 
+import sr.entityset.EntityRow;
+
 public class ConstraintError {
 
 	private String message;
+	private EntityRow row;
+	private int rowIndex;
 
 	public ConstraintError(String message)
+	{
+		this(message, null, -1);
+	}
+	
+	public ConstraintError(String message, EntityRow row, int rowIndex)
 	{
 		this.message = message;
+		this.row = row;
+		this.rowIndex = rowIndex;
 	}
 
 	public String getMessage() {
 		return message;
 	}
 	
+	/**
+	 * The offending row when the error comes from validating existing rows, else null.
+	 */
+	public EntityRow getRow() {
+		return row;
+	}
+	
+	/**
+	 * Position of the offending row among the table rows (or among the submitted
+	 * rows for a row rejected by a bulk load), -1 if unknown.
+	 */
+	public int getRowIndex() {
+		return rowIndex;
+	}
+	
 }
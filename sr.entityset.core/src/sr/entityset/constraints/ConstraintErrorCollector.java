@@ -0,0 +1,141 @@
+package sr.entityset.constraints;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sr.entityset.EntityRow;
+
+/**
+ * Errors found by {@link Constraint#validateExistingRows(List, int, int, ConstraintErrorCollector)}.
+ * Only the first errors are kept, up to a maximum: past it, violations are 
+ * counted without any error (nor message) being created, their rows being 
+ * kept only if asked for (e.g. to remove them), or validation stops at once.
+ */
+public class ConstraintErrorCollector
+{
+	private final int maxErrors;
+	private final List<ConstraintError> errors = new ArrayList<ConstraintError>();
+	private final List<EntityRow> overflowRows;
+	private final boolean stopWhenFull;
+	private int overflowCount = 0;
+
+	public ConstraintErrorCollector() {
+		this(Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * @param maxErrors number of errors to keep.
+	 * @param keepOverflowRows whether the rows of the violations past the maximum are kept.
+	 */
+	public ConstraintErrorCollector(int maxErrors, boolean keepOverflowRows) {
+		this(maxErrors, keepOverflowRows, false);
+	}
+
+	/**
+	 * @param stopWhenFull whether validation stops once the maximum is reached,
+	 * further violations being neither counted nor kept.
+	 */
+	public ConstraintErrorCollector(int maxErrors, boolean keepOverflowRows, boolean stopWhenFull)
+	{
+		if (maxErrors < 0)
+			throw new IllegalArgumentException("maxErrors can not be negative");
+
+		this.maxErrors = maxErrors;
+		this.overflowRows = keepOverflowRows ? new ArrayList<EntityRow>() : null;
+		this.stopWhenFull = stopWhenFull;
+	}
+
+	/**
+	 * Collector keeping the first error only and stopping validation there.
+	 */
+	public static ConstraintErrorCollector firstErrorOnly() {
+		return new ConstraintErrorCollector(1, false, true);
+	}
+
+	/**
+	 * Empty collector with the same settings, e.g. for a partition of the rows.
+	 */
+	public ConstraintErrorCollector createEmpty() {
+		return new ConstraintErrorCollector(this.maxErrors, this.overflowRows != null, this.stopWhenFull);
+	}
+
+	/**
+	 * Whether no more error is kept, further violations having to be 
+	 * reported through {@link #addOverflow(EntityRow)}.
+	 */
+	public boolean isFull() {
+		return this.errors.size() >= this.maxErrors;
+	}
+
+	/**
+	 * Whether validation can stop, no further violation being of interest.
+	 */
+	public boolean isDone() {
+		return this.stopWhenFull && this.isFull();
+	}
+
+	public void addError(ConstraintError error)
+	{
+		if (this.isFull())
+			this.addOverflow(error.getRow());
+		else
+			this.errors.add(error);
+	}
+
+	public void addOverflow(EntityRow row)
+	{
+		if (this.stopWhenFull) return;
+		
+		this.overflowCount++;
+		if (this.overflowRows != null)
+			this.overflowRows.add(row);
+	}
+
+	/**
+	 * Appends the violations collected by another collector, e.g. the one of
+	 * the next partition of the rows.
+	 */
+	public void addAll(ConstraintErrorCollector other)
+	{
+		if (this.isDone()) return;
+		
+		for (ConstraintError error : other.errors)
+			this.addError(error);
+
+		this.overflowCount += other.overflowCount;
+		if (this.overflowRows != null && other.overflowRows != null)
+			this.overflowRows.addAll(other.overflowRows);
+	}
+
+	/**
+	 * The kept errors, in row order.
+	 */
+	public List<ConstraintError> getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Number of violations past the maximum, only counted.
+	 */
+	public int getOverflowCount() {
+		return this.overflowCount;
+	}
+
+	/**
+	 * Number of violations, kept as errors or not.
+	 */
+	public int getViolationCount() {
+		return this.errors.size() + this.overflowCount;
+	}
+
+	/**
+	 * Rows of the violations past the maximum, empty unless asked for.
+	 */
+	public List<EntityRow> getOverflowRows()
+	{
+		if (this.overflowRows == null)
+			return new ArrayList<EntityRow>();
+
+		return this.overflowRows;
+	}
+}
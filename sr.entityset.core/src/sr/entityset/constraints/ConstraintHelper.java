@@ -3,6 +3,7 @@ package sr.entityset.constraints;
 import java.util.Collection;
 
 import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
 
 public class ConstraintHelper 
 {
@@ -31,4 +32,24 @@ public class ConstraintHelper
 			
 		return retArray;
 	}
+	
+	public static Object[] buildColumnFilteredArray(
+			Collection<EntityColumn> columns, 
+			EntityRow row, 
+			EntityColumn specialColumn, 
+			Object specialValue)
+	{
+		int i = 0;
+		Object[] retArray = new Object[columns.size()];
+		
+		for(EntityColumn col : columns)
+		{
+			if (col == specialColumn)
+				retArray[i++] = specialValue;
+			else
+				retArray[i++] = row.getValue(col);
+		}
+			
+		return retArray;
+	}
 }
@@ -57,6 +57,48 @@ public class ForeignKeyChildConstraint extends Constraint
 		return calculatePotentialViolation(childColumnsValueArray);
 	}
 
+	@Override
+	public ConstraintError validateExistingRow(EntityRow existingRow) 
+	{
+		Object[] childColumnsValueArray = ConstraintHelper.buildColumnFilteredArray(
+				this.childColumns, existingRow, null, null);
+		
+		return calculatePotentialViolation(childColumnsValueArray);
+	}
+
+	/**
+	 * Hash join of the rows against the parent table index, which is built 
+	 * once and probed with a single reused key array.
+	 */
+	@Override
+	public void validateExistingRows(List<EntityRow> rows, int fromIndex, int toIndex, 
+			ConstraintErrorCollector errors) 
+	{
+		Object[] childColumnsValueArray = new Object[this.childColumns.size()];
+		
+		for (int i = fromIndex; i < toIndex && errors.isDone() == false; i++)
+		{
+			EntityRow row = rows.get(i);
+			
+			int j = 0;
+			for (EntityColumn childColumn : this.childColumns)
+				childColumnsValueArray[j++] = row.getValue(childColumn);
+			
+			if (isMissingParent(childColumnsValueArray) == false) continue;
+			
+			if (errors.isFull())
+				errors.addOverflow(row);
+			else
+				errors.addError(new ConstraintError(
+						calculatePotentialViolation(childColumnsValueArray).getMessage(), row, i));
+		}
+	}
+
+	@Override
+	public void prepareForConcurrentValidation() {
+		this.getParentTableIndex().ensureBuilt();
+	}
+
 	@Override
 	public ConstraintError validatePropositionOnRowModifiying(
 			EntityRow row, 
@@ -67,7 +109,7 @@ public class ForeignKeyChildConstraint extends Constraint
 		
 		Object[] childColumnsValueArray = ConstraintHelper.buildColumnFilteredArray(
 				this.childColumns, 
-				row.getObjectArray(), 
+				row, 
 				proposedValueColumn, 
 				proposedValue);
 		
@@ -83,12 +125,17 @@ public class ForeignKeyChildConstraint extends Constraint
 		return this.parentTable;
 	}
 
+	private boolean isMissingParent(Object[] childColumnsValueArray)
+	{
+		return this.getParentTableIndex().countRows(childColumnsValueArray) == 0
+				&& hasAtLeastOneNull(childColumnsValueArray) == false;
+	}
+	
 	private ConstraintError calculatePotentialViolation(Object[] childColumnsValueArray) 
 	{
 		Index index = this.getParentTableIndex();
 		
-		List<EntityRow> parentRows = index.findRows(childColumnsValueArray);
-		if (parentRows.size() == 0)
+		if (index.countRows(childColumnsValueArray) == 0)
 		{
 			if (hasAtLeastOneNull(childColumnsValueArray)) 
 				return null;
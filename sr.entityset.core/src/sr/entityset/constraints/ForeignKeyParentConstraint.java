@@ -64,18 +64,18 @@ public class ForeignKeyParentConstraint extends Constraint
 		Object[] preChangeFullRowValueArray = ConstraintHelper.
 				buildColumnFilteredArray(
 					this.parentColumns, 
-					parentRow.getObjectArray(), 
+					parentRow, 
 					null, 
 					null);
 		
 		boolean hasChildRowsDependantOnInitialValue = this.getChildTableIndex()
-				.findRows(preChangeFullRowValueArray).size() > 0;
+				.countRows(preChangeFullRowValueArray) > 0;
 
 		if (hasChildRowsDependantOnInitialValue == false)
 			return null;
 		
 		boolean otherSimilarParentRowsExist = this.getParentTableIndex()
-				.findRows(preChangeFullRowValueArray).size() > 1;
+				.countRows(preChangeFullRowValueArray) > 1;
 				
 		if (otherSimilarParentRowsExist)
 			return null;
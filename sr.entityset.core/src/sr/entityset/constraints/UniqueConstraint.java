@@ -45,74 +45,111 @@ public class UniqueConstraint extends Constraint
 	public ConstraintError validatePropositionOnRowAdding(
 			Object[] proposedRowValueArray) 
 	{
-		return verifyRow(proposedRowValueArray, null);
+		Object[] indexedColumnValueArray = ConstraintHelper.buildColumnFilteredArray(
+				this.columns, proposedRowValueArray);
+		
+		return verifyRow(indexedColumnValueArray, null);
 	}
 	
 	@Override
 	public ConstraintError validateExistingRow(EntityRow existingRow) 
 	{
-		return verifyRow(existingRow.getObjectArray(), existingRow);
+		Object[] indexedColumnValueArray = ConstraintHelper.buildColumnFilteredArray(
+				this.columns, existingRow, null, null);
+		
+		return verifyRow(indexedColumnValueArray, existingRow);
 	}
 
+	/**
+	 * Probes the index once per row, reusing a single key array. As indexes keep
+	 * rows in insertion order, the first loaded row of a duplicated key is 
+	 * considered valid and the following ones are reported.
+	 */
 	@Override
-	public ConstraintError validatePropositionOnRowModifiying(
-			EntityRow modifiyingRow, 
-			Object proposedValue, EntityColumn proposedValueColumn) 
+	public void validateExistingRows(List<EntityRow> rows, int fromIndex, int toIndex, 
+			ConstraintErrorCollector errors) 
 	{
+		// a row can only be reported when another one shares its key
+		if (this.getAssociatedIndex().containsDuplicates() == false)
+			return;
+		
 		Object[] indexedColumnValueArray = new Object[this.columns.size()];
-		Object[] initialValueArray = modifiyingRow.getObjectArray();
 		
-		int i = 0;
-		boolean hasNull = false;
-		for(EntityColumn curPkColumn : this.columns)
+		for (int i = fromIndex; i < toIndex && errors.isDone() == false; i++)
 		{
-			Object value;
-			if (proposedValueColumn == curPkColumn)
-				value = proposedValue;
-			else
-				value = initialValueArray[curPkColumn.getNumber()];
+			EntityRow row = rows.get(i);
+			fillColumnValues(row, indexedColumnValueArray);
+			if (isDuplicate(indexedColumnValueArray, row) == false) continue;
 			
-			indexedColumnValueArray[i++] = value;
-			if (value == null) hasNull = true;
+			if (errors.isFull())
+				errors.addOverflow(row);
+			else
+				errors.addError(new ConstraintError(
+						buildErrorMessage(indexedColumnValueArray).getMessage(), row, i));
 		}
+	}
+
+	@Override
+	public void prepareForConcurrentValidation() {
+		this.getAssociatedIndex().containsDuplicates();
+	}
+
+	@Override
+	public ConstraintError validatePropositionOnRowModifiying(
+			EntityRow modifiyingRow, 
+			Object proposedValue, EntityColumn proposedValueColumn) 
+	{
+		Object[] indexedColumnValueArray = ConstraintHelper.buildColumnFilteredArray(
+				this.columns, modifiyingRow, proposedValueColumn, proposedValue);
 			
+		if (hasNull(indexedColumnValueArray)) 
+			return null;
+		
 		Index index = this.getAssociatedIndex();
-		List<EntityRow> rows = index.findRows(indexedColumnValueArray);
+		EntityRow firstRow = index.findFirstRow(indexedColumnValueArray);
 		
-		if (hasNull || rows.size() == 0) 
+		if (firstRow == null) 
 			return null;
 		else
-			if (rows.get(0) == modifiyingRow)
+			if (firstRow == modifiyingRow)
 				return null;
 			else
 				return buildErrorMessage(indexedColumnValueArray);
 	}
 
 	private ConstraintError verifyRow(
-			Object[] proposedRowValueArray, EntityRow existingRow) 
+			Object[] indexedColumnValueArray, EntityRow existingRow) 
 	{
-		Object[] indexedColumnValueArray = new Object[this.columns.size()];
-		
-		int i = 0;
-		boolean hasNull = false;
-		for(EntityColumn curPkColumn : this.columns)
-		{
-			Object value = proposedRowValueArray[curPkColumn.getNumber()];
-			indexedColumnValueArray[i++] = value;
-			if (value == null) hasNull = true;
-		}
-
-		Index index = this.getAssociatedIndex();
-		List<EntityRow> rows = index.findRows(indexedColumnValueArray);
-
-		if (hasNull)
-			return null;
-		else if (rows.size() > 0 && rows.get(0) != existingRow)
+		if (isDuplicate(indexedColumnValueArray, existingRow))
 			return buildErrorMessage(indexedColumnValueArray);
 		else
 			return null;
 	}
 	
+	private boolean isDuplicate(Object[] indexedColumnValueArray, EntityRow existingRow)
+	{
+		if (hasNull(indexedColumnValueArray))
+			return false;
+		
+		EntityRow firstRow = this.getAssociatedIndex().findFirstRow(indexedColumnValueArray);
+		return firstRow != null && firstRow != existingRow;
+	}
+	
+	private void fillColumnValues(EntityRow row, Object[] indexedColumnValueArray)
+	{
+		int i = 0;
+		for (EntityColumn column : this.columns)
+			indexedColumnValueArray[i++] = row.getValue(column);
+	}
+	
+	private static boolean hasNull(Object[] values)
+	{
+		for(Object value : values)
+			if (value == null) return true;
+		
+		return false;
+	}
+	
 	private ConstraintError buildErrorMessage(
 			Object[] indexedColumnValueArray) 
 	{
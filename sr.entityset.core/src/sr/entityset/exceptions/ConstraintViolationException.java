@@ -1,11 +1,30 @@
 package sr.entityset.exceptions;
 
+import java.util.Collections;
+import java.util.List;
+
+import sr.entityset.constraints.ConstraintError;
+
 public class ConstraintViolationException extends RuntimeException {
 
 	private static final long serialVersionUID = 1L;
 	
+	private final List<ConstraintError> errors;
+	
 	public ConstraintViolationException(String message) {
-		super(message);
+		this(message, Collections.<ConstraintError>emptyList());
 	}
 
+	public ConstraintViolationException(String message, List<ConstraintError> errors) 
+	{
+		super(message);
+		this.errors = errors;
+	}
+	
+	/**
+	 * All the errors found when several rows were validated at once, else an empty list.
+	 */
+	public List<ConstraintError> getErrors() {
+		return errors;
+	}
 }
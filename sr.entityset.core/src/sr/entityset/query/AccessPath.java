@@ -0,0 +1,43 @@
+package sr.entityset.query;
+
+import java.util.List;
+
+import sr.entityset.EntityRow;
+import sr.entityset.SortedIndex;
+
+/**
+ * Way of getting the rows matching part of a where predicate from an index
+ * rather than by scanning the table. The returned rows are a superset of the
+ * matching rows (the predicate is always applied on them afterwards).
+ */
+abstract class AccessPath
+{
+	private final String description;
+	private final int estimatedRowCount;
+	private final SortedIndex sortedIndex;
+
+	AccessPath(String description, int estimatedRowCount, SortedIndex sortedIndex)
+	{
+		this.description = description;
+		this.estimatedRowCount = estimatedRowCount;
+		this.sortedIndex = sortedIndex;
+	}
+
+	abstract List<EntityRow> rows();
+
+	int getEstimatedRowCount() {
+		return this.estimatedRowCount;
+	}
+
+	/**
+	 * Index the rows are returned in the ascending order of, if any.
+	 */
+	SortedIndex getSortedIndex() {
+		return this.sortedIndex;
+	}
+
+	@Override
+	public String toString() {
+		return this.description + " (~" + this.estimatedRowCount + " rows)";
+	}
+}
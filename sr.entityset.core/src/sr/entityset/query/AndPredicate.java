@@ -0,0 +1,48 @@
+package sr.entityset.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+
+class AndPredicate extends Predicate
+{
+	final List<Predicate> operands = new ArrayList<Predicate>();
+
+	AndPredicate(Predicate[] predicates)
+	{
+		// nested conjunctions are flattened, each operand being planned on its own
+		for (Predicate predicate : predicates)
+		{
+			if (predicate instanceof AndPredicate)
+				this.operands.addAll(((AndPredicate)predicate).operands);
+			else
+				this.operands.add(predicate);
+		}
+	}
+
+	@Override
+	public boolean matches(EntityRow row)
+	{
+		for (Predicate operand : this.operands)
+			if (operand.matches(row) == false) return false;
+
+		return true;
+	}
+
+	@Override
+	void addColumns(Collection<EntityColumn> columns)
+	{
+		for (Predicate operand : this.operands)
+			operand.addColumns(columns);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + StringUtils.join(this.operands, " and ") + ")";
+	}
+}
@@ -0,0 +1,43 @@
+package sr.entityset.query;
+
+import java.util.Collection;
+import java.util.Set;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+
+/**
+ * Column value equal to one of the given values.
+ */
+class EqualsPredicate extends Predicate
+{
+	final EntityColumn column;
+	final Set<Object> values;
+
+	EqualsPredicate(EntityColumn column, Set<Object> values)
+	{
+		this.column = column;
+		this.values = values;
+	}
+
+	@Override
+	public boolean matches(EntityRow row)
+	{
+		Object value = row.getValue(this.column);
+		return value != null && this.values.contains(value);
+	}
+
+	@Override
+	void addColumns(Collection<EntityColumn> columns) {
+		columns.add(this.column);
+	}
+
+	@Override
+	public String toString()
+	{
+		if (this.values.size() == 1)
+			return this.column.getName() + " = " + this.values.iterator().next();
+
+		return this.column.getName() + " in " + this.values;
+	}
+}
@@ -0,0 +1,30 @@
+package sr.entityset.query;
+
+import java.util.Collection;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+
+class NullPredicate extends Predicate
+{
+	final EntityColumn column;
+
+	NullPredicate(EntityColumn column) {
+		this.column = column;
+	}
+
+	@Override
+	public boolean matches(EntityRow row) {
+		return row.getValue(this.column) == null;
+	}
+
+	@Override
+	void addColumns(Collection<EntityColumn> columns) {
+		columns.add(this.column);
+	}
+
+	@Override
+	public String toString() {
+		return this.column.getName() + " is null";
+	}
+}
@@ -0,0 +1,47 @@
+package sr.entityset.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+
+class OrPredicate extends Predicate
+{
+	final List<Predicate> operands = new ArrayList<Predicate>();
+
+	OrPredicate(Predicate[] predicates)
+	{
+		for (Predicate predicate : predicates)
+		{
+			if (predicate instanceof OrPredicate)
+				this.operands.addAll(((OrPredicate)predicate).operands);
+			else
+				this.operands.add(predicate);
+		}
+	}
+
+	@Override
+	public boolean matches(EntityRow row)
+	{
+		for (Predicate operand : this.operands)
+			if (operand.matches(row)) return true;
+
+		return false;
+	}
+
+	@Override
+	void addColumns(Collection<EntityColumn> columns)
+	{
+		for (Predicate operand : this.operands)
+			operand.addColumns(columns);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + StringUtils.join(this.operands, " or ") + ")";
+	}
+}
@@ -0,0 +1,128 @@
+package sr.entityset.query;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+
+/**
+ * Condition on the values of a row, given to {@link Query#where(Predicate)}.
+ * Comparisons never match null values (use {@link #isNull(EntityColumn)}),
+ * compared values must be of the column type.
+ */
+public abstract class Predicate
+{
+	Predicate() {
+	}
+
+	public abstract boolean matches(EntityRow row);
+
+	/**
+	 * Adds the columns the predicate depends on.
+	 */
+	abstract void addColumns(Collection<EntityColumn> columns);
+
+	public Predicate and(Predicate other) {
+		return and(this, other);
+	}
+
+	public Predicate or(Predicate other) {
+		return or(this, other);
+	}
+
+	public static Predicate eq(EntityColumn column, Object value)
+	{
+		if (value == null)
+			throw new IllegalArgumentException("Can not compare to null, use isNull instead.");
+
+		return in(column, value);
+	}
+
+	public static Predicate in(EntityColumn column, Object... values)
+	{
+		if (column == null) throw new NullArgumentException("column");
+		if (values == null) throw new NullArgumentException("values");
+
+		Set<Object> valueSet = new LinkedHashSet<Object>(Arrays.asList(values));
+		for (Object value : valueSet)
+			ensureColumnType(column, value);
+
+		return new EqualsPredicate(column, valueSet);
+	}
+
+	/**
+	 * Values between from and to, both included. A null bound means unbounded.
+	 */
+	public static Predicate between(EntityColumn column, Object from, Object to) {
+		return range(column, from, true, to, true);
+	}
+
+	public static Predicate lessThan(EntityColumn column, Object value) {
+		return range(column, null, false, value, false);
+	}
+
+	public static Predicate lessOrEqual(EntityColumn column, Object value) {
+		return range(column, null, false, value, true);
+	}
+
+	public static Predicate greaterThan(EntityColumn column, Object value) {
+		return range(column, value, false, null, false);
+	}
+
+	public static Predicate greaterOrEqual(EntityColumn column, Object value) {
+		return range(column, value, true, null, false);
+	}
+
+	public static Predicate isNull(EntityColumn column)
+	{
+		if (column == null) throw new NullArgumentException("column");
+		return new NullPredicate(column);
+	}
+
+	public static Predicate and(Predicate... predicates) {
+		return new AndPredicate(ensureNotEmpty(predicates));
+	}
+
+	public static Predicate or(Predicate... predicates) {
+		return new OrPredicate(ensureNotEmpty(predicates));
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static Predicate range(EntityColumn column,
+			Object from, boolean fromInclusive, Object to, boolean toInclusive)
+	{
+		if (column == null) throw new NullArgumentException("column");
+		if (Comparable.class.isAssignableFrom(column.getType()) == false)
+			throw new IllegalArgumentException("Values of column '" + column.getName()
+					+ "' are not comparable.");
+
+		if (from != null) ensureColumnType(column, from);
+		if (to != null) ensureColumnType(column, to);
+
+		return new RangePredicate(column, from, fromInclusive, to, toInclusive);
+	}
+
+	private static void ensureColumnType(EntityColumn column, Object value)
+	{
+		if (value == null || value.getClass().equals(column.getType()) == false)
+			throw new IllegalArgumentException("Expecting values of type " + column.getType().getName()
+					+ " for column '" + column.getName() + "' but received '" + value + "'.");
+	}
+
+	private static Predicate[] ensureNotEmpty(Predicate[] predicates)
+	{
+		if (predicates == null || predicates.length == 0)
+			throw new IllegalArgumentException("Expecting at least one predicate.");
+
+		for (Predicate predicate : predicates)
+			if (predicate == null) throw new NullArgumentException("predicate");
+
+		return predicates;
+	}
+}
@@ -0,0 +1,302 @@
+package sr.entityset.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.SortedIndex;
+
+/**
+ * Query on the rows of a table, created by {@link EntityTable#query()}:
+ * <pre>
+ * List&lt;EntityRow&gt; rows = table.query()
+ *     .where(Predicate.eq(lineColumn, 3).and(Predicate.greaterThan(speedColumn, 50.0)))
+ *     .orderByDescending(speedColumn)
+ *     .limit(10)
+ *     .rows();
+ * </pre>
+ * The parts of the where predicate that an existing {@link sr.entityset.Index} 
+ * or {@link SortedIndex} can answer are looked up in it, the most selective 
+ * first, intersecting the results of the others when worth it. The table is 
+ * only scanned when no index applies. Ordering uses a sorted index on the 
+ * order columns when there is one (stopping as soon as the limit is reached), 
+ * otherwise the rows are sorted, nulls first.
+ *
+ * The query holds no result, it is executed again on each call of {@link #rows()}.
+ */
+public class Query
+{
+	/**
+	 * Index results are intersected with the current candidate rows only if
+	 * they are at most that many times bigger, filtering being cheaper otherwise.
+	 */
+	private static final int INTERSECTION_RATIO = 4;
+
+	private final EntityTable table;
+	private Predicate where;
+	private EntityColumn[] orderColumns;
+	private boolean descending;
+	private int limit = Integer.MAX_VALUE;
+
+	public Query(EntityTable table)
+	{
+		if (table == null) throw new NullArgumentException("table");
+		this.table = table;
+	}
+
+	/**
+	 * Keeps the rows matching the given predicate, and-ed with the predicates 
+	 * of previous calls.
+	 */
+	public Query where(Predicate predicate)
+	{
+		if (predicate == null) throw new NullArgumentException("predicate");
+
+		Set<EntityColumn> columns = new LinkedHashSet<EntityColumn>();
+		predicate.addColumns(columns);
+		for (EntityColumn column : columns)
+			this.ensureTableColumn(column);
+
+		this.where = this.where == null ? predicate : Predicate.and(this.where, predicate);
+		return this;
+	}
+
+	public Query orderBy(EntityColumn... columns) {
+		return this.setOrder(columns, false);
+	}
+
+	public Query orderByDescending(EntityColumn... columns) {
+		return this.setOrder(columns, true);
+	}
+
+	public Query limit(int rowCount)
+	{
+		if (rowCount < 0)
+			throw new IllegalArgumentException("Limit can not be negative.");
+
+		this.limit = rowCount;
+		return this;
+	}
+
+	public List<EntityRow> rows() {
+		return this.execute(null);
+	}
+
+	/**
+	 * Values of the given columns, one array per resulting row.
+	 */
+	public List<Object[]> select(EntityColumn... columns)
+	{
+		for (EntityColumn column : columns)
+			this.ensureTableColumn(column);
+
+		List<EntityRow> rows = this.execute(null);
+		List<Object[]> result = new ArrayList<Object[]>(rows.size());
+		for (EntityRow row : rows)
+		{
+			Object[] values = new Object[columns.length];
+			for (int i = 0; i < columns.length; i++)
+				values[i] = row.getValue(columns[i]);
+
+			result.add(values);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Executes the query and describes its steps, one per line.
+	 */
+	public String explain()
+	{
+		List<String> steps = new ArrayList<String>();
+		this.execute(steps);
+
+		StringBuilder builder = new StringBuilder();
+		for (String step : steps)
+			builder.append(step).append('\n');
+
+		return builder.toString();
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private List<EntityRow> execute(List<String> steps)
+	{
+		QueryPlanner planner = new QueryPlanner(this.table);
+		List<AccessPath> paths = this.where == null 
+				? Collections.<AccessPath>emptyList() : planner.findAccessPaths(this.where);
+		SortedIndex orderIndex = this.orderColumns == null ? null : planner.findOrderIndex(this.orderColumns);
+
+		List<EntityRow> rows;
+		boolean ordered = this.orderColumns == null;
+		if (paths.isEmpty())
+		{
+			if (orderIndex != null)
+			{
+				addStep(steps, "scan sorted index " + QueryPlanner.getColumnNames(orderIndex.getColumns()) 
+						+ (this.descending ? " descending" : ""));
+				rows = this.filter(this.descending ? orderIndex.descendingRows() : orderIndex.ascendingRows(), 
+						this.limit, steps);
+				ordered = true;
+			}
+			else
+			{
+				addStep(steps, "scan table " + this.table.getName() 
+						+ " (" + this.table.rowList().size() + " rows)");
+				rows = this.filter(this.table.rowList(), ordered ? this.limit : Integer.MAX_VALUE, steps);
+			}
+		}
+		else
+		{
+			AccessPath firstPath = paths.get(0);
+			addStep(steps, firstPath.toString());
+			List<EntityRow> candidates = firstPath.rows();
+
+			for (AccessPath path : paths.subList(1, paths.size()))
+			{
+				// paths are sorted, the next ones are even bigger
+				if (path.getEstimatedRowCount() > candidates.size() * INTERSECTION_RATIO)
+					break;
+
+				addStep(steps, "intersect " + path);
+				candidates = intersect(candidates, path.rows());
+			}
+
+			// rows found by a range or prefix are ordered by the index 
+			if (orderIndex != null && firstPath.getSortedIndex() == orderIndex)
+			{
+				if (this.descending)
+				{
+					candidates = new ArrayList<EntityRow>(candidates);
+					Collections.reverse(candidates);
+				}
+
+				ordered = true;
+			}
+
+			rows = this.filter(candidates, ordered ? this.limit : Integer.MAX_VALUE, steps);
+		}
+
+		if (ordered == false)
+		{
+			addStep(steps, "sort on " + QueryPlanner.getColumnNames(this.orderColumns) 
+					+ (this.descending ? " descending" : ""));
+			Collections.sort(rows, this.createComparator());
+		}
+
+		if (this.limit != Integer.MAX_VALUE)
+		{
+			addStep(steps, "limit " + this.limit);
+			if (rows.size() > this.limit)
+				rows = new ArrayList<EntityRow>(rows.subList(0, this.limit));
+		}
+
+		return rows;
+	}
+
+	private List<EntityRow> filter(Iterable<EntityRow> candidates, int maxRowCount, List<String> steps)
+	{
+		if (this.where != null)
+			addStep(steps, "filter " + this.where);
+
+		List<EntityRow> rows = new ArrayList<EntityRow>();
+		if (maxRowCount == 0)
+			return rows;
+
+		for (EntityRow row : candidates)
+		{
+			if (this.where == null || this.where.matches(row))
+			{
+				rows.add(row);
+				if (rows.size() == maxRowCount) break;
+			}
+		}
+
+		return rows;
+	}
+
+	private Comparator<EntityRow> createComparator()
+	{
+		final EntityColumn[] columns = this.orderColumns;
+		final int direction = this.descending ? -1 : 1;
+
+		return new Comparator<EntityRow>() {
+			@Override
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public int compare(EntityRow row1, EntityRow row2)
+			{
+				for (EntityColumn column : columns)
+				{
+					Comparable value1 = (Comparable)row1.getValue(column);
+					Comparable value2 = (Comparable)row2.getValue(column);
+
+					int result;
+					if (value1 == null)
+						result = value2 == null ? 0 : -1;
+					else
+						result = value2 == null ? 1 : value1.compareTo(value2);
+
+					if (result != 0)
+						return direction * result;
+				}
+
+				return 0;
+			}
+		};
+	}
+
+	private Query setOrder(EntityColumn[] columns, boolean descending)
+	{
+		if (columns == null || columns.length == 0)
+			throw new IllegalArgumentException("Expecting at least one order column.");
+
+		for (EntityColumn column : columns)
+		{
+			this.ensureTableColumn(column);
+			if (Comparable.class.isAssignableFrom(column.getType()) == false)
+				throw new IllegalArgumentException("Can not order by column '" + column.getName() 
+						+ "' as its type " + column.getType().getName() + " is not Comparable.");
+		}
+
+		this.orderColumns = columns;
+		this.descending = descending;
+		return this;
+	}
+
+	private void ensureTableColumn(EntityColumn column)
+	{
+		if (column == null) throw new NullArgumentException("column");
+		if (column.getTable() != this.table)
+			throw new IllegalArgumentException("Column '" + column.getName() 
+					+ "' is not part of table '" + this.table.getName() + "'.");
+	}
+
+	private static List<EntityRow> intersect(List<EntityRow> rows, List<EntityRow> otherRows)
+	{
+		Set<EntityRow> otherRowSet = Collections.newSetFromMap(
+				new IdentityHashMap<EntityRow, Boolean>(otherRows.size() * 2));
+		otherRowSet.addAll(otherRows);
+
+		List<EntityRow> result = new ArrayList<EntityRow>();
+		for (EntityRow row : rows)
+			if (otherRowSet.contains(row)) result.add(row);
+
+		return result;
+	}
+
+	private static void addStep(List<String> steps, String step)
+	{
+		if (steps != null)
+			steps.add(step);
+	}
+}
@@ -0,0 +1,270 @@
+package sr.entityset.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.Index;
+import sr.entityset.SortedIndex;
+
+/**
+ * Finds, among the existing indexes of a table, the ones able to answer the
+ * parts of a where predicate. No index is ever created by planning.
+ */
+class QueryPlanner
+{
+	/**
+	 * Fraction of the table a range is assumed to select, sorted indexes 
+	 * not being able to count the rows of a range without walking it.
+	 */
+	private static final int RANGE_SELECTIVITY = 4;
+
+	private final EntityTable table;
+
+	QueryPlanner(EntityTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * Access paths found for the conjuncts of the given predicate, the most
+	 * selective first. Empty if no index applies.
+	 */
+	List<AccessPath> findAccessPaths(Predicate predicate)
+	{
+		List<Predicate> conjuncts = predicate instanceof AndPredicate 
+				? ((AndPredicate)predicate).operands : Collections.singletonList(predicate);
+
+		List<AccessPath> paths = new ArrayList<AccessPath>();
+		Map<EntityColumn, Object> equalities = new LinkedHashMap<EntityColumn, Object>();
+		for (Predicate conjunct : conjuncts)
+		{
+			AccessPath path = this.findAccessPath(conjunct);
+			if (path != null)
+				paths.add(path);
+
+			if (conjunct instanceof EqualsPredicate && ((EqualsPredicate)conjunct).values.size() == 1)
+			{
+				EqualsPredicate equals = (EqualsPredicate)conjunct;
+				equalities.put(equals.column, equals.values.iterator().next());
+			}
+		}
+
+		// composite indexes which columns are all compared to a single value
+		for (Index index : this.table.getIndexes())
+		{
+			EntityColumn[] columns = index.getColumns();
+			if (columns.length > 1 && equalities.keySet().containsAll(Arrays.asList(columns)))
+			{
+				Object[] values = new Object[columns.length];
+				for (int i = 0; i < columns.length; i++)
+					values[i] = equalities.get(columns[i]);
+
+				paths.add(this.createLookupPath(index, Collections.singletonList(values)));
+			}
+		}
+
+		Collections.sort(paths, new Comparator<AccessPath>() {
+			@Override
+			public int compare(AccessPath path1, AccessPath path2) {
+				return Integer.compare(path1.getEstimatedRowCount(), path2.getEstimatedRowCount());
+			}
+		});
+
+		return paths;
+	}
+
+	/**
+	 * Sorted index which leading columns are the given ones, or null.
+	 */
+	SortedIndex findOrderIndex(EntityColumn[] orderColumns)
+	{
+		for (Index index : this.table.getIndexes())
+		{
+			EntityColumn[] columns = index.getColumns();
+			if (index instanceof SortedIndex && columns.length >= orderColumns.length
+					&& Arrays.equals(orderColumns, Arrays.copyOf(columns, orderColumns.length)))
+				return (SortedIndex)index;
+		}
+
+		return null;
+	}
+
+	static String getColumnNames(EntityColumn[] columns)
+	{
+		List<String> names = new ArrayList<String>();
+		for (EntityColumn column : columns)
+			names.add(column.getName());
+
+		return "(" + StringUtils.join(names, ", ") + ")";
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private AccessPath findAccessPath(Predicate predicate)
+	{
+		if (predicate instanceof EqualsPredicate)
+		{
+			EqualsPredicate equals = (EqualsPredicate)predicate;
+			return this.findLookupPath(equals.column, new ArrayList<Object>(equals.values));
+		}
+
+		if (predicate instanceof NullPredicate)
+			return this.findLookupPath(((NullPredicate)predicate).column, Collections.singletonList(null));
+
+		if (predicate instanceof RangePredicate)
+			return this.findRangePath((RangePredicate)predicate);
+
+		if (predicate instanceof OrPredicate)
+			return this.findUnionPath((OrPredicate)predicate);
+
+		return null;
+	}
+
+	private AccessPath findLookupPath(EntityColumn column, List<Object> values)
+	{
+		EntityColumn[] columns = new EntityColumn[] { column };
+		for (Index index : this.table.getIndexes())
+		{
+			if (Arrays.equals(columns, index.getColumns()))
+			{
+				List<Object[]> keys = new ArrayList<Object[]>();
+				for (Object value : values)
+					keys.add(new Object[] { value });
+
+				return this.createLookupPath(index, keys);
+			}
+		}
+
+		// rows of a sorted index starting with the column are grouped by value
+		final SortedIndex sortedIndex = this.findSortedIndex(column);
+		if (sortedIndex == null)
+			return null;
+
+		final List<Object> prefixes = values;
+		String description = "prefix lookup on sorted index " + getColumnNames(sortedIndex.getColumns()) 
+				+ " for " + column.getName() + " in " + values;
+		int estimatedRowCount = Math.min(this.table.rowList().size(), 
+				values.size() * this.getRangeRowCount());
+
+		return new AccessPath(description, estimatedRowCount, values.size() == 1 ? sortedIndex : null) {
+			@Override
+			List<EntityRow> rows()
+			{
+				List<EntityRow> rows = new ArrayList<EntityRow>();
+				for (Object prefix : prefixes)
+					rows.addAll(sortedIndex.findByPrefix(prefix));
+
+				return rows;
+			}
+		};
+	}
+
+	private AccessPath createLookupPath(final Index index, final List<Object[]> keys)
+	{
+		// hash lookups count their rows without building any result list
+		int estimatedRowCount = 0;
+		List<String> keyStrings = new ArrayList<String>();
+		for (Object[] key : keys)
+		{
+			estimatedRowCount += index.countRows(key);
+			keyStrings.add(key.length == 1 ? String.valueOf(key[0]) : Arrays.toString(key));
+		}
+
+		String description = "lookup on index " + getColumnNames(index.getColumns()) 
+				+ " for " + StringUtils.join(keyStrings, ", ");
+
+		return new AccessPath(description, estimatedRowCount, null) {
+			@Override
+			List<EntityRow> rows()
+			{
+				if (keys.size() == 1)
+					return index.findRows(keys.get(0));
+
+				List<EntityRow> rows = new ArrayList<EntityRow>();
+				for (Object[] key : keys)
+					rows.addAll(index.findRows(key));
+
+				return rows;
+			}
+		};
+	}
+
+	private AccessPath findRangePath(final RangePredicate range)
+	{
+		final SortedIndex sortedIndex = this.findSortedIndex(range.column);
+		if (sortedIndex == null)
+			return null;
+
+		String description = "range on sorted index " + getColumnNames(sortedIndex.getColumns()) 
+				+ " for " + range;
+
+		return new AccessPath(description, this.getRangeRowCount(), sortedIndex) {
+			@Override
+			List<EntityRow> rows()
+			{
+				return sortedIndex.findRange(
+						range.from == null ? null : new Object[] { range.from }, range.fromInclusive, 
+						range.to == null ? null : new Object[] { range.to }, range.toInclusive);
+			}
+		};
+	}
+
+	private AccessPath findUnionPath(OrPredicate or)
+	{
+		// each branch needs an index, otherwise the table is scanned anyway
+		final List<AccessPath> branchPaths = new ArrayList<AccessPath>();
+		int estimatedRowCount = 0;
+		for (Predicate operand : or.operands)
+		{
+			List<AccessPath> paths = this.findAccessPaths(operand);
+			if (paths.isEmpty())
+				return null;
+
+			branchPaths.add(paths.get(0));
+			estimatedRowCount += paths.get(0).getEstimatedRowCount();
+		}
+
+		String description = "union of " + branchPaths;
+		estimatedRowCount = Math.min(this.table.rowList().size(), estimatedRowCount);
+
+		return new AccessPath(description, estimatedRowCount, null) {
+			@Override
+			List<EntityRow> rows()
+			{
+				List<EntityRow> rows = new ArrayList<EntityRow>();
+				Set<EntityRow> addedRows = Collections.newSetFromMap(new IdentityHashMap<EntityRow, Boolean>());
+				for (AccessPath path : branchPaths)
+				{
+					for (EntityRow row : path.rows())
+						if (addedRows.add(row)) rows.add(row);
+				}
+
+				return rows;
+			}
+		};
+	}
+
+	private SortedIndex findSortedIndex(EntityColumn column)
+	{
+		for (Index index : this.table.getIndexes())
+			if (index instanceof SortedIndex && index.getColumns()[0].equals(column))
+				return (SortedIndex)index;
+
+		return null;
+	}
+
+	private int getRangeRowCount() {
+		return this.table.rowList().size() / RANGE_SELECTIVITY;
+	}
+}
@@ -0,0 +1,66 @@
+package sr.entityset.query;
+
+import java.util.Collection;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+
+/**
+ * Column value between two bounds, a null bound meaning unbounded.
+ */
+class RangePredicate extends Predicate
+{
+	final EntityColumn column;
+	final Object from;
+	final boolean fromInclusive;
+	final Object to;
+	final boolean toInclusive;
+
+	RangePredicate(EntityColumn column, 
+			Object from, boolean fromInclusive, Object to, boolean toInclusive)
+	{
+		this.column = column;
+		this.from = from;
+		this.fromInclusive = fromInclusive;
+		this.to = to;
+		this.toInclusive = toInclusive;
+	}
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public boolean matches(EntityRow row)
+	{
+		Comparable value = (Comparable)row.getValue(this.column);
+		if (value == null)
+			return false;
+
+		if (this.from != null)
+		{
+			int result = value.compareTo(this.from);
+			if (result < 0 || result == 0 && this.fromInclusive == false)
+				return false;
+		}
+
+		if (this.to != null)
+		{
+			int result = value.compareTo(this.to);
+			if (result > 0 || result == 0 && this.toInclusive == false)
+				return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	void addColumns(Collection<EntityColumn> columns) {
+		columns.add(this.column);
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.column.getName() + " in " 
+				+ (this.from == null ? "(" : this.fromInclusive ? "[" : "(") + this.from + ", "
+				+ this.to + (this.to == null ? ")" : this.toInclusive ? "]" : ")");
+	}
+}
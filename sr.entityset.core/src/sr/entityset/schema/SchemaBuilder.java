@@ -0,0 +1,208 @@
+package sr.entityset.schema;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.ddlutils.io.DatabaseIO;
+import org.apache.ddlutils.model.Column;
+import org.apache.ddlutils.model.Database;
+import org.apache.ddlutils.model.ForeignKey;
+import org.apache.ddlutils.model.Index;
+import org.apache.ddlutils.model.IndexColumn;
+import org.apache.ddlutils.model.Reference;
+import org.apache.ddlutils.model.Table;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityTable;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+import sr.entityset.constraints.UniqueConstraint;
+
+/**
+ * Builds entity tables from a DdlUtils {@link Database} model, e.g. read from
+ * a DdlUtils XML schema file:
+ * <ul>
+ * <li>one column per database column, primary key columns and required
+ * columns not allowing null;</li>
+ * <li>a {@link UniqueConstraint} per unique index and a {@link ForeignKeyChildConstraint} /
+ * {@link ForeignKeyParentConstraint} pair per foreign key;</li>
+ * <li>the indexes backing those constraints, plus one per non unique index.</li>
+ * </ul>
+ * Tables given a row count hint are presized for it (see {@link EntityTable#setExpectedRowCount(int)}).
+ * Temporal columns are built as java.util.Date and decimal ones as BigDecimal. 
+ * Binary columns are built as byte[], which the binary snapshot, delta and journal
+ * formats of sr.entityset.io do not support.
+ *
+ * Typically used from the constructor of an {@link sr.entityset.EntitySet}, adding the built tables.
+ */
+public class SchemaBuilder
+{
+	private final Database database;
+	private final Map<String, Integer> expectedRowCounts = new HashMap<String, Integer>();
+
+	public SchemaBuilder(Database database)
+	{
+		if (database == null) throw new NullArgumentException("database");
+		this.database = database;
+	}
+
+	/**
+	 * Builder of the database model described by the given DdlUtils XML schema file.
+	 */
+	public static SchemaBuilder fromFile(File schemaFile)
+	{
+		if (schemaFile == null) throw new NullArgumentException("schemaFile");
+
+		// schema files are not required to declare the DdlUtils DTD
+		DatabaseIO databaseIO = new DatabaseIO();
+		databaseIO.setValidateXml(false);
+		return new SchemaBuilder(databaseIO.read(schemaFile));
+	}
+
+	public Database getDatabase() {
+		return this.database;
+	}
+
+	/**
+	 * Number of rows the given table is expected to hold once loaded.
+	 */
+	public void setExpectedRowCount(String tableName, int rowCount)
+	{
+		if (this.database.findTable(tableName) == null)
+			throw new IllegalArgumentException("Table '" + tableName + "' is not part of the schema.");
+
+		this.expectedRowCounts.put(tableName, rowCount);
+	}
+
+	/**
+	 * Creates the tables of the schema, in the schema order, with their constraints and indexes.
+	 */
+	public List<EntityTable> buildTables()
+	{
+		Map<Table, EntityTable> tables = new LinkedHashMap<Table, EntityTable>();
+		for (Table table : this.database.getTables())
+			tables.put(table, this.buildTable(table));
+
+		for (Map.Entry<Table, EntityTable> entry : tables.entrySet())
+		{
+			Table table = entry.getKey();
+			EntityTable entityTable = entry.getValue();
+
+			for (Index index : table.getIndices())
+				this.addIndex(entityTable, index);
+
+			for (ForeignKey foreignKey : table.getForeignKeys())
+				this.addForeignKey(entityTable, tables.get(foreignKey.getForeignTable()), foreignKey);
+		}
+
+		return new ArrayList<EntityTable>(tables.values());
+	}
+
+	/**
+	 * Type of the entity column built for the given database column.
+	 * Override to map some columns to other types.
+	 */
+	protected Class<?> getColumnType(Column column)
+	{
+		switch (column.getTypeCode())
+		{
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				return Integer.class;
+			case Types.BIGINT:
+				return Long.class;
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return Double.class;
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return BigDecimal.class;
+			case Types.BIT:
+			case Types.BOOLEAN:
+				return Boolean.class;
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.CLOB:
+				return String.class;
+			case Types.DATE:
+			case Types.TIME:
+			case Types.TIMESTAMP:
+				return Date.class;
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				return byte[].class;
+			default:
+				throw new IllegalArgumentException("Column '" + column.getName()
+						+ "' is of unsupported type '" + column.getType() + "'.");
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private EntityTable buildTable(Table table)
+	{
+		EntityTable entityTable = new EntityTable(table.getName());
+		for (Column column : table.getColumns())
+		{
+			Class<?> type = this.getColumnType(column);
+			if (column.isPrimaryKey())
+				entityTable.addPrimaryKeyColumn(column.getName(), type);
+			else
+				entityTable.addColumn(column.getName(), type, column.isRequired() == false);
+		}
+
+		Integer expectedRowCount = this.expectedRowCounts.get(table.getName());
+		if (expectedRowCount != null)
+			entityTable.setExpectedRowCount(expectedRowCount);
+
+		return entityTable;
+	}
+
+	private void addIndex(EntityTable entityTable, Index index)
+	{
+		List<EntityColumn> columns = new ArrayList<EntityColumn>();
+		for (IndexColumn indexColumn : index.getColumns())
+			columns.add(entityTable.getColumn(indexColumn.getName()));
+
+		if (index.isUnique())
+			entityTable.addConstraint(new UniqueConstraint(index.getName(), entityTable, columns));
+
+		entityTable.getIndex(columns);
+	}
+
+	private void addForeignKey(EntityTable childTable, EntityTable parentTable, ForeignKey foreignKey)
+	{
+		List<EntityColumn> childColumns = new ArrayList<EntityColumn>();
+		List<EntityColumn> parentColumns = new ArrayList<EntityColumn>();
+		for (Reference reference : foreignKey.getReferences())
+		{
+			childColumns.add(childTable.getColumn(reference.getLocalColumnName()));
+			parentColumns.add(parentTable.getColumn(reference.getForeignColumnName()));
+		}
+
+		String name = foreignKey.getName() != null ? foreignKey.getName()
+				: childTable.getName() + parentTable.getName();
+
+		childTable.addConstraint(new ForeignKeyChildConstraint(name,
+				parentTable, parentColumns, childColumns));
+		parentTable.addConstraint(new ForeignKeyParentConstraint(name,
+				childTable, parentTable, childColumns, parentColumns));
+
+		// child rows are looked up when removing or re-keying a parent row
+		childTable.getIndex(childColumns);
+		parentTable.getIndex(parentColumns);
+	}
+}
@@ -0,0 +1,49 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+public class BooleanColumnVector extends ColumnVector 
+{
+	private boolean[] values;
+	
+	public BooleanColumnVector(int capacity) 
+	{
+		super(capacity);
+		this.values = new boolean[capacity];
+	}
+	
+	@Override
+	public Object get(int slot) {
+		return this.nulls.isNull(slot) ? null : Boolean.valueOf(this.values[slot]);
+	}
+	
+	@Override
+	public void set(int slot, Object value)
+	{
+		this.nulls.setNull(slot, value == null);
+		this.values[slot] = value == null ? false : (Boolean)value;
+	}
+	
+	@Override
+	public boolean getBoolean(int slot) {
+		return this.values[slot];
+	}
+	
+	public void setBoolean(int slot, boolean value)
+	{
+		this.nulls.setNull(slot, false);
+		this.values[slot] = value;
+	}
+	
+	/**
+	 * The backing array, null slots hold false. Valid until the vector grows.
+	 */
+	public boolean[] getArray() {
+		return this.values;
+	}
+	
+	@Override
+	protected void grow(int newCapacity) {
+		this.values = Arrays.copyOf(this.values, newCapacity);
+	}
+}
@@ -0,0 +1,121 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+import java.util.List;
+
+import sr.entityset.EntityColumn;
+
+/**
+ * Columnar backing store of an EntityTable: one {@link ColumnVector} per column,
+ * rows being addressed by an int slot. Slots of released rows are reused.
+ */
+public class ColumnStore 
+{
+	private final ColumnVector[] vectors;
+	private int capacity;
+	private int slotCount = 0;
+	private int[] freeSlots = new int[0];
+	private int freeSlotCount = 0;
+	
+	public ColumnStore(List<EntityColumn> columns, int initialCapacity)
+	{
+		this.capacity = Math.max(16, initialCapacity);
+		this.vectors = new ColumnVector[columns.size()];
+		
+		for (EntityColumn column : columns)
+		{
+			if (column.isDictionaryEncoded())
+				this.vectors[column.getNumber()] = new StringColumnVector(
+						this.capacity, column.getDictionary(), true);
+			else
+				this.vectors[column.getNumber()] = ColumnVector.create(column.getType(), this.capacity);
+		}
+	}
+	
+	/**
+	 * Store over vectors already holding the values of the given number of slots.
+	 */
+	ColumnStore(ColumnVector[] vectors, int slotCount)
+	{
+		this.vectors = vectors;
+		this.capacity = slotCount;
+		this.slotCount = slotCount;
+	}
+
+	/**
+	 * Stores the values in a free slot.
+	 * @return the slot of the stored values.
+	 */
+	public int append(Object[] values)
+	{
+		int slot = this.allocateSlot();
+		
+		for (int i = 0; i < this.vectors.length; i++)
+			this.vectors[i].set(slot, values[i]);
+		
+		return slot;
+	}
+	
+	/**
+	 * Makes the slot available for another row. Its values are cleared.
+	 */
+	public void release(int slot)
+	{
+		for (int i = 0; i < this.vectors.length; i++)
+			this.vectors[i].set(slot, null);
+		
+		if (this.freeSlotCount == this.freeSlots.length)
+			this.freeSlots = Arrays.copyOf(this.freeSlots, Math.max(16, this.freeSlotCount * 2));
+		
+		this.freeSlots[this.freeSlotCount++] = slot;
+	}
+	
+	public Object get(int slot, int columnNumber) {
+		return this.vectors[columnNumber].get(slot);
+	}
+	
+	public void set(int slot, int columnNumber, Object value) {
+		this.vectors[columnNumber].set(slot, value);
+	}
+	
+	public Object[] toObjectArray(int slot)
+	{
+		Object[] values = new Object[this.vectors.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = this.vectors[i].get(slot);
+		
+		return values;
+	}
+	
+	public ColumnVector getVector(int columnNumber) {
+		return this.vectors[columnNumber];
+	}
+	
+	/**
+	 * Number of slots ever used (released slots included).
+	 */
+	public int getSlotCount() {
+		return this.slotCount;
+	}
+	
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity <= this.capacity) return;
+		
+		for (ColumnVector vector : this.vectors)
+			vector.ensureCapacity(capacity);
+		
+		this.capacity = capacity;
+	}
+	
+	private int allocateSlot()
+	{
+		if (this.freeSlotCount > 0)
+			return this.freeSlots[--this.freeSlotCount];
+		
+		if (this.slotCount == this.capacity)
+			this.ensureCapacity(this.capacity + (this.capacity >> 1));
+		
+		return this.slotCount++;
+	}
+}
@@ -0,0 +1,82 @@
+package sr.entityset.storage;
+
+/**
+ * Values of one column of a {@link ColumnStore}, addressed by row slot.
+ * Sub-classes keep the values unboxed in a primitive array when the 
+ * column type allows it, nulls being tracked in a {@link NullMask}.
+ */
+public abstract class ColumnVector 
+{
+	protected final NullMask nulls;
+	protected int capacity;
+	
+	protected ColumnVector(int capacity)
+	{
+		this.capacity = capacity;
+		this.nulls = new NullMask(capacity);
+	}
+	
+	public static ColumnVector create(Class<?> type, int capacity)
+	{
+		if (type.equals(Integer.class)) return new IntColumnVector(capacity);
+		if (type.equals(Long.class)) return new LongColumnVector(capacity);
+		if (type.equals(Double.class)) return new DoubleColumnVector(capacity);
+		if (type.equals(Boolean.class)) return new BooleanColumnVector(capacity);
+		if (type.equals(String.class)) return new StringColumnVector(capacity);
+		
+		return new ObjectColumnVector(capacity);
+	}
+	
+	public abstract Object get(int slot);
+	
+	public abstract void set(int slot, Object value);
+	
+	/**
+	 * Value of a slot holding an Integer, not null. Vectors keeping their values 
+	 * in a primitive array read it without boxing.
+	 */
+	public int getInt(int slot) {
+		return ((Integer)this.get(slot)).intValue();
+	}
+	
+	/**
+	 * Value of a slot holding a Long, not null.
+	 */
+	public long getLong(int slot) {
+		return ((Long)this.get(slot)).longValue();
+	}
+	
+	/**
+	 * Value of a slot holding a Double, not null.
+	 */
+	public double getDouble(int slot) {
+		return ((Double)this.get(slot)).doubleValue();
+	}
+	
+	/**
+	 * Value of a slot holding a Boolean, not null.
+	 */
+	public boolean getBoolean(int slot) {
+		return ((Boolean)this.get(slot)).booleanValue();
+	}
+	
+	public boolean isNull(int slot) {
+		return this.nulls.isNull(slot);
+	}
+	
+	public NullMask getNullMask() {
+		return this.nulls;
+	}
+	
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity <= this.capacity) return;
+		
+		int newCapacity = Math.max(capacity, this.capacity + (this.capacity >> 1) + 16);
+		this.grow(newCapacity);
+		this.nulls.ensureCapacity(newCapacity);
+		this.capacity = newCapacity;
+	}
+	
+	protected abstract void grow(int newCapacity);
+}
@@ -0,0 +1,49 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+public class DoubleColumnVector extends ColumnVector 
+{
+	private double[] values;
+	
+	public DoubleColumnVector(int capacity) 
+	{
+		super(capacity);
+		this.values = new double[capacity];
+	}
+	
+	@Override
+	public Object get(int slot) {
+		return this.nulls.isNull(slot) ? null : Double.valueOf(this.values[slot]);
+	}
+	
+	@Override
+	public void set(int slot, Object value)
+	{
+		this.nulls.setNull(slot, value == null);
+		this.values[slot] = value == null ? 0 : (Double)value;
+	}
+	
+	@Override
+	public double getDouble(int slot) {
+		return this.values[slot];
+	}
+	
+	public void setDouble(int slot, double value)
+	{
+		this.nulls.setNull(slot, false);
+		this.values[slot] = value;
+	}
+	
+	/**
+	 * The backing array, null slots hold 0. Valid until the vector grows.
+	 */
+	public double[] getArray() {
+		return this.values;
+	}
+	
+	@Override
+	protected void grow(int newCapacity) {
+		this.values = Arrays.copyOf(this.values, newCapacity);
+	}
+}
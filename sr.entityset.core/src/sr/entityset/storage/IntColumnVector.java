@@ -0,0 +1,49 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+public class IntColumnVector extends ColumnVector 
+{
+	private int[] values;
+	
+	public IntColumnVector(int capacity) 
+	{
+		super(capacity);
+		this.values = new int[capacity];
+	}
+	
+	@Override
+	public Object get(int slot) {
+		return this.nulls.isNull(slot) ? null : Integer.valueOf(this.values[slot]);
+	}
+	
+	@Override
+	public void set(int slot, Object value)
+	{
+		this.nulls.setNull(slot, value == null);
+		this.values[slot] = value == null ? 0 : (Integer)value;
+	}
+	
+	@Override
+	public int getInt(int slot) {
+		return this.values[slot];
+	}
+	
+	public void setInt(int slot, int value)
+	{
+		this.nulls.setNull(slot, false);
+		this.values[slot] = value;
+	}
+	
+	/**
+	 * The backing array, null slots hold 0. Valid until the vector grows.
+	 */
+	public int[] getArray() {
+		return this.values;
+	}
+	
+	@Override
+	protected void grow(int newCapacity) {
+		this.values = Arrays.copyOf(this.values, newCapacity);
+	}
+}
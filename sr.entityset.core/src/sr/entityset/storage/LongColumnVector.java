@@ -0,0 +1,49 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+public class LongColumnVector extends ColumnVector 
+{
+	private long[] values;
+	
+	public LongColumnVector(int capacity) 
+	{
+		super(capacity);
+		this.values = new long[capacity];
+	}
+	
+	@Override
+	public Object get(int slot) {
+		return this.nulls.isNull(slot) ? null : Long.valueOf(this.values[slot]);
+	}
+	
+	@Override
+	public void set(int slot, Object value)
+	{
+		this.nulls.setNull(slot, value == null);
+		this.values[slot] = value == null ? 0 : (Long)value;
+	}
+	
+	@Override
+	public long getLong(int slot) {
+		return this.values[slot];
+	}
+	
+	public void setLong(int slot, long value)
+	{
+		this.nulls.setNull(slot, false);
+		this.values[slot] = value;
+	}
+	
+	/**
+	 * The backing array, null slots hold 0. Valid until the vector grows.
+	 */
+	public long[] getArray() {
+		return this.values;
+	}
+	
+	@Override
+	protected void grow(int newCapacity) {
+		this.values = Arrays.copyOf(this.values, newCapacity);
+	}
+}
@@ -0,0 +1,174 @@
+package sr.entityset.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only vector whose values stay in a section of a {@link MappedTableFile},
+ * decoded on access only. Slots are the row numbers in the file.
+ */
+abstract class MappedColumnVector extends ColumnVector
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// one bit per row (as in NullMask), null if the column holds no null value
+	private final LongBuffer nullWords;
+	private NullMask nullMask = null;
+
+	protected MappedColumnVector(int rowCount, LongBuffer nullWords)
+	{
+		super(0);
+		this.capacity = rowCount;
+		this.nullWords = nullWords;
+	}
+
+	@Override
+	public boolean isNull(int slot) {
+		return this.nullWords != null && (this.nullWords.get(slot >>> 6) & (1L << slot)) != 0;
+	}
+
+	/**
+	 * Heap copy of the null bitmap, made on first call.
+	 */
+	@Override
+	public synchronized NullMask getNullMask()
+	{
+		if (this.nullMask == null)
+		{
+			long[] bits = new long[(this.capacity + 63) >>> 6];
+			if (this.nullWords != null)
+				this.nullWords.duplicate().get(bits);
+
+			this.nullMask = new NullMask(bits);
+		}
+		return this.nullMask;
+	}
+
+	@Override
+	public void set(int slot, Object value) {
+		throw new UnsupportedOperationException("A mapped column can not be modified.");
+	}
+
+	@Override
+	protected void grow(int newCapacity) {
+		throw new UnsupportedOperationException("A mapped column can not be extended.");
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	static class Ints extends MappedColumnVector
+	{
+		private final IntBuffer values;
+
+		Ints(int rowCount, LongBuffer nullWords, IntBuffer values)
+		{
+			super(rowCount, nullWords);
+			this.values = values;
+		}
+
+		@Override
+		public Object get(int slot) {
+			return this.isNull(slot) ? null : Integer.valueOf(this.values.get(slot));
+		}
+
+		@Override
+		public int getInt(int slot) {
+			return this.values.get(slot);
+		}
+	}
+
+	static class Longs extends MappedColumnVector
+	{
+		private final LongBuffer values;
+
+		Longs(int rowCount, LongBuffer nullWords, LongBuffer values)
+		{
+			super(rowCount, nullWords);
+			this.values = values;
+		}
+
+		@Override
+		public Object get(int slot) {
+			return this.isNull(slot) ? null : Long.valueOf(this.values.get(slot));
+		}
+
+		@Override
+		public long getLong(int slot) {
+			return this.values.get(slot);
+		}
+	}
+
+	static class Doubles extends MappedColumnVector
+	{
+		private final DoubleBuffer values;
+
+		Doubles(int rowCount, LongBuffer nullWords, DoubleBuffer values)
+		{
+			super(rowCount, nullWords);
+			this.values = values;
+		}
+
+		@Override
+		public Object get(int slot) {
+			return this.isNull(slot) ? null : Double.valueOf(this.values.get(slot));
+		}
+
+		@Override
+		public double getDouble(int slot) {
+			return this.values.get(slot);
+		}
+	}
+
+	static class Booleans extends MappedColumnVector
+	{
+		private final ByteBuffer values;
+
+		Booleans(int rowCount, LongBuffer nullWords, ByteBuffer values)
+		{
+			super(rowCount, nullWords);
+			this.values = values;
+		}
+
+		@Override
+		public Object get(int slot) {
+			return this.isNull(slot) ? null : Boolean.valueOf(this.values.get(slot) != 0);
+		}
+	}
+
+	/**
+	 * Strings are stored as codes in a dictionary of UTF-8 encoded values.
+	 */
+	static class Strings extends MappedColumnVector
+	{
+		private final IntBuffer codes;
+		private final IntBuffer valueOffsets;
+		private final ByteBuffer valueBytes;
+
+		Strings(int rowCount, LongBuffer nullWords, IntBuffer codes,
+				IntBuffer valueOffsets, ByteBuffer valueBytes)
+		{
+			super(rowCount, nullWords);
+			this.codes = codes;
+			this.valueOffsets = valueOffsets;
+			this.valueBytes = valueBytes;
+		}
+
+		@Override
+		public Object get(int slot) {
+			return this.isNull(slot) ? null : this.decode(this.codes.get(slot));
+		}
+
+		private String decode(int code)
+		{
+			int start = this.valueOffsets.get(code);
+			byte[] bytes = new byte[this.valueOffsets.get(code + 1) - start];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = this.valueBytes.get(start + i);
+
+			return new String(bytes, UTF8);
+		}
+	}
+}
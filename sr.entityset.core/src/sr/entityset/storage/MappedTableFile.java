@@ -0,0 +1,641 @@
+package sr.entityset.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+
+/**
+ * Read-only image of an EntityTable, laid out to be memory-mapped rather than
+ * loaded. After a small header, every column is a fixed-width little-endian
+ * section (Integer and String codes on 4 bytes, Long and Double on 8, Boolean
+ * on 1) with its own null bitmap, String values being stored once in a
+ * per-column dictionary. The primary key is persisted as an open-addressing
+ * hash table of row numbers, so that no index has to be built to look rows up.
+ *
+ * Opening a file only reads its header: values are decoded when accessed,
+ * the operating system paging the file in and out as needed. Only Integer,
+ * Long, Double, Boolean and String columns are supported, and a single column
+ * section can not exceed 2GB.
+ */
+public class MappedTableFile
+{
+	private static final int MAGIC = 0x544D5345;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte INT = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte STRING = 5;
+
+	private final String tableName;
+	private final int rowCount;
+	private final List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+	private final ColumnVector[] vectors;
+	private final ColumnStore columnStore;
+	private final int[] keyColumnNumbers;
+	private final IntBuffer keySlots;
+
+	private MappedTableFile(FileChannel channel) throws IOException
+	{
+		ByteBuffer start = read(channel, 0, 12);
+		if (start.getInt() != MAGIC)
+			throw new IOException("Not a mapped table file");
+		if (start.getInt() != VERSION)
+			throw new IOException("Unsupported mapped table file version");
+
+		ByteBuffer header = read(channel, 12, start.getInt() - 12);
+		this.tableName = getString(header);
+		this.rowCount = header.getInt();
+
+		int columnCount = header.getInt();
+		this.vectors = new ColumnVector[columnCount];
+		List<Integer> keyColumns = new ArrayList<Integer>();
+		for (int i = 0; i < columnCount; i++)
+		{
+			String name = getString(header);
+			byte typeCode = header.get();
+			boolean allowNull = header.get() != 0;
+			boolean primaryKey = header.get() != 0;
+
+			this.columns.add(new ColumnInfo(name, typeOf(typeCode), allowNull, primaryKey));
+			this.vectors[i] = this.mapVector(channel, header, typeCode);
+			if (primaryKey)
+				keyColumns.add(i);
+		}
+
+		int keyCapacity = header.getInt();
+		long keyOffset = header.getLong();
+		this.keySlots = keyCapacity == 0 ? null
+				: map(channel, keyOffset, keyCapacity * 4L).asIntBuffer();
+
+		this.keyColumnNumbers = new int[keyColumns.size()];
+		for (int i = 0; i < this.keyColumnNumbers.length; i++)
+			this.keyColumnNumbers[i] = keyColumns.get(i);
+
+		this.columnStore = new ColumnStore(this.vectors, this.rowCount);
+	}
+
+	/**
+	 * Maps the given file, which must have been written by {@link #write(EntityTable, File)}.
+	 * The mapping remains valid once the file is closed, it is released with this object.
+	 */
+	public static MappedTableFile open(File file) throws IOException
+	{
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			return new MappedTableFile(input.getChannel());
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Writes the rows of the table to the given file, in the table row order.
+	 * @throws IllegalArgumentException if a column type is not supported, or if
+	 * the primary key values are not unique.
+	 */
+	public static void write(EntityTable table, File file) throws IOException
+	{
+		List<EntityRow> rows = table.rowList();
+		Collection<EntityColumn> keyColumns = table.getPrimaryKeyColumns();
+
+		List<ColumnSection> sections = new ArrayList<ColumnSection>();
+		for (EntityColumn column : table.getColumns())
+			sections.add(new ColumnSection(column, keyColumns.contains(column), rows));
+
+		int[] keySlots = keyColumns.isEmpty() ? null : buildKeySlots(table, rows);
+
+		// the header size does not depend on the section offsets it holds
+		long position = align(encodeHeader(table, rows.size(), sections, keySlots, 0).length);
+		for (ColumnSection section : sections)
+			position = section.layout(position, rows.size());
+
+		byte[] header = encodeHeader(table, rows.size(), sections, keySlots, position);
+
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try
+		{
+			output.setLength(0);
+			SectionOutput sectionOutput = new SectionOutput(output.getChannel());
+			sectionOutput.put(header);
+
+			for (ColumnSection section : sections)
+				section.write(sectionOutput, rows);
+
+			if (keySlots != null)
+			{
+				sectionOutput.padTo(position);
+				for (int keySlot : keySlots)
+					sectionOutput.putInt(keySlot);
+			}
+			sectionOutput.flush();
+		}
+		finally {
+			output.close();
+		}
+	}
+
+	public String getTableName() {
+		return this.tableName;
+	}
+
+	public int getRowCount() {
+		return this.rowCount;
+	}
+
+	public List<ColumnInfo> getColumns() {
+		return Collections.unmodifiableList(this.columns);
+	}
+
+	/**
+	 * Store over the mapped columns, row numbers being used as slots. It can not be modified.
+	 */
+	public ColumnStore getColumnStore() {
+		return this.columnStore;
+	}
+
+	/**
+	 * Looks the given primary key values up in the persisted primary key.
+	 * @return the number of the matching row, -1 if there is none.
+	 */
+	public int findRow(Object[] keyValues)
+	{
+		if (this.keySlots == null)
+			throw new IllegalStateException("Table " + this.tableName + " has no primary key.");
+		if (keyValues.length != this.keyColumnNumbers.length)
+			throw new IllegalArgumentException("Expecting " + this.keyColumnNumbers.length
+					+ " primary key values, got " + keyValues.length);
+
+		int mask = this.keySlots.capacity() - 1;
+		for (int i = hashKey(keyValues) & mask; ; i = (i + 1) & mask)
+		{
+			int rowNumber = this.keySlots.get(i) - 1;
+			if (rowNumber < 0)
+				return -1;
+
+			if (this.isKeyOfRow(rowNumber, keyValues))
+				return rowNumber;
+		}
+	}
+
+	/**
+	 * Definition of a column stored in the file.
+	 */
+	public static class ColumnInfo
+	{
+		private final String name;
+		private final Class<?> type;
+		private final boolean allowNull;
+		private final boolean primaryKey;
+
+		ColumnInfo(String name, Class<?> type, boolean allowNull, boolean primaryKey)
+		{
+			this.name = name;
+			this.type = type;
+			this.allowNull = allowNull;
+			this.primaryKey = primaryKey;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		public boolean getAllowNull() {
+			return allowNull;
+		}
+
+		public boolean isPrimaryKey() {
+			return primaryKey;
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private boolean isKeyOfRow(int rowNumber, Object[] keyValues)
+	{
+		for (int i = 0; i < this.keyColumnNumbers.length; i++)
+			if (areEqual(this.vectors[this.keyColumnNumbers[i]].get(rowNumber), keyValues[i]) == false)
+				return false;
+
+		return true;
+	}
+
+	private ColumnVector mapVector(FileChannel channel, ByteBuffer header, byte typeCode) throws IOException
+	{
+		long nullsOffset = header.getLong();
+		long dataOffset = header.getLong();
+		int dictionarySize = header.getInt();
+		long dictionaryOffset = header.getLong();
+		long dictionaryBytesOffset = header.getLong();
+		long dictionaryByteCount = header.getLong();
+
+		LongBuffer nullWords = nullsOffset < 0 ? null
+				: map(channel, nullsOffset, nullWordCount(this.rowCount) * 8L).asLongBuffer();
+
+		switch (typeCode)
+		{
+		case INT:
+			return new MappedColumnVector.Ints(this.rowCount, nullWords,
+					map(channel, dataOffset, this.rowCount * 4L).asIntBuffer());
+		case LONG:
+			return new MappedColumnVector.Longs(this.rowCount, nullWords,
+					map(channel, dataOffset, this.rowCount * 8L).asLongBuffer());
+		case DOUBLE:
+			return new MappedColumnVector.Doubles(this.rowCount, nullWords,
+					map(channel, dataOffset, this.rowCount * 8L).asDoubleBuffer());
+		case BOOLEAN:
+			return new MappedColumnVector.Booleans(this.rowCount, nullWords,
+					map(channel, dataOffset, this.rowCount));
+		default:
+			return new MappedColumnVector.Strings(this.rowCount, nullWords,
+					map(channel, dataOffset, this.rowCount * 4L).asIntBuffer(),
+					map(channel, dictionaryOffset, (dictionarySize + 1) * 4L).asIntBuffer(),
+					map(channel, dictionaryBytesOffset, dictionaryByteCount));
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException
+	{
+		if (offset < 0 || length > Integer.MAX_VALUE || offset + length > channel.size())
+			throw new IOException("Corrupted mapped table file: section at " + offset + " is out of the file");
+
+		return channel.map(MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException
+	{
+		if (length < 0 || offset + length > channel.size())
+			throw new IOException("Corrupted mapped table file: truncated header");
+
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, offset + buffer.position()) < 0)
+				throw new IOException("Corrupted mapped table file: truncated header");
+
+		buffer.flip();
+		return buffer;
+	}
+
+	private static byte[] encodeHeader(EntityTable table, int rowCount,
+			List<ColumnSection> sections, int[] keySlots, long keyOffset)
+	{
+		byte[] tableName = table.getName().getBytes(UTF8);
+		int length = 12 + 4 + tableName.length + 8 + 12;
+		for (ColumnSection section : sections)
+			length += 4 + section.name.length + 3 + 44;
+
+		ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(length);
+		header.putInt(tableName.length).put(tableName);
+		header.putInt(rowCount).putInt(sections.size());
+
+		for (ColumnSection section : sections)
+		{
+			header.putInt(section.name.length).put(section.name);
+			header.put(section.typeCode).put((byte)(section.allowNull ? 1 : 0)).put((byte)(section.primaryKey ? 1 : 0));
+			header.putLong(section.nullsOffset).putLong(section.dataOffset);
+			header.putInt(section.dictionary == null ? 0 : section.dictionary.size());
+			header.putLong(section.dictionaryOffset).putLong(section.dictionaryBytesOffset).putLong(section.dictionaryByteCount);
+		}
+
+		header.putInt(keySlots == null ? 0 : keySlots.length).putLong(keySlots == null ? -1 : keyOffset);
+		return header.array();
+	}
+
+	private static int[] buildKeySlots(EntityTable table, List<EntityRow> rows)
+	{
+		if (rows.size() >= 1 << 28)
+			throw new IllegalArgumentException("Table " + table.getName() + " has too many rows to be mapped.");
+
+		EntityColumn[] keyColumns = table.getPrimaryKeyColumns().toArray(new EntityColumn[0]);
+		int[] keySlots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, rows.size())) * 4)];
+		int mask = keySlots.length - 1;
+
+		for (int rowNumber = 0; rowNumber < rows.size(); rowNumber++)
+		{
+			Object[] keyValues = keyOf(rows.get(rowNumber), keyColumns);
+
+			int i = hashKey(keyValues) & mask;
+			while (keySlots[i] != 0)
+			{
+				if (Arrays.equals(keyOf(rows.get(keySlots[i] - 1), keyColumns), keyValues))
+					throw new IllegalArgumentException("Duplicate primary key in table "
+							+ table.getName() + ": " + Arrays.toString(keyValues));
+				i = (i + 1) & mask;
+			}
+			keySlots[i] = rowNumber + 1;
+		}
+		return keySlots;
+	}
+
+	private static Object[] keyOf(EntityRow row, EntityColumn[] keyColumns)
+	{
+		Object[] keyValues = new Object[keyColumns.length];
+		for (int i = 0; i < keyColumns.length; i++)
+			keyValues[i] = row.getValue(keyColumns[i]);
+
+		return keyValues;
+	}
+
+	/**
+	 * The hash codes of the supported types are specified, hence the same
+	 * in the writing and reading processes. Bits are spread (with the
+	 * MurmurHash3 finalizer) as the hash gets masked with the table size.
+	 */
+	private static int hashKey(Object[] keyValues)
+	{
+		int hash = 1;
+		for (Object value : keyValues)
+			hash = 31 * hash + (value == null ? 0 : value.hashCode());
+
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	private static boolean areEqual(Object value, Object other) {
+		return value == null ? other == null : value.equals(other);
+	}
+
+	private static String getString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static Class<?> typeOf(byte typeCode) throws IOException
+	{
+		switch (typeCode)
+		{
+		case INT: return Integer.class;
+		case LONG: return Long.class;
+		case DOUBLE: return Double.class;
+		case BOOLEAN: return Boolean.class;
+		case STRING: return String.class;
+		default: throw new IOException("Corrupted mapped table file: unknown column type " + typeCode);
+		}
+	}
+
+	private static int nullWordCount(int rowCount) {
+		return (rowCount + 63) >>> 6;
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Content of a column to be written: its null bitmap and String dictionary
+	 * are collected first, so that the section offsets are known before writing.
+	 */
+	private static class ColumnSection
+	{
+		private final EntityColumn column;
+		private final byte[] name;
+		private final byte typeCode;
+		private final boolean allowNull;
+		private final boolean primaryKey;
+
+		private long[] nullWords = null;
+		private int[] codes = null;
+		private List<byte[]> dictionary = null;
+		private long dictionaryByteCount = 0;
+
+		private long nullsOffset = -1;
+		private long dataOffset = -1;
+		private long dictionaryOffset = -1;
+		private long dictionaryBytesOffset = -1;
+
+		ColumnSection(EntityColumn column, boolean primaryKey, List<EntityRow> rows)
+		{
+			this.column = column;
+			this.name = column.getName().getBytes(UTF8);
+			this.typeCode = typeCodeOf(column);
+			this.allowNull = column.getAllowNull();
+			this.primaryKey = primaryKey;
+
+			Map<String, Integer> codesByValue = null;
+			if (this.typeCode == STRING)
+			{
+				this.codes = new int[rows.size()];
+				this.dictionary = new ArrayList<byte[]>();
+				codesByValue = new HashMap<String, Integer>();
+			}
+
+			for (int rowNumber = 0; rowNumber < rows.size(); rowNumber++)
+			{
+				Object value = rows.get(rowNumber).getValue(column);
+				if (value == null)
+				{
+					if (this.nullWords == null)
+						this.nullWords = new long[nullWordCount(rows.size())];
+					this.nullWords[rowNumber >>> 6] |= 1L << rowNumber;
+				}
+				else if (codesByValue != null)
+					this.codes[rowNumber] = this.encode((String)value, codesByValue);
+			}
+		}
+
+		/**
+		 * Places the sections of the column from the given position.
+		 * @return the position following the column sections.
+		 */
+		long layout(long position, int rowCount)
+		{
+			if (this.nullWords != null)
+			{
+				this.nullsOffset = position;
+				position = align(position + this.nullWords.length * 8L);
+			}
+
+			long dataLength = (long)rowCount * (this.typeCode == LONG || this.typeCode == DOUBLE ? 8
+					: this.typeCode == BOOLEAN ? 1 : 4);
+			if (dataLength > Integer.MAX_VALUE || this.dictionaryByteCount > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Column " + this.column.getName()
+						+ " is too large to be mapped.");
+
+			this.dataOffset = position;
+			position = align(position + dataLength);
+
+			if (this.dictionary != null)
+			{
+				this.dictionaryOffset = position;
+				position = align(position + (this.dictionary.size() + 1) * 4L);
+				this.dictionaryBytesOffset = position;
+				position = align(position + this.dictionaryByteCount);
+			}
+			return position;
+		}
+
+		void write(SectionOutput output, List<EntityRow> rows) throws IOException
+		{
+			if (this.nullWords != null)
+			{
+				output.padTo(this.nullsOffset);
+				for (long word : this.nullWords)
+					output.putLong(word);
+			}
+
+			output.padTo(this.dataOffset);
+			int columnNumber = this.column.getNumber();
+			for (int rowNumber = 0; rowNumber < rows.size(); rowNumber++)
+			{
+				Object value = this.codes == null ? rows.get(rowNumber).getValue(columnNumber) : null;
+				switch (this.typeCode)
+				{
+				case INT: output.putInt(value == null ? 0 : (Integer)value); break;
+				case LONG: output.putLong(value == null ? 0 : (Long)value); break;
+				case DOUBLE: output.putDouble(value == null ? 0 : (Double)value); break;
+				case BOOLEAN: output.putByte(value != null && (Boolean)value ? 1 : 0); break;
+				default: output.putInt(this.codes[rowNumber]);
+				}
+			}
+
+			if (this.dictionary != null)
+			{
+				output.padTo(this.dictionaryOffset);
+				int valueOffset = 0;
+				output.putInt(valueOffset);
+				for (byte[] value : this.dictionary)
+					output.putInt(valueOffset += value.length);
+
+				output.padTo(this.dictionaryBytesOffset);
+				for (byte[] value : this.dictionary)
+					output.put(value);
+			}
+		}
+
+		private int encode(String value, Map<String, Integer> codesByValue)
+		{
+			Integer code = codesByValue.get(value);
+			if (code == null)
+			{
+				byte[] bytes = value.getBytes(UTF8);
+				code = this.dictionary.size();
+				this.dictionary.add(bytes);
+				this.dictionaryByteCount += bytes.length;
+				codesByValue.put(value, code);
+			}
+			return code;
+		}
+
+		private static byte typeCodeOf(EntityColumn column)
+		{
+			Class<?> type = column.getType();
+			if (type.equals(Integer.class)) return INT;
+			if (type.equals(Long.class)) return LONG;
+			if (type.equals(Double.class)) return DOUBLE;
+			if (type.equals(Boolean.class)) return BOOLEAN;
+			if (type.equals(String.class)) return STRING;
+
+			throw new IllegalArgumentException("Column " + column.getName() + " of type "
+					+ type.getName() + " can not be stored in a mapped table file.");
+		}
+	}
+
+	/**
+	 * Buffered little-endian output to the file channel, keeping track of the file position.
+	 */
+	private static class SectionOutput
+	{
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		private long position = 0;
+
+		SectionOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putByte(int value) throws IOException
+		{
+			this.ensureRemaining(1);
+			this.buffer.put((byte)value);
+			this.position++;
+		}
+
+		void putInt(int value) throws IOException
+		{
+			this.ensureRemaining(4);
+			this.buffer.putInt(value);
+			this.position += 4;
+		}
+
+		void putLong(long value) throws IOException
+		{
+			this.ensureRemaining(8);
+			this.buffer.putLong(value);
+			this.position += 8;
+		}
+
+		void putDouble(double value) throws IOException
+		{
+			this.ensureRemaining(8);
+			this.buffer.putDouble(value);
+			this.position += 8;
+		}
+
+		void put(byte[] bytes) throws IOException
+		{
+			for (int offset = 0; offset < bytes.length; )
+			{
+				this.ensureRemaining(1);
+				int length = Math.min(this.buffer.remaining(), bytes.length - offset);
+				this.buffer.put(bytes, offset, length);
+				offset += length;
+			}
+			this.position += bytes.length;
+		}
+
+		void padTo(long offset) throws IOException
+		{
+			if (offset < this.position)
+				throw new IllegalStateException("Section offset " + offset + " already written");
+
+			while (this.position < offset)
+				this.putByte(0);
+		}
+
+		void flush() throws IOException
+		{
+			this.buffer.flip();
+			while (this.buffer.hasRemaining())
+				this.channel.write(this.buffer);
+			this.buffer.clear();
+		}
+
+		private void ensureRemaining(int byteCount) throws IOException
+		{
+			if (this.buffer.remaining() < byteCount)
+				this.flush();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+/**
+ * Bitmap telling which slots of a {@link ColumnVector} hold a null value.
+ */
+public class NullMask 
+{
+	private long[] bits;
+	
+	public NullMask(int capacity) {
+		this.bits = new long[wordCount(capacity)];
+	}
+	
+	/**
+	 * Mask over the given bits, bit (slot % 64) of bits[slot / 64] being set for null slots.
+	 */
+	NullMask(long[] bits) {
+		this.bits = bits;
+	}
+	
+	public boolean isNull(int slot) {
+		return (this.bits[slot >>> 6] & (1L << slot)) != 0;
+	}
+	
+	public void setNull(int slot, boolean isNull)
+	{
+		if (isNull)
+			this.bits[slot >>> 6] |= (1L << slot);
+		else
+			this.bits[slot >>> 6] &= ~(1L << slot);
+	}
+	
+	/**
+	 * @return true if no slot below the given count is null.
+	 */
+	public boolean hasNoNull(int slotCount)
+	{
+		int fullWords = slotCount >>> 6;
+		for (int i = 0; i < fullWords; i++)
+			if (this.bits[i] != 0) return false;
+		
+		int remaining = slotCount & 63;
+		return remaining == 0 || (this.bits[fullWords] & ((1L << remaining) - 1)) == 0;
+	}
+	
+	void ensureCapacity(int capacity)
+	{
+		int words = wordCount(capacity);
+		if (words > this.bits.length)
+			this.bits = Arrays.copyOf(this.bits, Math.max(words, this.bits.length * 2));
+	}
+	
+	private static int wordCount(int capacity) {
+		return (capacity + 63) >>> 6;
+	}
+}
@@ -0,0 +1,34 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+/**
+ * Vector for column types having no primitive representation (e.g. dates).
+ */
+public class ObjectColumnVector extends ColumnVector 
+{
+	private Object[] values;
+	
+	public ObjectColumnVector(int capacity) 
+	{
+		super(capacity);
+		this.values = new Object[capacity];
+	}
+	
+	@Override
+	public Object get(int slot) {
+		return this.values[slot];
+	}
+	
+	@Override
+	public void set(int slot, Object value)
+	{
+		this.nulls.setNull(slot, value == null);
+		this.values[slot] = value;
+	}
+	
+	@Override
+	protected void grow(int newCapacity) {
+		this.values = Arrays.copyOf(this.values, newCapacity);
+	}
+}
@@ -0,0 +1,110 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary-encoded String vector: each slot holds the int code of its value
+ * in a {@link StringDictionary}. 
+ * 
+ * Unless the dictionary was forced at creation, the vector stops encoding and
+ * keeps plain references once the column proves to have a high cardinality, 
+ * where a dictionary would cost more than it saves.
+ */
+public class StringColumnVector extends ColumnVector 
+{
+	private static final int MIN_DISTINCT_VALUES_BEFORE_DECODING = 4096;
+	
+	private final boolean forceEncoding;
+	private StringDictionary dictionary;
+	private int[] codes;
+	private String[] values;
+	private int highestSlot = -1;
+	
+	public StringColumnVector(int capacity) {
+		this(capacity, new StringDictionary(), false);
+	}
+	
+	public StringColumnVector(int capacity, StringDictionary dictionary, boolean forceEncoding) 
+	{
+		super(capacity);
+		this.dictionary = dictionary;
+		this.forceEncoding = forceEncoding;
+		this.codes = new int[capacity];
+	}
+	
+	@Override
+	public Object get(int slot)
+	{
+		if (this.codes == null)
+			return this.values[slot];
+		
+		return this.nulls.isNull(slot) ? null : this.dictionary.decode(this.codes[slot]);
+	}
+	
+	@Override
+	public void set(int slot, Object value)
+	{
+		this.nulls.setNull(slot, value == null);
+		if (slot > this.highestSlot) 
+			this.highestSlot = slot;
+		
+		if (this.codes == null)
+		{
+			this.values[slot] = (String)value;
+			return;
+		}
+		
+		this.codes[slot] = value == null ? StringDictionary.NO_CODE : this.dictionary.encode((String)value);
+		
+		if (this.forceEncoding == false 
+				&& this.dictionary.size() > MIN_DISTINCT_VALUES_BEFORE_DECODING
+				&& this.dictionary.size() > (this.highestSlot + 1) / 2)
+			this.decodeAll();
+	}
+	
+	/**
+	 * @return true while values are stored as dictionary codes.
+	 */
+	public boolean isEncoded() {
+		return this.codes != null;
+	}
+	
+	public int getCode(int slot) {
+		return this.codes[slot];
+	}
+	
+	/**
+	 * The dictionary codes, null slots hold {@link StringDictionary#NO_CODE}. 
+	 * Valid until the vector grows, null if the vector is not encoded.
+	 */
+	public int[] getCodes() {
+		return this.codes;
+	}
+	
+	/**
+	 * The dictionary of the vector, null if the vector is not encoded.
+	 */
+	public StringDictionary getDictionary() {
+		return this.dictionary;
+	}
+	
+	@Override
+	protected void grow(int newCapacity)
+	{
+		if (this.codes != null)
+			this.codes = Arrays.copyOf(this.codes, newCapacity);
+		else
+			this.values = Arrays.copyOf(this.values, newCapacity);
+	}
+	
+	private void decodeAll()
+	{
+		this.values = new String[this.capacity];
+		for (int slot = 0; slot <= this.highestSlot; slot++)
+			if (this.nulls.isNull(slot) == false)
+				this.values[slot] = this.dictionary.decode(this.codes[slot]);
+		
+		this.codes = null;
+		this.dictionary = null;
+	}
+}
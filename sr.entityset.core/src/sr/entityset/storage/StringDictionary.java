@@ -0,0 +1,59 @@
+package sr.entityset.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Assigns a small int code to each distinct String value, codes being
+ * allocated in order of first appearance starting at zero.
+ */
+public class StringDictionary 
+{
+	public static final int NO_CODE = -1;
+	
+	private final HashMap<String, Integer> codesByValue = new HashMap<String, Integer>();
+	private String[] values = new String[16];
+	private int size = 0;
+	
+	/**
+	 * @return the code of the value, allocating a new one if the value is unknown.
+	 */
+	public int encode(String value)
+	{
+		Integer code = this.codesByValue.get(value);
+		if (code != null)
+			return code;
+		
+		if (this.size == this.values.length)
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		
+		this.values[this.size] = value;
+		this.codesByValue.put(value, this.size);
+		
+		return this.size++;
+	}
+	
+	/**
+	 * @return the code of the value or {@link #NO_CODE} if the value is unknown.
+	 */
+	public int lookup(String value)
+	{
+		Integer code = this.codesByValue.get(value);
+		return code == null ? NO_CODE : code;
+	}
+	
+	public String decode(int code) {
+		return this.values[code];
+	}
+	
+	/**
+	 * @return the canonical instance equal to the given value.
+	 */
+	public String intern(String value) {
+		return value == null ? null : this.values[this.encode(value)];
+	}
+	
+	public int size() {
+		return this.size;
+	}
+}
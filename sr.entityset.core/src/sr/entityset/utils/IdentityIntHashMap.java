@@ -0,0 +1,162 @@
+package sr.entityset.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) map from object references, compared
+ * by identity, to non-negative int values. Used to keep track of the
+ * position of a row inside an array-based structure without allocating
+ * any per-entry object.
+ */
+public class IdentityIntHashMap<K> 
+{
+	public static final int NO_VALUE = -1;
+	private static final float LOAD_FACTOR = 0.6f;
+	
+	private Object[] keys;
+	private int[] values;
+	private int size = 0;
+	private int resizeThreshold;
+	
+	public IdentityIntHashMap(int expectedSize) {
+		this.allocate(capacityFor(expectedSize));
+	}
+	
+	/**
+	 * @return the value associated to the key or {@link #NO_VALUE}.
+	 */
+	public int get(K key)
+	{
+		int mask = this.keys.length - 1;
+		int pos = hash(key) & mask;
+		
+		Object cur;
+		while ((cur = this.keys[pos]) != null)
+		{
+			if (cur == key)
+				return this.values[pos];
+			pos = (pos + 1) & mask;
+		}
+		
+		return NO_VALUE;
+	}
+	
+	public void put(K key, int value)
+	{
+		if (key == null) throw new IllegalArgumentException("key can not be null.");
+		
+		int mask = this.keys.length - 1;
+		int pos = hash(key) & mask;
+		
+		Object cur;
+		while ((cur = this.keys[pos]) != null)
+		{
+			if (cur == key)
+			{
+				this.values[pos] = value;
+				return;
+			}
+			pos = (pos + 1) & mask;
+		}
+		
+		this.keys[pos] = key;
+		this.values[pos] = value;
+		
+		if (++this.size > this.resizeThreshold)
+			this.rehash(this.keys.length * 2);
+	}
+	
+	public int remove(K key)
+	{
+		int mask = this.keys.length - 1;
+		int pos = hash(key) & mask;
+		
+		Object cur;
+		while ((cur = this.keys[pos]) != null)
+		{
+			if (cur == key)
+			{
+				int removed = this.values[pos];
+				this.shiftKeysBack(pos);
+				this.size--;
+				return removed;
+			}
+			pos = (pos + 1) & mask;
+		}
+		
+		return NO_VALUE;
+	}
+	
+	public int size() {
+		return this.size;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private void shiftKeysBack(int pos)
+	{
+		int mask = this.keys.length - 1;
+		
+		while (true)
+		{
+			int last = pos;
+			pos = (pos + 1) & mask;
+			
+			while (true)
+			{
+				if (this.keys[pos] == null)
+				{
+					this.keys[last] = null;
+					return;
+				}
+				
+				int slot = hash(this.keys[pos]) & mask;
+				boolean canMove = last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos);
+				if (canMove) break;
+				
+				pos = (pos + 1) & mask;
+			}
+			
+			this.keys[last] = this.keys[pos];
+			this.values[last] = this.values[pos];
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void rehash(int newCapacity)
+	{
+		Object[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		
+		this.allocate(newCapacity);
+		this.size = 0;
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null)
+				this.put((K)oldKeys[i], oldValues[i]);
+		}
+	}
+	
+	private void allocate(int capacity)
+	{
+		this.keys = new Object[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(this.values, NO_VALUE);
+		this.resizeThreshold = (int)(capacity * LOAD_FACTOR);
+	}
+	
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expectedSize)
+			capacity <<= 1;
+		
+		return capacity;
+	}
+	
+	private static int hash(Object key)
+	{
+		int h = System.identityHashCode(key);
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,166 @@
+package sr.entityset.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) map from primitive long keys to 
+ * non-negative int values. Keys and values live in two parallel arrays, 
+ * so there is neither boxing nor any per-entry object.
+ */
+public class LongIntHashMap 
+{
+	public static final int NO_VALUE = -1;
+	private static final float LOAD_FACTOR = 0.6f;
+	
+	private long[] keys;
+	private int[] values;
+	private int size = 0;
+	private int resizeThreshold;
+	
+	public LongIntHashMap(int expectedSize) {
+		this.allocate(capacityFor(expectedSize));
+	}
+	
+	/**
+	 * @return the value associated to the key or {@link #NO_VALUE}.
+	 */
+	public int get(long key)
+	{
+		int mask = this.keys.length - 1;
+		int pos = hash(key) & mask;
+		
+		while (this.values[pos] != NO_VALUE)
+		{
+			if (this.keys[pos] == key)
+				return this.values[pos];
+			pos = (pos + 1) & mask;
+		}
+		
+		return NO_VALUE;
+	}
+	
+	public void put(long key, int value)
+	{
+		if (value < 0) throw new IllegalArgumentException("value must be positive or zero.");
+		
+		int mask = this.keys.length - 1;
+		int pos = hash(key) & mask;
+		
+		while (this.values[pos] != NO_VALUE)
+		{
+			if (this.keys[pos] == key)
+			{
+				this.values[pos] = value;
+				return;
+			}
+			pos = (pos + 1) & mask;
+		}
+		
+		this.keys[pos] = key;
+		this.values[pos] = value;
+		
+		if (++this.size > this.resizeThreshold)
+			this.rehash(this.keys.length * 2);
+	}
+	
+	public int remove(long key)
+	{
+		int mask = this.keys.length - 1;
+		int pos = hash(key) & mask;
+		
+		while (this.values[pos] != NO_VALUE)
+		{
+			if (this.keys[pos] == key)
+			{
+				int removed = this.values[pos];
+				this.shiftKeysBack(pos);
+				this.size--;
+				return removed;
+			}
+			pos = (pos + 1) & mask;
+		}
+		
+		return NO_VALUE;
+	}
+	
+	public int size() {
+		return this.size;
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	/**
+	 * Backward shift deletion: moves the following entries of the probe 
+	 * sequence into the freed position so that no tombstone is needed.
+	 */
+	private void shiftKeysBack(int pos)
+	{
+		int mask = this.keys.length - 1;
+		
+		while (true)
+		{
+			int last = pos;
+			pos = (pos + 1) & mask;
+			
+			while (true)
+			{
+				if (this.values[pos] == NO_VALUE)
+				{
+					this.values[last] = NO_VALUE;
+					return;
+				}
+				
+				int slot = hash(this.keys[pos]) & mask;
+				boolean canMove = last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos);
+				if (canMove) break;
+				
+				pos = (pos + 1) & mask;
+			}
+			
+			this.keys[last] = this.keys[pos];
+			this.values[last] = this.values[pos];
+		}
+	}
+	
+	private void rehash(int newCapacity)
+	{
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		
+		this.allocate(newCapacity);
+		this.size = 0;
+		
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != NO_VALUE)
+				this.put(oldKeys[i], oldValues[i]);
+		}
+	}
+	
+	private void allocate(int capacity)
+	{
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(this.values, NO_VALUE);
+		this.resizeThreshold = (int)(capacity * LOAD_FACTOR);
+	}
+	
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expectedSize)
+			capacity <<= 1;
+		
+		return capacity;
+	}
+	
+	private static int hash(long key)
+	{
+		// murmur3 finalizer, spreads sequential keys over the table
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+}
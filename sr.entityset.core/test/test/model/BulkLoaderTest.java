@@ -0,0 +1,153 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.utils.ExceptionAsserter.assertException;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.BulkLoader;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.constraints.ConstraintError;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.UniqueConstraint;
+import sr.entityset.exceptions.ConstraintViolationException;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class BulkLoaderTest
+{
+	private EntityTable lineTable;
+	private EntityTable busTable;
+	private EntityColumn busIdCol;
+	private EntityColumn busNameCol;
+	private EntityColumn busLineCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		lineTable = new EntityTable("Line");
+		EntityColumn lineIdCol = lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+		lineTable.addRow(1);
+		lineTable.addRow(2);
+
+		busTable = new EntityTable("Bus");
+		busTable.setHeadless(true);
+		busIdCol = busTable.addPrimaryKeyColumn("BusId", Integer.class);
+		busNameCol = busTable.addColumn("Name", String.class);
+		busLineCol = busTable.addColumn("LineId", Integer.class, true);
+
+		busTable.addConstraint(new UniqueConstraint("UniqueBusName",
+				busTable, Arrays.asList(busNameCol)));
+		busTable.addConstraint(new ForeignKeyChildConstraint("BusLine",
+				lineTable, Arrays.asList(lineIdCol), Arrays.asList(busLineCol)));
+	}
+
+	@Test
+	public void testLoadedRowsAreAddedAndIndexed() throws Exception
+	{
+		busTable.addRow(1, "Bus1", 1);
+		busTable.getPrimaryKeyIndex();
+
+		BulkLoader loader = busTable.beginBulkLoad(3);
+		loader.addRows(Arrays.asList(
+				new Object[] { 2, "Bus2", 2 },
+				new Object[] { 3, "Bus3", null }));
+		loader.addColumns(new Object[] { 4 }, new Object[] { "Bus4" }, new Object[] { 1 });
+		loader.finish();
+
+		assertEquals(3, loader.getSubmittedRowCount());
+		assertEquals(4, busTable.rowList().size());
+
+		EntityRow row4 = busTable.findByPrimaryKey(4);
+		assertEquals("Bus4", row4.getValue(busNameCol));
+		assertEquals(RowState.Added, row4.getState());
+		assertSame(busTable.rowList().get(1), busTable.findByPrimaryKey(2));
+		assertEquals(busTable.rowList(), Arrays.asList(busTable.changedRows().toArray()));
+
+		// indexes are maintained again once loading is over
+		busTable.addRow(5, "Bus5", 2);
+		assertEquals("Bus5", busTable.findByPrimaryKey(5).getValue(busNameCol));
+	}
+
+	@Test
+	public void testAcceptedLoadedRowsAreNotTrackedAsChanges() throws Exception
+	{
+		EntityRow row1 = busTable.addRow(1, "Bus1", 1);
+
+		BulkLoader loader = busTable.beginBulkLoad(2);
+		loader.setAcceptChanges(true);
+		loader.addRow(2, "Bus2", 2);
+		loader.addRow(3, "Bus3", null);
+		loader.finish();
+
+		assertEquals(RowState.Unchanged, busTable.findByPrimaryKey(3).getState());
+		assertEquals(1, busTable.changedRows().size());
+		assertTrue(busTable.changedRows().contains(row1));
+	}
+
+	@Test
+	public void testAllViolationsAreReportedAtTheEnd() throws Exception
+	{
+		busTable.addRow(1, "Bus1", 1);
+
+		BulkLoader loader = busTable.beginBulkLoad(4);
+		loader.addRow(1, "Bus1bis", 1);
+		loader.addRow(2, "Bus1", 2);
+		loader.addRow(3, "Bus3", 9);
+		loader.addRow(4, null, 1);
+		loader.addRow(5, "Bus5", "1");
+
+		try {
+			loader.finish();
+			fail("Expecting a ConstraintViolationException");
+		}
+		catch (ConstraintViolationException e)
+		{
+			assertEquals(5, e.getErrors().size());
+
+			int rejectedRows = 0;
+			for (ConstraintError error : e.getErrors())
+			{
+				if (error.getRow() == null)
+					rejectedRows++;
+				else
+					assertTrue(busTable.rowList().indexOf(error.getRow()) > 0);
+			}
+			assertEquals(2, rejectedRows);
+		}
+
+		// offending rows are kept, rejected ones were never added
+		assertEquals(4, busTable.rowList().size());
+		assertNull(busTable.findByPrimaryKey(5));
+	}
+
+	@Test
+	public void testLoaderCanNotBeUsedOnceFinished() throws Exception
+	{
+		final BulkLoader loader = busTable.beginBulkLoad(1);
+		loader.addRow(1, "Bus1", 1);
+		loader.finish();
+
+		assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				loader.addRow(2, "Bus2", 1);
+			}
+		});
+		assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				busTable.beginBulkLoad(1).addRow(2, "Bus2");
+			}
+		});
+	}
+}
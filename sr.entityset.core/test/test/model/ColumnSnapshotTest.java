@@ -0,0 +1,201 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sr.entityset.ColumnSnapshot;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.LongColumnSnapshot;
+import sr.entityset.Selection;
+import test.utils.ExceptionAsserter;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class ColumnSnapshotTest
+{
+	@Test
+	public void testAggregatesMatchRowValues() throws Exception
+	{
+		for (boolean columnar : new boolean[] { false, true })
+		{
+			EntityTable table = createTable(columnar, 10000);
+			EntityColumn speedCol = table.getColumn("Speed");
+			EntityColumn lineCol = table.getColumn("LineId");
+			EntityColumn distanceCol = table.getColumn("Distance");
+
+			ColumnSnapshot speeds = table.getColumnSnapshot(speedCol);
+			assertEquals(10000, speeds.size());
+			assertEquals(countNulls(table, speedCol), speeds.getNullCount());
+			assertEquals(10000 - speeds.getNullCount(), speeds.count(null));
+			assertEquals(sum(table.rowList(), speedCol), speeds.sum(null), 1e-6);
+			assertEquals(0.5, speeds.min(null), 0.0);
+			assertEquals(99.5, speeds.max(null), 0.0);
+			assertEquals(speeds.sum(null) / speeds.count(null), speeds.average(null), 1e-9);
+
+			ColumnSnapshot lines = table.getColumnSnapshot(lineCol);
+			assertEquals(sum(table.rowList(), lineCol), lines.sum(null), 0.0);
+			assertEquals(0.0, lines.min(null), 0.0);
+			assertEquals(9.0, lines.max(null), 0.0);
+
+			ColumnSnapshot distances = table.getColumnSnapshot(distanceCol);
+			assertEquals(sum(table.rowList(), distanceCol), distances.sum(null), 0.0);
+		}
+	}
+
+	@Test
+	public void testFiltersCombineSelections() throws Exception
+	{
+		EntityTable table = createTable(true, 10000);
+		EntityColumn speedCol = table.getColumn("Speed");
+		EntityColumn lineCol = table.getColumn("LineId");
+
+		ColumnSnapshot speeds = table.getColumnSnapshot(speedCol);
+		ColumnSnapshot lines = table.getColumnSnapshot(lineCol);
+
+		// line 3 buses faster than 50, nulls never matching
+		Selection line3 = lines.selectEquals(null, 3);
+		Selection fast = speeds.selectGreaterThan(line3, 50.0);
+
+		List<EntityRow> expected = new ArrayList<EntityRow>();
+		for (EntityRow row : table.rowList())
+		{
+			Object line = row.getValue(lineCol);
+			Double speed = (Double)row.getValue(speedCol);
+			if (line != null && line.equals(3) && speed != null && speed > 50.0)
+				expected.add(row);
+		}
+		assertEquals(expected, new ArrayList<EntityRow>(fast.getRows()));
+		assertEquals(sum(expected, speedCol), speeds.sum(fast), 1e-9);
+		assertEquals(expected.size(), speeds.count(fast));
+
+		// bounds are converted to the integers they contain
+		assertEquals(lines.selectBetween(3, 4).size(), lines.selectBetween(2.5, 4.9).size());
+		assertEquals(lines.selectEquals(null, 3).size(), lines.selectLessThan(line3, 3.5).size());
+		assertEquals(0, lines.selectBetween(3.1, 3.9).size());
+		assertEquals(0, speeds.selectBetween(10.0, 5.0).size());
+		assertEquals(Double.NaN, speeds.max(speeds.selectBetween(1000.0, 2000.0)), 0.0);
+	}
+
+	@Test
+	public void testLongFiltersAndAggregatesAreExact() throws Exception
+	{
+		long big = 1L << 53;
+		EntityTable table = new EntityTable("Counter");
+		table.addPrimaryKeyColumn("CounterId", Integer.class);
+		EntityColumn valueCol = table.addColumn("Value", Long.class, true);
+		table.addRow(1, big + 1);
+		table.addRow(2, big + 2);
+		table.addRow(3, null);
+		table.addRow(4, big + 3);
+		table.addRow(5, Long.MAX_VALUE);
+
+		LongColumnSnapshot values = (LongColumnSnapshot)table.getColumnSnapshot(valueCol);
+		assertEquals(1, values.selectEquals(null, big + 1).size());
+		assertEquals(table.findByPrimaryKey(1), values.selectEquals(null, big + 1).getRows().get(0));
+		assertEquals(2, values.selectBetween(big + 2, big + 3).size());
+		assertEquals(3, values.selectGreaterThan(null, big + 1).size());
+		assertEquals(0, values.selectGreaterThan(null, Long.MAX_VALUE).size());
+		assertEquals(1, values.selectLessOrEqual(null, big + 1).size());
+		assertEquals(0, values.selectLessThan(null, Long.MIN_VALUE).size());
+
+		Selection below = values.selectLessThan(null, Long.MAX_VALUE);
+		assertEquals(3 * big + 6, values.sumLong(below));
+		assertEquals(Long.valueOf(big + 1), values.minLong(below));
+		assertEquals(Long.valueOf(big + 3), values.maxLong(below));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), values.maxLong(null));
+		assertNull(values.minLong(values.selectEquals(null, 0L)));
+	}
+
+	@Test
+	public void testSnapshotsAreCachedUntilModified() throws Exception
+	{
+		final EntityTable table = createTable(false, 100);
+		final EntityColumn speedCol = table.getColumn("Speed");
+		EntityColumn lineCol = table.getColumn("LineId");
+
+		ColumnSnapshot speeds = table.getColumnSnapshot(speedCol);
+		ColumnSnapshot lines = table.getColumnSnapshot(lineCol);
+		assertSame(speeds, table.getColumnSnapshot(speedCol));
+
+		// modifying a column only drops its own snapshot
+		table.rowList().get(1).setValue(speedCol, 1000.0);
+		assertSame(lines, table.getColumnSnapshot(lineCol));
+		assertNotSame(speeds, table.getColumnSnapshot(speedCol));
+		assertEquals(1000.0, table.getColumnSnapshot(speedCol).max(null), 0.0);
+
+		// adding rows drops them all, selections made before being stale
+		final Selection line3 = table.getColumnSnapshot(lineCol).selectEquals(null, 3);
+		table.addRow(100, 3, 2000.0, 1L, "Bus100");
+		assertNotSame(lines, table.getColumnSnapshot(lineCol));
+		assertEquals(2000.0, table.getColumnSnapshot(speedCol).max(null), 0.0);
+
+		ExceptionAsserter.assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				line3.getRows();
+			}
+		});
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				table.getColumnSnapshot(speedCol).sum(line3);
+			}
+		});
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				table.getColumnSnapshot(table.getColumn("Name"));
+			}
+		});
+		assertTrue(table.getColumnSnapshot(lineCol).selectEquals(null, 3).getRows().contains(table.findByPrimaryKey(100)));
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static EntityTable createTable(boolean columnar, int rowCount) throws Exception
+	{
+		EntityTable table = new EntityTable("Bus");
+		table.setColumnarStorage(columnar);
+		table.addPrimaryKeyColumn("BusId", Integer.class);
+		table.addColumn("LineId", Integer.class, true);
+		table.addColumn("Speed", Double.class, true);
+		table.addColumn("Distance", Long.class, true);
+		table.addColumn("Name", String.class);
+
+		for (int i = 0; i < rowCount; i++)
+			table.addRow(i, i % 13 == 0 ? null : i % 10, i % 7 == 0 ? null : (i % 100) + 0.5,
+					i % 11 == 0 ? null : (long)i * 1000, "Bus" + i);
+
+		return table;
+	}
+
+	private static int countNulls(EntityTable table, EntityColumn column)
+	{
+		int count = 0;
+		for (EntityRow row : table.rowList())
+			if (row.getValue(column) == null) count++;
+
+		return count;
+	}
+
+	private static double sum(List<EntityRow> rows, EntityColumn column)
+	{
+		double sum = 0;
+		for (EntityRow row : rows)
+		{
+			Number value = (Number)row.getValue(column);
+			if (value != null) sum += value.doubleValue();
+		}
+
+		return sum;
+	}
+}
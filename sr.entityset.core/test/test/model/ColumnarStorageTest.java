@@ -0,0 +1,148 @@
+package test.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static test.utils.ExceptionAsserter.assertException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.exceptions.InvalidNullValueException;
+import sr.entityset.storage.ColumnStore;
+import sr.entityset.storage.DoubleColumnVector;
+import sr.entityset.storage.IntColumnVector;
+import sr.entityset.storage.StringColumnVector;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class ColumnarStorageTest 
+{
+	private EntityTable table;
+	private EntityColumn idCol;
+	private EntityColumn nameCol;
+	private EntityColumn speedCol;
+	private EntityColumn activeCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		table = new EntityTable("Bus");
+		table.setColumnarStorage(true);
+		
+		idCol = table.addPrimaryKeyColumn("BusId", Integer.class);
+		nameCol = table.addColumn("Name", String.class);
+		speedCol = table.addColumn("Speed", Double.class, true);
+		activeCol = table.addColumn("Active", Boolean.class);
+	}
+	
+	@Test
+	public void testValuesAreStoredInTypedVectors() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, "Bus1", 60.0, true);
+		EntityRow row2 = table.addRow(2, "Bus2", null, false);
+		
+		ColumnStore store = table.getColumnStore();
+		assertTrue(store.getVector(idCol.getNumber()) instanceof IntColumnVector);
+		assertTrue(store.getVector(nameCol.getNumber()) instanceof StringColumnVector);
+		assertTrue(store.getVector(speedCol.getNumber()) instanceof DoubleColumnVector);
+		
+		assertEquals(1, row1.getValue(idCol));
+		assertEquals("Bus1", row1.getValue(nameCol));
+		assertEquals(60.0, row1.getValue(speedCol));
+		assertEquals(true, row1.getValue(activeCol));
+		assertNull(row2.getValue(speedCol));
+		assertArrayEquals(new Object[] { 2, "Bus2", null, false }, row2.getObjectArray());
+		
+		assertSame(row2, table.findByPrimaryKey(2));
+	}
+	
+	@Test
+	public void testModificationsAndOriginalValues() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, "Bus1", 60.0, true);
+		table.acceptChanges();
+		
+		row1.setValue(speedCol, 90.0);
+		row1.setValue(nameCol, "Bus One");
+		
+		assertEquals(RowState.Modified, row1.getState());
+		assertEquals(90.0, row1.getValue(speedCol));
+		assertEquals("Bus One", row1.getValue(nameCol));
+		assertEquals(60.0, row1.getOriginalValue(speedCol));
+		assertEquals("Bus1", row1.getOriginalValue(nameCol));
+		
+		row1.setValue(idCol, 10);
+		assertSame(row1, table.findByPrimaryKey(10));
+		assertNull(table.findByPrimaryKey(1));
+	}
+	
+	@Test
+	public void testRemovedRowsKeepTheirValuesAndGiveBackTheirSlot() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, "Bus1", 60.0, true);
+		EntityRow row2 = table.addRow(2, "Bus2", 70.0, true);
+		table.acceptChanges();
+		
+		EntityRow row3 = table.addRow(3, "Bus3", 80.0, true);
+		table.removeRow(row3);
+		assertEquals(RowState.Detached, row3.getState());
+		assertEquals("Bus3", row3.getValue(nameCol));
+		
+		table.removeRow(row1);
+		assertEquals(RowState.Removed, row1.getState());
+		assertEquals("Bus1", row1.getValue(nameCol));
+		
+		table.acceptChanges();
+		assertEquals("Bus1", row1.getValue(nameCol));
+		
+		EntityRow row4 = table.addRow(4, "Bus4", 90.0, false);
+		EntityRow row5 = table.addRow(5, "Bus5", 95.0, false);
+		assertEquals(3, table.getColumnStore().getSlotCount());
+		
+		assertEquals("Bus2", row2.getValue(nameCol));
+		assertEquals("Bus4", row4.getValue(nameCol));
+		assertEquals("Bus5", row5.getValue(nameCol));
+	}
+	
+	@Test
+	public void testHighCardinalityStringsStopBeingEncoded() throws Exception
+	{
+		for (int i = 0; i < 10000; i++)
+			table.addRow(i, "Bus" + i, null, true);
+		
+		StringColumnVector names = (StringColumnVector)table.getColumnStore().getVector(nameCol.getNumber());
+		assertEquals(false, names.isEncoded());
+		assertEquals("Bus1234", table.findByPrimaryKey(1234).getValue(nameCol));
+	}
+	
+	@Test
+	public void testPrimitiveGettersRejectNullValuesWhateverTheStorage() throws Exception
+	{
+		final EntityRow columnarRow = table.addRow(1, "Bus1", null, true);
+		
+		EntityTable rowTable = new EntityTable("Bus");
+		rowTable.addPrimaryKeyColumn("BusId", Integer.class);
+		rowTable.addColumn("Name", String.class);
+		rowTable.addColumn("Speed", Double.class, true);
+		rowTable.addColumn("Active", Boolean.class);
+		final EntityRow row = rowTable.addRow(1, "Bus1", null, true);
+		
+		for (final EntityRow each : new EntityRow[] { row, columnarRow })
+		{
+			assertException(InvalidNullValueException.class, new ExceptionAssert() {
+				@Override
+				public void doAction() throws Exception {
+					each.getDouble(speedCol.getNumber());
+				}
+			});
+			
+			assertEquals(1, each.getInt(idCol.getNumber()));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static test.utils.ExceptionAsserter.assertException;
+
+import org.junit.Test;
+
+import test.utils.ExceptionAsserter.ExceptionAssert;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.Index;
+import sr.entityset.storage.StringColumnVector;
+
+public class DictionaryEncodingTest 
+{
+	@Test
+	public void testValuesAreDeduplicatedInRowStorage() throws Exception
+	{
+		EntityTable table = buildTable(false);
+		EntityColumn stateCol = table.getColumn("State");
+		
+		EntityRow row1 = table.addRow(1, new String("Running"));
+		EntityRow row2 = table.addRow(2, new String("Running"));
+		EntityRow row3 = table.addRow(3, "Stopped");
+		row3.setValue(stateCol, new String("Running"));
+		
+		assertSame(row1.getValue(stateCol), row2.getValue(stateCol));
+		assertSame(row1.getValue(stateCol), row3.getValue(stateCol));
+		assertEquals(2, stateCol.getDictionary().size());
+	}
+	
+	@Test
+	public void testIndexLookupsOnEncodedColumn() throws Exception
+	{
+		for (boolean columnar : new boolean[] { false, true })
+		{
+			EntityTable table = buildTable(columnar);
+			EntityColumn idCol = table.getColumn("Id");
+			EntityColumn stateCol = table.getColumn("State");
+			
+			EntityRow row1 = table.addRow(1, "Running");
+			EntityRow row2 = table.addRow(2, "Stopped");
+			EntityRow row3 = table.addRow(3, "Running");
+			
+			Index stateIndex = new Index(table, stateCol);
+			assertEquals(2, stateIndex.countRows("Running"));
+			assertSame(row2, stateIndex.findFirstRow("Stopped"));
+			assertEquals(0, stateIndex.countRows("Unknown"));
+			assertNull(stateIndex.findFirstRow("Unknown"));
+			
+			Index idStateIndex = new Index(table, idCol, stateCol);
+			assertSame(row3, idStateIndex.findFirstRow(3, "Running"));
+			assertEquals(0, idStateIndex.countRows(3, "Stopped"));
+			
+			table.getIndexes().add(stateIndex);
+			row1.setValue(stateCol, "Stopped");
+			assertEquals(2, stateIndex.countRows("Stopped"));
+		}
+	}
+	
+	@Test
+	public void testColumnarTableStoresCodes() throws Exception
+	{
+		EntityTable table = buildTable(true);
+		EntityColumn stateCol = table.getColumn("State");
+		
+		for (int i = 0; i < 10000; i++)
+			table.addRow(i, i % 3 == 0 ? "Running" : "Stopped");
+		
+		StringColumnVector states = (StringColumnVector)table.getColumnStore().getVector(stateCol.getNumber());
+		assertTrue(states.isEncoded());
+		assertSame(stateCol.getDictionary(), states.getDictionary());
+		assertEquals("Running", table.findByPrimaryKey(3).getValue(stateCol));
+	}
+	
+	@Test
+	public void testOnlyStringColumnsCanBeEncoded() throws Exception
+	{
+		final EntityTable table = buildTable(false);
+		
+		assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				table.enableDictionaryEncoding("Id");
+			}
+		});
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static EntityTable buildTable(boolean columnar)
+	{
+		EntityTable table = new EntityTable("Bus");
+		table.setColumnarStorage(columnar);
+		table.addPrimaryKeyColumn("Id", Integer.class);
+		table.addColumn("State", String.class);
+		table.enableDictionaryEncoding("State");
+		
+		return table;
+	}
+}
@@ -0,0 +1,160 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.BulkLoader;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.codegen.EntityClassGenerator;
+import sr.entityset.exceptions.InvalidNullValueException;
+import test.utils.ExceptionAsserter;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class EntityClassGeneratorTest
+{
+	private File directory;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		directory = File.createTempFile("generated", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@After
+	public void afterEach() throws Exception {
+		delete(directory);
+	}
+
+	@Test
+	public void testGeneratedClassesGiveTypedAccessToRows() throws Exception
+	{
+		EntityTable busTable = new EntityTable("BUS_STOP");
+		busTable.addPrimaryKeyColumn("BUS_ID", Integer.class);
+		busTable.addColumn("Name", String.class);
+		busTable.addColumn("Speed", Double.class);
+		busTable.addColumn("Distance", Long.class, true);
+		busTable.addColumn("Active", Boolean.class);
+		busTable.addColumn("State", String.class, true);
+
+		new EntityClassGenerator("generated.network").generate(Arrays.asList(busTable), directory);
+		Class<?> tableClass = compileAndLoad("generated.network.BusStopTable", "generated.network.BusStopRow");
+
+		EntityTable table = (EntityTable)tableClass.newInstance();
+		assertEquals("BUS_STOP", table.getName());
+		assertEquals(0, tableClass.getField("BUS_ID_COLUMN").getInt(null));
+		assertEquals(2, tableClass.getField("SPEED_COLUMN").getInt(null));
+
+		Method addRow = tableClass.getMethod("addBusStopRow", int.class, String.class,
+				double.class, Long.class, boolean.class, String.class);
+		EntityRow row = (EntityRow)addRow.invoke(table, 7, "Bus7", 60.5, null, true, "Running");
+
+		Class<?> rowClass = row.getClass();
+		assertEquals("generated.network.BusStopRow", rowClass.getName());
+		assertEquals(7, rowClass.getMethod("getBusId").invoke(row));
+		assertEquals(int.class, rowClass.getMethod("getBusId").getReturnType());
+		assertEquals(60.5, rowClass.getMethod("getSpeed").invoke(row));
+		assertEquals(true, rowClass.getMethod("isActive").invoke(row));
+		assertNull(rowClass.getMethod("getDistance").invoke(row));
+		assertEquals("Running", rowClass.getMethod("getStateValue").invoke(row));
+
+		rowClass.getMethod("setSpeed", double.class).invoke(row, 80.0);
+		assertEquals(80.0, row.getValue(table.getColumn("Speed")));
+		assertSame(row, tableClass.getMethod("findByBusId", int.class).invoke(table, 7));
+
+		// rows added from value arrays are typed rows too
+		BulkLoader loader = table.beginBulkLoad(1);
+		loader.addRow(8, "Bus8", 1.0, 10L, false, null);
+		loader.finish();
+		List<?> rows = (List<?>)tableClass.getMethod("busStopRows").invoke(table);
+		assertEquals(2, rows.size());
+		assertTrue(rowClass.isInstance(rows.get(1)));
+	}
+
+	@Test
+	public void testPrimitiveReadsUseTheColumnStore() throws Exception
+	{
+		final EntityTable table = new EntityTable("Bus");
+		table.setColumnarStorage(true);
+		table.addPrimaryKeyColumn("Id", Integer.class);
+		table.addColumn("Distance", Long.class, true);
+		table.addColumn("Speed", Double.class);
+		table.addColumn("Active", Boolean.class);
+		table.addColumn("Name", String.class);
+		table.addRow(1, 10L, 1.5, true, "Bus1");
+		EntityRow row = table.addRow(2, null, 2.5, false, "Bus2");
+
+		assertEquals(2, row.getInt(0));
+		assertTrue(row.isNull(1));
+		assertEquals(2.5, row.getDouble(2), 0.0);
+		assertEquals(false, row.getBoolean(3));
+		assertEquals(10L, table.rowList().get(0).getLong(1));
+
+		// typed setters skip the type check, not the null check
+		ExceptionAsserter.assertException(InvalidNullValueException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				new TypedRow(table).setSpeed(null);
+			}
+		});
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private Class<?> compileAndLoad(String... classNames) throws Exception
+	{
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		String[] arguments = new String[classNames.length + 4];
+		arguments[0] = "-cp";
+		arguments[1] = System.getProperty("java.class.path");
+		arguments[2] = "-d";
+		arguments[3] = directory.getPath();
+		for (int i = 0; i < classNames.length; i++)
+			arguments[i + 4] = new File(directory, classNames[i].replace('.', '/') + ".java").getPath();
+
+		assertEquals(0, compiler.run(null, null, null, arguments));
+
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { directory.toURI().toURL() },
+				this.getClass().getClassLoader());
+		return classLoader.loadClass(classNames[0]);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+
+		file.delete();
+	}
+
+	private static class TypedRow extends EntityRow
+	{
+		TypedRow(EntityTable table) {
+			super(table);
+		}
+
+		void setSpeed(Double value) throws Exception {
+			this.setTypedValue(this.getParentTable().getColumn("Speed"), value);
+		}
+	}
+}
@@ -4,6 +4,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -157,4 +162,33 @@ public class EntityRowTest {
 		assertTrue(ex);
 		assertEquals(10, row.getValue(col1));
 	}
+	
+	@Test
+	public void testPropertyChangeListenersReceiveDecapitalizedColumnName() throws Exception
+	{
+		EntityColumn busIdCol = table.addColumn("BusId", Integer.class, true);
+		EntityRow row = table.newRow();
+		row.setValue(col1, 1);
+		
+		final List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+		PropertyChangeListener listener = new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				events.add(evt);
+			}
+		};
+		
+		row.addPropertyChangeListener("busId", listener);
+		row.setValue(col1, 2);
+		row.setValue(busIdCol, 5);
+		
+		assertEquals(1, events.size());
+		assertEquals("busId", events.get(0).getPropertyName());
+		assertNull(events.get(0).getOldValue());
+		assertEquals(5, events.get(0).getNewValue());
+		
+		row.removePropertyChangeListener("busId", listener);
+		row.setValue(busIdCol, 6);
+		assertEquals(1, events.size());
+	}
 }
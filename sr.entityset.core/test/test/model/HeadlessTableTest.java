@@ -0,0 +1,98 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import test.utils.ExceptionAsserter;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+import ca.odell.glazedlists.ObservableElementList;
+
+public class HeadlessTableTest
+{
+	private EntityTable table;
+	private EntityColumn idCol;
+	private EntityColumn nameCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		table = new EntityTable("Bus");
+		table.setHeadless(true);
+
+		idCol = table.addPrimaryKeyColumn("BusId", Integer.class);
+		nameCol = table.addColumn("Name", String.class);
+	}
+
+	@Test
+	public void testRowsAreHandledWithoutObservableView() throws Exception
+	{
+		assertTrue(table.isHeadless());
+
+		EntityRow row1 = table.addRow(1, "Bus1");
+		EntityRow row2 = table.addRow(2, "Bus2");
+		table.acceptChanges();
+
+		row2.setValue(nameCol, "Bus Two");
+		table.removeRow(row1);
+
+		assertEquals(1, table.rowList().size());
+		assertSame(row2, table.rowList().get(0));
+		assertSame(row2, table.findByPrimaryKey(2));
+		assertEquals(RowState.Removed, row1.getState());
+		assertEquals(RowState.Modified, row2.getState());
+	}
+
+	@Test
+	public void testObservableViewIsCreatedOnDemandAndKeptUpToDate() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, "Bus1");
+
+		ObservableElementList<EntityRow> rows = table.rows();
+		assertEquals(1, rows.size());
+		assertSame(row1, rows.get(0));
+		assertSame(rows, table.rows());
+
+		EntityRow row2 = table.addRow(2, "Bus2");
+		assertEquals(2, rows.size());
+		assertSame(row2, rows.get(1));
+
+		table.removeRow(row1);
+		assertEquals(1, rows.size());
+		assertEquals(1, table.rowList().size());
+	}
+
+	@Test
+	public void testRowListCanNotBeModified() throws Exception
+	{
+		table.addRow(1, "Bus1");
+
+		ExceptionAsserter.assertException(UnsupportedOperationException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				table.rowList().clear();
+			}
+		});
+	}
+
+	@Test
+	public void testHeadlessModeCanNotBeChangedOnceTableHoldsData() throws Exception
+	{
+		table.addRow(1, "Bus1");
+
+		ExceptionAsserter.assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				table.setHeadless(false);
+			}
+		});
+		assertEquals(idCol, table.getPrimaryKeyColumns().iterator().next());
+	}
+}
@@ -391,8 +391,27 @@ public class IndexTest
 		changeObserver.assertHasChanged();
 	}
 	
+	@Test
+	/**
+	 * Ensure keys keep their type: an Integer and a String having
+	 * the same textual representation must not match each other.
+	 */
+	public void testKeysOfDifferentTypesDoNotCollide() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, "1", "row1");
+
+		Index singleColumnIndex = new Index(table, id2Col);
+		assertSame(row1, single(singleColumnIndex.findRows("1")));
+		assertEquals(0, singleColumnIndex.findRows(1).size());
+
+		Index twoColumnsIndex = new Index(table, id1Col, id2Col);
+		assertSame(row1, single(twoColumnsIndex.findRows(1, "1")));
+		assertEquals(0, twoColumnsIndex.findRows("1", "1").size());
+		assertEquals(0, twoColumnsIndex.findRows(1, 1).size());
+	}
+
 	///////////////////////////////////////////////////////////////////////////////////////////////
-	
+
 	private <T> T single(List<T> list) throws Exception
 	{
 		if (list.size() != 1) throw new Exception("Expecting exactly one row.");
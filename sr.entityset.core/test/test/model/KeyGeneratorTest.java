@@ -0,0 +1,213 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static test.utils.ExceptionAsserter.assertException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.KeyGenerator;
+import sr.entityset.NewRowBuilder;
+import sr.entityset.RowState;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+import sr.entityset.exceptions.ConstraintViolationException;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class KeyGeneratorTest
+{
+	private EntityTable lineTable;
+	private EntityColumn lineIdCol;
+	private EntityTable busTable;
+	private EntityColumn busLineCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		lineTable = new EntityTable("Line");
+		lineIdCol = lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+		lineTable.addColumn("Name", String.class);
+
+		busTable = new EntityTable("Bus");
+		busTable.addPrimaryKeyColumn("BusId", Long.class);
+		busLineCol = busTable.addColumn("LineId", Integer.class);
+
+		List<EntityColumn> parentColumns = Arrays.asList(lineIdCol);
+		List<EntityColumn> childColumns = Arrays.asList(busLineCol);
+		busTable.addConstraint(new ForeignKeyChildConstraint("BusLine",
+				lineTable, parentColumns, childColumns));
+		lineTable.addConstraint(new ForeignKeyParentConstraint("BusLine",
+				busTable, lineTable, childColumns, parentColumns));
+	}
+
+	@Test
+	public void testSequenceIsSeededOnceAndFollowsExplicitKeys() throws Exception
+	{
+		lineTable.addRow(5, "Line5");
+
+		KeyGenerator generator = lineTable.getKeyGenerator(lineIdCol);
+		assertSame(generator, lineTable.getKeyGenerator(lineIdCol));
+		assertEquals(6, generator.nextKey());
+
+		lineTable.addRow(20, "Line20");
+		assertEquals(21, generator.nextKey());
+
+		assertEquals(22, generator.reserveBlock(10));
+		assertEquals(32, generator.nextKey());
+
+		lineTable.findByPrimaryKey(20).setValue(lineIdCol, 40);
+		assertEquals(41, generator.nextKey());
+	}
+
+	@Test
+	public void testConcurrentCallersNeverGetTheSameKey() throws Exception
+	{
+		final KeyGenerator generator = busTable.getKeyGenerator(busTable.getColumn("BusId"));
+		final Set<Object> keys = Collections.synchronizedSet(new HashSet<Object>());
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++)
+						keys.add(generator.nextKey());
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(4000, keys.size());
+		assertEquals(4001L, generator.nextKey());
+	}
+
+	@Test
+	public void testTemporaryKeysAreRemappedWithChildRows() throws Exception
+	{
+		lineTable.addRow(1, "Line1");
+		lineTable.acceptChanges();
+
+		NewRowBuilder offlineBuilder = new NewRowBuilder(true);
+		EntityRow newLine = offlineBuilder.buildEntityRow(lineTable);
+		newLine.setValue(lineTable.getColumn("Name"), "New line");
+		lineTable.addRow(newLine);
+		assertEquals(-1, newLine.getValue(lineIdCol));
+
+		KeyGenerator generator = lineTable.getKeyGenerator(lineIdCol);
+		assertTrue(generator.isTemporaryKey(-1));
+
+		EntityRow bus = busTable.addRow(1L, -1);
+		Map<Object, Object> newKeys = generator.remapTemporaryKeys();
+
+		assertEquals(2, newKeys.get(-1));
+		assertEquals(2, newLine.getValue(lineIdCol));
+		assertEquals(2, bus.getValue(busLineCol));
+		assertSame(newLine, lineTable.findByPrimaryKey(2));
+		assertFalse(generator.isTemporaryKey(-1));
+
+		// constraints are checked again afterwards
+		assertException(ConstraintViolationException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				lineTable.findByPrimaryKey(2).setValue(lineIdCol, 3);
+			}
+		});
+	}
+
+	@Test
+	public void testRemappingIsAnExplicitStep() throws Exception
+	{
+		EntityRow newLine = new NewRowBuilder(true).buildEntityRow(lineTable);
+		newLine.setValue(lineTable.getColumn("Name"), "New line");
+		lineTable.addRow(newLine);
+
+		// child rows already accepted stay unchanged once remapped
+		EntityRow bus = busTable.addRow(1L, -1);
+		busTable.acceptChanges();
+
+		lineTable.acceptChanges();
+		assertEquals(-1, newLine.getValue(lineIdCol));
+
+		lineTable.remapTemporaryKeys();
+		assertEquals(1, newLine.getValue(lineIdCol));
+		assertEquals(RowState.Unchanged, newLine.getState());
+		assertEquals(1, bus.getValue(busLineCol));
+		assertEquals(RowState.Unchanged, bus.getState());
+		assertFalse(busTable.isChanged());
+		assertFalse(lineTable.isChanged());
+
+		// added rows keep their state
+		EntityRow otherLine = new NewRowBuilder(true).buildEntityRow(lineTable);
+		otherLine.setValue(lineTable.getColumn("Name"), "Other line");
+		lineTable.addRow(otherLine);
+		lineTable.remapTemporaryKeys();
+		assertEquals(2, otherLine.getValue(lineIdCol));
+		assertEquals(RowState.Added, otherLine.getState());
+	}
+
+	@Test
+	public void testExplicitNegativeKeysAreNeverTemporary() throws Exception
+	{
+		// e.g. loaded from a database
+		EntityRow loadedLine = lineTable.addRow(-5, "Loaded line");
+		EntityRow loadedBus = busTable.addRow(1L, -5);
+		lineTable.acceptChanges();
+		busTable.acceptChanges();
+
+		KeyGenerator generator = lineTable.getKeyGenerator(lineIdCol);
+		EntityRow newLine = new NewRowBuilder(true).buildEntityRow(lineTable);
+		newLine.setValue(lineTable.getColumn("Name"), "New line");
+		lineTable.addRow(newLine);
+		assertEquals(-6, newLine.getValue(lineIdCol));
+
+		// inserted while temporary keys are pending
+		EntityRow otherLine = lineTable.addRow(-7, "Other loaded line");
+		assertFalse(generator.isTemporaryKey(-5));
+		assertFalse(generator.isTemporaryKey(-7));
+		assertTrue(generator.isTemporaryKey(-6));
+		assertEquals(-8, generator.nextTemporaryKey());
+
+		Map<Object, Object> newKeys = generator.remapTemporaryKeys();
+		assertEquals(1, newKeys.size());
+		assertEquals(1, newLine.getValue(lineIdCol));
+		assertEquals(-5, loadedLine.getValue(lineIdCol));
+		assertEquals(-7, otherLine.getValue(lineIdCol));
+		assertEquals(-5, loadedBus.getValue(busLineCol));
+		assertFalse(busTable.isChanged());
+	}
+
+	@Test
+	public void testFastRowKeysAreObserved() throws Exception
+	{
+		KeyGenerator generator = lineTable.getKeyGenerator(lineIdCol);
+		lineTable.addFastRow(10, "Line10");
+		assertEquals(11, generator.nextKey());
+	}
+
+	@Test
+	public void testOnlyIntegerAndLongColumnsAreSupported() throws Exception
+	{
+		assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				lineTable.getKeyGenerator(lineTable.getColumn("Name"));
+			}
+		});
+	}
+}
@@ -0,0 +1,155 @@
+package test.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.storage.MappedTableFile;
+import test.utils.ExceptionAsserter;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class MappedTableTest
+{
+	private File file;
+
+	@Before
+	public void beforeEach() throws Exception {
+		file = File.createTempFile("entityset", ".table");
+	}
+
+	@After
+	public void afterEach() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testMappedRowsHoldTheWrittenValues() throws Exception
+	{
+		EntityTable table = newTable();
+		table.addRow(1, 10L, 1.5, true, "Bus1");
+		table.addRow(2, null, null, null, null);
+		table.addRow(3, Long.MIN_VALUE, -0.0, false, "Bus é中");
+		for (int i = 4; i <= 10000; i++)
+			table.addRow(i, (long)i * i, i / 3.0, i % 2 == 0, "Bus" + (i % 100));
+
+		MappedTableFile.write(table, file);
+		EntityTable mapped = EntityTable.openMapped(file);
+
+		assertEquals("Bus", mapped.getName());
+		assertEquals(table.getColumns().size(), mapped.getColumns().size());
+		assertEquals("Id", mapped.getPrimaryKeyColumns().iterator().next().getName());
+		assertTrue(mapped.isReadOnly());
+		assertTrue(mapped.isHeadless());
+		assertFalse(mapped.isChanged());
+
+		assertEquals(10000, mapped.rowList().size());
+		for (int i = 0; i < 10000; i++)
+			assertArrayEquals(table.rowList().get(i).getObjectArray(), mapped.rowList().get(i).getObjectArray());
+
+		EntityRow row = mapped.rowList().get(2);
+		assertSame(row, mapped.rowList().get(2));
+		assertEquals(RowState.Unchanged, row.getState());
+		assertNull(mapped.rowList().get(1).getValue(mapped.getColumn("Name")));
+	}
+
+	@Test
+	public void testPrimaryKeyLookupsUseThePersistedKey() throws Exception
+	{
+		EntityTable table = new EntityTable("Stop");
+		table.addPrimaryKeyColumn("Line", String.class);
+		table.addPrimaryKeyColumn("Rank", Integer.class);
+		table.addColumn("Name", String.class);
+		for (int i = 0; i < 5000; i++)
+			table.addRow("L" + (i % 7), i, "Stop" + i);
+
+		MappedTableFile.write(table, file);
+		EntityTable mapped = EntityTable.openMapped(file);
+
+		assertSame(mapped.rowList().get(1234), mapped.findByPrimaryKey("L2", 1234));
+		assertNull(mapped.findByPrimaryKey("L3", 1234));
+		assertNull(mapped.findByPrimaryKey("L2", 5000));
+		assertFalse(mapped.getPrimaryKeyIndex().containsDuplicates());
+
+		// other indexes are built from the mapped rows
+		mapped.addIndex("Name");
+		assertSame(mapped.rowList().get(42), mapped.getIndexes().get(1).findFirstRow("Stop42"));
+	}
+
+	@Test
+	public void testMappedTableCanNotBeModified() throws Exception
+	{
+		EntityTable table = newTable();
+		table.addRow(1, 10L, 1.5, true, "Bus1");
+
+		MappedTableFile.write(table, file);
+		final EntityTable mapped = EntityTable.openMapped(file);
+		final EntityRow row = mapped.rowList().get(0);
+
+		ExceptionAsserter.assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				row.setValue(mapped.getColumn("Name"), "Bus2");
+			}
+		});
+		ExceptionAsserter.assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				mapped.addRow(2, 20L, 2.5, false, "Bus2");
+			}
+		});
+		ExceptionAsserter.assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				mapped.removeRow(row);
+			}
+		});
+		ExceptionAsserter.assertException(IllegalStateException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				mapped.addColumn("Other", String.class);
+			}
+		});
+		assertEquals("Bus1", row.getValue(mapped.getColumn("Name")));
+	}
+
+	@Test
+	public void testUnsupportedColumnTypesAreRejected() throws Exception
+	{
+		final EntityTable table = new EntityTable("Bus");
+		table.addPrimaryKeyColumn("Id", Integer.class);
+		table.addColumn("Added", java.util.Date.class);
+
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				MappedTableFile.write(table, file);
+			}
+		});
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static EntityTable newTable() throws Exception
+	{
+		EntityTable table = new EntityTable("Bus");
+		table.setColumnarStorage(true);
+		table.addPrimaryKeyColumn("Id", Integer.class);
+		table.addColumn("Distance", Long.class, true);
+		table.addColumn("Speed", Double.class, true);
+		table.addColumn("Active", Boolean.class, true);
+		table.addColumn("Name", String.class, true);
+		return table;
+	}
+}
@@ -0,0 +1,197 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.BulkLoader;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.constraints.Constraint;
+import sr.entityset.constraints.ConstraintError;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.exceptions.ConstraintViolationException;
+import sr.entityset.exceptions.PrimaryKeyConstraintException;
+
+public class ParallelValidationTest
+{
+	private static final int ROW_COUNT = 20000;
+
+	private ForkJoinPool pool;
+	private EntityTable lineTable;
+	private EntityColumn lineIdCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		pool = new ForkJoinPool(4);
+
+		lineTable = new EntityTable("Line");
+		lineIdCol = lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+		for (int i = 0; i < 100; i++)
+			lineTable.addRow(i);
+	}
+
+	@Test
+	public void testParallelBulkLoadReportsSameErrorsInSameOrderAsSerial() throws Exception
+	{
+		List<ConstraintError> serialErrors = loadBusTable(null);
+		List<ConstraintError> parallelErrors = loadBusTable(pool);
+
+		// one FK miss every 1000 rows, one duplicated PK every 5000 rows
+		assertEquals(ROW_COUNT / 1000 + ROW_COUNT / 5000, parallelErrors.size());
+		assertEquals(serialErrors.size(), parallelErrors.size());
+
+		for (int i = 0; i < serialErrors.size(); i++)
+			assertEquals(serialErrors.get(i).getMessage(), parallelErrors.get(i).getMessage());
+	}
+
+	@Test
+	public void testParallelEndLoadDataThrowsFirstViolation() throws Exception
+	{
+		EntityTable busTable = createBusTable();
+
+		busTable.beginLoadData();
+		for (int i = 0; i < ROW_COUNT; i++)
+			busTable.addRow(i, i % 100);
+		busTable.addRow(ROW_COUNT - 1, 1);
+		busTable.addRow(12, 2);
+
+		try {
+			busTable.endLoadData(pool);
+			fail("Expecting a PrimaryKeyConstraintException");
+		}
+		catch (PrimaryKeyConstraintException e) {
+			assertTrue(e.getMessage().contains("'" + (ROW_COUNT - 1) + "'"));
+		}
+	}
+
+	@Test
+	public void testParallelEndLoadDataAcceptsValidRows() throws Exception
+	{
+		EntityTable busTable = createBusTable();
+
+		busTable.beginLoadData();
+		for (int i = 0; i < ROW_COUNT; i++)
+			busTable.addRow(i, i % 100);
+		busTable.endLoadData(pool);
+
+		assertSame(busTable.rowList().get(ROW_COUNT - 1), busTable.findByPrimaryKey(ROW_COUNT - 1));
+	}
+
+	@Test
+	public void testParallelEndLoadDataFindsDuplicatesLoadedAfterAValidLoad() throws Exception
+	{
+		EntityTable busTable = createBusTable();
+
+		busTable.beginLoadData();
+		for (int i = 0; i < ROW_COUNT; i++)
+			busTable.addRow(i, i % 100);
+		busTable.endLoadData(pool);
+
+		// the primary key index knew of no duplicate before this load
+		busTable.beginLoadData();
+		busTable.addRow(ROW_COUNT, 1);
+		busTable.addRow(7, 2);
+
+		try {
+			busTable.endLoadData(pool);
+			fail("Expecting a PrimaryKeyConstraintException");
+		}
+		catch (PrimaryKeyConstraintException e) {
+			assertTrue(e.getMessage().contains("'7'"));
+		}
+	}
+
+	@Test
+	public void testParallelEndLoadDataStopsEachPartitionAtItsFirstViolation() throws Exception
+	{
+		final AtomicInteger checkedRowCount = new AtomicInteger();
+		EntityTable busTable = createBusTable();
+		busTable.addConstraint(new Constraint("Rejecting") {
+			@Override
+			public ConstraintError validateExistingRow(EntityRow existingRow)
+			{
+				checkedRowCount.incrementAndGet();
+				return new ConstraintError("Rejected bus " + existingRow.getValue(0));
+			}
+
+			@Override
+			public ConstraintError validatePropositionOnRowAdding(Object[] proposedRowValueArray) {
+				return null;
+			}
+
+			@Override
+			public ConstraintError validatePropositionOnRowModifiying(
+					EntityRow row, Object proposedValue, EntityColumn proposedValueColumn) {
+				return null;
+			}
+
+			@Override
+			public ConstraintError validatePropositionOnRowRemoving(EntityRow row) {
+				return null;
+			}
+		});
+
+		busTable.beginLoadData();
+		for (int i = 0; i < ROW_COUNT; i++)
+			busTable.addRow(i, i % 100);
+
+		try {
+			busTable.endLoadData(pool);
+			fail("Expecting a ConstraintViolationException");
+		}
+		catch (ConstraintViolationException e) {
+			assertEquals("Rejected bus 0", e.getMessage());
+		}
+
+		// at most one row per partition of 2500 rows
+		assertTrue(checkedRowCount.get() <= 8);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private List<ConstraintError> loadBusTable(ForkJoinPool pool) throws Exception
+	{
+		EntityTable busTable = createBusTable();
+
+		BulkLoader loader = busTable.beginBulkLoad(ROW_COUNT);
+		for (int i = 0; i < ROW_COUNT; i++)
+		{
+			int busId = i % 5000 == 4999 ? 0 : i;
+			int lineId = i % 1000 == 999 ? 1000 : i % 100;
+			loader.addRow(busId, lineId);
+		}
+
+		try {
+			loader.finish(pool);
+			fail("Expecting a ConstraintViolationException");
+			return null;
+		}
+		catch (ConstraintViolationException e) {
+			return e.getErrors();
+		}
+	}
+
+	private EntityTable createBusTable() throws Exception
+	{
+		EntityTable busTable = new EntityTable("Bus");
+		busTable.setHeadless(true);
+		busTable.addPrimaryKeyColumn("BusId", Integer.class);
+		EntityColumn busLineCol = busTable.addColumn("LineId", Integer.class);
+		busTable.addConstraint(new ForeignKeyChildConstraint("BusLine",
+				lineTable, Arrays.asList(lineIdCol), Arrays.asList(busLineCol)));
+
+		return busTable;
+	}
+}
@@ -0,0 +1,213 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.Index;
+
+public class PrimitiveHashIndexTest 
+{
+	private EntityTable table;
+	private EntityColumn idCol;
+	private EntityColumn groupCol;
+	private EntityColumn speedCol;
+	private EntityColumn parentCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		table = new EntityTable("tableName");
+		
+		idCol = table.addColumn("id", Integer.class);
+		groupCol = table.addColumn("group", Integer.class);
+		speedCol = table.addColumn("speed", Double.class);
+		parentCol = table.addColumn("parent", Long.class, true);
+	}
+	
+	@Test
+	public void testSingleIntegerColumnLookups() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, 10, 60.0, null);
+		EntityRow row2 = table.addRow(2, 10, 120.0, 1L);
+		
+		Index index = new Index(table, idCol);
+		
+		assertSame(row1, index.findFirstRow(1));
+		assertSame(row2, index.findRows(2).get(0));
+		assertEquals(1, index.countRows(2));
+		assertEquals(0, index.countRows(3));
+		assertEquals(0, index.findRows(3).size());
+		assertNull(index.findFirstRow(3));
+		
+		// other types never match
+		assertEquals(0, index.countRows(1L));
+		assertEquals(0, index.countRows("1"));
+	}
+	
+	@Test
+	public void testTwoIntegerColumnsLookups() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, 10, 60.0, null);
+		EntityRow row2 = table.addRow(10, 1, 120.0, null);
+		EntityRow row3 = table.addRow(1, 10, 150.0, null);
+		
+		Index index = new Index(table, idCol, groupCol);
+		
+		List<EntityRow> rows = index.findRows(1, 10);
+		assertEquals(2, rows.size());
+		assertSame(row1, rows.get(0));
+		assertSame(row3, rows.get(1));
+		assertSame(row2, index.findFirstRow(10, 1));
+		assertTrue(index.containsDuplicates());
+		
+		table.removeRow(row1);
+		index.updateOnRowRemoved(row1);
+		
+		assertSame(row3, index.findFirstRow(1, 10));
+		assertFalse(index.containsDuplicates());
+	}
+	
+	@Test
+	public void testDoubleAndNullableLongColumns() throws Exception
+	{
+		EntityRow row1 = table.addRow(1, 10, 60.0, null);
+		EntityRow row2 = table.addRow(2, 10, 120.0, 1L);
+		EntityRow row3 = table.addRow(3, 10, 60.0, null);
+		
+		Index speedIndex = new Index(table, speedCol);
+		assertEquals(2, speedIndex.countRows(60.0));
+		assertSame(row2, speedIndex.findFirstRow(120.0));
+		
+		Index parentIndex = new Index(table, parentCol);
+		List<EntityRow> nullRows = parentIndex.findRows(new Object[] { null });
+		assertEquals(2, nullRows.size());
+		assertSame(row1, nullRows.get(0));
+		assertSame(row3, nullRows.get(1));
+		assertTrue(parentIndex.containsDuplicates());
+		
+		row3.setValue(parentCol, 1L);
+		parentIndex.updateOnRowModified(row3);
+		
+		assertEquals(1, parentIndex.countRows(new Object[] { null }));
+		assertEquals(2, parentIndex.countRows(1L));
+	}
+	
+	@Test
+	public void testManyRowsSurviveModificationsAndRemovals() throws Exception
+	{
+		int rowCount = 5000;
+		List<EntityRow> rows = new ArrayList<EntityRow>();
+		for (int i = 0; i < rowCount; i++)
+			rows.add(table.addRow(i, i % 7, (double)i, null));
+		
+		Index index = new Index(table, idCol);
+		index.build();
+		
+		Random random = new Random(42);
+		for (int i = 0; i < rowCount / 2; i++)
+		{
+			EntityRow row = rows.get(random.nextInt(rowCount));
+			if (row.getValue(idCol) == null || (Integer)row.getValue(idCol) < 0) continue;
+			
+			row.setValue(idCol, -(Integer)row.getValue(idCol) - 1);
+			index.updateOnRowModified(row);
+		}
+		
+		for (int i = 0; i < rowCount; i += 3)
+		{
+			table.removeRow(rows.get(i));
+			index.updateOnRowRemoved(rows.get(i));
+		}
+		
+		for (int i = 0; i < rowCount; i++)
+		{
+			EntityRow row = rows.get(i);
+			Integer id = (Integer)row.getValue(idCol);
+			
+			if (i % 3 == 0)
+				assertEquals(0, index.countRows(id));
+			else
+			{
+				assertSame(row, index.findFirstRow(id));
+				assertEquals(1, index.countRows(id));
+			}
+		}
+		
+		assertFalse(index.containsDuplicates());
+	}
+	
+	@Test
+	public void testRowsSharingKeysKeepTheirOrderAndCounts() throws Exception
+	{
+		int rowCount = 20000;
+		List<EntityRow> rows = new ArrayList<EntityRow>();
+		for (int i = 0; i < rowCount; i++)
+			rows.add(table.addRow(i, i % 10, (double)i, i % 2 == 0 ? null : (long)(i % 4)));
+		
+		Index groupIndex = new Index(table, groupCol);
+		Index parentIndex = new Index(table, parentCol);
+		groupIndex.build();
+		parentIndex.build();
+		
+		// remove heads, tails and middles of the chains
+		for (int i = 0; i < rowCount; i += 3)
+		{
+			table.removeRow(rows.get(i));
+			groupIndex.updateOnRowRemoved(rows.get(i));
+			parentIndex.updateOnRowRemoved(rows.get(i));
+		}
+		table.removeRow(rows.get(rowCount - 1));
+		groupIndex.updateOnRowRemoved(rows.get(rowCount - 1));
+		parentIndex.updateOnRowRemoved(rows.get(rowCount - 1));
+		
+		for (int group = 0; group < 10; group++)
+		{
+			List<EntityRow> expected = new ArrayList<EntityRow>();
+			for (EntityRow row : table.rowList())
+				if (row.getValue(groupCol).equals(group)) expected.add(row);
+			
+			assertEquals(expected, groupIndex.findRows(group));
+			assertEquals(expected.size(), groupIndex.countRows(group));
+		}
+		
+		List<EntityRow> expectedNulls = new ArrayList<EntityRow>();
+		for (EntityRow row : table.rowList())
+			if (row.getValue(parentCol) == null) expectedNulls.add(row);
+		
+		assertEquals(expectedNulls, parentIndex.findRows(new Object[] { null }));
+		assertEquals(expectedNulls.size(), parentIndex.countRows(new Object[] { null }));
+		assertSame(expectedNulls.get(0), parentIndex.findFirstRow(new Object[] { null }));
+		assertTrue(parentIndex.containsDuplicates());
+	}
+	
+	@Test
+	public void testRebuildingForgetsTheKnownDuplicateState() throws Exception
+	{
+		table.addRow(1, 10, 60.0, null);
+		table.addRow(2, 10, 60.0, null);
+		
+		Index index = new Index(table, idCol);
+		index.build();
+		assertFalse(index.containsDuplicates());
+		
+		// the index is not one of the table's, so it misses the new row until rebuilt
+		table.addRow(2, 10, 60.0, null);
+		index.build();
+		
+		assertTrue(index.containsDuplicates());
+		assertEquals(2, index.countRows(2));
+	}
+}
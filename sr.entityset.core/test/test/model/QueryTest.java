@@ -0,0 +1,173 @@
+package test.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static sr.entityset.query.Predicate.between;
+import static sr.entityset.query.Predicate.eq;
+import static sr.entityset.query.Predicate.greaterThan;
+import static sr.entityset.query.Predicate.in;
+import static sr.entityset.query.Predicate.isNull;
+import static sr.entityset.query.Predicate.lessThan;
+import static sr.entityset.query.Predicate.or;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.query.Predicate;
+import sr.entityset.query.Query;
+import test.utils.ExceptionAsserter;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class QueryTest
+{
+	private EntityTable table;
+	private EntityColumn idCol;
+	private EntityColumn lineCol;
+	private EntityColumn speedCol;
+	private EntityColumn nameCol;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		table = new EntityTable("Bus");
+		idCol = table.addPrimaryKeyColumn("BusId", Integer.class);
+		lineCol = table.addColumn("LineId", Integer.class, true);
+		speedCol = table.addColumn("Speed", Double.class, true);
+		nameCol = table.addColumn("Name", String.class);
+
+		for (int i = 0; i < 1000; i++)
+			table.addRow(i, i % 50 == 0 ? null : i % 10, i % 7 == 0 ? null : (double)(i % 100), "Bus" + i);
+	}
+
+	@Test
+	public void testPredicatesArePushedOntoIndexes() throws Exception
+	{
+		table.addIndex("LineId");
+		table.addSortedIndex("Speed");
+
+		Predicate where = eq(lineCol, 3).and(between(speedCol, 10.0, 40.0));
+		String plan = table.query().where(where).explain();
+		assertTrue(plan, plan.startsWith("lookup on index (LineId) for 3"));
+		assertTrue(plan, plan.contains("intersect range on sorted index (Speed)"));
+		assertFalse(plan, plan.contains("scan"));
+		assertEquals(bruteForce(where), table.query().where(where).rows());
+
+		// disjunction of indexed conditions, nulls included
+		where = or(in(lineCol, 1, 2), isNull(lineCol)).and(lessThan(speedCol, 20.0));
+		plan = table.query().where(where).explain();
+		assertTrue(plan, plan.startsWith("union of"));
+		assertSameRows(bruteForce(where), table.query().where(where).rows());
+
+		// no index on the name, filtered from the other conditions
+		where = eq(nameCol, "Bus13").and(eq(lineCol, 3));
+		plan = table.query().where(where).explain();
+		assertTrue(plan, plan.startsWith("lookup on index (LineId)"));
+		assertEquals(1, table.query().where(where).rows().size());
+	}
+
+	@Test
+	public void testTableIsScannedWhenNoIndexApplies() throws Exception
+	{
+		int indexCount = table.getIndexes().size();
+		Predicate where = greaterThan(speedCol, 95.0);
+		String plan = table.query().where(where).explain();
+		assertTrue(plan, plan.startsWith("scan table Bus (1000 rows)"));
+		assertEquals(bruteForce(where), table.query().where(where).rows());
+		assertEquals(indexCount, table.getIndexes().size());
+
+		// composite index used once both columns are compared
+		table.addIndex("LineId", "Speed");
+		where = eq(lineCol, 4).and(eq(speedCol, 14.0));
+		plan = table.query().where(where).explain();
+		assertTrue(plan, plan.startsWith("lookup on index (LineId, Speed) for [4, 14.0]"));
+		assertSameRows(bruteForce(where), table.query().where(where).rows());
+	}
+
+	@Test
+	public void testOrderByAndLimit() throws Exception
+	{
+		List<EntityRow> expected = bruteForce(eq(lineCol, 5));
+		List<EntityRow> rows = table.query().where(eq(lineCol, 5)).orderByDescending(speedCol, idCol).limit(3).rows();
+		assertEquals(3, rows.size());
+		assertEquals(95.0, rows.get(0).getValue(speedCol));
+		assertEquals(995, rows.get(0).getValue(idCol));
+		assertEquals(895, rows.get(1).getValue(idCol));
+
+		// sorted index walked in order, stopping at the limit
+		table.addSortedIndex("Speed");
+		Query query = table.query().where(eq(lineCol, 5)).orderBy(speedCol).limit(20);
+		String plan = query.explain();
+		assertTrue(plan, plan.startsWith("scan sorted index (Speed)"));
+		assertFalse(plan, plan.contains("sort on"));
+		rows = query.rows();
+		assertEquals(20, rows.size());
+		assertEquals(null, rows.get(13).getValue(speedCol));
+		assertEquals(5.0, rows.get(14).getValue(speedCol));
+		assertEquals(5.0, rows.get(19).getValue(speedCol));
+		assertTrue(expected.containsAll(rows));
+
+		// range rows already ordered by the index
+		plan = table.query().where(between(speedCol, 10.0, 12.0)).orderBy(speedCol).explain();
+		assertFalse(plan, plan.contains("sort on"));
+		List<Object[]> values = table.query().where(between(speedCol, 10.0, 12.0))
+				.orderByDescending(speedCol).limit(1).select(speedCol, nameCol);
+		assertEquals(1, values.size());
+		assertEquals(12.0, values.get(0)[0]);
+	}
+
+	@Test
+	public void testProjectionAndValidation() throws Exception
+	{
+		List<Object[]> values = table.query().where(eq(idCol, 42)).select(nameCol, lineCol);
+		assertEquals(1, values.size());
+		assertArrayEquals(new Object[] { "Bus42", 2 }, values.get(0));
+
+		final EntityTable otherTable = new EntityTable("Line");
+		final EntityColumn otherCol = otherTable.addPrimaryKeyColumn("LineId", Integer.class);
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				table.query().where(eq(otherCol, 1));
+			}
+		});
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				eq(lineCol, 1L);
+			}
+		});
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				eq(lineCol, null);
+			}
+		});
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private List<EntityRow> bruteForce(Predicate where)
+	{
+		List<EntityRow> rows = new ArrayList<EntityRow>();
+		for (EntityRow row : table.rowList())
+			if (where.matches(row)) rows.add(row);
+
+		return rows;
+	}
+
+	private static void assertSameRows(List<EntityRow> expected, List<EntityRow> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		assertTrue(actual.containsAll(expected));
+		assertEquals(actual.size(), new HashSet<EntityRow>(actual).size());
+	}
+}
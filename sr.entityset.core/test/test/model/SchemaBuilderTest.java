@@ -0,0 +1,171 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityTable;
+import sr.entityset.constraints.Constraint;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+import sr.entityset.constraints.UniqueConstraint;
+import sr.entityset.exceptions.ConstraintViolationException;
+import sr.entityset.exceptions.PrimaryKeyConstraintException;
+import sr.entityset.schema.SchemaBuilder;
+import test.utils.ExceptionAsserter;
+import test.utils.ExceptionAsserter.ExceptionAssert;
+
+public class SchemaBuilderTest
+{
+	private static final String SCHEMA =
+		"<?xml version='1.0'?>\n" +
+		"<database name='network'>\n" +
+		"  <table name='Line'>\n" +
+		"    <column name='LineId' type='INTEGER' primaryKey='true' required='true'/>\n" +
+		"    <column name='Code' type='VARCHAR' size='10' required='true'/>\n" +
+		"    <column name='Length' type='DECIMAL' size='10,2'/>\n" +
+		"    <unique name='LineCode'><unique-column name='Code'/></unique>\n" +
+		"  </table>\n" +
+		"  <table name='Bus'>\n" +
+		"    <column name='BusId' type='BIGINT' primaryKey='true' required='true'/>\n" +
+		"    <column name='Name' type='VARCHAR' size='50' required='true'/>\n" +
+		"    <column name='LineId' type='INTEGER'/>\n" +
+		"    <column name='Voltage' type='DOUBLE'/>\n" +
+		"    <column name='Service' type='TIMESTAMP'/>\n" +
+		"    <foreign-key name='BusLine' foreignTable='Line'>\n" +
+		"      <reference local='LineId' foreign='LineId'/>\n" +
+		"    </foreign-key>\n" +
+		"    <index name='BusName'><index-column name='Name'/></index>\n" +
+		"  </table>\n" +
+		"</database>";
+
+	@Test
+	public void testTablesAreBuiltFromTheSchema() throws Exception
+	{
+		List<EntityTable> tables = SchemaBuilder.fromFile(writeSchema()).buildTables();
+		assertEquals(2, tables.size());
+
+		EntityTable lines = tables.get(0);
+		EntityTable buses = tables.get(1);
+		assertEquals("Line", lines.getName());
+		assertEquals("LineId", lines.getPrimaryKeyColumns().iterator().next().getName());
+		assertEquals(String.class, lines.getColumn("Code").getType());
+		assertFalse(lines.getColumn("Code").getAllowNull());
+		assertEquals(BigDecimal.class, lines.getColumn("Length").getType());
+		assertTrue(lines.getColumn("Length").getAllowNull());
+
+		assertEquals(Long.class, buses.getColumn("BusId").getType());
+		assertEquals(Double.class, buses.getColumn("Voltage").getType());
+		assertEquals(Date.class, buses.getColumn("Service").getType());
+
+		assertNotNull(findConstraint(lines, UniqueConstraint.class, "LineCode"));
+		assertNotNull(findConstraint(lines, ForeignKeyParentConstraint.class, "BusLine"));
+		assertNotNull(findConstraint(buses, ForeignKeyChildConstraint.class, "BusLine"));
+
+		// backing indexes are created upfront
+		assertTrue(hasIndex(lines, lines.getColumn("Code")));
+		assertTrue(hasIndex(buses, buses.getColumn("LineId")));
+		assertTrue(hasIndex(buses, buses.getColumn("Name")));
+	}
+
+	@Test
+	public void testBuiltConstraintsAreEnforced() throws Exception
+	{
+		List<EntityTable> tables = SchemaBuilder.fromFile(writeSchema()).buildTables();
+		final EntityTable lines = tables.get(0);
+		final EntityTable buses = tables.get(1);
+
+		lines.addRow(1, "L1", null);
+		buses.addRow(10L, "Bus 10", 1, 225.0, null);
+
+		ExceptionAsserter.assertException(PrimaryKeyConstraintException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				lines.addRow(1, "L2", null);
+			}
+		});
+		ExceptionAsserter.assertException(ConstraintViolationException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				lines.addRow(2, "L1", null);
+			}
+		});
+		ExceptionAsserter.assertException(ConstraintViolationException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				buses.addRow(11L, "Bus 11", 2, null, null);
+			}
+		});
+		ExceptionAsserter.assertException(ConstraintViolationException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				lines.removeRow(lines.findByPrimaryKey(1));
+			}
+		});
+	}
+
+	@Test
+	public void testTablesArePresizedFromRowCountHints() throws Exception
+	{
+		SchemaBuilder builder = SchemaBuilder.fromFile(writeSchema());
+		builder.setExpectedRowCount("Bus", 100000);
+		EntityTable buses = builder.buildTables().get(1);
+
+		assertEquals(100000, buses.getExpectedRowCount());
+		assertEquals(0, builder.buildTables().get(0).getExpectedRowCount());
+
+		ExceptionAsserter.assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				SchemaBuilder.fromFile(writeSchema()).setExpectedRowCount("Stop", 10);
+			}
+		});
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static File writeSchema() throws Exception
+	{
+		File file = File.createTempFile("schema", ".xml");
+		file.deleteOnExit();
+
+		FileWriter writer = new FileWriter(file);
+		writer.write(SCHEMA);
+		writer.close();
+
+		return file;
+	}
+
+	private static Constraint findConstraint(EntityTable table, Class<?> type, String name)
+	{
+		for (Constraint constraint : table.getConstraints())
+		{
+			if (type.isInstance(constraint) && constraint.getName().equals(name))
+				return constraint;
+		}
+
+		return null;
+	}
+
+	private static boolean hasIndex(EntityTable table, EntityColumn... columns)
+	{
+		for (sr.entityset.Index index : table.getIndexes())
+		{
+			if (Arrays.equals(columns, index.getColumns()))
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,146 @@
+package test.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static test.utils.ExceptionAsserter.assertException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import test.utils.ExceptionAsserter.ExceptionAssert;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.SortedIndex;
+
+public class SortedIndexTest 
+{
+	private EntityTable table;
+	private EntityColumn speedCol;
+	private EntityRow bus1;
+	private EntityRow bus2;
+	private EntityRow bus3;
+	private EntityRow bus4;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		table = new EntityTable("Bus");
+		table.addPrimaryKeyColumn("BusId", Integer.class);
+		table.addColumn("Name", String.class);
+		speedCol = table.addColumn("Speed", Double.class);
+		
+		bus1 = table.addRow(1, "Bus1", 60.0);
+		bus2 = table.addRow(2, "Bus2", 150.0);
+		bus3 = table.addRow(3, "Tram1", 90.0);
+		bus4 = table.addRow(4, "Bus4", 120.0);
+	}
+	
+	@Test
+	public void testRangeQueries() throws Exception
+	{
+		SortedIndex index = table.addSortedIndex("Speed");
+		
+		assertRows(index.findBetween(60.0, 120.0), bus1, bus3, bus4);
+		assertRows(index.findLessThan(90.0), bus1);
+		assertRows(index.findLessOrEqual(90.0), bus1, bus3);
+		assertRows(index.findGreaterThan(120.0), bus2);
+		assertRows(index.findGreaterOrEqual(120.0), bus4, bus2);
+		assertRows(index.findBetween(200.0, null));
+	}
+	
+	@Test
+	public void testRangesNeverReturnNullValues() throws Exception
+	{
+		EntityTable services = new EntityTable("Service");
+		services.addPrimaryKeyColumn("ServiceId", Integer.class);
+		services.addColumn("Speed", Double.class, true);
+		EntityRow slow = services.addRow(1, 50.0);
+		EntityRow unknown = services.addRow(2, null);
+		EntityRow fast = services.addRow(3, 90.0);
+		
+		SortedIndex index = services.addSortedIndex("Speed");
+		
+		assertRows(index.findLessThan(60.0), slow);
+		assertRows(index.findLessOrEqual(90.0), slow, fast);
+		assertRows(index.findBetween(null, 60.0), slow);
+		assertRows(index.findBetween(null, null), slow, fast);
+		assertRows(index.findGreaterOrEqual(50.0), slow, fast);
+		
+		// walking the whole index returns them first
+		assertRows(index.findBottom(2), unknown, slow);
+		assertRows(index.findTop(3), fast, slow, unknown);
+	}
+	
+	@Test
+	public void testTopAndBottomRows() throws Exception
+	{
+		SortedIndex index = table.addSortedIndex("Speed");
+		
+		assertRows(index.findTop(2), bus2, bus4);
+		assertRows(index.findBottom(3), bus1, bus3, bus4);
+		assertRows(index.findTop(10), bus2, bus4, bus3, bus1);
+		
+		List<EntityRow> descending = new ArrayList<EntityRow>();
+		for (EntityRow row : index.descendingRows())
+			descending.add(row);
+		assertRows(descending, bus2, bus4, bus3, bus1);
+	}
+	
+	@Test
+	public void testPrefixQueries() throws Exception
+	{
+		SortedIndex nameIndex = table.addSortedIndex("Name");
+		assertRows(nameIndex.findStartingWith("Bus"), bus1, bus2, bus4);
+		assertRows(nameIndex.findStartingWith("Tram"), bus3);
+		assertRows(nameIndex.findStartingWith("X"));
+		
+		SortedIndex nameSpeedIndex = table.addSortedIndex("Name", "Speed");
+		assertRows(nameSpeedIndex.findByPrefix("Bus2"), bus2);
+		assertRows(nameSpeedIndex.findRange(new Object[] { "Bus2" }, false, null, false), bus4, bus3);
+	}
+	
+	@Test
+	public void testIndexIsMaintainedIncrementally() throws Exception
+	{
+		SortedIndex index = table.addSortedIndex("Speed");
+		assertRows(index.findTop(1), bus2);
+		
+		bus1.setValue(speedCol, 200.0);
+		assertRows(index.findTop(2), bus1, bus2);
+		
+		EntityRow bus5 = table.addRow(5, "Bus5", 30.0);
+		assertRows(index.findBottom(1), bus5);
+		
+		table.removeRow(bus2);
+		assertRows(index.findBetween(100.0, 180.0), bus4);
+		assertSame(bus3, index.findFirstRow(90.0));
+	}
+	
+	@Test
+	public void testRangeWithWrongTypeThrows() throws Exception
+	{
+		final SortedIndex index = table.addSortedIndex("Speed");
+		
+		assertException(IllegalArgumentException.class, new ExceptionAssert() {
+			@Override
+			public void doAction() throws Exception {
+				index.findGreaterThan(10);
+			}
+		});
+		
+		assertEquals(0, index.countRows(90));
+	}
+	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static void assertRows(List<EntityRow> rows, EntityRow... expected)
+	{
+		assertEquals(expected.length, rows.size());
+		for (int i = 0; i < expected.length; i++)
+			assertSame(expected[i], rows.get(i));
+	}
+}
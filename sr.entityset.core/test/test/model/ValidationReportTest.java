@@ -0,0 +1,132 @@
+package test.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.BulkLoader;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.ValidationReport;
+import sr.entityset.ValidationReport.ConstraintViolations;
+import sr.entityset.ValidationReport.Violation;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+
+public class ValidationReportTest
+{
+	private EntityTable lineTable;
+	private EntityTable busTable;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		lineTable = new EntityTable("Line");
+		EntityColumn lineIdCol = lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+		lineTable.addRow(1);
+
+		busTable = new EntityTable("Bus");
+		busTable.setHeadless(true);
+		busTable.addPrimaryKeyColumn("BusId", Integer.class);
+		EntityColumn busLineCol = busTable.addColumn("LineId", Integer.class);
+		busTable.addConstraint(new ForeignKeyChildConstraint("BusLine",
+				lineTable, Arrays.asList(lineIdCol), Arrays.asList(busLineCol)));
+	}
+
+	@Test
+	public void testViolationsAreGroupedByConstraintWithCappedSamples() throws Exception
+	{
+		busTable.beginLoadData();
+		for (int i = 0; i < 10; i++)
+			busTable.addRow(i, i < 5 ? 1 : 2);
+		busTable.addRow(3, 1);
+
+		ValidationReport report = new ValidationReport(3);
+		busTable.endLoadData(report, null);
+
+		assertTrue(report.hasViolations());
+		assertEquals(6, report.getViolationCount());
+		assertEquals(2, report.getViolations().size());
+
+		ConstraintViolations fkViolations = report.getViolations("BusLine");
+		assertEquals(5, fkViolations.getCount());
+		assertEquals(3, fkViolations.getSamples().size());
+
+		Violation firstViolation = fkViolations.getSamples().get(0);
+		assertEquals(5, firstViolation.getRowIndex());
+		assertArrayEquals(new Object[] { 5 }, firstViolation.getKey());
+
+		ConstraintViolations pkViolations = report.getViolations("PrimaryKeyConstraint");
+		assertEquals(1, pkViolations.getCount());
+		assertEquals(10, pkViolations.getSamples().get(0).getRowIndex());
+
+		// nothing removed unless asked to
+		assertEquals(0, report.getRemovedRowCount());
+		assertEquals(11, busTable.rowList().size());
+	}
+
+	@Test
+	public void testInvalidRowsCanBeRemoved() throws Exception
+	{
+		EntityRow validRow = busTable.addRow(1, 1);
+		busTable.acceptChanges();
+
+		BulkLoader loader = busTable.beginBulkLoad(4);
+		loader.addRow(2, 1);
+		loader.addRow(3, 7);
+		loader.addRow(1, 1);
+		loader.addRow(4, null);
+
+		ValidationReport report = new ValidationReport();
+		report.setRemoveInvalidRows(true);
+		loader.finish(report, new ForkJoinPool(2));
+
+		assertEquals(3, report.getViolationCount());
+		assertEquals(2, report.getRemovedRowCount());
+
+		Violation rejected = report.getViolations(ValidationReport.REJECTED_ROWS).getSamples().get(0);
+		assertEquals(3, rejected.getRowIndex());
+		assertNull(rejected.getError().getRow());
+		assertArrayEquals(new Object[] { 4 }, rejected.getKey());
+
+		assertEquals(2, busTable.rowList().size());
+		assertEquals(validRow, busTable.findByPrimaryKey(1));
+		assertNull(busTable.findByPrimaryKey(3));
+		assertEquals(1, busTable.changedRows().size());
+		assertEquals(RowState.Unchanged, validRow.getState());
+
+		assertFalse(report.toString().isEmpty());
+	}
+
+	@Test
+	public void testViolationsPastTheSamplesAreOnlyCounted() throws Exception
+	{
+		int rowCount = 20000;
+		busTable.beginLoadData();
+		for (int i = 0; i < rowCount; i++)
+			busTable.addRow(i, i % 2 == 0 ? 1 : 2);
+
+		ValidationReport report = new ValidationReport(2);
+		report.setRemoveInvalidRows(true);
+		busTable.endLoadData(report, new ForkJoinPool(4));
+
+		ConstraintViolations fkViolations = report.getViolations("BusLine");
+		assertEquals(rowCount / 2, fkViolations.getCount());
+		assertEquals(2, fkViolations.getSamples().size());
+		assertEquals(1, fkViolations.getSamples().get(0).getRowIndex());
+		assertEquals(3, fkViolations.getSamples().get(1).getRowIndex());
+
+		// rows of the violations not kept as samples are removed all the same
+		assertEquals(rowCount / 2, report.getRemovedRowCount());
+		assertEquals(rowCount / 2, busTable.rowList().size());
+	}
+}
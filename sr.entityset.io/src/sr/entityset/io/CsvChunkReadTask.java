@@ -0,0 +1,87 @@
+package sr.entityset.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import sr.entityset.io.converters.CharFieldParser;
+
+/**
+ * Maps one chunk of a CSV file (as given by {@link CsvChunkSplitter}), decodes it
+ * and parses its records into a batch of value arrays. Malformed or unmappable 
+ * bytes are replaced, as a Reader over the file would do.
+ * Once the task is done, {@link #getRecordNumber()} tells how many records were
+ * read from the chunk, or the chunk record which could not be read.
+ */
+class CsvChunkReadTask implements Callable<List<Object[]>>
+{
+	private final FileChannel channel;
+	private final long start;
+	private final long end;
+	private final Charset charset;
+	private final char delimiter;
+	private final char textQualifier;
+	private final CharFieldParser[] parsers;
+	private final boolean skipFirstRecord;
+
+	private long recordNumber = 0;
+
+	CsvChunkReadTask(FileChannel channel, long start, long end, Charset charset,
+			char delimiter, char textQualifier, CharFieldParser[] parsers, boolean skipFirstRecord)
+	{
+		if (end - start > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("CSV chunk starting at byte " + start + " is too large to be mapped.");
+
+		this.channel = channel;
+		this.start = start;
+		this.end = end;
+		this.charset = charset;
+		this.delimiter = delimiter;
+		this.textQualifier = textQualifier;
+		this.parsers = parsers;
+		this.skipFirstRecord = skipFirstRecord;
+	}
+
+	@Override
+	public List<Object[]> call() throws Exception
+	{
+		ByteBuffer bytes = this.channel.map(MapMode.READ_ONLY, this.start, this.end - this.start);
+		CharBuffer chars = this.charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.decode(bytes);
+
+		int offset = chars.arrayOffset() + chars.position();
+		StreamingCsvReader reader = new StreamingCsvReader(chars.array(),
+				offset, offset + chars.remaining(), this.delimiter, this.textQualifier);
+
+		List<Object[]> rows = new ArrayList<Object[]>();
+		try
+		{
+			if (this.skipFirstRecord)
+				reader.readHeader();
+
+			Object[] values = new Object[this.parsers.length];
+			while (reader.readRecord(this.parsers, values))
+			{
+				rows.add(values);
+				values = new Object[this.parsers.length];
+			}
+		}
+		finally {
+			this.recordNumber = reader.getRecordNumber();
+		}
+
+		return rows;
+	}
+
+	long getRecordNumber() {
+		return recordNumber;
+	}
+}
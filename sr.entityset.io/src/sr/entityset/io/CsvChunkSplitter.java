@@ -0,0 +1,115 @@
+package sr.entityset.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits a CSV file into chunks of whole records, so that chunks can be parsed
+ * independently. The file is scanned once, byte per byte through mapped windows,
+ * following the same qualifier rules as {@link StreamingCsvReader}: a line break
+ * inside a qualified field never ends a chunk.
+ *
+ * Scanning bytes requires the delimiter, the qualifier and line breaks to be single
+ * bytes which never appear inside multi-byte characters, which holds for UTF-8 and
+ * the ISO-8859 family (see {@link #ensureSupportedCharset(Charset, char, char)}).
+ */
+public class CsvChunkSplitter
+{
+	private static final int SCAN_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final int FIELD_START = 0;
+	private static final int UNQUALIFIED = 1;
+	private static final int QUALIFIED = 2;
+	private static final int QUALIFIER_IN_QUALIFIED = 3;
+
+	private final byte delimiter;
+	private final byte textQualifier;
+
+	public CsvChunkSplitter(char delimiter, char textQualifier)
+	{
+		if (delimiter > 127 || textQualifier > 127)
+			throw new IllegalArgumentException("Delimiter and text qualifier must be ASCII characters.");
+
+		this.delimiter = (byte)delimiter;
+		this.textQualifier = (byte)textQualifier;
+	}
+
+	public static void ensureSupportedCharset(Charset charset, char delimiter, char textQualifier)
+	{
+		String markers = new String(new char[] { delimiter, textQualifier, '\n', '\r' });
+		byte[] expected = new byte[] { (byte)delimiter, (byte)textQualifier, '\n', '\r' };
+
+		if (Arrays.equals(markers.getBytes(charset), expected) == false)
+			throw new IllegalArgumentException("Charset " + charset.name()
+					+ " does not encode CSV delimiters and line breaks as single ASCII bytes.");
+	}
+
+	/**
+	 * @return the offsets at which chunks start, followed by the file size: chunk i
+	 * goes from offsets[i] to offsets[i + 1]. Chunks are at least chunkSize bytes long,
+	 * except the last one (and they are longer when a record crosses the limit).
+	 */
+	public long[] split(FileChannel channel, long chunkSize) throws IOException
+	{
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive.");
+
+		long size = channel.size();
+		long[] offsets = new long[(int)Math.min(size / chunkSize + 2, Integer.MAX_VALUE)];
+		int offsetCount = 0;
+		offsets[offsetCount++] = 0;
+
+		int state = FIELD_START;
+		long nextCut = chunkSize;
+
+		for (long windowStart = 0; windowStart < size; windowStart += SCAN_WINDOW_SIZE)
+		{
+			int windowSize = (int)Math.min(SCAN_WINDOW_SIZE, size - windowStart);
+			MappedByteBuffer window = channel.map(MapMode.READ_ONLY, windowStart, windowSize);
+
+			for (int i = 0; i < windowSize; i++)
+			{
+				byte b = window.get(i);
+
+				if (state == QUALIFIED)
+				{
+					if (b == this.textQualifier)
+						state = QUALIFIER_IN_QUALIFIED;
+					continue;
+				}
+
+				if (state == QUALIFIER_IN_QUALIFIED && b == this.textQualifier)
+				{
+					// doubled qualifier, the field goes on
+					state = QUALIFIED;
+					continue;
+				}
+
+				if (b == '\n' || b == '\r')
+				{
+					state = FIELD_START;
+					long recordEnd = windowStart + i + 1;
+					if (recordEnd >= nextCut && recordEnd < size)
+					{
+						offsets[offsetCount++] = recordEnd;
+						nextCut = recordEnd + chunkSize;
+					}
+				}
+				else if (b == this.delimiter)
+					state = FIELD_START;
+				else if (state == FIELD_START)
+					state = b == this.textQualifier ? QUALIFIED : UNQUALIFIED;
+				else
+					// chars following a closing qualifier are ignored by the reader
+					state = UNQUALIFIED;
+			}
+		}
+
+		offsets[offsetCount++] = size;
+		return Arrays.copyOf(offsets, offsetCount);
+	}
+}
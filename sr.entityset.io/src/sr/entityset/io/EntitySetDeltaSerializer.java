@@ -0,0 +1,605 @@
+package sr.entityset.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntitySet;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.constraints.Constraint;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+
+/**
+ * Binary change set of an entity set (in the spirit of ADO.NET DiffGrams): only
+ * the rows of {@link EntityTable#changedRows()} are written, so the cost of a
+ * delta is proportional to the number of changes, not to the size of the tables.
+ *
+ * Each changed row is written with its state: added rows with their values,
+ * modified rows with their original values and the values of the columns that
+ * changed, removed rows with their original values. Values use the encoding of
+ * {@link EntitySetBinarySerializer} and blocks end with their CRC32.
+ *
+ * Applying a delta locates modified and removed rows by their original primary
+ * key, and fails (before any change is made) if one of them is missing or no
+ * longer holds its original values in the target entity set, or if the key of
+ * an added row is already taken. Rows are then added and modified parent tables
+ * first, and removed child tables first. Should a row be rejected by the target
+ * constraints, the rows already added and modified are restored before failing,
+ * so a delta is applied entirely or not at all. Applied rows keep their Added, 
+ * Modified or Removed state in the target.
+ */
+public class EntitySetDeltaSerializer
+{
+	static final int ROWS_PER_BLOCK = 4 * 1024;
+
+	private static final int MAGIC = 0x45534447;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int ADDED = 1;
+	private static final int MODIFIED = 2;
+	private static final int REMOVED = 3;
+
+	private final SnapshotBuffer buffer = new SnapshotBuffer();
+
+	public static void saveChangesToStream(EntitySet entitySet, OutputStream outputStream)
+	{
+		try
+		{
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+			new EntitySetDeltaSerializer().save(entitySet, output);
+			output.flush();
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Error while writing delta", e);
+		}
+	}
+
+	public static void applyChangesFromStream(EntitySet entitySet, InputStream inputStream)
+	{
+		List<TableDelta> deltas;
+		try
+		{
+			DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream, 64 * 1024));
+			deltas = new EntitySetDeltaSerializer().load(entitySet, input);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Error while reading delta: " + e.getMessage(), e);
+		}
+
+		Set<EntityRow> removedRows = new HashSet<EntityRow>();
+		for (TableDelta delta : deltas)
+		{
+			delta.locateChangedRows();
+			delta.checkAddedRowKeys();
+			delta.collectRemovedRows(removedRows);
+		}
+
+		List<TableDelta> parentsFirst = sortParentsFirst(deltas);
+		try
+		{
+			for (TableDelta delta : parentsFirst)
+				delta.applyAddedRows();
+			for (TableDelta delta : parentsFirst)
+				delta.applyModifiedRows();
+			
+			// removed rows can not be restored: make sure none will be rejected
+			for (TableDelta delta : parentsFirst)
+				delta.checkRemovedRows(removedRows);
+		}
+		catch (Exception e)
+		{
+			undo(parentsFirst, e);
+			throw new RuntimeException("Error while applying delta, no change was made: " + e.getMessage(), e);
+		}
+
+		try
+		{
+			for (int i = parentsFirst.size() - 1; i >= 0; i--)
+				parentsFirst.get(i).applyRemovedRows();
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Error while applying delta: " + e.getMessage(), e);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void save(EntitySet entitySet, DataOutputStream output) throws IOException
+	{
+		List<EntityTable> changedTables = new ArrayList<EntityTable>();
+		for (EntityTable table : entitySet.getTables())
+		{
+			for (EntityColumn column : table.getColumns())
+				EntitySetBinarySerializer.typeCode(column);
+
+			if (table.isChanged())
+				changedTables.add(table);
+		}
+
+		output.writeInt(MAGIC);
+		output.writeByte(FORMAT_VERSION);
+		output.writeInt(entitySet.getSchemaVersion());
+		output.writeInt(changedTables.size());
+
+		for (EntityTable table : changedTables)
+			this.saveTable(table, output);
+	}
+
+	private void saveTable(EntityTable table, DataOutputStream output) throws IOException
+	{
+		List<EntityColumn> columns = table.getColumns();
+		Collection<EntityRow> rows = table.changedRows();
+
+		this.buffer.clear();
+		this.buffer.writeString(table.getName());
+		this.buffer.writeVarLong(columns.size());
+		for (EntityColumn column : columns)
+		{
+			this.buffer.writeString(column.getName());
+			this.buffer.writeByte(EntitySetBinarySerializer.typeCode(column));
+		}
+		this.buffer.writeVarLong(rows.size());
+		this.buffer.writeTo(output);
+
+		int rowCount = 0;
+		this.buffer.clear();
+		for (EntityRow row : rows)
+		{
+			this.writeRow(columns, row);
+
+			if (++rowCount % ROWS_PER_BLOCK == 0 || rowCount == rows.size())
+			{
+				this.buffer.writeTo(output);
+				this.buffer.clear();
+			}
+		}
+	}
+
+	private void writeRow(List<EntityColumn> columns, EntityRow row)
+	{
+		Object[] values = new Object[columns.size()];
+		Object[] originalValues = new Object[columns.size()];
+		for (EntityColumn column : columns)
+		{
+			values[column.getNumber()] = row.getValue(column);
+			originalValues[column.getNumber()] = row.hasOriginalValues()
+					? row.getOriginalValue(column) : values[column.getNumber()];
+		}
+
+		switch (row.getState())
+		{
+			case Added:
+				this.buffer.writeByte(ADDED);
+				this.writeValues(columns, values, null);
+				break;
+			case Modified:
+			{
+				boolean[] changed = new boolean[columns.size()];
+				for (int i = 0; i < changed.length; i++)
+					changed[i] = areEqual(values[i], originalValues[i]) == false;
+
+				this.buffer.writeByte(MODIFIED);
+				this.writeValues(columns, originalValues, null);
+				this.buffer.writeBits(changed, changed.length);
+				this.writeValues(columns, values, changed);
+				break;
+			}
+			case Removed:
+				this.buffer.writeByte(REMOVED);
+				this.writeValues(columns, originalValues, null);
+				break;
+			default:
+				throw new IllegalStateException("Unexpected changed row state " + row.getState());
+		}
+	}
+
+	/**
+	 * Writes a null bitmap then the non null values, restricted to the
+	 * selected columns if any.
+	 */
+	private void writeValues(List<EntityColumn> columns, Object[] values, boolean[] selected)
+	{
+		boolean[] nulls = new boolean[values.length];
+		for (int i = 0; i < values.length; i++)
+			nulls[i] = values[i] == null;
+		this.buffer.writeBits(nulls, nulls.length);
+
+		for (EntityColumn column : columns)
+		{
+			Object value = values[column.getNumber()];
+			if (value != null && (selected == null || selected[column.getNumber()]))
+				this.buffer.writeValue(EntitySetBinarySerializer.typeCode(column), value);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private List<TableDelta> load(EntitySet entitySet, DataInputStream input) throws IOException
+	{
+		if (input.readInt() != MAGIC)
+			throw new IOException("Not an entity set delta");
+
+		int formatVersion = input.readByte();
+		if (formatVersion != FORMAT_VERSION)
+			throw new IOException("Unsupported delta format version " + formatVersion);
+
+		int schemaVersion = input.readInt();
+		if (schemaVersion != entitySet.getSchemaVersion())
+			throw new IOException("Delta schema version " + schemaVersion
+					+ " does not match entity set schema version " + entitySet.getSchemaVersion());
+
+		List<TableDelta> deltas = new ArrayList<TableDelta>();
+		int tableCount = input.readInt();
+		for (int t = 0; t < tableCount; t++)
+		{
+			TableDelta delta = this.loadTable(entitySet, input);
+			if (delta != null)
+				deltas.add(delta);
+		}
+		return deltas;
+	}
+
+	/**
+	 * @return the changes of the table, null if the entity set has no such table.
+	 */
+	private TableDelta loadTable(EntitySet entitySet, DataInputStream input) throws IOException
+	{
+		this.buffer.readFrom(input);
+
+		String tableName = this.buffer.readString();
+		EntityTable table = entitySet.getTable(tableName);
+
+		int columnCount = this.buffer.readCount();
+		int[] typeCodes = new int[columnCount];
+		EntityColumn[] columns = new EntityColumn[columnCount];
+		for (int c = 0; c < columnCount; c++)
+		{
+			String columnName = this.buffer.readString();
+			typeCodes[c] = this.buffer.readByte();
+
+			columns[c] = table != null ? table.getColumn(columnName) : null;
+			if (columns[c] != null && EntitySetBinarySerializer.typeCode(columns[c]) != typeCodes[c])
+				throw new IOException("Column " + tableName + "." + columnName
+						+ " has another type in the delta");
+		}
+
+		TableDelta delta = table != null ? new TableDelta(table, columns) : null;
+		int rowCount = this.buffer.readCount();
+		for (int r = 0; r < rowCount; r++)
+		{
+			if (r % ROWS_PER_BLOCK == 0)
+				this.buffer.readFrom(input);
+
+			RowChange change = new RowChange(this.buffer.readByte());
+			if (change.state < ADDED || change.state > REMOVED)
+				throw new IOException("Corrupted delta: unknown row state " + change.state);
+
+			if (change.state == ADDED)
+				change.values = this.readValues(typeCodes, null, null);
+			else
+				change.originalValues = this.readValues(typeCodes, null, null);
+
+			if (change.state == MODIFIED)
+			{
+				change.changed = new boolean[columnCount];
+				this.buffer.readBits(change.changed, columnCount);
+				change.values = this.readValues(typeCodes, change.changed, change.originalValues);
+			}
+
+			if (delta != null)
+				delta.changes.add(change);
+		}
+		return delta;
+	}
+
+	/**
+	 * Reads values written by {@link #writeValues}, unselected columns
+	 * taking their default value.
+	 */
+	private Object[] readValues(int[] typeCodes, boolean[] selected, Object[] defaultValues) throws IOException
+	{
+		boolean[] nulls = new boolean[typeCodes.length];
+		this.buffer.readBits(nulls, nulls.length);
+
+		Object[] values = defaultValues != null
+				? Arrays.copyOf(defaultValues, defaultValues.length) : new Object[typeCodes.length];
+		for (int c = 0; c < typeCodes.length; c++)
+			if (selected == null || selected[c])
+				values[c] = nulls[c] ? null : this.buffer.readValue(typeCodes[c]);
+
+		return values;
+	}
+
+	private static List<TableDelta> sortParentsFirst(List<TableDelta> deltas)
+	{
+		Map<EntityTable, TableDelta> deltasByTable = new LinkedHashMap<EntityTable, TableDelta>();
+		for (TableDelta delta : deltas)
+			deltasByTable.put(delta.table, delta);
+
+		List<TableDelta> sorted = new ArrayList<TableDelta>();
+		Set<EntityTable> visited = new HashSet<EntityTable>();
+		for (EntityTable table : deltasByTable.keySet())
+			visitParentsFirst(table, deltasByTable, visited, sorted);
+
+		return sorted;
+	}
+
+	private static void visitParentsFirst(EntityTable table, Map<EntityTable, TableDelta> deltasByTable,
+			Set<EntityTable> visited, List<TableDelta> sorted)
+	{
+		if (visited.add(table) == false)
+			return;
+
+		for (Constraint constraint : table.getConstraints())
+			if (constraint instanceof ForeignKeyChildConstraint)
+				visitParentsFirst(((ForeignKeyChildConstraint)constraint).getParentTable(),
+						deltasByTable, visited, sorted);
+
+		if (deltasByTable.containsKey(table))
+			sorted.add(deltasByTable.get(table));
+	}
+
+	private static void undo(List<TableDelta> parentsFirst, Exception cause)
+	{
+		try
+		{
+			for (int i = parentsFirst.size() - 1; i >= 0; i--)
+				parentsFirst.get(i).undo();
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Error while undoing a delta which could not be applied ("
+					+ cause.getMessage() + "): " + e.getMessage(), e);
+		}
+	}
+
+	private static boolean areEqual(Object value, Object other) {
+		return value == null ? other == null : value.equals(other);
+	}
+
+	/**
+	 * A changed row as read from the delta, values being in the delta column order.
+	 */
+	private static class RowChange
+	{
+		private final int state;
+		private Object[] originalValues;
+		private boolean[] changed;
+		private Object[] values;
+		private EntityRow targetRow;
+		private RowState targetRowState;
+		private Object[] targetRowValues;
+
+		RowChange(int state) {
+			this.state = state;
+		}
+	}
+
+	private static class TableDelta
+	{
+		private final EntityTable table;
+		private final EntityColumn[] columns;
+		private final List<RowChange> changes = new ArrayList<RowChange>();
+		private final List<EntityRow> addedRows = new ArrayList<EntityRow>();
+		private final List<RowChange> appliedModifications = new ArrayList<RowChange>();
+
+		TableDelta(EntityTable table, EntityColumn[] columns)
+		{
+			this.table = table;
+			this.columns = columns;
+		}
+
+		/**
+		 * Finds the target rows of the modified and removed rows, checking
+		 * that they still hold their original values.
+		 */
+		void locateChangedRows()
+		{
+			int[] keyColumns = null;
+			for (RowChange change : this.changes)
+			{
+				if (change.state == ADDED)
+					continue;
+
+				if (keyColumns == null)
+					keyColumns = this.keyColumnPositions();
+
+				Object[] key = new Object[keyColumns.length];
+				for (int i = 0; i < keyColumns.length; i++)
+					key[i] = change.originalValues[keyColumns[i]];
+
+				change.targetRow = this.table.findByPrimaryKey(key);
+				if (change.targetRow == null)
+					throw new RuntimeException("Conflict while applying delta: no row of table "
+							+ this.table.getName() + " has primary key " + Arrays.toString(key));
+
+				for (int c = 0; c < this.columns.length; c++)
+					if (this.columns[c] != null && areEqual(change.originalValues[c],
+							change.targetRow.getValue(this.columns[c])) == false)
+						throw new RuntimeException("Conflict while applying delta: row "
+								+ Arrays.toString(key) + " of table " + this.table.getName()
+								+ " has another value in column " + this.columns[c].getName());
+			}
+		}
+
+		/**
+		 * Checks that the primary keys of the added rows are neither taken by a 
+		 * row of the table nor shared by two added rows.
+		 */
+		void checkAddedRowKeys()
+		{
+			Collection<EntityColumn> primaryKey = this.table.getPrimaryKeyColumns();
+			if (primaryKey.isEmpty())
+				return;
+
+			Set<List<Object>> addedKeys = new HashSet<List<Object>>();
+			for (RowChange change : this.changes)
+			{
+				if (change.state != ADDED)
+					continue;
+
+				Object[] key = this.buildTableRowValues(change.values, primaryKey);
+				if (this.table.findByPrimaryKey(key) != null || addedKeys.add(Arrays.asList(key)) == false)
+					throw new RuntimeException("Conflict while applying delta: an added row of table "
+							+ this.table.getName() + " has primary key " + Arrays.toString(key)
+							+ " which is already taken");
+			}
+		}
+
+		void collectRemovedRows(Set<EntityRow> removedRows)
+		{
+			for (RowChange change : this.changes)
+				if (change.state == REMOVED)
+					removedRows.add(change.targetRow);
+		}
+
+		/**
+		 * Checks that no row outside of the removed ones still depends on a removed row.
+		 */
+		void checkRemovedRows(Set<EntityRow> removedRows)
+		{
+			for (RowChange change : this.changes)
+			{
+				if (change.state != REMOVED)
+					continue;
+
+				for (Constraint constraint : this.table.getConstraints())
+				{
+					if (constraint instanceof ForeignKeyParentConstraint == false)
+						continue;
+
+					ForeignKeyParentConstraint parentConstraint = (ForeignKeyParentConstraint)constraint;
+					Object[] parentValues = new Object[parentConstraint.getParentColumns().size()];
+					int i = 0;
+					for (EntityColumn parentColumn : parentConstraint.getParentColumns())
+						parentValues[i++] = change.targetRow.getValue(parentColumn);
+
+					List<EntityRow> childRows = parentConstraint.getChildTable()
+							.getIndex(parentConstraint.getChildColumns()).findRows(parentValues);
+					for (EntityRow childRow : childRows)
+						if (removedRows.contains(childRow) == false)
+							throw new RuntimeException("Conflict while applying delta: a row of table "
+									+ childRow.getParentTable().getName() + " still depends on removed row "
+									+ Arrays.toString(parentValues) + " of table " + this.table.getName());
+				}
+			}
+		}
+
+		void applyAddedRows() throws Exception
+		{
+			for (RowChange change : this.changes)
+			{
+				if (change.state != ADDED)
+					continue;
+
+				Object[] values = new Object[this.table.getColumns().size()];
+				for (int c = 0; c < this.columns.length; c++)
+					if (this.columns[c] != null)
+						values[this.columns[c].getNumber()] = change.values[c];
+
+				this.addedRows.add(this.table.addRow(values));
+			}
+		}
+
+		void applyModifiedRows() throws Exception
+		{
+			for (RowChange change : this.changes)
+			{
+				if (change.state != MODIFIED)
+					continue;
+
+				change.targetRowState = change.targetRow.getState();
+				change.targetRowValues = new Object[this.columns.length];
+				this.appliedModifications.add(change);
+				
+				for (int c = 0; c < this.columns.length; c++)
+				{
+					if (this.columns[c] != null && change.changed[c])
+					{
+						change.targetRowValues[c] = change.targetRow.getValue(this.columns[c]);
+						change.targetRow.setValue(this.columns[c], change.values[c]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Restores the rows added and modified so far, latest first.
+		 */
+		void undo() throws Exception
+		{
+			for (int i = this.appliedModifications.size() - 1; i >= 0; i--)
+			{
+				RowChange change = this.appliedModifications.get(i);
+				for (int c = 0; c < this.columns.length; c++)
+					if (this.columns[c] != null && change.changed[c])
+						change.targetRow.setValue(this.columns[c], change.targetRowValues[c]);
+				
+				if (change.targetRowState == RowState.Unchanged)
+					this.table.acceptRowChanges(change.targetRow);
+			}
+			this.appliedModifications.clear();
+
+			for (int i = this.addedRows.size() - 1; i >= 0; i--)
+				this.table.removeRow(this.addedRows.get(i));
+			this.addedRows.clear();
+		}
+
+		void applyRemovedRows() throws Exception
+		{
+			for (RowChange change : this.changes)
+				if (change.state == REMOVED)
+					this.table.removeRow(change.targetRow);
+		}
+
+		/**
+		 * Values of the given table columns from values in the delta column order.
+		 */
+		private Object[] buildTableRowValues(Object[] values, Collection<EntityColumn> tableColumns)
+		{
+			List<EntityColumn> deltaColumns = Arrays.asList(this.columns);
+			Object[] result = new Object[tableColumns.size()];
+			int i = 0;
+			for (EntityColumn column : tableColumns)
+			{
+				int position = deltaColumns.indexOf(column);
+				result[i++] = position < 0 ? null : values[position];
+			}
+			return result;
+		}
+
+		private int[] keyColumnPositions()
+		{
+			Collection<EntityColumn> primaryKey = this.table.getPrimaryKeyColumns();
+			if (primaryKey.isEmpty())
+				throw new RuntimeException("Can not apply modified or removed rows to table "
+						+ this.table.getName() + " as it has no primary key");
+
+			int[] positions = new int[primaryKey.size()];
+			int i = 0;
+			for (EntityColumn keyColumn : primaryKey)
+			{
+				positions[i] = Arrays.asList(this.columns).indexOf(keyColumn);
+				if (positions[i++] < 0)
+					throw new RuntimeException("Primary key column " + keyColumn.getName()
+							+ " of table " + this.table.getName() + " is missing from the delta");
+			}
+			return positions;
+		}
+	}
+}
@@ -0,0 +1,676 @@
+package sr.entityset.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntitySet;
+import sr.entityset.EntityTable;
+
+/**
+ * Write-ahead journal of the row changes of an entity set, giving durability
+ * without saving a whole snapshot on every change.
+ *
+ * Once opened, the journal listens to the tables of the entity set and appends
+ * every row added, modified or removed as a compact binary record: values use
+ * the encoding of {@link EntitySetBinarySerializer}, modified and removed rows
+ * are identified by their primary key and every record ends with its CRC32.
+ * Records are written to the disk as the {@link SyncPolicy} requires, the records
+ * appended meanwhile (from any thread) sharing the same write and fsync.
+ *
+ * {@link #open} restores the entity set from the last snapshot, then replays the
+ * journal over it, a record torn by a crash ending the replay. {@link #checkpoint()}
+ * writes a new snapshot and empties the journal. Both carry a generation number,
+ * so that a journal whose changes are already in the snapshot (the process having
+ * stopped during a checkpoint) is ignored.
+ *
+ * Every table of the entity set must have a primary key. Tables must not be
+ * modified while a checkpoint is in progress.
+ */
+public class EntitySetJournal implements Closeable
+{
+	public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+	private static final int PENDING_BYTES_BEFORE_WRITE = 1024 * 1024;
+
+	private static final int JOURNAL_MAGIC = 0x45534A4C;
+	private static final int SNAPSHOT_MAGIC = 0x45534A53;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int ADDED = 1;
+	private static final int MODIFIED = 2;
+	private static final int REMOVED = 3;
+
+	/**
+	 * When the appended records are forced to the disk.
+	 */
+	public enum SyncPolicy
+	{
+		/**
+		 * A change is on the disk when the call making it returns. Changes made
+		 * concurrently from several threads are committed by a single fsync.
+		 */
+		EVERY_CHANGE,
+
+		/**
+		 * Records are written and forced to the disk by a background thread at a
+		 * fixed interval: a crash loses at most the changes of the last interval.
+		 */
+		PERIODIC,
+
+		/**
+		 * Records are written as the buffer fills up, and only forced to the disk
+		 * by {@link EntitySetJournal#sync()}, checkpoints and close: the operating
+		 * system decides when they reach the disk.
+		 */
+		NEVER
+	}
+
+	private final EntitySet entitySet;
+	private final File snapshotFile;
+	private final File journalFile;
+	private final SyncPolicy syncPolicy;
+	private final List<EntityTable> tables;
+	private final Map<EntityTable, Integer> tableIds = new HashMap<EntityTable, Integer>();
+	private final EntityTable.RowChangeListener listener = new JournalingListener();
+
+	// records are encoded and appended to the pending bytes under the pending lock,
+	// pending bytes are written to the channel under the channel lock
+	private final SnapshotBuffer record = new SnapshotBuffer();
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private final DataOutputStream pendingOutput = new DataOutputStream(this.pending);
+	private final Object channelLock = new Object();
+	private long appendedCount = 0;
+	private long writtenCount = 0;
+	private long durableCount = 0;
+	private volatile IOException failure = null;
+
+	private long generation = 0;
+	private RandomAccessFile file = null;
+	private FileChannel channel = null;
+	private ScheduledExecutorService syncExecutor = null;
+
+	private EntitySetJournal(EntitySet entitySet, File snapshotFile, File journalFile, SyncPolicy syncPolicy)
+	{
+		this.entitySet = entitySet;
+		this.snapshotFile = snapshotFile;
+		this.journalFile = journalFile;
+		this.syncPolicy = syncPolicy;
+		this.tables = new ArrayList<EntityTable>(entitySet.getTables());
+
+		for (EntityTable table : this.tables)
+		{
+			if (table.getPrimaryKeyColumns().isEmpty())
+				throw new IllegalArgumentException("Table " + table.getName()
+						+ " has no primary key, its changes can not be journaled");
+
+			for (EntityColumn column : table.getColumns())
+				EntitySetBinarySerializer.typeCode(column);
+
+			this.tableIds.put(table, this.tableIds.size());
+		}
+	}
+
+	public static EntitySetJournal open(EntitySet entitySet, File snapshotFile,
+			File journalFile, SyncPolicy syncPolicy)
+	{
+		return open(entitySet, snapshotFile, journalFile, syncPolicy, DEFAULT_SYNC_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Fills the (empty) entity set from the snapshot and journal files if they
+	 * exist, then starts journaling its changes. Replayed rows are left in the
+	 * Added, Modified or Removed state, as after any load.
+	 * @param syncIntervalMillis interval between two syncs of the {@link SyncPolicy#PERIODIC} policy.
+	 */
+	public static EntitySetJournal open(EntitySet entitySet, File snapshotFile,
+			File journalFile, SyncPolicy syncPolicy, long syncIntervalMillis)
+	{
+		EntitySetJournal journal = new EntitySetJournal(entitySet, snapshotFile, journalFile, syncPolicy);
+		try {
+			journal.recover();
+		}
+		catch (IOException e)
+		{
+			journal.closeFile();
+			throw new RuntimeException("Error while recovering entity set from journal: " + e.getMessage(), e);
+		}
+
+		for (EntityTable table : journal.tables)
+			table.addRowChangeListener(journal.listener);
+
+		if (syncPolicy == SyncPolicy.PERIODIC)
+			journal.startPeriodicSync(syncIntervalMillis);
+
+		return journal;
+	}
+
+	/**
+	 * Forces all the changes journaled so far to the disk.
+	 */
+	public void sync()
+	{
+		long sequence;
+		synchronized (this.pending) {
+			sequence = this.appendedCount;
+		}
+		this.sync(sequence, true);
+	}
+
+	/**
+	 * Saves the whole entity set as the new snapshot, then empties the journal.
+	 */
+	public void checkpoint()
+	{
+		synchronized (this.channelLock)
+		{
+			synchronized (this.pending)
+			{
+				this.ensureNoFailure();
+				try
+				{
+					this.writePending();
+					this.channel.force(false);
+
+					long nextGeneration = this.generation + 1;
+					this.writeSnapshot(nextGeneration);
+
+					this.generation = nextGeneration;
+					this.channel.truncate(0);
+					this.writeHeader();
+				}
+				catch (IOException e)
+				{
+					this.failure = e;
+					throw new RuntimeException("Error while checkpointing journal: " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops journaling, the changes journaled so far being forced to the disk.
+	 */
+	@Override
+	public void close()
+	{
+		for (EntityTable table : this.tables)
+			table.removeRowChangeListener(this.listener);
+
+		if (this.syncExecutor != null)
+		{
+			this.syncExecutor.shutdown();
+			try {
+				this.syncExecutor.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		try
+		{
+			if (this.failure == null && this.channel != null && this.channel.isOpen())
+				this.sync();
+		}
+		finally {
+			this.closeFile();
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void recover() throws IOException
+	{
+		if (this.snapshotFile.exists())
+		{
+			DataInputStream input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(this.snapshotFile), 64 * 1024));
+			try
+			{
+				if (input.readInt() != SNAPSHOT_MAGIC)
+					throw new IOException("Not an entity set journal snapshot: " + this.snapshotFile);
+
+				this.generation = input.readLong();
+				EntitySetBinarySerializer.loadWholeEntitySetFromStream(this.entitySet, input);
+			}
+			finally {
+				input.close();
+			}
+		}
+
+		long validLength = this.journalFile.exists() ? this.replay() : -1;
+
+		this.file = new RandomAccessFile(this.journalFile, "rw");
+		this.channel = this.file.getChannel();
+		if (validLength < 0)
+		{
+			this.channel.truncate(0);
+			this.writeHeader();
+		}
+		else
+		{
+			// drop a torn last record
+			this.channel.truncate(validLength);
+			this.channel.position(validLength);
+		}
+	}
+
+	/**
+	 * Applies the journal records to the entity set.
+	 * @return the length of the valid part of the journal, -1 if the journal does not
+	 * apply to the snapshot and has to be started over.
+	 */
+	private long replay() throws IOException
+	{
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(this.journalFile), 64 * 1024));
+		try
+		{
+			try
+			{
+				if (input.readInt() != JOURNAL_MAGIC)
+					throw new IOException("Not an entity set journal: " + this.journalFile);
+				if (input.readByte() != FORMAT_VERSION)
+					throw new IOException("Unsupported journal format version");
+
+				this.record.readFrom(input);
+			}
+			catch (EOFException e) {
+				// stopped while creating the journal
+				return -1;
+			}
+
+			long validLength = 5 + 8 + this.record.getLength();
+			if (this.record.readVarLong() != this.generation)
+				return -1;
+
+			ColumnMapping[] mappings = this.readSchema();
+			Set<EntityTable> loadingTables = new LinkedHashSet<EntityTable>();
+			long recordNumber = 0;
+			while (true)
+			{
+				try {
+					this.record.readFrom(input);
+				}
+				catch (IOException e) {
+					// end of the journal, or record torn by a crash
+					break;
+				}
+
+				recordNumber++;
+				try {
+					this.replayRecord(mappings, loadingTables);
+				}
+				catch (Exception e) {
+					throw new IOException("Unable to replay journal record " + recordNumber + ": " + e.getMessage(), e);
+				}
+				validLength += 8 + this.record.getLength();
+			}
+
+			// constraints are checked once all the records are replayed
+			for (EntityTable table : loadingTables)
+				table.endLoadData();
+
+			return validLength;
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	private ColumnMapping[] readSchema() throws IOException
+	{
+		long schemaVersion = this.record.readSignedVarLong();
+		if (schemaVersion != this.entitySet.getSchemaVersion())
+			throw new IOException("Journal schema version " + schemaVersion
+					+ " does not match entity set schema version " + this.entitySet.getSchemaVersion());
+
+		ColumnMapping[] mappings = new ColumnMapping[this.record.readCount()];
+		for (int t = 0; t < mappings.length; t++)
+		{
+			String tableName = this.record.readString();
+			EntityTable table = this.entitySet.getTable(tableName);
+			if (table == null)
+				throw new IOException("Journaled table " + tableName + " does not exist");
+
+			mappings[t] = new ColumnMapping(table, this.record.readCount());
+			for (int c = 0; c < mappings[t].columns.length; c++)
+			{
+				String columnName = this.record.readString();
+				EntityColumn column = table.getColumn(columnName);
+				mappings[t].typeCodes[c] = this.record.readByte();
+
+				if (column == null || EntitySetBinarySerializer.typeCode(column) != mappings[t].typeCodes[c])
+					throw new IOException("Journaled column " + tableName + "." + columnName
+							+ " does not exist or has another type");
+				mappings[t].columns[c] = column;
+			}
+		}
+		return mappings;
+	}
+
+	private void replayRecord(ColumnMapping[] mappings, Set<EntityTable> loadingTables) throws Exception
+	{
+		int type = this.record.readByte();
+		int tableId = this.record.readCount();
+		if (tableId >= mappings.length)
+			throw new IOException("Corrupted journal: unknown table " + tableId);
+
+		ColumnMapping mapping = mappings[tableId];
+		if (loadingTables.add(mapping.table))
+			mapping.table.beginLoadData();
+
+		if (type == ADDED)
+		{
+			boolean[] nulls = new boolean[mapping.columns.length];
+			this.record.readBits(nulls, nulls.length);
+
+			Object[] values = new Object[mapping.table.getColumns().size()];
+			for (int c = 0; c < mapping.columns.length; c++)
+				if (nulls[c] == false)
+					values[mapping.columns[c].getNumber()] = this.record.readValue(mapping.typeCodes[c]);
+
+			mapping.table.addRow(values);
+			return;
+		}
+
+		Object[] key = new Object[mapping.table.getPrimaryKeyColumns().size()];
+		int k = 0;
+		for (EntityColumn keyColumn : mapping.table.getPrimaryKeyColumns())
+			key[k++] = this.record.readValue(EntitySetBinarySerializer.typeCode(keyColumn));
+
+		EntityRow row = mapping.table.findByPrimaryKey(key);
+		if (row == null)
+			throw new IOException("No row of table " + mapping.table.getName() + " has the journaled key");
+
+		if (type == MODIFIED)
+		{
+			int c = this.record.readCount();
+			if (c >= mapping.columns.length)
+				throw new IOException("Corrupted journal: unknown column " + c);
+
+			Object value = this.record.readByte() == 0 ? null : this.record.readValue(mapping.typeCodes[c]);
+			row.setValue(mapping.columns[c], value);
+		}
+		else if (type == REMOVED)
+			mapping.table.removeRow(row);
+		else
+			throw new IOException("Corrupted journal: unknown record type " + type);
+	}
+
+	private void append(int type, EntityRow row, EntityColumn column, Object oldValue)
+	{
+		long sequence;
+		boolean bufferFull;
+		synchronized (this.pending)
+		{
+			this.ensureNoFailure();
+
+			EntityTable table = row.getParentTable();
+			this.record.clear();
+			this.record.writeByte(type);
+			this.record.writeVarLong(this.tableIds.get(table));
+
+			if (type == ADDED)
+				this.writeValues(table, row);
+			else
+			{
+				// the key identifying the row before the change
+				for (EntityColumn keyColumn : table.getPrimaryKeyColumns())
+					this.record.writeValue(EntitySetBinarySerializer.typeCode(keyColumn),
+							keyColumn == column ? oldValue : row.getValue(keyColumn));
+
+				if (type == MODIFIED)
+				{
+					Object value = row.getValue(column);
+					this.record.writeVarLong(column.getNumber());
+					this.record.writeByte(value == null ? 0 : 1);
+					if (value != null)
+						this.record.writeValue(EntitySetBinarySerializer.typeCode(column), value);
+				}
+			}
+
+			try {
+				this.record.writeTo(this.pendingOutput);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			sequence = ++this.appendedCount;
+			bufferFull = this.pending.size() >= PENDING_BYTES_BEFORE_WRITE;
+		}
+
+		if (this.syncPolicy == SyncPolicy.EVERY_CHANGE)
+			this.sync(sequence, true);
+		else if (bufferFull)
+			this.sync(sequence, false);
+	}
+
+	private void writeValues(EntityTable table, EntityRow row)
+	{
+		List<EntityColumn> columns = table.getColumns();
+		Object[] values = new Object[columns.size()];
+		boolean[] nulls = new boolean[columns.size()];
+		for (int c = 0; c < values.length; c++)
+		{
+			values[c] = row.getValue(c);
+			nulls[c] = values[c] == null;
+		}
+
+		this.record.writeBits(nulls, nulls.length);
+		for (int c = 0; c < values.length; c++)
+			if (values[c] != null)
+				this.record.writeValue(EntitySetBinarySerializer.typeCode(columns.get(c)), values[c]);
+	}
+
+	/**
+	 * Writes the records appended up to the given one, forcing them to the disk if asked.
+	 * Records appended meanwhile by other threads are written along.
+	 */
+	private void sync(long sequence, boolean force)
+	{
+		synchronized (this.channelLock)
+		{
+			if ((force ? this.durableCount : this.writtenCount) >= sequence)
+				return;
+
+			this.ensureNoFailure();
+			try
+			{
+				this.writePending();
+				if (force)
+				{
+					this.channel.force(false);
+					this.durableCount = this.writtenCount;
+				}
+			}
+			catch (IOException e)
+			{
+				this.failure = e;
+				throw new RuntimeException("Error while writing journal: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the channel lock held.
+	 */
+	private void writePending() throws IOException
+	{
+		byte[] bytes;
+		long count;
+		synchronized (this.pending)
+		{
+			bytes = this.pending.toByteArray();
+			count = this.appendedCount;
+			this.pending.reset();
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining())
+			this.channel.write(buffer);
+
+		this.writtenCount = count;
+	}
+
+	/**
+	 * Starts the journal file: generation and schema of the journaled tables.
+	 */
+	private void writeHeader() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(JOURNAL_MAGIC);
+		output.writeByte(FORMAT_VERSION);
+
+		this.record.clear();
+		this.record.writeVarLong(this.generation);
+		this.record.writeSignedVarLong(this.entitySet.getSchemaVersion());
+		this.record.writeVarLong(this.tables.size());
+		for (EntityTable table : this.tables)
+		{
+			this.record.writeString(table.getName());
+			this.record.writeVarLong(table.getColumns().size());
+			for (EntityColumn column : table.getColumns())
+			{
+				this.record.writeString(column.getName());
+				this.record.writeByte(EntitySetBinarySerializer.typeCode(column));
+			}
+		}
+		this.record.writeTo(output);
+
+		this.channel.position(0);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		while (buffer.hasRemaining())
+			this.channel.write(buffer);
+		this.channel.force(true);
+
+		this.writtenCount = this.appendedCount;
+		this.durableCount = this.appendedCount;
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file first, moved over the previous
+	 * snapshot once on the disk, so that a snapshot is never partially written.
+	 */
+	private void writeSnapshot(long snapshotGeneration) throws IOException
+	{
+		File temporaryFile = new File(this.snapshotFile.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temporaryFile);
+		try
+		{
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+			output.writeInt(SNAPSHOT_MAGIC);
+			output.writeLong(snapshotGeneration);
+			EntitySetBinarySerializer.saveWholeEntitySetToStream(this.entitySet, output);
+			output.flush();
+			stream.getFD().sync();
+		}
+		finally {
+			stream.close();
+		}
+
+		Files.move(temporaryFile.toPath(), this.snapshotFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void startPeriodicSync(long syncIntervalMillis)
+	{
+		this.syncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "EntitySetJournal sync");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		this.syncExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run()
+			{
+				// a failure is kept and reported by the next change
+				if (EntitySetJournal.this.failure == null)
+					EntitySetJournal.this.sync();
+			}
+		}, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void ensureNoFailure()
+	{
+		if (this.failure != null)
+			throw new IllegalStateException("Journal can not be written after a failure: "
+					+ this.failure.getMessage(), this.failure);
+	}
+
+	private void closeFile()
+	{
+		try
+		{
+			if (this.file != null)
+				this.file.close();
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Error while closing journal", e);
+		}
+	}
+
+	private static class ColumnMapping
+	{
+		private final EntityTable table;
+		private final EntityColumn[] columns;
+		private final int[] typeCodes;
+
+		ColumnMapping(EntityTable table, int columnCount)
+		{
+			this.table = table;
+			this.columns = new EntityColumn[columnCount];
+			this.typeCodes = new int[columnCount];
+		}
+	}
+
+	private class JournalingListener implements EntityTable.RowChangeListener
+	{
+		@Override
+		public void rowAdded(EntityRow row) {
+			append(ADDED, row, null, null);
+		}
+
+		@Override
+		public void rowModified(EntityRow row, EntityColumn column, Object oldValue) {
+			append(MODIFIED, row, column, oldValue);
+		}
+
+		@Override
+		public void rowRemoved(EntityRow row) {
+			append(REMOVED, row, null, null);
+		}
+	}
+}
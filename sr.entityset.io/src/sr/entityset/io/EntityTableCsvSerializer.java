@@ -1,13 +1,26 @@
 package sr.entityset.io;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import sr.entityset.BulkLoader;
 import sr.entityset.EntityColumn;
 import sr.entityset.EntityRow;
 import sr.entityset.EntityTable;
+import sr.entityset.ValidationReport;
+import sr.entityset.io.converters.CharFieldParser;
 import sr.entityset.io.converters.DateTimeFormatterJodaDateTimeConverter;
+import sr.entityset.io.converters.IJodaDateTimeConverter;
 import sr.entityset.io.converters.StringEntityTableTypeConverter;
 
 import com.csvreader.CsvReader;
@@ -15,6 +28,11 @@ import com.csvreader.CsvWriter;
 
 public class EntityTableCsvSerializer 
 {
+	private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+	private static final char DELIMITER = '\t';
+	private static final char TEXT_QUALIFIER = '"';
+	
+	private IJodaDateTimeConverter dateTimeConverter;
 	private StringEntityTableTypeConverter converter;
 
 	public EntityTableCsvSerializer() {
@@ -22,7 +40,8 @@ public class EntityTableCsvSerializer
 	}
 	
 	public EntityTableCsvSerializer(String jodaTimeDateFormat) {
-		this.converter = new StringEntityTableTypeConverter(new DateTimeFormatterJodaDateTimeConverter(jodaTimeDateFormat));
+		this.dateTimeConverter = new DateTimeFormatterJodaDateTimeConverter(jodaTimeDateFormat);
+		this.converter = new StringEntityTableTypeConverter(this.dateTimeConverter);
 	}
 	
 	public void writeCsvFile(EntityTable table, Writer writer, boolean includeHeader)
@@ -42,7 +61,7 @@ public class EntityTableCsvSerializer
 			}
 
 			// Now write the row content
-			for (EntityRow row : table.rows()) 
+			for (EntityRow row : table.rowList()) 
 			{
 				for (EntityColumn col : table.getColumns()) {
 					csvWriter.write(this.converter.convertToString(row.getValue(col)));
@@ -80,14 +99,134 @@ public class EntityTableCsvSerializer
 		}
 	}
 
-	public void parseCsvFileWithStringColumns(Reader reader, EntityTable table)
+	/**
+	 * High-throughput alternative to {@link #parseCsvFile(Reader, EntityTable, boolean)}:
+	 * fields are parsed straight from the read buffer by parsers chosen once per 
+	 * column and rows are appended through a {@link BulkLoader}, constraints being 
+	 * validated once all rows are read.
+	 * @throws sr.entityset.exceptions.ConstraintViolationException listing all 
+	 * the violations found (rows being kept in the table).
+	 */
+	public void loadCsvFile(Reader reader, EntityTable table, boolean skipFirstRow) {
+		this.loadCsvFile(reader, table, skipFirstRow, null);
+	}
+	
+	/**
+	 * Same as {@link #loadCsvFile(Reader, EntityTable, boolean)}, violations being 
+	 * collected into the given report (if not null) instead of thrown.
+	 */
+	public void loadCsvFile(Reader reader, EntityTable table, boolean skipFirstRow, ValidationReport report)
+	{
+		StreamingCsvReader csvReader = new StreamingCsvReader(reader, '\t', '"');
+		CharFieldParser[] parsers = CharFieldParser.forColumns(table.getColumns(), this.dateTimeConverter);
+		int colCount = parsers.length;
+		
+		BulkLoader loader = table.beginBulkLoad(0);
+		try 
+		{
+			if (skipFirstRow)
+				csvReader.readHeader();
+			
+			Object[] rowObjectArray = new Object[colCount];
+			while (csvReader.readRecord(parsers, rowObjectArray))
+			{
+				loader.addRow(rowObjectArray);
+				rowObjectArray = new Object[colCount];
+			}
+		} 
+		catch(Exception ex) 
+		{
+			// leave the table in a usable state with the rows read so far
+			loader.finish(new ValidationReport(), null);
+			
+			throw new RuntimeException("Error while trying to read csv record " 
+					+ csvReader.getRecordNumber() + ": " + ex.getMessage(), ex);
+		}
+		
+		if (report == null)
+			loader.finish();
+		else
+			loader.finish(report, null);
+	}
+
+	/**
+	 * Same as {@link #loadCsvFile(Reader, EntityTable, boolean)} for a file, which is
+	 * memory-mapped and split into chunks of whole records parsed in parallel.
+	 * Parsed rows are appended in the file order, indexes being built once at the end.
+	 * @param charset UTF-8 or any charset encoding CSV delimiters as single ASCII bytes.
+	 */
+	public void loadCsvFile(File file, Charset charset, EntityTable table, boolean skipFirstRow) {
+		this.loadCsvFile(file, charset, table, skipFirstRow, null, null);
+	}
+	
+	/**
+	 * @param pool pool parsing the chunks and validating the rows, a temporary one
+	 * being used if null.
+	 * @param report see {@link #loadCsvFile(Reader, EntityTable, boolean, ValidationReport)}.
+	 */
+	public void loadCsvFile(File file, Charset charset, EntityTable table, boolean skipFirstRow, 
+			ForkJoinPool pool, ValidationReport report)
+	{
+		CsvChunkSplitter.ensureSupportedCharset(charset, DELIMITER, TEXT_QUALIFIER);
+		
+		ForkJoinPool usedPool = pool != null ? pool : new ForkJoinPool();
+		try 
+		{
+			FileInputStream stream = new FileInputStream(file);
+			try 
+			{
+				FileChannel channel = stream.getChannel();
+				long chunkSize = Math.max(MIN_CHUNK_SIZE, channel.size() / (usedPool.getParallelism() * 4));
+				long[] offsets = new CsvChunkSplitter(DELIMITER, TEXT_QUALIFIER).split(channel, chunkSize);
+				
+				List<List<Object[]>> batches = readChunks(channel, offsets, charset, table, skipFirstRow, usedPool);
+				
+				int rowCount = 0;
+				for (List<Object[]> batch : batches)
+					rowCount += batch.size();
+				
+				BulkLoader loader = table.beginBulkLoad(rowCount);
+				for (int i = 0; i < batches.size(); i++)
+				{
+					loader.addRows(batches.get(i));
+					batches.set(i, null);
+				}
+				
+				if (report == null)
+					loader.finish(usedPool);
+				else
+					loader.finish(report, usedPool);
+			}
+			finally {
+				stream.close();
+			}
+		}
+		catch (IOException ex) {
+			throw new RuntimeException("Error while trying to read csv file " + file + ": " + ex.getMessage(), ex);
+		}
+		finally {
+			if (pool == null)
+				usedPool.shutdown();
+		}
+	}
+	
+	public void parseCsvFileWithStringColumns(Reader reader, EntityTable table) {
+		this.parseCsvFileWithStringColumns(reader, table, false);
+	}
+	
+	/**
+	 * @param dictionaryEncoded when true, every created column is dictionary-encoded
+	 * so that repeated values are deduplicated while loading (see 
+	 * {@link EntityTable#enableDictionaryEncoding(String)}).
+	 */
+	public void parseCsvFileWithStringColumns(Reader reader, EntityTable table, boolean dictionaryEncoded)
 	{
 		CsvReader csvReader = new CsvReader(reader, '\t');
 		csvReader.setTextQualifier('"');
 		
 		try 
 		{
-			addStringColumnsFromHeader(csvReader, table);
+			addStringColumnsFromHeader(csvReader, table, dictionaryEncoded);
 			fillTableContent(csvReader, table);
 		} 
 		catch(Exception ex) {
@@ -95,7 +234,46 @@ public class EntityTableCsvSerializer
 		}
 	}
 	
-	private void addStringColumnsFromHeader(CsvReader csvReader, EntityTable table)
+	private List<List<Object[]>> readChunks(FileChannel channel, long[] offsets, Charset charset,
+			EntityTable table, boolean skipFirstRow, ForkJoinPool pool)
+	{
+		CharFieldParser[] parsers = CharFieldParser.forColumns(table.getColumns(), this.dateTimeConverter);
+		
+		List<CsvChunkReadTask> tasks = new ArrayList<CsvChunkReadTask>();
+		List<Future<List<Object[]>>> futures = new ArrayList<Future<List<Object[]>>>();
+		for (int i = 0; i < offsets.length - 1; i++)
+		{
+			CsvChunkReadTask task = new CsvChunkReadTask(channel, offsets[i], offsets[i + 1], 
+					charset, DELIMITER, TEXT_QUALIFIER, parsers, skipFirstRow && i == 0);
+			tasks.add(task);
+			futures.add(pool.submit(task));
+		}
+		
+		List<List<Object[]>> batches = new ArrayList<List<Object[]>>();
+		long recordNumber = 0;
+		for (int i = 0; i < tasks.size(); i++)
+		{
+			try {
+				batches.add(futures.get(i).get());
+			}
+			catch (ExecutionException ex) {
+				for (Future<List<Object[]>> future : futures)
+					future.cancel(true);
+				
+				throw new RuntimeException("Error while trying to read csv record " 
+						+ (recordNumber + tasks.get(i).getRecordNumber()) + ": " + ex.getCause().getMessage(), ex.getCause());
+			}
+			catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			
+			recordNumber += tasks.get(i).getRecordNumber();
+		}
+		
+		return batches;
+	}
+	
+	private void addStringColumnsFromHeader(CsvReader csvReader, EntityTable table, boolean dictionaryEncoded)
 	{
 		try
 		{
@@ -103,8 +281,12 @@ public class EntityTableCsvSerializer
 				throw new Exception("Header not readable, so can not create table.");
 
 			String[] headers = csvReader.getHeaders();
-			for (String header : headers)		
+			for (String header : headers)
+			{
 				table.addColumn(header, String.class, false);
+				if (dictionaryEncoded)
+					table.enableDictionaryEncoding(header);
+			}
 		}
 		catch (Exception e) {
 			throw new RuntimeException(e);
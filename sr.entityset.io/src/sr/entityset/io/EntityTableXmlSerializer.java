@@ -2,10 +2,18 @@ package sr.entityset.io;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -17,10 +25,12 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import sr.entityset.BulkLoader;
 import sr.entityset.EntityColumn;
 import sr.entityset.EntityRow;
 import sr.entityset.EntitySet;
 import sr.entityset.EntityTable;
+import sr.entityset.ValidationReport;
 import sr.entityset.io.converters.ISOFormatJodaDateTimeConverter;
 import sr.entityset.io.converters.StringEntityTableTypeConverter;
 
@@ -34,30 +44,116 @@ public class EntityTableXmlSerializer
 		super();
 	}
 
+	/**
+	 * Reads the document in one pass, each row element (child of the root element)
+	 * being routed to the table of the same name, so that the document is never 
+	 * held in memory. Rows are appended through a {@link BulkLoader} per table and
+	 * constraints validated once all the tables are filled (foreign keys may 
+	 * thus reference rows coming later in the document).
+	 */
 	public static void loadWholeEntitySetFromStream(EntitySet entitySet, InputStream inputStream) 
 	{
-		EntityTableXmlSerializer serializer = new EntityTableXmlSerializer();
+		Map<String, TableLoad> tableLoads = new HashMap<String, TableLoad>();
+		for (EntityTable table : entitySet.getTables())
+			tableLoads.put(table.getName(), new TableLoad(table));
+		
 		try
 		{
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-			Document xmlDocument = docBuilder.parse(inputStream);
-
-			for(EntityTable table : entitySet.getTables())
-				serializer.fillTableFromXml(table, xmlDocument);
+			XMLStreamReader xmlReader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+			try {
+				readRows(xmlReader, tableLoads);
+			}
+			finally {
+				xmlReader.close();
+			}
 		} 
-		catch (Exception e) {
+		catch (Exception e) 
+		{
+			// leave the tables in a usable state with the rows read so far
+			for (TableLoad tableLoad : tableLoads.values())
+				tableLoad.loader.finish(new ValidationReport(), null);
+			
 			throw new RuntimeException(e);
 		}
+		
+		RuntimeException firstError = null;
+		for (EntityTable table : entitySet.getTables())
+		{
+			try {
+				tableLoads.get(table.getName()).loader.finish();
+			}
+			catch (RuntimeException e) {
+				if (firstError == null)
+					firstError = e;
+			}
+		}
+		
+		if (firstError != null)
+			throw firstError;
 	}
 	
 	public static void saveWholeEntitySetToStream(
 			EntitySet entitySet, 
 			OutputStream outputStream) 
 	{
-		saveWholeEntitySetToStream(entitySet, outputStream, null);
+		saveWholeEntitySetToStreamWithHooks(entitySet, outputStream, null);
+	}
+	
+	/**
+	 * Writes the rows one after the other to the stream (in UTF-8, indented by two
+	 * spaces), without building any document, so that memory use does not depend 
+	 * on the number of rows.
+	 * @param hooks called while writing, may be null.
+	 */
+	protected static void saveWholeEntitySetToStreamWithHooks(
+			EntitySet entitySet, 
+			OutputStream outputStream,
+			XmlWriteHooks hooks) 
+	{
+		try
+		{
+			XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, "UTF-8");
+			
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeStartElement("EntityDS");
+			
+			newLine(writer, 1);
+			writer.writeStartElement("SchemaVersion");
+			newLine(writer, 2);
+			writer.writeStartElement("Version");
+			writer.writeCharacters(Integer.toString(entitySet.getSchemaVersion()));
+			writer.writeEndElement();
+			newLine(writer, 1);
+			writer.writeEndElement();
+			
+			if (hooks != null)
+				hooks.onSchemaVersionWritten(writer);
+
+			for (EntityTable curTable : entitySet.getTables()) 
+			{
+				writeTableRows(curTable, writer);
+				if (hooks != null)
+					hooks.onTableWritten(curTable, writer);
+			}
+			
+			if (hooks != null)
+				hooks.onDocumentEnding(writer);
+			
+			newLine(writer, 0);
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.writeCharacters("\n");
+			writer.flush();
+		} 
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
+	/**
+	 * Same format as {@link #saveWholeEntitySetToStreamWithHooks(EntitySet, OutputStream, XmlWriteHooks)},
+	 * going through a document given to the modifier before being written.
+	 */
 	protected static void saveWholeEntitySetToStream(
 			EntitySet entitySet, 
 			OutputStream outputStream,
@@ -106,7 +202,7 @@ public class EntityTableXmlSerializer
 	{
 		Node rootElement = xmlDocument.getFirstChild();
 
-		for (EntityRow row : table.rows())
+		for (EntityRow row : table.rowList())
 		{
 			Element rowNode = xmlDocument.createElement(table.getName());
 
@@ -169,7 +265,142 @@ public class EntityTableXmlSerializer
 		}
 	}
 	
+	///////////////////////////////////////////////////////////////////////////////////////////////
+	
+	private static void writeTableRows(EntityTable table, XMLStreamWriter writer) throws XMLStreamException
+	{
+		for (EntityRow row : table.rowList())
+		{
+			newLine(writer, 1);
+			writer.writeStartElement(table.getName());
+			
+			for (EntityColumn column : table.getColumns())
+			{
+				Object value = row.getValue(column);
+				
+				if (SKIP_NULL_FIELDS && value == null)
+					continue;
+				
+				newLine(writer, 2);
+				String text = stringEntityTableTypeConverter.convertToString(value);
+				if (text == null || text.isEmpty())
+					writer.writeEmptyElement(column.getName());
+				else
+				{
+					writer.writeStartElement(column.getName());
+					writeText(writer, text);
+					writer.writeEndElement();
+				}
+			}
+			
+			newLine(writer, 1);
+			writer.writeEndElement();
+		}
+	}
+	
+	// carriage returns are written as references (as the DOM serializer does) to survive parsing
+	private static void writeText(XMLStreamWriter writer, String text) throws XMLStreamException
+	{
+		int start = 0;
+		for (int cr = text.indexOf('\r'); cr != -1; cr = text.indexOf('\r', start))
+		{
+			writer.writeCharacters(text.substring(start, cr));
+			writer.writeEntityRef("#13");
+			start = cr + 1;
+		}
+		writer.writeCharacters(text.substring(start));
+	}
+	
+	private static void newLine(XMLStreamWriter writer, int depth) throws XMLStreamException
+	{
+		writer.writeCharacters("\n");
+		for (int i = 0; i < depth; i++)
+			writer.writeCharacters("  ");
+	}
+	
+	private static void readRows(XMLStreamReader xmlReader, Map<String, TableLoad> tableLoads) throws Exception
+	{
+		int depth = 0;
+		TableLoad tableLoad = null;
+		Object[] values = null;
+		
+		while (xmlReader.hasNext())
+		{
+			int event = xmlReader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				depth++;
+				if (depth == 2)
+				{
+					tableLoad = tableLoads.get(xmlReader.getLocalName());
+					if (tableLoad != null)
+						values = new Object[tableLoad.columnsByName.size()];
+				}
+				else if (depth == 3 && tableLoad != null)
+				{
+					EntityColumn column = tableLoad.columnsByName.get(xmlReader.getLocalName());
+					if (column != null)
+					{
+						// reads up to the end of the value element
+						String textValue = xmlReader.getElementText();
+						depth--;
+						
+						try {
+							values[column.getNumber()] = stringEntityTableTypeConverter.
+									parseFromString(textValue, column.getType(), column.getAllowNull());
+						}
+						catch (Exception e) {
+							throw new Exception("Error while reading value '" + textValue 
+									+ "' for column " + column.getName() 
+									+ " in table " + tableLoad.table.getName(), e);
+						}
+					}
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				if (depth == 2 && tableLoad != null)
+				{
+					tableLoad.loader.addRow(values);
+					tableLoad = null;
+				}
+				depth--;
+			}
+		}
+	}
+	
+	private static class TableLoad
+	{
+		final EntityTable table;
+		final BulkLoader loader;
+		final Map<String, EntityColumn> columnsByName = new HashMap<String, EntityColumn>();
+		
+		TableLoad(EntityTable table)
+		{
+			this.table = table;
+			this.loader = table.beginBulkLoad(0);
+			for (EntityColumn column : table.getColumns())
+				this.columnsByName.put(column.getName(), column);
+		}
+	}
+	
 	protected static interface IXmlDocumentModifier {
 		void modify(Document xmlDocument);
 	}
+	
+	/**
+	 * Lets subclasses write additional content while an entity set is saved. 
+	 * Content is written as is (it is not indented) in the root element.
+	 */
+	protected static abstract class XmlWriteHooks 
+	{
+		protected void onSchemaVersionWritten(XMLStreamWriter writer) throws XMLStreamException {
+		}
+		
+		protected void onTableWritten(EntityTable table, XMLStreamWriter writer) throws XMLStreamException {
+		}
+		
+		protected void onDocumentEnding(XMLStreamWriter writer) throws XMLStreamException {
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,316 @@
+package sr.entityset.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Growable byte buffer in which a block of a binary snapshot is encoded (or
+ * decoded), the block being written to the stream with its length and CRC32.
+ */
+class SnapshotBuffer
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int READ_CHUNK_LENGTH = 1024 * 1024;
+
+	private byte[] data = new byte[64 * 1024];
+	private int length = 0;
+	private int position = 0;
+	private final CRC32 crc = new CRC32();
+
+	void clear()
+	{
+		this.length = 0;
+		this.position = 0;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	void writeTo(DataOutputStream output) throws IOException
+	{
+		this.crc.reset();
+		this.crc.update(this.data, 0, this.length);
+
+		output.writeInt(this.length);
+		output.write(this.data, 0, this.length);
+		output.writeInt((int)this.crc.getValue());
+	}
+
+	/**
+	 * Replaces the buffer content by the next block of the stream.
+	 * @throws IOException if the block is corrupted.
+	 */
+	void readFrom(DataInputStream input) throws IOException
+	{
+		int blockLength = input.readInt();
+		if (blockLength < 0)
+			throw new IOException("Corrupted snapshot: invalid block length " + blockLength);
+
+		// the buffer grows as the content is read, so that a corrupted length is
+		// reported at the end of the stream instead of being allocated at once
+		this.clear();
+		try
+		{
+			while (this.length < blockLength)
+			{
+				int chunkLength = Math.min(blockLength - this.length, READ_CHUNK_LENGTH);
+				this.ensureCapacity(this.length + chunkLength);
+				input.readFully(this.data, this.length, chunkLength);
+				this.length += chunkLength;
+			}
+		}
+		catch (EOFException e) {
+			throw new IOException("Corrupted snapshot: block length " + blockLength 
+					+ " exceeds the end of the stream");
+		}
+
+		this.crc.reset();
+		this.crc.update(this.data, 0, this.length);
+		if (input.readInt() != (int)this.crc.getValue())
+			throw new IOException("Corrupted snapshot: checksum mismatch");
+	}
+
+	/**
+	 * Length of the block content.
+	 */
+	int getLength() {
+		return this.length;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	void writeByte(int value)
+	{
+		this.ensureCapacity(this.length + 1);
+		this.data[this.length++] = (byte)value;
+	}
+
+	void writeVarLong(long value)
+	{
+		this.ensureCapacity(this.length + 10);
+		while ((value & ~0x7FL) != 0)
+		{
+			this.data[this.length++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.data[this.length++] = (byte)value;
+	}
+
+	/**
+	 * Zig-zag encoding, so that small negative values take few bytes too.
+	 */
+	void writeSignedVarLong(long value) {
+		this.writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	void writeDouble(double value)
+	{
+		this.ensureCapacity(this.length + 8);
+		long bits = Double.doubleToRawLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8)
+			this.data[this.length++] = (byte)(bits >>> shift);
+	}
+
+	void writeString(String value) {
+		this.writeBytes(value.getBytes(UTF8));
+	}
+
+	/**
+	 * Scale followed by the two's-complement bytes of the unscaled value.
+	 */
+	void writeDecimal(BigDecimal value)
+	{
+		this.writeSignedVarLong(value.scale());
+		this.writeBytes(value.unscaledValue().toByteArray());
+	}
+
+	/**
+	 * Writes the flags as a bitmap, bit i of byte i / 8 being set for flags[i].
+	 */
+	void writeBits(boolean[] flags, int count)
+	{
+		this.ensureCapacity(this.length + (count + 7) / 8);
+		for (int i = 0; i < count; i += 8)
+		{
+			int bits = 0;
+			for (int j = i; j < Math.min(i + 8, count); j++)
+				if (flags[j]) bits |= 1 << (j - i);
+
+			this.data[this.length++] = (byte)bits;
+		}
+	}
+
+	/**
+	 * Writes a single non null value, of one of the types of {@link EntitySetBinarySerializer}.
+	 */
+	void writeValue(int typeCode, Object value)
+	{
+		switch (typeCode)
+		{
+			case EntitySetBinarySerializer.TYPE_INTEGER:
+				this.writeSignedVarLong((Integer)value);
+				break;
+			case EntitySetBinarySerializer.TYPE_LONG:
+				this.writeSignedVarLong((Long)value);
+				break;
+			case EntitySetBinarySerializer.TYPE_DOUBLE:
+				this.writeDouble((Double)value);
+				break;
+			case EntitySetBinarySerializer.TYPE_BOOLEAN:
+				this.writeByte((Boolean)value ? 1 : 0);
+				break;
+			case EntitySetBinarySerializer.TYPE_STRING:
+				this.writeString((String)value);
+				break;
+			case EntitySetBinarySerializer.TYPE_DATE:
+				this.writeSignedVarLong(((Date)value).getTime());
+				break;
+			case EntitySetBinarySerializer.TYPE_DECIMAL:
+				this.writeDecimal((BigDecimal)value);
+				break;
+			default:
+				this.writeSignedVarLong(((DateTime)value).getMillis());
+				this.writeString(((DateTime)value).getZone().getID());
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	int readByte() throws IOException
+	{
+		this.ensureReadable(1);
+		return this.data[this.position++] & 0xFF;
+	}
+
+	long readVarLong() throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			int b = this.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Corrupted snapshot: invalid variable-length number");
+	}
+
+	long readSignedVarLong() throws IOException
+	{
+		long value = this.readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	int readCount() throws IOException
+	{
+		long value = this.readVarLong();
+		if (value > Integer.MAX_VALUE)
+			throw new IOException("Corrupted snapshot: invalid count " + value);
+
+		return (int)value;
+	}
+
+	double readDouble() throws IOException
+	{
+		this.ensureReadable(8);
+		long bits = 0;
+		for (int i = 0; i < 8; i++)
+			bits = (bits << 8) | (this.data[this.position++] & 0xFF);
+
+		return Double.longBitsToDouble(bits);
+	}
+
+	String readString() throws IOException
+	{
+		int byteCount = this.readCount();
+		this.ensureReadable(byteCount);
+		String value = new String(this.data, this.position, byteCount, UTF8);
+		this.position += byteCount;
+		return value;
+	}
+
+	BigDecimal readDecimal() throws IOException
+	{
+		long scale = this.readSignedVarLong();
+		if (scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE)
+			throw new IOException("Corrupted snapshot: invalid decimal scale " + scale);
+
+		int byteCount = this.readCount();
+		if (byteCount == 0)
+			throw new IOException("Corrupted snapshot: empty decimal value");
+
+		this.ensureReadable(byteCount);
+		byte[] bytes = Arrays.copyOfRange(this.data, this.position, this.position + byteCount);
+		this.position += byteCount;
+		return new BigDecimal(new BigInteger(bytes), (int)scale);
+	}
+
+	void readBits(boolean[] flags, int count) throws IOException
+	{
+		this.ensureReadable((count + 7) / 8);
+		for (int i = 0; i < count; i += 8)
+		{
+			int bits = this.data[this.position++];
+			for (int j = i; j < Math.min(i + 8, count); j++)
+				flags[j] = (bits & (1 << (j - i))) != 0;
+		}
+	}
+
+	Object readValue(int typeCode) throws IOException
+	{
+		switch (typeCode)
+		{
+			case EntitySetBinarySerializer.TYPE_INTEGER:
+				return Integer.valueOf((int)this.readSignedVarLong());
+			case EntitySetBinarySerializer.TYPE_LONG:
+				return Long.valueOf(this.readSignedVarLong());
+			case EntitySetBinarySerializer.TYPE_DOUBLE:
+				return this.readDouble();
+			case EntitySetBinarySerializer.TYPE_BOOLEAN:
+				return this.readByte() != 0;
+			case EntitySetBinarySerializer.TYPE_STRING:
+				return this.readString();
+			case EntitySetBinarySerializer.TYPE_DATETIME:
+				long millis = this.readSignedVarLong();
+				return new DateTime(millis, DateTimeZone.forID(this.readString()));
+			case EntitySetBinarySerializer.TYPE_DATE:
+				return new Date(this.readSignedVarLong());
+			case EntitySetBinarySerializer.TYPE_DECIMAL:
+				return this.readDecimal();
+			default:
+				throw new IOException("Corrupted snapshot: unknown column type " + typeCode);
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void writeBytes(byte[] bytes)
+	{
+		this.writeVarLong(bytes.length);
+		this.ensureCapacity(this.length + bytes.length);
+		System.arraycopy(bytes, 0, this.data, this.length, bytes.length);
+		this.length += bytes.length;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > this.data.length)
+			this.data = Arrays.copyOf(this.data, Math.max(capacity, this.data.length * 2));
+	}
+
+	private void ensureReadable(int byteCount) throws IOException
+	{
+		if (this.position + byteCount > this.length)
+			throw new IOException("Corrupted snapshot: unexpected end of block");
+	}
+}
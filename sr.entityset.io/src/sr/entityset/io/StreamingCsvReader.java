@@ -0,0 +1,305 @@
+package sr.entityset.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import sr.entityset.io.converters.CharFieldParser;
+
+/**
+ * CSV tokenizer working on a char buffer: each field is handed to the parser of
+ * its column as a range of the buffer, so records are read without creating any
+ * intermediate String or String array.
+ *
+ * Fields may be surrounded by the text qualifier, in which case they can hold
+ * delimiters and line breaks, a doubled qualifier standing for the qualifier
+ * itself. Records end with \n, \r\n or \r; empty lines are skipped.
+ */
+public class StreamingCsvReader
+{
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final Reader reader;
+	private final char delimiter;
+	private final char textQualifier;
+
+	private char[] buffer;
+	private int position;
+	private int limit;
+	private boolean endOfInput;
+
+	// unescaped copy of qualified fields holding doubled qualifiers
+	private char[] fieldBuffer = new char[256];
+	private long recordNumber = 0;
+	private List<String> headerFields = null;
+
+	public StreamingCsvReader(Reader reader, char delimiter, char textQualifier) {
+		this(reader, delimiter, textQualifier, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize initial size of the char buffer, grown when a record does not fit.
+	 */
+	public StreamingCsvReader(Reader reader, char delimiter, char textQualifier, int bufferSize)
+	{
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("bufferSize must be positive");
+
+		this.reader = reader;
+		this.delimiter = delimiter;
+		this.textQualifier = textQualifier;
+		this.buffer = new char[bufferSize];
+		this.position = 0;
+		this.limit = 0;
+		this.endOfInput = false;
+	}
+
+	/**
+	 * Reads the given range of chars, which must hold whole records.
+	 */
+	public StreamingCsvReader(char[] chars, int start, int end, char delimiter, char textQualifier)
+	{
+		this.reader = null;
+		this.delimiter = delimiter;
+		this.textQualifier = textQualifier;
+		this.buffer = chars;
+		this.position = start;
+		this.limit = end;
+		this.endOfInput = true;
+	}
+
+	/**
+	 * @return the fields of the next record as Strings, or null at the end of the input.
+	 */
+	public String[] readHeader() throws IOException
+	{
+		this.headerFields = new ArrayList<String>();
+		try
+		{
+			if (this.readRecord(null, null) == false)
+				return null;
+
+			return this.headerFields.toArray(new String[this.headerFields.size()]);
+		}
+		finally {
+			this.headerFields = null;
+		}
+	}
+
+	/**
+	 * Parses the next record, the value of field i being parsed by parsers[i] into values[i].
+	 * @return false at the end of the input.
+	 */
+	public boolean readRecord(CharFieldParser[] parsers, Object[] values) throws IOException
+	{
+		if (this.skipEmptyLines() == false)
+			return false;
+
+		this.recordNumber++;
+		int recordStart = this.position;
+
+		while (this.parseRecord(parsers, values) == false)
+		{
+			// the record goes beyond the buffer: keep its beginning, read more and start over
+			this.fill(recordStart);
+			recordStart = 0;
+			this.position = 0;
+
+			if (this.headerFields != null)
+				this.headerFields.clear();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Number of records read so far, header included.
+	 */
+	public long getRecordNumber() {
+		return recordNumber;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return false if the record is not entirely in the buffer.
+	 */
+	private boolean parseRecord(CharFieldParser[] parsers, Object[] values)
+	{
+		char[] buf = this.buffer;
+		int fieldCount = 0;
+
+		while (true)
+		{
+			int pos = this.position;
+			int fieldStart;
+			int fieldEnd;
+			boolean hasDoubledQualifier = false;
+
+			if (pos < this.limit && buf[pos] == this.textQualifier)
+			{
+				fieldStart = ++pos;
+				while (true)
+				{
+					if (pos >= this.limit)
+					{
+						if (this.endOfInput)
+							throw new RuntimeException("Unterminated text qualifier in record " + this.recordNumber);
+						return false;
+					}
+
+					if (buf[pos] == this.textQualifier)
+					{
+						if (pos + 1 >= this.limit && this.endOfInput == false)
+							return false;
+
+						if (pos + 1 < this.limit && buf[pos + 1] == this.textQualifier)
+						{
+							hasDoubledQualifier = true;
+							pos += 2;
+							continue;
+						}
+
+						break;
+					}
+
+					pos++;
+				}
+
+				fieldEnd = pos++;
+
+				// chars between the closing qualifier and the delimiter are ignored
+				while (pos < this.limit && isFieldEnd(buf[pos]) == false)
+					pos++;
+			}
+			else
+			{
+				fieldStart = pos;
+				while (pos < this.limit && isFieldEnd(buf[pos]) == false)
+					pos++;
+
+				fieldEnd = pos;
+			}
+
+			if (pos >= this.limit && this.endOfInput == false)
+				return false;
+
+			this.onField(parsers, values, fieldCount++, buf, fieldStart, fieldEnd, hasDoubledQualifier);
+
+			if (pos >= this.limit)
+			{
+				this.position = pos;
+				break;
+			}
+
+			char c = buf[pos++];
+			if (c == this.delimiter)
+			{
+				this.position = pos;
+				continue;
+			}
+
+			if (c == '\r' && pos < this.limit && buf[pos] == '\n')
+				pos++;
+
+			this.position = pos;
+			break;
+		}
+
+		if (parsers != null && fieldCount != parsers.length)
+			throw new RuntimeException("Record " + this.recordNumber + " has " + fieldCount
+					+ " fields when expecting " + parsers.length);
+
+		return true;
+	}
+
+	private void onField(CharFieldParser[] parsers, Object[] values, int fieldIndex,
+			char[] buf, int start, int end, boolean hasDoubledQualifier)
+	{
+		if (hasDoubledQualifier)
+		{
+			end = this.unescape(buf, start, end);
+			start = 0;
+			buf = this.fieldBuffer;
+		}
+
+		if (parsers == null)
+			this.headerFields.add(new String(buf, start, end - start));
+		else if (fieldIndex < parsers.length)
+			values[fieldIndex] = parsers[fieldIndex].parse(buf, start, end);
+	}
+
+	private int unescape(char[] buf, int start, int end)
+	{
+		if (this.fieldBuffer.length < end - start)
+			this.fieldBuffer = new char[end - start];
+
+		int length = 0;
+		for (int i = start; i < end; i++)
+		{
+			this.fieldBuffer[length++] = buf[i];
+			if (buf[i] == this.textQualifier)
+				i++;
+		}
+
+		return length;
+	}
+
+	private boolean isFieldEnd(char c) {
+		return c == this.delimiter || c == '\n' || c == '\r';
+	}
+
+	/**
+	 * @return false if there is no record left.
+	 */
+	private boolean skipEmptyLines() throws IOException
+	{
+		while (true)
+		{
+			if (this.position >= this.limit)
+			{
+				if (this.endOfInput) return false;
+				this.fill(this.position);
+			}
+
+			char c = this.buffer[this.position];
+			if (c != '\n' && c != '\r')
+				return true;
+
+			this.position++;
+		}
+	}
+
+	/**
+	 * Moves the chars from the given position to the start of the buffer (growing it
+	 * if they fill it) and reads as many chars as possible after them.
+	 */
+	private void fill(int keepFrom) throws IOException
+	{
+		int kept = this.limit - keepFrom;
+		if (kept == this.buffer.length)
+		{
+			char[] newBuffer = new char[this.buffer.length * 2];
+			System.arraycopy(this.buffer, keepFrom, newBuffer, 0, kept);
+			this.buffer = newBuffer;
+		}
+		else
+			System.arraycopy(this.buffer, keepFrom, this.buffer, 0, kept);
+
+		this.position -= keepFrom;
+		this.limit = kept;
+
+		while (this.limit < this.buffer.length)
+		{
+			int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+			if (read < 0)
+			{
+				this.endOfInput = true;
+				break;
+			}
+
+			this.limit += read;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package sr.entityset.io.converters;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+import sr.entityset.EntityColumn;
+
+/**
+ * Parses a field straight from a char buffer into the value of one column.
+ * Parsers are chosen once per column, so that reading a value neither goes
+ * through a chain of type checks nor (for numbers and booleans) creates a String.
+ *
+ * Empty fields follow {@link StringEntityTableTypeConverter#parseFromString(String, Class, boolean)}:
+ * null if the column allows it, else the empty String for String columns and
+ * an error for other types.
+ */
+public abstract class CharFieldParser
+{
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private static final long MAX_ACCUMULATED_MANTISSA = 100000000000000000L;
+	private static final double[] EXACT_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final Class<?> type;
+	private final boolean allowNull;
+
+	protected CharFieldParser(Class<?> type, boolean allowNull)
+	{
+		this.type = type;
+		this.allowNull = allowNull;
+	}
+
+	public static CharFieldParser forColumn(EntityColumn column, IJodaDateTimeConverter dateTimeConverter)
+	{
+		Class<?> type = column.getType();
+		boolean allowNull = column.getAllowNull();
+
+		if (type.equals(String.class)) return new StringParser(allowNull);
+		if (type.equals(Integer.class)) return new IntegerParser(allowNull);
+		if (type.equals(Long.class)) return new LongParser(allowNull);
+		if (type.equals(Double.class)) return new DoubleParser(allowNull);
+		if (type.equals(Boolean.class)) return new BooleanParser(allowNull);
+		if (type.equals(DateTime.class)) return new DateTimeParser(allowNull, dateTimeConverter);
+
+		throw new IllegalArgumentException("Unsupported conversion from CSV text to type "
+				+ type.getName() + " for column " + column.getName());
+	}
+
+	public static CharFieldParser[] forColumns(List<EntityColumn> columns, IJodaDateTimeConverter dateTimeConverter)
+	{
+		CharFieldParser[] parsers = new CharFieldParser[columns.size()];
+		for (EntityColumn column : columns)
+			parsers[column.getNumber()] = forColumn(column, dateTimeConverter);
+
+		return parsers;
+	}
+
+	/**
+	 * @param end index following the last char of the field.
+	 */
+	public Object parse(char[] chars, int start, int end)
+	{
+		if (start == end)
+		{
+			if (this.allowNull) return null;
+			if (this.type.equals(String.class)) return "";
+
+			throw new IllegalArgumentException("Unexpected null value when not allowed.");
+		}
+
+		try {
+			return this.parseValue(chars, start, end);
+		}
+		catch (Exception ex) {
+			throw new RuntimeException("Unable to parse value '" + new String(chars, start, end - start)
+					+ "' into type '" + this.type.getName() + "'", ex);
+		}
+	}
+
+	protected abstract Object parseValue(char[] chars, int start, int end) throws Exception;
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the value of the decimal integer, or Long.MIN_VALUE if the field is not
+	 * a plain integer of at most 18 digits (left to the JDK parsers then).
+	 */
+	private static long parseSmallLong(char[] chars, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (chars[i] == '-' || chars[i] == '+')
+		{
+			negative = chars[i] == '-';
+			i++;
+		}
+
+		if (i == end || end - i > 18)
+			return Long.MIN_VALUE;
+
+		long value = 0;
+		for (; i < end; i++)
+		{
+			int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9)
+				return Long.MIN_VALUE;
+
+			value = value * 10 + digit;
+		}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Exact conversion when the decimal mantissa fits in 53 bits and the power of ten
+	 * is exactly representable (both operands exact, so IEEE division or multiplication
+	 * rounds correctly), else falls back to {@link Double#parseDouble(String)}.
+	 */
+	private static double parseDouble(char[] chars, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (chars[i] == '-' || chars[i] == '+')
+		{
+			negative = chars[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int exponent = 0;
+		int digitCount = 0;
+		boolean fastPath = true;
+
+		for (; i < end && chars[i] >= '0' && chars[i] <= '9'; i++, digitCount++)
+		{
+			if (mantissa >= MAX_ACCUMULATED_MANTISSA) { fastPath = false; break; }
+			mantissa = mantissa * 10 + (chars[i] - '0');
+		}
+
+		if (fastPath && i < end && chars[i] == '.')
+		{
+			for (i++; i < end && chars[i] >= '0' && chars[i] <= '9'; i++, digitCount++)
+			{
+				if (mantissa >= MAX_ACCUMULATED_MANTISSA) { fastPath = false; break; }
+				mantissa = mantissa * 10 + (chars[i] - '0');
+				exponent--;
+			}
+		}
+
+		if (fastPath && i < end && (chars[i] == 'e' || chars[i] == 'E'))
+		{
+			long explicitExponent = parseSmallLong(chars, i + 1, end);
+			if (explicitExponent == Long.MIN_VALUE || Math.abs(explicitExponent) > 1000)
+				fastPath = false;
+			else
+			{
+				exponent += (int)explicitExponent;
+				i = end;
+			}
+		}
+
+		if (fastPath && i == end && digitCount > 0 && mantissa <= MAX_EXACT_MANTISSA
+				&& exponent >= -22 && exponent <= 22)
+		{
+			double value = mantissa;
+			value = exponent < 0 ? value / EXACT_POWERS_OF_TEN[-exponent] : value * EXACT_POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+
+		return Double.parseDouble(new String(chars, start, end - start));
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static class StringParser extends CharFieldParser
+	{
+		StringParser(boolean allowNull) {
+			super(String.class, allowNull);
+		}
+
+		@Override
+		protected Object parseValue(char[] chars, int start, int end) {
+			return new String(chars, start, end - start);
+		}
+	}
+
+	private static class IntegerParser extends CharFieldParser
+	{
+		IntegerParser(boolean allowNull) {
+			super(Integer.class, allowNull);
+		}
+
+		@Override
+		protected Object parseValue(char[] chars, int start, int end)
+		{
+			long value = parseSmallLong(chars, start, end);
+			if (value == Long.MIN_VALUE || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+				return Integer.parseInt(new String(chars, start, end - start));
+
+			return Integer.valueOf((int)value);
+		}
+	}
+
+	private static class LongParser extends CharFieldParser
+	{
+		LongParser(boolean allowNull) {
+			super(Long.class, allowNull);
+		}
+
+		@Override
+		protected Object parseValue(char[] chars, int start, int end)
+		{
+			long value = parseSmallLong(chars, start, end);
+			if (value == Long.MIN_VALUE)
+				return Long.parseLong(new String(chars, start, end - start));
+
+			return Long.valueOf(value);
+		}
+	}
+
+	private static class DoubleParser extends CharFieldParser
+	{
+		DoubleParser(boolean allowNull) {
+			super(Double.class, allowNull);
+		}
+
+		@Override
+		protected Object parseValue(char[] chars, int start, int end) {
+			return parseDouble(chars, start, end);
+		}
+	}
+
+	private static class BooleanParser extends CharFieldParser
+	{
+		private static final char[] TRUE = { 't', 'r', 'u', 'e' };
+
+		BooleanParser(boolean allowNull) {
+			super(Boolean.class, allowNull);
+		}
+
+		// same as Boolean.parseBoolean: anything but "true" (ignoring case) is false
+		@Override
+		protected Object parseValue(char[] chars, int start, int end)
+		{
+			if (end - start != TRUE.length)
+				return Boolean.FALSE;
+
+			for (int i = 0; i < TRUE.length; i++)
+				if (Character.toLowerCase(chars[start + i]) != TRUE[i])
+					return Boolean.FALSE;
+
+			return Boolean.TRUE;
+		}
+	}
+
+	private static class DateTimeParser extends CharFieldParser
+	{
+		private final IJodaDateTimeConverter converter;
+
+		DateTimeParser(boolean allowNull, IJodaDateTimeConverter converter)
+		{
+			super(DateTime.class, allowNull);
+			this.converter = converter;
+		}
+
+		@Override
+		protected Object parseValue(char[] chars, int start, int end) throws Exception {
+			return this.converter.stringToDateTime(new String(chars, start, end - start));
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package test.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import sr.entityset.EntitySet;
+import sr.entityset.EntityTable;
+import sr.entityset.io.EntitySetBinarySerializer;
+import sr.entityset.io.EntitySetDeltaSerializer;
+
+public class BinarySnapshotTest
+{
+	@Test
+	public void testAllColumnTypesSurviveASaveAndLoad() throws Exception
+	{
+		SampleEntitySet entitySet = new SampleEntitySet(true);
+		EntityTable table = entitySet.getTable("Sample");
+		DateTimeZone paris = DateTimeZone.forID("Europe/Paris");
+
+		table.addRow(Integer.MIN_VALUE, Long.MAX_VALUE, -0.0, true, "aé中", new DateTime(0, DateTimeZone.UTC));
+		table.addRow(Integer.MAX_VALUE, Long.MIN_VALUE, Double.NaN, false, "", new DateTime(-1000, paris));
+		table.addRow(0, null, null, null, null, null);
+		for (int i = 3; i < 70000; i++)
+			table.addRow(i, i * 1000000007L, i / 7.0, i % 3 == 0, i % 5 == 0 ? "name" + i : "group" + (i % 10),
+					i % 11 == 0 ? null : new DateTime(1340000000000L + i * 1000L, DateTimeZone.UTC));
+
+		SampleEntitySet loaded = new SampleEntitySet(true);
+		EntitySetBinarySerializer.loadWholeEntitySetFromStream(loaded,
+				new ByteArrayInputStream(save(entitySet)));
+
+		EntityTable loadedTable = loaded.getTable("Sample");
+		assertEquals(70000, loadedTable.rowList().size());
+		for (int i = 0; i < 70000; i++)
+			assertArrayEquals(table.rowList().get(i).getObjectArray(),
+					loadedTable.rowList().get(i).getObjectArray());
+
+		assertEquals(paris, ((DateTime)loadedTable.findByPrimaryKey(Integer.MAX_VALUE).getValue(5)).getZone());
+	}
+
+	@Test
+	public void testDateAndDecimalColumnsOfSchemaBuiltTablesSurviveASaveAndLoad() throws Exception
+	{
+		// the types SchemaBuilder gives to temporal and decimal database columns
+		ServiceEntitySet entitySet = new ServiceEntitySet();
+		EntityTable table = entitySet.getTable("Service");
+		table.addRow(1, new Date(-1000), new BigDecimal("-12.50"));
+		table.addRow(2, null, null);
+		table.addRow(3, new Date(1340000000000L), new BigDecimal("123456789012345678901234567890.1"));
+		table.addRow(4, new Date(1340000001000L), new BigDecimal("1E+5"));
+
+		ServiceEntitySet loaded = new ServiceEntitySet();
+		EntitySetBinarySerializer.loadWholeEntitySetFromStream(loaded,
+				new ByteArrayInputStream(save(entitySet)));
+
+		EntityTable loadedTable = loaded.getTable("Service");
+		assertEquals(4, loadedTable.rowList().size());
+		for (int i = 0; i < 4; i++)
+			assertArrayEquals(table.rowList().get(i).getObjectArray(),
+					loadedTable.rowList().get(i).getObjectArray());
+
+		// single values, as written by deltas and journals
+		loaded.acceptAllTableChanges();
+		table.acceptChanges();
+		table.findByPrimaryKey(2).setValue(table.getColumn("Done"), new Date(0));
+		table.findByPrimaryKey(2).setValue(table.getColumn("Cost"), new BigDecimal("0.001"));
+
+		ByteArrayOutputStream delta = new ByteArrayOutputStream();
+		EntitySetDeltaSerializer.saveChangesToStream(entitySet, delta);
+		EntitySetDeltaSerializer.applyChangesFromStream(loaded, new ByteArrayInputStream(delta.toByteArray()));
+
+		assertArrayEquals(new Object[] { 2, new Date(0), new BigDecimal("0.001") },
+				loadedTable.findByPrimaryKey(2).getObjectArray());
+	}
+
+	@Test
+	public void testMissingTablesAndColumnsAreIgnored() throws Exception
+	{
+		SampleEntitySet entitySet = new SampleEntitySet(true);
+		entitySet.getTable("Sample").addRow(1, 2L, 3.0, true, "text", null);
+		entitySet.getTable("Other").addRow("x");
+
+		SampleEntitySet loaded = new SampleEntitySet(false);
+		EntitySetBinarySerializer.loadWholeEntitySetFromStream(loaded,
+				new ByteArrayInputStream(save(entitySet)));
+
+		EntityTable loadedTable = loaded.getTable("Sample");
+		assertEquals(1, loadedTable.rowList().size());
+		assertEquals("text", loadedTable.rowList().get(0).getValue(loadedTable.getColumn("Name")));
+		assertNull(loadedTable.rowList().get(0).getValue(loadedTable.getColumn("Added")));
+		assertNull(loaded.getTable("Other"));
+	}
+
+	@Test
+	public void testCorruptedSnapshotIsRejected() throws Exception
+	{
+		SampleEntitySet entitySet = new SampleEntitySet(true);
+		for (int i = 0; i < 100; i++)
+			entitySet.getTable("Sample").addRow(i, (long)i, i / 2.0, true, "name" + i, null);
+
+		byte[] content = save(entitySet);
+		content[content.length / 2] ^= 0x10;
+
+		try {
+			EntitySetBinarySerializer.loadWholeEntitySetFromStream(new SampleEntitySet(true),
+					new ByteArrayInputStream(content));
+		}
+		catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("checksum mismatch"));
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testCorruptedBlockLengthIsRejectedWithoutBeingAllocated() throws Exception
+	{
+		SampleEntitySet entitySet = new SampleEntitySet(true);
+		entitySet.getTable("Sample").addRow(1, 1L, 0.5, true, "name", null);
+
+		// length of the first table block, after the magic, version, schema version and table count
+		byte[] content = save(entitySet);
+		ByteBuffer.wrap(content, 13, 4).putInt(Integer.MAX_VALUE - 8);
+
+		try {
+			EntitySetBinarySerializer.loadWholeEntitySetFromStream(new SampleEntitySet(true),
+					new ByteArrayInputStream(content));
+		}
+		catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exceeds the end of the stream"));
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static byte[] save(EntitySet entitySet)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EntitySetBinarySerializer.saveWholeEntitySetToStream(entitySet, bos);
+		return bos.toByteArray();
+	}
+
+	private static class ServiceEntitySet extends EntitySet
+	{
+		ServiceEntitySet() throws Exception
+		{
+			EntityTable table = new EntityTable("Service");
+			table.addPrimaryKeyColumn("Id", Integer.class);
+			table.addColumn("Done", Date.class, true);
+			table.addColumn("Cost", BigDecimal.class, true);
+			this.addTable("Service", table);
+		}
+
+		@Override
+		public void buildConstraints() {
+		}
+
+		@Override
+		public int getSchemaVersion() {
+			return 1;
+		}
+	}
+
+	private static class SampleEntitySet extends EntitySet
+	{
+		SampleEntitySet(boolean complete) throws Exception
+		{
+			EntityTable table = new EntityTable("Sample");
+			table.addPrimaryKeyColumn("Id", Integer.class);
+			table.addColumn("Count", Long.class, true);
+			table.addColumn("Value", Double.class, true);
+			table.addColumn("Active", Boolean.class, true);
+			table.addColumn("Name", String.class, true);
+			if (complete)
+				table.addColumn("When", DateTime.class, true);
+			else
+				table.addColumn("Added", Integer.class, true);
+			this.addTable("Sample", table);
+
+			if (complete)
+			{
+				EntityTable other = new EntityTable("Other");
+				other.addColumn("Text", String.class);
+				this.addTable("Other", other);
+			}
+		}
+
+		@Override
+		public void buildConstraints() {
+		}
+
+		@Override
+		public int getSchemaVersion() {
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package test.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityTable;
+import sr.entityset.io.CsvChunkSplitter;
+import sr.entityset.io.EntityTableCsvSerializer;
+import sr.entityset.io.StreamingCsvReader;
+import sr.entityset.io.converters.CharFieldParser;
+import sr.entityset.io.converters.ISOFormatJodaDateTimeConverter;
+
+public class CsvFileImportTest
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File file;
+
+	@Before
+	public void beforeEach() throws Exception {
+		file = File.createTempFile("entityset", ".csv");
+	}
+
+	@After
+	public void afterEach() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testChunksEndOnRecordBoundaries() throws Exception
+	{
+		String content = writeFile(2000, -1);
+		EntityTable table = newTable();
+		CharFieldParser[] parsers = CharFieldParser.forColumns(table.getColumns(), new ISOFormatJodaDateTimeConverter());
+
+		FileInputStream stream = new FileInputStream(file);
+		try
+		{
+			long[] offsets = new CsvChunkSplitter('\t', '"').split(stream.getChannel(), 1000);
+			assertTrue(offsets.length > 20);
+			assertEquals(0, offsets[0]);
+			assertEquals(file.length(), offsets[offsets.length - 1]);
+
+			// every chunk is made of whole records, the reader would throw otherwise
+			byte[] bytes = content.getBytes(UTF8);
+			int recordCount = 0;
+			Object[] values = new Object[3];
+			for (int i = 0; i < offsets.length - 1; i++)
+			{
+				char[] chunk = new String(bytes, (int)offsets[i], (int)(offsets[i + 1] - offsets[i]), UTF8).toCharArray();
+				StreamingCsvReader reader = new StreamingCsvReader(chunk, 0, chunk.length, '\t', '"');
+				if (i == 0) reader.readHeader();
+
+				while (reader.readRecord(parsers, values))
+				{
+					assertEquals(recordCount, values[0]);
+					recordCount++;
+				}
+			}
+			assertEquals(2000, recordCount);
+		}
+		finally {
+			stream.close();
+		}
+	}
+
+	@Test
+	public void testLoadedRowsKeepTheFileOrder() throws Exception
+	{
+		String content = writeFile(60000, -1);
+		assertTrue(file.length() > 2 * 1024 * 1024);
+
+		EntityTable table = newTable();
+		new EntityTableCsvSerializer().loadCsvFile(file, UTF8, table, true, new ForkJoinPool(4), null);
+
+		EntityTable expected = newTable();
+		new EntityTableCsvSerializer().loadCsvFile(new StringReader(content), expected, true);
+
+		assertEquals(60000, table.rowList().size());
+		for (int i = 0; i < 60000; i++)
+			assertArrayEquals(expected.rowList().get(i).getObjectArray(), table.rowList().get(i).getObjectArray());
+
+		assertSame(table.rowList().get(45678), table.findByPrimaryKey(45678));
+	}
+
+	@Test
+	public void testErrorsGiveTheRecordNumberInTheFile() throws Exception
+	{
+		writeFile(60000, 49999);
+
+		EntityTable table = newTable();
+		try {
+			new EntityTableCsvSerializer().loadCsvFile(file, UTF8, table, true);
+		}
+		catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Error while trying to read csv record 50001:"));
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testMalformedBytesAreReplacedAsByTheReaderPath() throws Exception
+	{
+		byte[] content = "id\tname\tvalue\n1\tBus \u00FF1\t2.5\n".getBytes(UTF8);
+		// truncated two-byte sequence
+		int malformed = new String(content, UTF8).indexOf('\u00FF') + 1;
+		content[malformed] = '_';
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			stream.write(content);
+		}
+		finally {
+			stream.close();
+		}
+
+		EntityTable table = newTable();
+		new EntityTableCsvSerializer().loadCsvFile(file, UTF8, table, true);
+
+		EntityTable expected = newTable();
+		Reader reader = new InputStreamReader(new FileInputStream(file), UTF8);
+		try {
+			new EntityTableCsvSerializer().loadCsvFile(reader, expected, true);
+		}
+		finally {
+			reader.close();
+		}
+
+		assertEquals("Bus \uFFFD_1", expected.rowList().get(0).getValue(1));
+		assertArrayEquals(expected.rowList().get(0).getObjectArray(), table.rowList().get(0).getObjectArray());
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static EntityTable newTable() throws Exception
+	{
+		EntityTable table = new EntityTable("table");
+		table.addPrimaryKeyColumn("id", Integer.class);
+		table.addColumn("name", String.class);
+		table.addColumn("value", Double.class, true);
+		return table;
+	}
+
+	private String writeFile(int rowCount, int invalidRow) throws Exception
+	{
+		StringBuilder sb = new StringBuilder("id\tname\tvalue\n");
+		for (int i = 0; i < rowCount; i++)
+		{
+			sb.append(i).append('\t');
+			if (i % 3 == 0)
+				sb.append("\"Ligne ").append(i).append(" \"\"é\"\"\n\tsuite\"");
+			else
+				sb.append("Ligne ").append(i).append(" à la suite de la précédente");
+			sb.append('\t').append(i == invalidRow ? "x" : i % 5 == 0 ? "" : i / 8.0).append('\n');
+		}
+
+		String content = sb.toString();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+		try {
+			writer.write(content);
+		}
+		finally {
+			writer.close();
+		}
+		return content;
+	}
+}
@@ -3,6 +3,8 @@ package test.serialization;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.StringReader;
@@ -14,6 +16,7 @@ import org.junit.Test;
 
 import sr.entityset.EntityColumn;
 import sr.entityset.EntityTable;
+import sr.entityset.exceptions.PrimaryKeyConstraintException;
 import sr.entityset.io.EntityTableCsvSerializer;
 
 public class CsvSerializationTest 
@@ -45,6 +48,61 @@ public class CsvSerializationTest
 		assertArrayEquals(new Object[] {3, "Jacky", date(1949, 1, 25), 180.5}, table.rows().get(2).getObjectArray());
 	}
 	
+	@Test
+	public void testLoadCsvFileWorksProperly() throws Exception 
+	{
+		String csvContent = "\"id\"	\"name\"	\"DOB\"	\"height\"\n" +
+		 "\"1\"	\"Jean claude\"	\"12/01/1983 12:00:00 AM\"	\"175.5\"\r\n" +
+		 "2	\"Paul \"\"the tall\"\"\"	\"04/01/1982 12:00:00 AM\"	163\n" +
+		 "\n" +
+		 "\"3\"	\"Jacky\"	\"01/25/1949 12:00:00 AM\"	\"1.805e2\"";
+		
+		EntityTable table = new EntityTable("table name");
+		table.addPrimaryKeyColumn("id", Integer.class);
+		table.addColumn("name", String.class);
+		table.addColumn("DOB", DateTime.class);
+		table.addColumn("height", Double.class);
+		
+		EntityTableCsvSerializer serializer = new EntityTableCsvSerializer();
+		serializer.loadCsvFile(new StringReader(csvContent), table, true);
+		
+		assertEquals(3, table.rowList().size());
+		assertArrayEquals(new Object[] {1, "Jean claude", date(1983, 12, 1), 175.5}, table.rowList().get(0).getObjectArray());
+		assertArrayEquals(new Object[] {2, "Paul \"the tall\"", date(1982, 4, 1), 163.0}, table.rowList().get(1).getObjectArray());
+		assertArrayEquals(new Object[] {3, "Jacky", date(1949, 1, 25), 180.5}, table.rowList().get(2).getObjectArray());
+		assertSame(table.rowList().get(2), table.findByPrimaryKey(3));
+	}
+	
+	@Test
+	public void testFailedLoadLeavesTheTableValidatingNewRows() throws Exception 
+	{
+		String csvContent = "1	\"Bus1\"\n2	\"Bus2\"\nthree	\"Bus3\"\n";
+		
+		EntityTable table = new EntityTable("table name");
+		table.addPrimaryKeyColumn("id", Integer.class);
+		table.addColumn("name", String.class);
+		
+		try {
+			new EntityTableCsvSerializer().loadCsvFile(new StringReader(csvContent), table, false);
+			throw new AssertionError("Expecting an exception");
+		}
+		catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("csv record"));
+		}
+		
+		assertEquals(2, table.rowList().size());
+		assertSame(table.rowList().get(1), table.findByPrimaryKey(2));
+		
+		try {
+			table.addRow(1, "dup");
+		}
+		catch (PrimaryKeyConstraintException e) {
+			assertEquals(2, table.rowList().size());
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+	
 	@Test
 	public void testParseCsvFileWithStringColumns() throws IOException
 	{
@@ -79,6 +137,25 @@ public class CsvSerializationTest
 		assertArrayEquals(new Object[] {"3", "Jacky", "01/25/1949 12:00:00 AM", "180.5"}, table.rows().get(2).getObjectArray());
 	}
 	
+	@Test
+	public void testParseCsvFileWithDictionaryEncodedStringColumns() throws IOException
+	{
+		EntityTable table = new EntityTable("table name");
+		
+		String csvContent = "\"id\"	\"state\"\n" +
+		 "\"1\"	\"Running\"\n" +
+		 "\"2\"	\"Stopped\"\n" +
+		 "\"3\"	\"Running\"\n";
+		
+		EntityTableCsvSerializer serializer = new EntityTableCsvSerializer();
+		serializer.parseCsvFileWithStringColumns(new StringReader(csvContent), table, true);
+		
+		EntityColumn stateCol = table.getColumn("state");
+		assertTrue(stateCol.isDictionaryEncoded());
+		assertEquals(2, stateCol.getDictionary().size());
+		assertSame(table.rows().get(0).getValue(stateCol), table.rows().get(2).getValue(stateCol));
+	}
+	
 	@Test
 	public void testWriteCsvFileWorksProperly() throws Exception {
 		EntityTable tableName = new EntityTable("table name");
@@ -0,0 +1,251 @@
+package test.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntitySet;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+import sr.entityset.io.EntitySetBinarySerializer;
+import sr.entityset.io.EntitySetDeltaSerializer;
+
+public class DeltaSerializationTest
+{
+	@Test
+	public void testAppliedDeltaReproducesTheChanges() throws Exception
+	{
+		NetworkEntitySet source = new NetworkEntitySet(100);
+		NetworkEntitySet target = new NetworkEntitySet(100);
+
+		EntityTable lines = source.getTable("Line");
+		EntityTable buses = source.getTable("Bus");
+		lines.addRow(1000, "New line");
+		buses.addRow(1000, "New bus", 1000, new DateTime(1000, DateTimeZone.forID("Europe/Paris")));
+		buses.findByPrimaryKey(5).setValue(buses.getColumn("Name"), "Renamed");
+		buses.findByPrimaryKey(6).setValue(buses.getColumn("LineId"), 1000);
+		buses.findByPrimaryKey(7).setValue(buses.getColumn("BusId"), 2000);
+		buses.findByPrimaryKey(8).setValue(buses.getColumn("Service"), null);
+		buses.removeRow(buses.findByPrimaryKey(9));
+		buses.removeRow(buses.findByPrimaryKey(10));
+		lines.removeRow(lines.findByPrimaryKey(10));
+
+		EntitySetDeltaSerializer.applyChangesFromStream(target,
+				new ByteArrayInputStream(saveChanges(source)));
+
+		for (String tableName : Arrays.asList("Line", "Bus"))
+		{
+			EntityTable expected = source.getTable(tableName);
+			EntityTable actual = target.getTable(tableName);
+			assertEquals(expected.rowList().size(), actual.rowList().size());
+
+			for (EntityRow row : expected.rowList())
+				assertArrayEquals(row.getObjectArray(),
+						actual.findByPrimaryKey(row.getValue(0)).getObjectArray());
+		}
+
+		EntityTable targetBuses = target.getTable("Bus");
+		assertNull(targetBuses.findByPrimaryKey(7));
+		assertEquals(RowState.Added, targetBuses.findByPrimaryKey(1000).getState());
+		assertEquals(RowState.Modified, targetBuses.findByPrimaryKey(5).getState());
+		assertEquals(RowState.Unchanged, targetBuses.findByPrimaryKey(11).getState());
+		assertEquals(7, targetBuses.changedRows().size());
+	}
+
+	@Test
+	public void testConflictingDeltaIsNotApplied() throws Exception
+	{
+		NetworkEntitySet source = new NetworkEntitySet(100);
+		NetworkEntitySet target = new NetworkEntitySet(100);
+
+		EntityTable buses = source.getTable("Bus");
+		buses.addRow(1000, "New bus", 1, null);
+		buses.findByPrimaryKey(5).setValue(buses.getColumn("Name"), "Renamed");
+
+		EntityTable targetBuses = target.getTable("Bus");
+		targetBuses.findByPrimaryKey(5).setValue(targetBuses.getColumn("Name"), "Renamed elsewhere");
+		targetBuses.acceptChanges();
+
+		try {
+			EntitySetDeltaSerializer.applyChangesFromStream(target,
+					new ByteArrayInputStream(saveChanges(source)));
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("Conflict"));
+			assertFalse(target.isChanged());
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testAddedRowWithTakenKeyIsAConflict() throws Exception
+	{
+		NetworkEntitySet source = new NetworkEntitySet(100);
+		NetworkEntitySet target = new NetworkEntitySet(100);
+
+		source.getTable("Bus").addRow(1000, "New bus", 1, null);
+		source.getTable("Line").addRow(1000, "New line");
+		target.getTable("Line").addRow(1000, "Other line");
+		target.acceptAllTableChanges();
+
+		try {
+			EntitySetDeltaSerializer.applyChangesFromStream(target,
+					new ByteArrayInputStream(saveChanges(source)));
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("Conflict"));
+			assertFalse(target.isChanged());
+			assertNull(target.getTable("Bus").findByPrimaryKey(1000));
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testRejectedDeltaLeavesTheTargetUnchanged() throws Exception
+	{
+		NetworkEntitySet source = new NetworkEntitySet(100);
+		EntityTable buses = source.getTable("Bus");
+		source.getTable("Line").addRow(1000, "New line");
+		buses.addRow(1000, "New bus", 1000, null);
+		buses.findByPrimaryKey(5).setValue(buses.getColumn("Name"), "Renamed");
+		buses.findByPrimaryKey(6).setValue(buses.getColumn("LineId"), 19);
+		byte[] delta = saveChanges(source);
+
+		// line 19 is gone from the target, so bus 6 can not move to it
+		NetworkEntitySet target = new NetworkEntitySet(100);
+		EntityTable targetLines = target.getTable("Line");
+		EntityTable targetBuses = target.getTable("Bus");
+		for (int busId = 19; busId < 100; busId += 20)
+			targetBuses.removeRow(targetBuses.findByPrimaryKey(busId));
+		targetLines.removeRow(targetLines.findByPrimaryKey(19));
+		target.acceptAllTableChanges();
+
+		try {
+			EntitySetDeltaSerializer.applyChangesFromStream(target, new ByteArrayInputStream(delta));
+		}
+		catch (RuntimeException e)
+		{
+			assertFalse(target.isChanged());
+			assertNull(targetLines.findByPrimaryKey(1000));
+			assertNull(targetBuses.findByPrimaryKey(1000));
+
+			EntityRow bus5 = targetBuses.findByPrimaryKey(5);
+			assertEquals("Bus 5", bus5.getValue(targetBuses.getColumn("Name")));
+			assertEquals(RowState.Unchanged, bus5.getState());
+			assertEquals(6, targetBuses.findByPrimaryKey(6).getValue(targetBuses.getColumn("LineId")));
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testRemovingARowOthersStillDependOnIsRejectedBeforeAnyChange() throws Exception
+	{
+		NetworkEntitySet source = new NetworkEntitySet(100);
+		source.getTable("Line").addRow(1000, "New line");
+		source.getTable("Line").removeRow(source.getTable("Line").findByPrimaryKey(10));
+
+		// a bus of the target depends on line 10
+		NetworkEntitySet target = new NetworkEntitySet(100);
+		EntityTable targetBuses = target.getTable("Bus");
+		targetBuses.findByPrimaryKey(10).setValue(targetBuses.getColumn("LineId"), 10);
+		target.acceptAllTableChanges();
+
+		try {
+			EntitySetDeltaSerializer.applyChangesFromStream(target,
+					new ByteArrayInputStream(saveChanges(source)));
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("Conflict"));
+			assertFalse(target.isChanged());
+			assertNull(target.getTable("Line").findByPrimaryKey(1000));
+			assertEquals(20, target.getTable("Line").rowList().size());
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testDeltaSizeFollowsTheChanges() throws Exception
+	{
+		NetworkEntitySet source = new NetworkEntitySet(100000);
+		EntityTable buses = source.getTable("Bus");
+		for (int i = 0; i < 1000; i++)
+			buses.findByPrimaryKey(i * 100).setValue(buses.getColumn("Name"), "Changed " + i);
+
+		ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+		EntitySetBinarySerializer.saveWholeEntitySetToStream(source, snapshot);
+
+		int deltaSize = saveChanges(source).length;
+		assertTrue(deltaSize + " / " + snapshot.size(), deltaSize * 20 < snapshot.size());
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static byte[] saveChanges(EntitySet entitySet)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EntitySetDeltaSerializer.saveChangesToStream(entitySet, bos);
+		return bos.toByteArray();
+	}
+
+	private static class NetworkEntitySet extends EntitySet
+	{
+		NetworkEntitySet(int busCount) throws Exception
+		{
+			EntityTable lineTable = new EntityTable("Line");
+			EntityColumn lineIdCol = lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+			lineTable.addColumn("Name", String.class);
+			this.addTable("Line", lineTable);
+
+			EntityTable busTable = new EntityTable("Bus");
+			busTable.setHeadless(true);
+			busTable.addPrimaryKeyColumn("BusId", Integer.class);
+			busTable.addColumn("Name", String.class);
+			EntityColumn busLineCol = busTable.addColumn("LineId", Integer.class, true);
+			busTable.addColumn("Service", DateTime.class, true);
+			this.addTable("Bus", busTable);
+
+			busTable.addConstraint(new ForeignKeyChildConstraint("BusLine",
+					lineTable, Arrays.asList(lineIdCol), Arrays.asList(busLineCol)));
+			lineTable.addConstraint(new ForeignKeyParentConstraint("BusLine",
+					busTable, lineTable, Arrays.asList(busLineCol), Arrays.asList(lineIdCol)));
+
+			for (int i = 0; i < 20; i++)
+				lineTable.addRow(i, "Line " + i);
+			for (int i = 0; i < busCount; i++)
+				busTable.addRow(i, "Bus " + i, i % 20 == 10 ? null : i % 20,
+						new DateTime(1340000000000L + i * 60000L, DateTimeZone.UTC));
+
+			this.acceptAllTableChanges();
+		}
+
+		@Override
+		public void buildConstraints() {
+		}
+
+		@Override
+		public int getSchemaVersion() {
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package test.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntitySet;
+import sr.entityset.EntityTable;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.io.EntitySetJournal;
+import sr.entityset.io.EntitySetJournal.SyncPolicy;
+
+public class JournalTest
+{
+	private File directory;
+	private File snapshotFile;
+	private File journalFile;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		directory = File.createTempFile("entityset", "");
+		directory.delete();
+		directory.mkdir();
+		snapshotFile = new File(directory, "set.snapshot");
+		journalFile = new File(directory, "set.journal");
+	}
+
+	@After
+	public void afterEach() throws Exception
+	{
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void testJournaledChangesAreReplayed() throws Exception
+	{
+		NetworkEntitySet entitySet = new NetworkEntitySet();
+		EntitySetJournal journal = EntitySetJournal.open(entitySet, snapshotFile, journalFile, SyncPolicy.EVERY_CHANGE);
+		makeChanges(entitySet);
+		journal.close();
+
+		NetworkEntitySet recovered = new NetworkEntitySet();
+		EntitySetJournal.open(recovered, snapshotFile, journalFile, SyncPolicy.NEVER).close();
+
+		assertSameRows(entitySet, recovered);
+		assertNull(recovered.getTable("Bus").findByPrimaryKey(3));
+		assertEquals("Renamed", recovered.getTable("Bus").findByPrimaryKey(300).getValue(1));
+	}
+
+	@Test
+	public void testTornRecordEndsTheReplay() throws Exception
+	{
+		NetworkEntitySet entitySet = new NetworkEntitySet();
+		EntitySetJournal journal = EntitySetJournal.open(entitySet, snapshotFile, journalFile, SyncPolicy.PERIODIC, 10);
+		makeChanges(entitySet);
+		journal.close();
+
+		// the last record (removal of bus 10) is partially written
+		RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+		file.setLength(file.length() - 3);
+		file.close();
+
+		NetworkEntitySet recovered = new NetworkEntitySet();
+		journal = EntitySetJournal.open(recovered, snapshotFile, journalFile, SyncPolicy.EVERY_CHANGE);
+		EntityTable buses = recovered.getTable("Bus");
+		assertTrue(buses.findByPrimaryKey(10) != null);
+
+		// the journal goes on after the last valid record
+		buses.removeRow(buses.findByPrimaryKey(10));
+		journal.close();
+
+		NetworkEntitySet recoveredAgain = new NetworkEntitySet();
+		EntitySetJournal.open(recoveredAgain, snapshotFile, journalFile, SyncPolicy.NEVER).close();
+		assertSameRows(entitySet, recoveredAgain);
+	}
+
+	@Test
+	public void testCheckpointReplacesTheJournalBySnapshot() throws Exception
+	{
+		NetworkEntitySet entitySet = new NetworkEntitySet();
+		EntitySetJournal journal = EntitySetJournal.open(entitySet, snapshotFile, journalFile, SyncPolicy.NEVER);
+		makeChanges(entitySet);
+		journal.sync();
+
+		File journalCopy = new File(directory, "copy.journal");
+		Files.copy(journalFile.toPath(), journalCopy.toPath());
+		long journalLength = journalFile.length();
+
+		journal.checkpoint();
+		assertTrue(journalFile.length() < journalLength / 10);
+
+		entitySet.getTable("Bus").addRow(1000, "After checkpoint", 1, null);
+		journal.close();
+
+		NetworkEntitySet recovered = new NetworkEntitySet();
+		EntitySetJournal.open(recovered, snapshotFile, journalFile, SyncPolicy.NEVER).close();
+		assertSameRows(entitySet, recovered);
+
+		// a journal older than the snapshot (stopped before emptying it) is ignored
+		Files.copy(journalCopy.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		NetworkEntitySet recoveredFromSnapshot = new NetworkEntitySet();
+		EntitySetJournal.open(recoveredFromSnapshot, snapshotFile, journalFile, SyncPolicy.NEVER).close();
+		assertNull(recoveredFromSnapshot.getTable("Bus").findByPrimaryKey(1000));
+		assertEquals(entitySet.getTable("Bus").rowList().size() - 1,
+				recoveredFromSnapshot.getTable("Bus").rowList().size());
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static void makeChanges(EntitySet entitySet) throws Exception
+	{
+		EntityTable lines = entitySet.getTable("Line");
+		EntityTable buses = entitySet.getTable("Bus");
+		for (int i = 0; i < 5; i++)
+			lines.addRow(i, "Line " + i);
+		for (int i = 0; i < 200; i++)
+			buses.addRow(i, "Bus " + i, i % 5, new DateTime(1340000000000L + i, DateTimeZone.UTC));
+
+		buses.findByPrimaryKey(3).setValue(buses.getColumn("BusId"), 300);
+		buses.findByPrimaryKey(300).setValue(buses.getColumn("Name"), "Renamed");
+		buses.findByPrimaryKey(4).setValue(buses.getColumn("LineId"), null);
+		buses.removeRow(buses.findByPrimaryKey(5));
+		entitySet.acceptAllTableChanges();
+		buses.removeRow(buses.findByPrimaryKey(10));
+	}
+
+	private static void assertSameRows(EntitySet expected, EntitySet actual)
+	{
+		for (String tableName : Arrays.asList("Line", "Bus"))
+		{
+			EntityTable expectedTable = expected.getTable(tableName);
+			EntityTable actualTable = actual.getTable(tableName);
+			assertEquals(expectedTable.rowList().size(), actualTable.rowList().size());
+
+			for (EntityRow row : expectedTable.rowList())
+				assertArrayEquals(row.getObjectArray(),
+						actualTable.findByPrimaryKey(row.getValue(0)).getObjectArray());
+		}
+	}
+
+	private static class NetworkEntitySet extends EntitySet
+	{
+		NetworkEntitySet() throws Exception
+		{
+			EntityTable lineTable = new EntityTable("Line");
+			EntityColumn lineIdCol = lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+			lineTable.addColumn("Name", String.class);
+			this.addTable("Line", lineTable);
+
+			EntityTable busTable = new EntityTable("Bus");
+			busTable.setHeadless(true);
+			busTable.addPrimaryKeyColumn("BusId", Integer.class);
+			busTable.addColumn("Name", String.class);
+			EntityColumn busLineCol = busTable.addColumn("LineId", Integer.class, true);
+			busTable.addColumn("Service", DateTime.class, true);
+			this.addTable("Bus", busTable);
+
+			busTable.addConstraint(new ForeignKeyChildConstraint("BusLine",
+					lineTable, Arrays.asList(lineIdCol), Arrays.asList(busLineCol)));
+		}
+
+		@Override
+		public void buildConstraints() {
+		}
+
+		@Override
+		public int getSchemaVersion() {
+			return 1;
+		}
+	}
+}
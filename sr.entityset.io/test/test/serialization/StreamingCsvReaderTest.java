@@ -0,0 +1,144 @@
+package test.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityTable;
+import sr.entityset.io.StreamingCsvReader;
+import sr.entityset.io.converters.CharFieldParser;
+import sr.entityset.io.converters.ISOFormatJodaDateTimeConverter;
+
+public class StreamingCsvReaderTest
+{
+	private CharFieldParser[] parsers;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		EntityTable table = new EntityTable("table");
+		table.addColumn("id", Integer.class);
+		table.addColumn("name", String.class, true);
+		table.addColumn("value", Double.class, true);
+		table.addColumn("active", Boolean.class);
+
+		parsers = CharFieldParser.forColumns(table.getColumns(), new ISOFormatJodaDateTimeConverter());
+	}
+
+	@Test
+	public void testQualifiedFieldsMayHoldDelimitersLineBreaksAndQualifiers() throws Exception
+	{
+		String content = "id;name;value;active\r\n"
+				+ "1;\"a;b\";1.5;true\r\n"
+				+ "\r\n"
+				+ "-2;\"multi\nline \"\"quoted\"\"\";;FALSE\n"
+				+ "3;;-0.25e-1;TRUE";
+
+		StreamingCsvReader reader = new StreamingCsvReader(new StringReader(content), ';', '"');
+		assertArrayEquals(new String[] { "id", "name", "value", "active" }, reader.readHeader());
+
+		Object[] values = new Object[4];
+		assertTrue(reader.readRecord(parsers, values));
+		assertArrayEquals(new Object[] { 1, "a;b", 1.5, true }, values);
+
+		assertTrue(reader.readRecord(parsers, values));
+		assertArrayEquals(new Object[] { -2, "multi\nline \"quoted\"", null, false }, values);
+
+		assertTrue(reader.readRecord(parsers, values));
+		assertArrayEquals(new Object[] { 3, null, -0.025, true }, values);
+
+		assertFalse(reader.readRecord(parsers, values));
+		assertEquals(4, reader.getRecordNumber());
+		assertNull(reader.readHeader());
+	}
+
+	@Test
+	public void testRecordsSpanningBufferBoundariesAreReadEntirely() throws Exception
+	{
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		Object[][] expected = new Object[30000][];
+
+		for (int i = 0; i < expected.length; i++)
+		{
+			double value = random.nextInt(1000000) / 1000.0;
+			String name = i % 7 == 0 ? "quoted \"\"" + i + "\"\"\tname" : "name" + i;
+			expected[i] = new Object[] { i, name.replace("\"\"", "\""), value, i % 2 == 0 };
+
+			sb.append(i).append('\t').append(i % 7 == 0 ? "\"" + name + "\"" : name)
+				.append('\t').append(value).append('\t').append(i % 2 == 0).append('\n');
+		}
+
+		StreamingCsvReader reader = new StreamingCsvReader(new StringReader(sb.toString()), '\t', '"');
+		Object[] values = new Object[4];
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertTrue(reader.readRecord(parsers, values));
+			assertArrayEquals(expected[i], values);
+		}
+		assertFalse(reader.readRecord(parsers, values));
+	}
+
+	@Test
+	public void testHeaderSpanningBufferRefillsIsReadOnce() throws Exception
+	{
+		String content = "id;\"long name\";value;active\n7;x;2.5;true\n";
+
+		StreamingCsvReader reader = new StreamingCsvReader(new StringReader(content), ';', '"', 4);
+		assertArrayEquals(new String[] { "id", "long name", "value", "active" }, reader.readHeader());
+
+		Object[] values = new Object[4];
+		assertTrue(reader.readRecord(parsers, values));
+		assertArrayEquals(new Object[] { 7, "x", 2.5, true }, values);
+		assertFalse(reader.readRecord(parsers, values));
+	}
+
+	@Test
+	public void testDoublesAreParsedAsByDoubleParseDouble() throws Exception
+	{
+		Random random = new Random(7);
+		String[] texts = new String[10000];
+		for (int i = 0; i < texts.length; i++)
+		{
+			switch (i % 4)
+			{
+				case 0: texts[i] = Double.toString(random.nextDouble() * 1e6); break;
+				case 1: texts[i] = Double.toString(random.nextGaussian() * 1e-30); break;
+				case 2: texts[i] = (random.nextInt(2000000) - 1000000) + "." + random.nextInt(1000); break;
+				default: texts[i] = random.nextLong() + "e" + (random.nextInt(40) - 20); break;
+			}
+		}
+
+		for (String text : texts)
+		{
+			char[] chars = text.toCharArray();
+			assertEquals(text, Double.parseDouble(text), parsers[2].parse(chars, 0, chars.length));
+		}
+	}
+
+	@Test
+	public void testInvalidNumbersAreReported() throws Exception
+	{
+		for (String text : new String[] { "12a", "-", "99999999999" })
+		{
+			char[] chars = text.toCharArray();
+			boolean ex = false;
+			try {
+				parsers[0].parse(chars, 0, chars.length);
+			}
+			catch (RuntimeException e) {
+				ex = e.getMessage().contains(text);
+			}
+			assertTrue(text, ex);
+		}
+	}
+}
@@ -1,14 +1,19 @@
 package test.serialization;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -19,7 +24,10 @@ import org.w3c.dom.Document;
 
 import sr.entityset.EntityColumn;
 import sr.entityset.EntityRow;
+import sr.entityset.EntitySet;
 import sr.entityset.EntityTable;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.exceptions.ConstraintViolationException;
 import sr.entityset.io.EntityTableXmlSerializer;
 
 public class XmlSerializationTest {
@@ -92,8 +100,172 @@ public class XmlSerializationTest {
 		assertNull(row3.getValue(sizeCol));
 	}
 	
+	@Test
+	public void testWholeEntitySetIsLoadedFromStream() throws Exception
+	{
+		// child rows come first: foreign keys are checked once all tables are filled
+		String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><EntityDS>" +
+			"<SchemaVersion><Version>1</Version></SchemaVersion>" +
+			"<Bus><BusId>10</BusId><LineId>2</LineId></Bus>" +
+			"<Unknown><LineId>5</LineId></Unknown>" +
+			"<Line><LineId>2</LineId><Name>Gare &amp; <![CDATA[Centre]]></Name></Line>" +
+			"<Line>\n  <LineId>3</LineId>\n  <Name>Nord</Name>\n  <Extra>x</Extra>\n</Line>" +
+			"<Bus><BusId>11</BusId></Bus>" +
+			"</EntityDS>";
+		
+		LineEntitySet entitySet = new LineEntitySet();
+		EntityTableXmlSerializer.loadWholeEntitySetFromStream(entitySet, 
+				new ByteArrayInputStream(content.getBytes("UTF-8")));
+		
+		EntityTable lineTable = entitySet.getTable("Line");
+		assertEquals(2, lineTable.rowList().size());
+		assertEquals("Gare & Centre", lineTable.findByPrimaryKey(2).getValue(lineTable.getColumn("Name")));
+		assertEquals("Nord", lineTable.rowList().get(1).getValue(lineTable.getColumn("Name")));
+		
+		EntityTable busTable = entitySet.getTable("Bus");
+		assertEquals(2, busTable.rowList().size());
+		assertEquals(2, busTable.findByPrimaryKey(10).getValue(busTable.getColumn("LineId")));
+		assertNull(busTable.rowList().get(1).getValue(busTable.getColumn("LineId")));
+		
+		// saving and loading again gives the same rows
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EntityTableXmlSerializer.saveWholeEntitySetToStream(entitySet, bos);
+		LineEntitySet reloaded = new LineEntitySet();
+		EntityTableXmlSerializer.loadWholeEntitySetFromStream(reloaded, new ByteArrayInputStream(bos.toByteArray()));
+		assertEquals(Arrays.asList(3, "Nord"), Arrays.asList(reloaded.getTable("Line").findByPrimaryKey(3).getObjectArray()));
+	}
+	
+	@Test
+	public void testViolationsAreReportedOnceEntitySetIsLoaded() throws Exception
+	{
+		String content = "<EntityDS>" +
+			"<Line><LineId>2</LineId><Name>Gare</Name></Line>" +
+			"<Bus><BusId>10</BusId><LineId>4</LineId></Bus>" +
+			"</EntityDS>";
+		
+		LineEntitySet entitySet = new LineEntitySet();
+		boolean violationReported = false;
+		try {
+			EntityTableXmlSerializer.loadWholeEntitySetFromStream(entitySet, 
+					new ByteArrayInputStream(content.getBytes("UTF-8")));
+		}
+		catch (ConstraintViolationException e) {
+			violationReported = true;
+		}
+		assertTrue(violationReported);
+		
+		// both tables left loading mode
+		assertSame(entitySet.getTable("Line").rowList().get(0), entitySet.getTable("Line").findByPrimaryKey(2));
+		entitySet.getTable("Bus").addRow(11, 2);
+	}
+	
+	@Test
+	public void testStreamedDocumentIsTheSameAsTheTransformedOne() throws Exception
+	{
+		LineEntitySet entitySet = new LineEntitySet();
+		entitySet.getTable("Line").addRow(1, "Gare & <Centre>\r\n\"Sud\"");
+		entitySet.getTable("Line").addRow(2, "");
+		entitySet.getTable("Bus").addRow(10, 1);
+		entitySet.getTable("Bus").addRow(11, null);
+		
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		EntityTableXmlSerializer.saveWholeEntitySetToStream(entitySet, streamed);
+		ByteArrayOutputStream transformed = new ByteArrayOutputStream();
+		HookedSerializer.saveThroughDocument(entitySet, transformed);
+		
+		assertEquals(new String(transformed.toByteArray(), "UTF-8"), new String(streamed.toByteArray(), "UTF-8"));
+		
+		LineEntitySet reloaded = new LineEntitySet();
+		EntityTableXmlSerializer.loadWholeEntitySetFromStream(reloaded, new ByteArrayInputStream(streamed.toByteArray()));
+		assertEquals("Gare & <Centre>\r\n\"Sud\"", reloaded.getTable("Line").findByPrimaryKey(1).getValue(1));
+	}
+	
+	@Test
+	public void testHooksWriteAdditionalContent() throws Exception
+	{
+		LineEntitySet entitySet = new LineEntitySet();
+		entitySet.getTable("Line").addRow(1, "Gare");
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		HookedSerializer.saveWithComment(entitySet, bos);
+		
+		String content = new String(bos.toByteArray(), "UTF-8");
+		assertTrue(content, content.contains("</SchemaVersion><Comment>Exported</Comment>"));
+		assertTrue(content, content.contains("</Line><Written>Line</Written>"));
+		assertTrue(content, content.contains("<Written>Bus</Written>"));
+		
+		LineEntitySet reloaded = new LineEntitySet();
+		EntityTableXmlSerializer.loadWholeEntitySetFromStream(reloaded, new ByteArrayInputStream(bos.toByteArray()));
+		assertEquals(1, reloaded.getTable("Line").rowList().size());
+	}
+	
 	////////////////////////////////////////////////////////////
 	
+	private static class HookedSerializer extends EntityTableXmlSerializer
+	{
+		static void saveThroughDocument(EntitySet entitySet, OutputStream outputStream)
+		{
+			saveWholeEntitySetToStream(entitySet, outputStream, new IXmlDocumentModifier() {
+				@Override
+				public void modify(Document xmlDocument) {
+				}
+			});
+		}
+		
+		static void saveWithComment(EntitySet entitySet, OutputStream outputStream)
+		{
+			saveWholeEntitySetToStreamWithHooks(entitySet, outputStream, new XmlWriteHooks() {
+				@Override
+				protected void onSchemaVersionWritten(XMLStreamWriter writer) throws XMLStreamException {
+					writer.writeStartElement("Comment");
+					writer.writeCharacters("Exported");
+					writer.writeEndElement();
+				}
+				
+				@Override
+				protected void onTableWritten(EntityTable table, XMLStreamWriter writer) throws XMLStreamException {
+					writer.writeStartElement("Written");
+					writer.writeCharacters(table.getName());
+					writer.writeEndElement();
+				}
+			});
+		}
+	}
+	
+	
+	private static class LineEntitySet extends EntitySet
+	{
+		LineEntitySet() throws Exception
+		{
+			EntityTable lineTable = new EntityTable("Line");
+			lineTable.addPrimaryKeyColumn("LineId", Integer.class);
+			lineTable.addColumn("Name", String.class);
+			this.addTable("Line", lineTable);
+			
+			EntityTable busTable = new EntityTable("Bus");
+			busTable.addPrimaryKeyColumn("BusId", Integer.class);
+			busTable.addColumn("LineId", Integer.class, true);
+			this.addTable("Bus", busTable);
+			
+			this.buildConstraints();
+		}
+		
+		@Override
+		public void buildConstraints() 
+		{
+			EntityTable lineTable = this.getTable("Line");
+			EntityTable busTable = this.getTable("Bus");
+			busTable.addConstraint(new ForeignKeyChildConstraint("BusLine", lineTable, 
+					Arrays.asList(lineTable.getColumn("LineId")), Arrays.asList(busTable.getColumn("LineId"))));
+		}
+		
+		@Override
+		public int getSchemaVersion() {
+			return 1;
+		}
+	}
+	
+	
 	private void printXmlDocument(Document xmlDocument, OutputStream outputStream) throws Exception
 	{
 		TransformerFactory transformerFactory = TransformerFactory.newInstance();
@@ -0,0 +1,286 @@
+package sr.entityset.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * Reads the value of one result set column as an instance of the type of the
+ * matching table column. Readers are chosen once per query from the table
+ * column type and the SQL type of the result column, so that each cell is read
+ * with the typed getter (no boxing through getObject nor per-cell conversion lookup).
+ * Joda DateTime values are built in UTC, see {@link JodaDateTimes}.
+ */
+abstract class ColumnReader
+{
+	protected final int index;
+
+	ColumnReader(int index) {
+		this.index = index;
+	}
+
+	abstract Object read(ResultSet resultSet) throws SQLException;
+
+	/**
+	 * Reader of the result column at the given (1-based) index into a table column
+	 * of the given type.
+	 */
+	static ColumnReader create(int index, int sqlType, Class<?> type)
+	{
+		if (type == Integer.class)
+			return new IntReader(index);
+		if (type == Long.class)
+			return new LongReader(index);
+		if (type == Double.class)
+			return new DoubleReader(index);
+		if (type == Float.class)
+			return new FloatReader(index);
+		if (type == Short.class)
+			return new ShortReader(index);
+		if (type == Boolean.class)
+			return new BooleanReader(index);
+		if (type == String.class)
+			return new StringReader(index);
+		if (type == BigDecimal.class)
+			return new BigDecimalReader(index);
+		if (type == Timestamp.class)
+			return new TimestampReader(index);
+		if (type == java.sql.Date.class)
+			return new SqlDateReader(index);
+		if (type == Time.class)
+			return new TimeReader(index);
+		if (type == Date.class)
+			return sqlType == Types.DATE ? new DateFromSqlDateReader(index) : new DateReader(index);
+		if (type == byte[].class)
+			return new BytesReader(index);
+		if (JodaDateTimes.isDateTime(type))
+			return new DateTimeReader(index, JodaDateTimes.forType(type));
+
+		// left to the driver, values of an unexpected type are rejected when loading
+		return new ObjectReader(index);
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static class IntReader extends ColumnReader
+	{
+		IntReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			int value = resultSet.getInt(this.index);
+			return resultSet.wasNull() ? null : Integer.valueOf(value);
+		}
+	}
+
+	private static class LongReader extends ColumnReader
+	{
+		LongReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			long value = resultSet.getLong(this.index);
+			return resultSet.wasNull() ? null : Long.valueOf(value);
+		}
+	}
+
+	private static class DoubleReader extends ColumnReader
+	{
+		DoubleReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			double value = resultSet.getDouble(this.index);
+			return resultSet.wasNull() ? null : Double.valueOf(value);
+		}
+	}
+
+	private static class FloatReader extends ColumnReader
+	{
+		FloatReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			float value = resultSet.getFloat(this.index);
+			return resultSet.wasNull() ? null : Float.valueOf(value);
+		}
+	}
+
+	private static class ShortReader extends ColumnReader
+	{
+		ShortReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			short value = resultSet.getShort(this.index);
+			return resultSet.wasNull() ? null : Short.valueOf(value);
+		}
+	}
+
+	private static class BooleanReader extends ColumnReader
+	{
+		BooleanReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			boolean value = resultSet.getBoolean(this.index);
+			return resultSet.wasNull() ? null : Boolean.valueOf(value);
+		}
+	}
+
+	private static class StringReader extends ColumnReader
+	{
+		StringReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getString(this.index);
+		}
+	}
+
+	private static class BigDecimalReader extends ColumnReader
+	{
+		BigDecimalReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getBigDecimal(this.index);
+		}
+	}
+
+	private static class TimestampReader extends ColumnReader
+	{
+		TimestampReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getTimestamp(this.index);
+		}
+	}
+
+	private static class SqlDateReader extends ColumnReader
+	{
+		SqlDateReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getDate(this.index);
+		}
+	}
+
+	private static class TimeReader extends ColumnReader
+	{
+		TimeReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getTime(this.index);
+		}
+	}
+
+	private static class DateReader extends ColumnReader
+	{
+		DateReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			Timestamp value = resultSet.getTimestamp(this.index);
+			return value == null ? null : new Date(value.getTime());
+		}
+	}
+
+	private static class DateFromSqlDateReader extends ColumnReader
+	{
+		DateFromSqlDateReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			java.sql.Date value = resultSet.getDate(this.index);
+			return value == null ? null : new Date(value.getTime());
+		}
+	}
+
+	/**
+	 * Reads timestamps as joda DateTimes in UTC, through the constructor
+	 * resolved once by {@link JodaDateTimes}.
+	 */
+	private static class DateTimeReader extends ColumnReader
+	{
+		private final JodaDateTimes dateTimes;
+		
+		DateTimeReader(int index, JodaDateTimes dateTimes)
+		{
+			super(index);
+			this.dateTimes = dateTimes;
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException
+		{
+			Timestamp value = resultSet.getTimestamp(this.index);
+			return value == null ? null : this.dateTimes.fromMillis(value.getTime());
+		}
+	}
+
+	private static class BytesReader extends ColumnReader
+	{
+		BytesReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getBytes(this.index);
+		}
+	}
+
+	private static class ObjectReader extends ColumnReader
+	{
+		ObjectReader(int index) {
+			super(index);
+		}
+
+		@Override
+		Object read(ResultSet resultSet) throws SQLException {
+			return resultSet.getObject(this.index);
+		}
+	}
+}
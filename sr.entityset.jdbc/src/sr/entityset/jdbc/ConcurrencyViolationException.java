@@ -0,0 +1,26 @@
+package sr.entityset.jdbc;
+
+import java.sql.SQLException;
+
+import sr.entityset.EntityRow;
+
+/**
+ * Thrown when updating or deleting a row affects no database row, i.e. the row
+ * was deleted or its values were changed in the database since it was read.
+ */
+public class ConcurrencyViolationException extends SQLException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final EntityRow row;
+
+	public ConcurrencyViolationException(String message, EntityRow row)
+	{
+		super(message);
+		this.row = row;
+	}
+
+	public EntityRow getRow() {
+		return row;
+	}
+}
@@ -0,0 +1,194 @@
+package sr.entityset.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import sr.entityset.BulkLoader;
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityTable;
+import sr.entityset.ValidationReport;
+import sr.entityset.exceptions.ConstraintViolationException;
+
+/**
+ * Fills entity tables from a JDBC query, as the ADO.NET DataAdapter does.
+ *
+ * Result columns are matched to the table columns by name (ignoring case),
+ * result columns unknown to the table being skipped and table columns missing
+ * from the result being left null. Rows are streamed from the driver (forward-only
+ * cursor read by batches of the fetch size) and appended through a
+ * {@link BulkLoader}: values are not validated cell by cell, indexes are built
+ * and constraints checked once all rows are read.
+ *
+ * Note that some drivers only stream when the connection is not in auto-commit
+ * mode (e.g. PostgreSQL), and load the whole result otherwise.
+ */
+public class JdbcDataAdapter
+{
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	private final Connection connection;
+	private final String selectCommand;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private int expectedRowCount = 0;
+	private boolean acceptChangesDuringFill = true;
+
+	public JdbcDataAdapter(Connection connection, String selectCommand)
+	{
+		if (connection == null) throw new NullArgumentException("connection");
+		if (selectCommand == null) throw new NullArgumentException("selectCommand");
+
+		this.connection = connection;
+		this.selectCommand = selectCommand;
+	}
+
+	public Connection getConnection() {
+		return this.connection;
+	}
+
+	public String getSelectCommand() {
+		return this.selectCommand;
+	}
+
+	public int getFetchSize() {
+		return this.fetchSize;
+	}
+
+	/**
+	 * Number of rows the driver is asked to fetch per round-trip.
+	 */
+	public void setFetchSize(int fetchSize)
+	{
+		if (fetchSize < 0)
+			throw new IllegalArgumentException("Fetch size can not be negative.");
+
+		this.fetchSize = fetchSize;
+	}
+
+	public int getExpectedRowCount() {
+		return this.expectedRowCount;
+	}
+
+	/**
+	 * Number of rows the query is expected to return, used to presize the table storage.
+	 */
+	public void setExpectedRowCount(int expectedRowCount) {
+		this.expectedRowCount = expectedRowCount;
+	}
+
+	public boolean isAcceptChangesDuringFill() {
+		return this.acceptChangesDuringFill;
+	}
+
+	/**
+	 * Whether filled rows are marked as unchanged (the default) rather than added.
+	 */
+	public void setAcceptChangesDuringFill(boolean acceptChangesDuringFill) {
+		this.acceptChangesDuringFill = acceptChangesDuringFill;
+	}
+
+	/**
+	 * Runs the select command with the given parameters and appends the
+	 * returned rows to the table.
+	 * @return the number of rows read
+	 * @throws ConstraintViolationException listing every row violating the table
+	 * constraints, all read rows being kept in the table.
+	 */
+	public int fill(EntityTable table, Object... parameters) throws SQLException
+	{
+		if (table == null) throw new NullArgumentException("table");
+
+		PreparedStatement statement = this.connection.prepareStatement(this.selectCommand,
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try
+		{
+			statement.setFetchSize(this.fetchSize);
+			for (int i = 0; i < parameters.length; i++)
+				statement.setObject(i + 1, parameters[i]);
+
+			ResultSet resultSet = statement.executeQuery();
+			try {
+				return this.fill(table, resultSet);
+			}
+			finally {
+				resultSet.close();
+			}
+		}
+		finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Appends the rows of the given result set to the table, reading it up to its end.
+	 * The result set is not closed.
+	 * @return the number of rows read
+	 * @throws ConstraintViolationException listing every row violating the table
+	 * constraints, all read rows being kept in the table.
+	 */
+	public int fill(EntityTable table, ResultSet resultSet) throws SQLException
+	{
+		if (table == null) throw new NullArgumentException("table");
+		if (resultSet == null) throw new NullArgumentException("resultSet");
+
+		ColumnReader[] readers = createReaders(table, resultSet.getMetaData());
+		int columnCount = readers.length;
+
+		BulkLoader loader = table.beginBulkLoad(this.expectedRowCount);
+		loader.setAcceptChanges(this.acceptChangesDuringFill);
+
+		try
+		{
+			while (resultSet.next())
+			{
+				Object[] values = new Object[columnCount];
+				for (int i = 0; i < columnCount; i++)
+				{
+					if (readers[i] != null)
+						values[i] = readers[i].read(resultSet);
+				}
+
+				loader.addRow(values);
+			}
+		}
+		catch (SQLException e)
+		{
+			// rows read so far are kept, the table leaving the loading state
+			loader.finish(new ValidationReport(), null);
+			throw e;
+		}
+
+		loader.finish();
+		return loader.getSubmittedRowCount();
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static ColumnReader[] createReaders(EntityTable table, ResultSetMetaData metaData)
+			throws SQLException
+	{
+		Map<String, Integer> resultColumns = new HashMap<String, Integer>();
+		for (int i = 1; i <= metaData.getColumnCount(); i++)
+			resultColumns.put(metaData.getColumnLabel(i).toUpperCase(Locale.ROOT), i);
+
+		List<EntityColumn> columns = table.getColumns();
+		ColumnReader[] readers = new ColumnReader[columns.size()];
+		for (EntityColumn column : columns)
+		{
+			Integer index = resultColumns.get(column.getName().toUpperCase(Locale.ROOT));
+			if (index != null)
+				readers[column.getNumber()] = ColumnReader.create(index,
+						metaData.getColumnType(index), column.getType());
+		}
+
+		return readers;
+	}
+}
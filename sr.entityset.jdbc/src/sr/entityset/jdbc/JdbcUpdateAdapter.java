@@ -0,0 +1,420 @@
+package sr.entityset.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntitySet;
+import sr.entityset.EntityTable;
+import sr.entityset.RowState;
+import sr.entityset.constraints.ConstraintHelper;
+import sr.entityset.utils.EntityTableDependencyHelper;
+
+/**
+ * Writes the changed rows of entity tables back to the database, as the ADO.NET
+ * DataAdapter.Update does: added rows are inserted, modified rows updated and
+ * removed rows deleted, statements being sent by JDBC batches.
+ *
+ * Database tables and columns are expected to have the names of the entity
+ * tables and columns. Inserts and updates are run parent tables first, deletes
+ * child tables first (following the foreign keys of the tables). Updates and
+ * deletes find their row by its original values: all of them with optimistic
+ * concurrency (the default), the primary key only otherwise. A statement
+ * affecting no row fails the whole update with a {@link ConcurrencyViolationException}.
+ *
+ * If the connection is in auto-commit mode, the statements are run in a single
+ * transaction, committed before changes are accepted, rolled back on failure.
+ * Otherwise the transaction is left to the caller.
+ */
+public class JdbcUpdateAdapter
+{
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	private static enum Command { INSERT, UPDATE, DELETE }
+
+	private final Connection connection;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private boolean optimisticConcurrency = true;
+
+	public JdbcUpdateAdapter(Connection connection)
+	{
+		if (connection == null) throw new NullArgumentException("connection");
+		this.connection = connection;
+	}
+
+	public Connection getConnection() {
+		return this.connection;
+	}
+
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+
+	/**
+	 * Maximum number of statements sent to the database in one batch.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive.");
+
+		this.batchSize = batchSize;
+	}
+
+	public boolean isOptimisticConcurrency() {
+		return this.optimisticConcurrency;
+	}
+
+	/**
+	 * Whether updates and deletes check all original values of the row (the
+	 * default), rather than its original primary key only.
+	 */
+	public void setOptimisticConcurrency(boolean optimisticConcurrency) {
+		this.optimisticConcurrency = optimisticConcurrency;
+	}
+
+	/**
+	 * Writes the changes of all tables of the entity set.
+	 * @return the number of affected database rows
+	 */
+	public int update(EntitySet entitySet) throws SQLException
+	{
+		if (entitySet == null) throw new NullArgumentException("entitySet");
+		return this.update(entitySet.getTables());
+	}
+
+	public int update(EntityTable... tables) throws SQLException {
+		return this.update(Arrays.asList(tables));
+	}
+
+	/**
+	 * Writes the changes of the given tables, accepting them once written.
+	 * Temporary keys are replaced by regular ones first (see 
+	 * {@link EntityTable#remapTemporaryKeys()}), so that rows are inserted 
+	 * with the keys they keep in memory.
+	 * @return the number of affected database rows
+	 */
+	public int update(Collection<EntityTable> tables) throws SQLException
+	{
+		if (tables == null) throw new NullArgumentException("tables");
+
+		// parents first, the foreign keys of their child rows following their new keys
+		List<EntityTable> orderedTables = orderParentsFirst(tables);
+		for (EntityTable table : orderedTables)
+			table.remapTemporaryKeys();
+
+		Map<EntityTable, List<EntityRow>> addedRows = new LinkedHashMap<EntityTable, List<EntityRow>>();
+		Map<EntityTable, List<EntityRow>> modifiedRows = new LinkedHashMap<EntityTable, List<EntityRow>>();
+		Map<EntityTable, List<EntityRow>> removedRows = new LinkedHashMap<EntityTable, List<EntityRow>>();
+		for (EntityTable table : orderedTables)
+			groupChangedRows(table, addedRows, modifiedRows, removedRows);
+
+		boolean autoCommit = this.connection.getAutoCommit();
+		if (autoCommit)
+			this.connection.setAutoCommit(false);
+
+		int affectedRowCount = 0;
+		try
+		{
+			for (EntityTable table : orderedTables)
+				affectedRowCount += this.execute(table, addedRows.get(table), Command.INSERT);
+			for (EntityTable table : orderedTables)
+				affectedRowCount += this.execute(table, modifiedRows.get(table), Command.UPDATE);
+
+			List<EntityTable> childTablesFirst = new ArrayList<EntityTable>(orderedTables);
+			Collections.reverse(childTablesFirst);
+			for (EntityTable table : childTablesFirst)
+				affectedRowCount += this.execute(table, removedRows.get(table), Command.DELETE);
+
+			if (autoCommit)
+				this.connection.commit();
+		}
+		catch (SQLException e)
+		{
+			if (autoCommit) this.connection.rollback();
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			if (autoCommit) this.connection.rollback();
+			throw e;
+		}
+		finally
+		{
+			if (autoCommit)
+				this.connection.setAutoCommit(true);
+		}
+
+		for (EntityTable table : orderedTables)
+			table.acceptChanges();
+
+		return affectedRowCount;
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static List<EntityTable> orderParentsFirst(Collection<EntityTable> tables)
+	{
+		List<EntityTable> orderedTables = new ArrayList<EntityTable>();
+		for (EntityTable table : tables)
+		{
+			for (EntityTable parentTable : EntityTableDependencyHelper.getAllParentTables(table))
+			{
+				if (tables.contains(parentTable) && orderedTables.contains(parentTable) == false)
+					orderedTables.add(parentTable);
+			}
+
+			if (orderedTables.contains(table) == false)
+				orderedTables.add(table);
+		}
+
+		return orderedTables;
+	}
+
+	private static void groupChangedRows(EntityTable table,
+			Map<EntityTable, List<EntityRow>> addedRows,
+			Map<EntityTable, List<EntityRow>> modifiedRows,
+			Map<EntityTable, List<EntityRow>> removedRows)
+	{
+		List<EntityRow> added = new ArrayList<EntityRow>();
+		List<EntityRow> modified = new ArrayList<EntityRow>();
+		List<EntityRow> removed = new ArrayList<EntityRow>();
+		for (EntityRow row : table.changedRows())
+		{
+			if (row.getState() == RowState.Added)
+				added.add(row);
+			else if (row.getState() == RowState.Modified)
+				modified.add(row);
+			else if (row.getState() == RowState.Removed)
+				removed.add(row);
+		}
+
+		if ((modified.isEmpty() == false || removed.isEmpty() == false)
+				&& table.getPrimaryKeyColumns().isEmpty())
+			throw new IllegalArgumentException("Table '" + table.getName()
+					+ "' has no primary key, its modified and removed rows can not be written.");
+
+		addedRows.put(table, added);
+		modifiedRows.put(table, modified);
+		removedRows.put(table, removed);
+	}
+
+	private int execute(EntityTable table, List<EntityRow> rows, Command command) throws SQLException
+	{
+		if (rows.isEmpty())
+			return 0;
+
+		// rows needing the same statement text (e.g. same null original values) are batched together
+		Map<String, PendingBatch> batches = new LinkedHashMap<String, PendingBatch>();
+		List<Object> values = new ArrayList<Object>();
+		List<EntityColumn> valueColumns = new ArrayList<EntityColumn>();
+		int affectedRowCount = 0;
+		try
+		{
+			for (EntityRow row : rows)
+			{
+				values.clear();
+				valueColumns.clear();
+				String sql = this.buildStatement(table, row, command, values, valueColumns);
+
+				PendingBatch batch = batches.get(sql);
+				if (batch == null)
+				{
+					batch = new PendingBatch(this.connection.prepareStatement(sql));
+					batches.put(sql, batch);
+				}
+
+				for (int i = 0; i < values.size(); i++)
+					bindValue(batch.statement, i + 1, values.get(i), valueColumns.get(i).getType());
+
+				batch.statement.addBatch();
+				batch.rows.add(row);
+
+				if (batch.rows.size() >= this.batchSize)
+					affectedRowCount += executeBatch(table, batch, command);
+			}
+
+			for (PendingBatch batch : batches.values())
+				affectedRowCount += executeBatch(table, batch, command);
+		}
+		finally
+		{
+			for (PendingBatch batch : batches.values())
+				batch.statement.close();
+		}
+
+		return affectedRowCount;
+	}
+
+	private static int executeBatch(EntityTable table, PendingBatch batch, Command command)
+			throws SQLException
+	{
+		if (batch.rows.isEmpty())
+			return 0;
+
+		int[] updateCounts = batch.statement.executeBatch();
+		int affectedRowCount = 0;
+		for (int i = 0; i < updateCounts.length; i++)
+		{
+			if (updateCounts[i] == Statement.SUCCESS_NO_INFO)
+			{
+				affectedRowCount++;
+				continue;
+			}
+
+			if (updateCounts[i] == 0 && command != Command.INSERT)
+			{
+				EntityRow row = batch.rows.get(i);
+				throw new ConcurrencyViolationException("Concurrency violation: the "
+						+ command.toString().toLowerCase() + " of row " + Arrays.toString(
+						ConstraintHelper.buildColumnFilteredArray(table.getPrimaryKeyColumns(),
+								originalValues(row)))
+						+ " of table '" + table.getName() + "' affected no row.", row);
+			}
+
+			affectedRowCount += updateCounts[i];
+		}
+
+		batch.rows.clear();
+		return affectedRowCount;
+	}
+
+	private String buildStatement(EntityTable table, EntityRow row, Command command,
+			List<Object> values, List<EntityColumn> valueColumns)
+	{
+		List<EntityColumn> columns = table.getColumns();
+		StringBuilder sql = new StringBuilder();
+		switch (command)
+		{
+			case INSERT:
+				sql.append("INSERT INTO ").append(table.getName()).append(" (");
+				for (int i = 0; i < columns.size(); i++)
+				{
+					if (i > 0) sql.append(", ");
+					sql.append(columns.get(i).getName());
+					values.add(row.getValue(columns.get(i)));
+					valueColumns.add(columns.get(i));
+				}
+				sql.append(") VALUES (");
+				for (int i = 0; i < columns.size(); i++)
+					sql.append(i > 0 ? ", ?" : "?");
+				return sql.append(")").toString();
+
+			case UPDATE:
+				sql.append("UPDATE ").append(table.getName()).append(" SET ");
+				for (int i = 0; i < columns.size(); i++)
+				{
+					if (i > 0) sql.append(", ");
+					sql.append(columns.get(i).getName()).append(" = ?");
+					values.add(row.getValue(columns.get(i)));
+					valueColumns.add(columns.get(i));
+				}
+				this.appendWhereClause(sql, table, row, values, valueColumns);
+				return sql.toString();
+
+			default:
+				sql.append("DELETE FROM ").append(table.getName());
+				this.appendWhereClause(sql, table, row, values, valueColumns);
+				return sql.toString();
+		}
+	}
+
+	private void appendWhereClause(StringBuilder sql, EntityTable table, EntityRow row,
+			List<Object> values, List<EntityColumn> valueColumns)
+	{
+		Collection<EntityColumn> keyColumns = this.optimisticConcurrency
+				? table.getColumns() : table.getPrimaryKeyColumns();
+		Object[] originalValues = originalValues(row);
+
+		sql.append(" WHERE ");
+		boolean first = true;
+		for (EntityColumn column : keyColumns)
+		{
+			if (first == false) sql.append(" AND ");
+			first = false;
+
+			Object value = originalValues[column.getNumber()];
+			if (value == null)
+				sql.append(column.getName()).append(" IS NULL");
+			else
+			{
+				sql.append(column.getName()).append(" = ?");
+				values.add(value);
+				valueColumns.add(column);
+			}
+		}
+	}
+
+	/**
+	 * Values the row had when changes were last accepted (the current ones if it
+	 * was not modified since).
+	 */
+	private static Object[] originalValues(EntityRow row)
+	{
+		int columnCount = row.getParentTable().getColumns().size();
+		Object[] values = new Object[columnCount];
+		for (int i = 0; i < columnCount; i++)
+			values[i] = row.hasOriginalValues() ? row.getOriginalValue(i) : row.getValue(i);
+
+		return values;
+	}
+
+	private static void bindValue(PreparedStatement statement, int index, Object value, Class<?> type)
+			throws SQLException
+	{
+		if (value == null)
+			statement.setNull(index, sqlTypeOf(type));
+		else if (value.getClass() == Date.class)
+			statement.setTimestamp(index, new Timestamp(((Date)value).getTime()));
+		else if (JodaDateTimes.isDateTime(value.getClass()))
+			statement.setTimestamp(index, new Timestamp(JodaDateTimes.forType(value.getClass()).toMillis(value)));
+		else
+			statement.setObject(index, value);
+	}
+
+	private static int sqlTypeOf(Class<?> type)
+	{
+		if (type == Integer.class) return Types.INTEGER;
+		if (type == Long.class) return Types.BIGINT;
+		if (type == Double.class) return Types.DOUBLE;
+		if (type == Float.class) return Types.REAL;
+		if (type == Short.class) return Types.SMALLINT;
+		if (type == Boolean.class) return Types.BOOLEAN;
+		if (type == String.class) return Types.VARCHAR;
+		if (type == BigDecimal.class) return Types.DECIMAL;
+		if (type == Date.class || type == Timestamp.class) return Types.TIMESTAMP;
+		if (JodaDateTimes.isDateTime(type)) return Types.TIMESTAMP;
+		if (type == java.sql.Date.class) return Types.DATE;
+		if (type == Time.class) return Types.TIME;
+		if (type == byte[].class) return Types.VARBINARY;
+
+		return Types.OTHER;
+	}
+
+	private static class PendingBatch
+	{
+		private final PreparedStatement statement;
+		private final List<EntityRow> rows = new ArrayList<EntityRow>();
+
+		PendingBatch(PreparedStatement statement) {
+			this.statement = statement;
+		}
+	}
+}
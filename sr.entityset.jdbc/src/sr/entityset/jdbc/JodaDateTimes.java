@@ -0,0 +1,76 @@
+package sr.entityset.jdbc;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts joda DateTime values from and to epoch milliseconds. The type is
+ * matched by class name and its members are resolved once, so that joda is only
+ * required when tables use it. Values are built in UTC, as the io converters do.
+ */
+class JodaDateTimes
+{
+	private static final String DATETIME_CLASS_NAME = "org.joda.time.DateTime";
+	private static final String DATETIMEZONE_CLASS_NAME = "org.joda.time.DateTimeZone";
+
+	private static final ConcurrentMap<Class<?>, JodaDateTimes> byType =
+			new ConcurrentHashMap<Class<?>, JodaDateTimes>();
+
+	private final Constructor<?> constructor;
+	private final Object utcZone;
+	private final Method getMillis;
+
+	private JodaDateTimes(Class<?> type) throws ReflectiveOperationException
+	{
+		Class<?> zoneType = Class.forName(DATETIMEZONE_CLASS_NAME, true, type.getClassLoader());
+		this.constructor = type.getConstructor(long.class, zoneType);
+		this.utcZone = zoneType.getField("UTC").get(null);
+		this.getMillis = type.getMethod("getMillis");
+	}
+
+	static boolean isDateTime(Class<?> type) {
+		return type.getName().equals(DATETIME_CLASS_NAME);
+	}
+
+	/**
+	 * Conversions of the given DateTime type (see {@link #isDateTime(Class)}).
+	 */
+	static JodaDateTimes forType(Class<?> type)
+	{
+		JodaDateTimes conversions = byType.get(type);
+		if (conversions != null)
+			return conversions;
+
+		try {
+			conversions = new JodaDateTimes(type);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Type " + type.getName() + " is not a joda DateTime.", e);
+		}
+
+		byType.putIfAbsent(type, conversions);
+		return conversions;
+	}
+
+	Object fromMillis(long millis)
+	{
+		try {
+			return this.constructor.newInstance(millis, this.utcZone);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	long toMillis(Object dateTime)
+	{
+		try {
+			return ((Long)this.getMillis.invoke(dateTime)).longValue();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
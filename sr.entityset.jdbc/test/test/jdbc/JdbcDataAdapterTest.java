@@ -0,0 +1,177 @@
+package test.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.Index;
+import sr.entityset.RowState;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.exceptions.ConstraintViolationException;
+import sr.entityset.jdbc.JdbcDataAdapter;
+
+public class JdbcDataAdapterTest
+{
+	private Connection connection;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		connection = DriverManager.getConnection("jdbc:h2:mem:");
+
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE LINE (LINE_ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		statement.execute("CREATE TABLE BUS (BUS_ID BIGINT PRIMARY KEY, NAME VARCHAR(50), "
+				+ "LINE_ID INT, VOLTAGE DOUBLE, ACTIVE BOOLEAN, COST DECIMAL(10, 2), "
+				+ "SERVICE TIMESTAMP, COMMENT VARCHAR(50))");
+		statement.close();
+
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO LINE VALUES (?, ?)");
+		for (int i = 0; i < 10; i++)
+		{
+			insert.setInt(1, i);
+			insert.setString(2, "Line " + i);
+			insert.addBatch();
+		}
+		insert.executeBatch();
+		insert.close();
+
+		insert = connection.prepareStatement("INSERT INTO BUS VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+		for (int i = 0; i < 5000; i++)
+		{
+			insert.setLong(1, i);
+			insert.setString(2, "Bus " + i);
+			insert.setObject(3, i % 100 == 0 ? null : Integer.valueOf(i % 10));
+			insert.setObject(4, i % 100 == 1 ? null : Double.valueOf(i / 4.0));
+			insert.setBoolean(5, i % 2 == 0);
+			insert.setBigDecimal(6, BigDecimal.valueOf(i, 2));
+			insert.setTimestamp(7, new Timestamp(1340000000000L + i * 1000L));
+			insert.setString(8, "Ignored");
+			insert.addBatch();
+		}
+		insert.executeBatch();
+		insert.close();
+	}
+
+	@After
+	public void afterEach() throws Exception {
+		connection.close();
+	}
+
+	@Test
+	public void testFilledRowsHoldTheQueriedValues() throws Exception
+	{
+		EntityTable buses = newBusTable();
+		JdbcDataAdapter adapter = new JdbcDataAdapter(connection,
+				"SELECT * FROM BUS WHERE BUS_ID < ? ORDER BY BUS_ID");
+		adapter.setFetchSize(100);
+
+		assertEquals(3000, adapter.fill(buses, 3000));
+		assertEquals(3000, buses.rowList().size());
+
+		assertArrayEquals(new Object[] { 7L, "Bus 7", 7, 1.75, false, new BigDecimal("0.07"),
+				new Date(1340000007000L), null }, buses.rowList().get(7).getObjectArray());
+		assertNull(buses.rowList().get(200).getValue(buses.getColumn("LINE_ID")));
+		assertNull(buses.rowList().get(201).getValue(buses.getColumn("Voltage")));
+
+		// rows are unchanged and indexed
+		assertFalse(buses.isChanged());
+		assertEquals(RowState.Unchanged, buses.rowList().get(0).getState());
+		assertEquals("Bus 2999", buses.findByPrimaryKey(2999L).getValue(buses.getColumn("Name")));
+		Index lineIndex = buses.getIndex(Arrays.asList(buses.getColumn("LINE_ID")));
+		assertEquals(300, lineIndex.findRows(7).size());
+	}
+
+	@Test
+	public void testFillAppendsRowsAsAddedOnRequest() throws Exception
+	{
+		EntityTable buses = newBusTable();
+		buses.addRow(100000L, "Existing", null, null, null, null, null, null);
+
+		JdbcDataAdapter adapter = new JdbcDataAdapter(connection, "SELECT BUS_ID, NAME FROM BUS");
+		adapter.setAcceptChangesDuringFill(false);
+		adapter.setExpectedRowCount(5000);
+
+		assertEquals(5000, adapter.fill(buses));
+		assertEquals(5001, buses.rowList().size());
+		assertEquals(5001, buses.changedRows().size());
+
+		EntityRow row = buses.findByPrimaryKey(42L);
+		assertEquals(RowState.Added, row.getState());
+		assertNull(row.getValue(buses.getColumn("Voltage")));
+	}
+
+	@Test
+	public void testTimestampsAreReadAsUtcJodaDateTimes() throws Exception
+	{
+		EntityTable buses = new EntityTable("Bus");
+		buses.addPrimaryKeyColumn("BUS_ID", Long.class);
+		buses.addColumn("Service", DateTime.class, true);
+
+		new JdbcDataAdapter(connection, "SELECT BUS_ID, SERVICE FROM BUS").fill(buses);
+
+		assertEquals(5000, buses.rowList().size());
+		assertEquals(new DateTime(1340000007000L, DateTimeZone.UTC), buses.findByPrimaryKey(7L).getValue(1));
+	}
+
+	@Test
+	public void testConstraintViolationsAreReportedOnceFilled() throws Exception
+	{
+		EntityTable lines = new EntityTable("Line");
+		EntityColumn lineIdCol = lines.addPrimaryKeyColumn("LINE_ID", Integer.class);
+		lines.addColumn("NAME", String.class);
+		new JdbcDataAdapter(connection, "SELECT * FROM LINE WHERE LINE_ID < 9").fill(lines);
+
+		EntityTable buses = newBusTable();
+		buses.addConstraint(new ForeignKeyChildConstraint("BusLine",
+				lines, Arrays.asList(lineIdCol), Arrays.asList(buses.getColumn("LINE_ID"))));
+
+		try {
+			new JdbcDataAdapter(connection, "SELECT * FROM BUS").fill(buses);
+		}
+		catch (ConstraintViolationException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().startsWith("500 constraint violation(s)"));
+			assertEquals(5000, buses.rowList().size());
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private static EntityTable newBusTable() throws Exception
+	{
+		EntityTable table = new EntityTable("Bus");
+		table.addPrimaryKeyColumn("BUS_ID", Long.class);
+		table.addColumn("Name", String.class);
+		table.addColumn("LINE_ID", Integer.class, true);
+		table.addColumn("Voltage", Double.class, true);
+		table.addColumn("Active", Boolean.class, true);
+		table.addColumn("Cost", BigDecimal.class, true);
+		table.addColumn("Service", Date.class, true);
+		table.addColumn("Owner", String.class, true);
+		table.addIndex("LINE_ID");
+		return table;
+	}
+}
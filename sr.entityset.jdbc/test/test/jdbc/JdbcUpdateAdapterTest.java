@@ -0,0 +1,219 @@
+package test.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sr.entityset.EntityColumn;
+import sr.entityset.EntityRow;
+import sr.entityset.EntityTable;
+import sr.entityset.NewRowBuilder;
+import sr.entityset.constraints.ForeignKeyChildConstraint;
+import sr.entityset.constraints.ForeignKeyParentConstraint;
+import sr.entityset.jdbc.ConcurrencyViolationException;
+import sr.entityset.jdbc.JdbcDataAdapter;
+import sr.entityset.jdbc.JdbcUpdateAdapter;
+
+public class JdbcUpdateAdapterTest
+{
+	private Connection connection;
+	private EntityTable lines;
+	private EntityTable buses;
+
+	@Before
+	public void beforeEach() throws Exception
+	{
+		connection = DriverManager.getConnection("jdbc:h2:mem:");
+
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE LINE (LINE_ID INT PRIMARY KEY, NAME VARCHAR(50))");
+		statement.execute("CREATE TABLE BUS (BUS_ID INT PRIMARY KEY, NAME VARCHAR(50), "
+				+ "LINE_ID INT REFERENCES LINE(LINE_ID), VOLTAGE DOUBLE)");
+		for (int i = 0; i < 10; i++)
+			statement.execute("INSERT INTO LINE VALUES (" + i + ", 'Line " + i + "')");
+		for (int i = 0; i < 1000; i++)
+			statement.execute("INSERT INTO BUS VALUES (" + i + ", 'Bus " + i + "', " + (i % 10)
+					+ ", " + (i % 7 == 0 ? "NULL" : String.valueOf(i / 2.0)) + ")");
+		statement.close();
+
+		lines = new EntityTable("LINE");
+		EntityColumn lineIdCol = lines.addPrimaryKeyColumn("LINE_ID", Integer.class);
+		lines.addColumn("NAME", String.class);
+
+		buses = new EntityTable("BUS");
+		buses.addPrimaryKeyColumn("BUS_ID", Integer.class);
+		buses.addColumn("NAME", String.class);
+		EntityColumn busLineCol = buses.addColumn("LINE_ID", Integer.class, true);
+		buses.addColumn("VOLTAGE", Double.class, true);
+
+		buses.addConstraint(new ForeignKeyChildConstraint("BusLine",
+				lines, Arrays.asList(lineIdCol), Arrays.asList(busLineCol)));
+		lines.addConstraint(new ForeignKeyParentConstraint("BusLine",
+				buses, lines, Arrays.asList(busLineCol), Arrays.asList(lineIdCol)));
+
+		new JdbcDataAdapter(connection, "SELECT * FROM LINE").fill(lines);
+		new JdbcDataAdapter(connection, "SELECT * FROM BUS").fill(buses);
+	}
+
+	@After
+	public void afterEach() throws Exception {
+		connection.close();
+	}
+
+	@Test
+	public void testChangedRowsAreWrittenInDependencyOrder() throws Exception
+	{
+		// new line referenced by new buses, line 9 removed with its buses
+		lines.addRow(100, "New line");
+		for (int i = 0; i < 50; i++)
+			buses.addRow(2000 + i, "New bus " + i, 100, null);
+		for (int i = 0; i < 1000; i += 3)
+			buses.findByPrimaryKey(i).setValue(buses.getColumn("VOLTAGE"), 1.0);
+		for (int i = 9; i < 1000; i += 10)
+			buses.removeRow(buses.findByPrimaryKey(i));
+		lines.removeRow(lines.findByPrimaryKey(9));
+
+		JdbcUpdateAdapter adapter = new JdbcUpdateAdapter(connection);
+		adapter.setBatchSize(64);
+
+		// child table given first
+		assertEquals(1 + 50 + 300 + 100 + 1, adapter.update(buses, lines));
+		assertFalse(buses.isChanged());
+		assertFalse(lines.isChanged());
+		assertTrue(connection.getAutoCommit());
+
+		assertEquals(9 + 1, count("SELECT COUNT(*) FROM LINE"));
+		assertEquals(1000 - 100 + 50, count("SELECT COUNT(*) FROM BUS"));
+		assertEquals(50, count("SELECT COUNT(*) FROM BUS WHERE LINE_ID = 100 AND VOLTAGE IS NULL"));
+		assertEquals(300, count("SELECT COUNT(*) FROM BUS WHERE VOLTAGE = 1.0 AND MOD(BUS_ID, 3) = 0"));
+	}
+
+	@Test
+	public void testConcurrentChangeFailsTheWholeUpdate() throws Exception
+	{
+		buses.addRow(2000, "New bus", 1, null);
+		buses.findByPrimaryKey(14).setValue(buses.getColumn("NAME"), "Renamed");
+		buses.findByPrimaryKey(15).setValue(buses.getColumn("NAME"), "Renamed");
+
+		Statement statement = connection.createStatement();
+		statement.execute("UPDATE BUS SET VOLTAGE = 12.5 WHERE BUS_ID = 15");
+		statement.close();
+
+		EntityRow conflictingRow = buses.findByPrimaryKey(15);
+		try {
+			new JdbcUpdateAdapter(connection).update(buses);
+		}
+		catch (ConcurrencyViolationException e)
+		{
+			assertSame(conflictingRow, e.getRow());
+			assertEquals(0, count("SELECT COUNT(*) FROM BUS WHERE BUS_ID = 2000 OR NAME = 'Renamed'"));
+			assertEquals(3, buses.changedRows().size());
+			return;
+		}
+		throw new AssertionError("Expecting an exception");
+	}
+
+	@Test
+	public void testPrimaryKeyOnlyConcurrencyOverwritesConcurrentChanges() throws Exception
+	{
+		buses.findByPrimaryKey(14).setValue(buses.getColumn("BUS_ID"), 5000);
+		buses.findByPrimaryKey(15).setValue(buses.getColumn("NAME"), "Renamed");
+
+		Statement statement = connection.createStatement();
+		statement.execute("UPDATE BUS SET VOLTAGE = 12.5 WHERE BUS_ID IN (14, 15)");
+		statement.close();
+
+		JdbcUpdateAdapter adapter = new JdbcUpdateAdapter(connection);
+		adapter.setOptimisticConcurrency(false);
+		assertEquals(2, adapter.update(buses));
+
+		assertEquals(0, count("SELECT COUNT(*) FROM BUS WHERE BUS_ID = 14"));
+		assertEquals(1, count("SELECT COUNT(*) FROM BUS WHERE BUS_ID = 5000 AND VOLTAGE IS NULL"));
+		assertEquals(1, count("SELECT COUNT(*) FROM BUS WHERE BUS_ID = 15 AND NAME = 'Renamed' AND VOLTAGE = 7.5"));
+		assertNull(buses.findByPrimaryKey(14));
+	}
+
+	@Test
+	public void testTemporaryKeysAreRemappedBeforeInserting() throws Exception
+	{
+		lines.getKeyGenerator(lines.getColumn("LINE_ID"));
+		EntityRow newLine = new NewRowBuilder(true).buildEntityRow(lines);
+		newLine.setValue(lines.getColumn("NAME"), "New line");
+		lines.addRow(newLine);
+		buses.addRow(2000, "New bus", -1, null);
+
+		new JdbcUpdateAdapter(connection).update(buses, lines);
+
+		assertEquals(10, newLine.getValue(lines.getColumn("LINE_ID")));
+		assertEquals(1, count("SELECT COUNT(*) FROM LINE WHERE LINE_ID = 10 AND NAME = 'New line'"));
+		assertEquals(0, count("SELECT COUNT(*) FROM LINE WHERE LINE_ID < 0"));
+		assertEquals(1, count("SELECT COUNT(*) FROM BUS WHERE BUS_ID = 2000 AND LINE_ID = 10"));
+		assertFalse(buses.isChanged());
+
+		// the rows can be updated afterwards
+		newLine.setValue(lines.getColumn("NAME"), "Renamed line");
+		assertEquals(1, new JdbcUpdateAdapter(connection).update(lines));
+		assertEquals(1, count("SELECT COUNT(*) FROM LINE WHERE LINE_ID = 10 AND NAME = 'Renamed line'"));
+	}
+
+	@Test
+	public void testDateTimesAreWrittenAsTimestamps() throws Exception
+	{
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE SERVICE (SERVICE_ID INT PRIMARY KEY, DONE TIMESTAMP)");
+		statement.execute("INSERT INTO SERVICE VALUES (1, TIMESTAMP '2012-06-18 10:00:00')");
+		statement.close();
+
+		EntityTable services = new EntityTable("SERVICE");
+		services.addPrimaryKeyColumn("SERVICE_ID", Integer.class);
+		EntityColumn doneCol = services.addColumn("DONE", DateTime.class, true);
+		new JdbcDataAdapter(connection, "SELECT * FROM SERVICE").fill(services);
+
+		DateTime done = new DateTime(1340000000000L, DateTimeZone.UTC);
+		services.findByPrimaryKey(1).setValue(doneCol, done);
+		services.addRow(2, done.plusDays(1));
+		services.addRow(3, null);
+
+		// the update finds row 1 by its original DateTime
+		assertEquals(3, new JdbcUpdateAdapter(connection).update(services));
+
+		EntityTable reloaded = new EntityTable("SERVICE");
+		reloaded.addPrimaryKeyColumn("SERVICE_ID", Integer.class);
+		reloaded.addColumn("DONE", DateTime.class, true);
+		new JdbcDataAdapter(connection, "SELECT * FROM SERVICE").fill(reloaded);
+
+		assertEquals(done, reloaded.findByPrimaryKey(1).getValue(1));
+		assertEquals(done.plusDays(1), reloaded.findByPrimaryKey(2).getValue(1));
+		assertNull(reloaded.findByPrimaryKey(3).getValue(1));
+	}
+
+	///////////////////////////////////////////////////////////////////////////////////////////////
+
+	private int count(String sql) throws Exception
+	{
+		Statement statement = connection.createStatement();
+		try
+		{
+			ResultSet resultSet = statement.executeQuery(sql);
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+		finally {
+			statement.close();
+		}
+	}
+}